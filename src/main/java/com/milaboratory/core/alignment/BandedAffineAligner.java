@@ -607,6 +607,15 @@ public class BandedAffineAligner {
             this.gapIn2Cache = new CachedIntArray();
         }
 
+        /**
+         * Returns total number of matrix (re)allocations performed by this cache.
+         *
+         * @return number of allocations
+         */
+        public long getAllocations() {
+            return mainCache.getAllocations() + gapIn1Cache.getAllocations() + gapIn2Cache.getAllocations();
+        }
+
         private void prepareMatrices(int size1, int size2, int width,
                                      AffineGapAlignmentScoring<NucleotideSequence> scoring) {
             BandedMatrix main = this.main = new BandedMatrix(mainCache, size1, size2, width);
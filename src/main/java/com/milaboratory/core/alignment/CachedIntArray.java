@@ -20,6 +20,7 @@ package com.milaboratory.core.alignment;
  */
 public final class CachedIntArray implements java.io.Serializable {
     private int[] array = null;
+    private long allocations = 0;
 
     /**
      * Returns {@code int[]} array. If passed {@code #size} argument is more than actual size of CachedIntArray, then
@@ -29,9 +30,20 @@ public final class CachedIntArray implements java.io.Serializable {
      * @return array
      */
     public int[] get(int size) {
-        if (array == null || size > array.length)
+        if (array == null || size > array.length) {
+            ++allocations;
             return array = new int[size];
+        }
 
         return array;
     }
+
+    /**
+     * Returns number of times the underlying array was (re)allocated.
+     *
+     * @return number of allocations
+     */
+    public long getAllocations() {
+        return allocations;
+    }
 }
@@ -1,10 +1,9 @@
 package com.milaboratory.core.alignment.batch;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.Processor;
-import cc.redberry.pipe.blocks.ParallelProcessor;
 import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.OrderedParallelProcessor;
 
 public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends AlignmentHit<S, ?>>
         implements BatchAligner<S, H>, PipedBatchAligner<S, H> {
@@ -14,6 +13,20 @@ public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends Alig
      * 2... -> parallel processor
      */
     protected volatile int threads = 1;
+    /**
+     * Settings of batched parallel processing (if not null, used in piped processing instead of threads)
+     */
+    protected volatile OrderedParallelProcessor.Settings batchedProcessing;
+
+    /**
+     * Sets up batched order-preserving parallel processing for piped alignment (overrides {@link #threads}), see {@link
+     * OrderedParallelProcessor.Settings#wrap(OrderedParallelProcessor.Settings, OutputPort, Processor, int)}.
+     *
+     * @param settings batched processing settings, {@code null} to use thread count
+     */
+    public void setBatchedProcessing(OrderedParallelProcessor.Settings settings) {
+        this.batchedProcessing = settings;
+    }
 
     @Override
     public abstract AlignmentResult<H> align(S sequence);
@@ -29,7 +42,7 @@ public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends Alig
             }
         };
 
-        return wrapPipe(proc, input);
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
     }
 
     @Override
@@ -42,15 +55,6 @@ public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends Alig
             }
         };
 
-        return wrapPipe(proc, input);
-    }
-
-    private <Q> OutputPort<PipedAlignmentResult<H, Q>> wrapPipe(Processor<Q, PipedAlignmentResult<H, Q>> proc, OutputPort<Q> input) {
-        if (threads == 1)
-            return CUtils.wrap(input, proc);
-
-        int t = (threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
-
-        return new ParallelProcessor<>(input, proc, t);
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
     }
 }
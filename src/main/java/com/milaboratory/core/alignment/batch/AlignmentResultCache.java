@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.batch;
+
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.BitArray;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread-safe cache of alignment results keyed on (query sequence, query range, filter). Cache is split into
+ * several independently synchronized LRU segments to reduce contention between worker threads.
+ *
+ * @param <S> type of sequence
+ * @param <V> type of cached value
+ */
+public final class AlignmentResultCache<S extends Sequence<S>, V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<S, V>[] segments;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Creates new cache.
+     *
+     * @param maxSize maximal number of results to keep
+     */
+    @SuppressWarnings("unchecked")
+    public AlignmentResultCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Max size must be positive.");
+        int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            this.segments[i] = new Segment<>(segmentSize);
+    }
+
+    /**
+     * Returns cached value or null if there is no value for specified key.
+     *
+     * @param sequence query sequence
+     * @param from     query from (inclusive), or -1 if whole sequence was aligned
+     * @param to       query to (exclusive), or -1 if whole sequence was aligned
+     * @param filter   filter of references (may be null)
+     * @return cached value or null
+     */
+    public V get(S sequence, int from, int to, BitArray filter) {
+        Key<S> key = new Key<>(sequence, from, to, filter);
+        V value = segment(key).get(key);
+        if (value == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Puts value to the cache.
+     *
+     * @param sequence query sequence
+     * @param from     query from (inclusive), or -1 if whole sequence was aligned
+     * @param to       query to (exclusive), or -1 if whole sequence was aligned
+     * @param filter   filter of references (may be null)
+     * @param value    value
+     */
+    public void put(S sequence, int from, int to, BitArray filter, V value) {
+        // Filter is copied to protect the key from subsequent modifications of the original object
+        Key<S> key = new Key<>(sequence, from, to, filter == null ? null : filter.clone());
+        segment(key).put(key, value);
+    }
+
+    /**
+     * Removes all cached values (statistics is not reset).
+     */
+    public void clear() {
+        for (Segment<S, V> segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * Returns number of cached values
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<S, V> segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Returns number of successful lookups
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns number of failed lookups
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns fraction of successful lookups (or 0 if there were no lookups)
+     */
+    public double getHitRate() {
+        long h = hits.get(), m = misses.get();
+        return h + m == 0 ? 0.0 : 1.0 * h / (h + m);
+    }
+
+    private Segment<S, V> segment(Key<S> key) {
+        int h = key.hash;
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses();
+    }
+
+    private static final class Segment<S extends Sequence<S>, V> extends LinkedHashMap<Key<S>, V> {
+        final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public synchronized V get(Object key) {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized V put(Key<S> key, V value) {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key<S>, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static final class Key<S extends Sequence<S>> {
+        final S sequence;
+        final int from, to;
+        final BitArray filter;
+        final int hash;
+
+        Key(S sequence, int from, int to, BitArray filter) {
+            this.sequence = sequence;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            int h = sequence.hashCode();
+            h = 31 * h + from;
+            h = 31 * h + to;
+            h = 31 * h + (filter == null ? 0 : filter.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key<?> key = (Key<?>) o;
+            return hash == key.hash &&
+                    from == key.from &&
+                    to == key.to &&
+                    sequence.equals(key.sequence) &&
+                    Objects.equals(filter, key.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.milaboratory.core.alignment.batch;
 
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.Aligner;
+import com.milaboratory.core.alignment.Alignment;
 import com.milaboratory.core.sequence.Sequence;
 
 import java.util.Comparator;
@@ -18,4 +21,36 @@ public class BatchAlignmentUtil {
             return ((HasSequence) object).getSequence();
         }
     };
+
+    /**
+     * Gapped extension of a seed diagonal: aligns part of the query with the window of the target spanning the query
+     * part projected on the diagonal, widened by {@code bandWidth} on each side. Full affine local alignment is
+     * performed over the window (so the cost is proportional to the product of query part length and window length).
+     *
+     * @param scoring       scoring
+     * @param target        target sequence
+     * @param queryPart     part of the query, {@code query.getRange(from, to)}
+     * @param from          position of query part in the query
+     * @param diagonalStart position in target corresponding to the beginning of query part on the diagonal
+     * @param bandWidth     number of positions the window is widened by on each side
+     * @return alignment in coordinates of target and query or null if there is no positive scoring alignment
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignAroundDiagonal(AffineGapAlignmentScoring<S> scoring,
+                                                                          S target, S queryPart, int from,
+                                                                          int diagonalStart, int bandWidth) {
+        int windowFrom = Math.max(0, diagonalStart - bandWidth),
+                windowTo = Math.min(target.size(), diagonalStart + queryPart.size() + bandWidth);
+        if (windowFrom >= windowTo)
+            return null;
+
+        Alignment<S> local = Aligner.alignLocalAffine(scoring, target.getRange(windowFrom, windowTo), queryPart);
+        if (local == null)
+            return null;
+
+        return new Alignment<>(target,
+                local.getAbsoluteMutations().move(windowFrom),
+                local.getSequence1Range().move(windowFrom),
+                local.getSequence2Range().move(from),
+                local.getScore());
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.batch;
+
+import com.milaboratory.core.sequence.Sequence;
+
+/**
+ * Wraps {@link BatchAlignerWithBase} and caches alignment results for repeated queries (e.g. identical reads in
+ * amplicon or UMI libraries). Cached results are shared between all callers and must not be modified.
+ *
+ * <p>Piped processing (see {@link PipedBatchAligner}) is performed using {@link #align(Sequence)} of this aligner, so
+ * it also benefits from caching.</p>
+ *
+ * <p>Use {@link CachingBatchAlignerWithFilter} to wrap aligners supporting filters.</p>
+ *
+ * @param <S> type of sequence
+ * @param <P> type of record payload
+ * @param <H> type of hit
+ */
+public class CachingBatchAligner<S extends Sequence<S>, P, H extends AlignmentHit<S, P>>
+        extends AbstractBatchAligner<S, H>
+        implements BatchAlignerWithBase<S, P, H> {
+    final BatchAlignerWithBase<S, P, H> aligner;
+    final AlignmentResultCache<S, AlignmentResult<H>> cache;
+    final int maxCacheSize;
+
+    /**
+     * Creates caching wrapper.
+     *
+     * @param aligner      aligner to wrap
+     * @param maxCacheSize maximal number of cached results
+     */
+    public CachingBatchAligner(BatchAlignerWithBase<S, P, H> aligner, int maxCacheSize) {
+        this.aligner = aligner;
+        this.cache = new AlignmentResultCache<>(maxCacheSize);
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Sets number of threads to be used in piped processing.<br><br>
+     *
+     * 0    -> Runtime.getRuntime().availableProcessors()<br>
+     * 1    -> process in the same thread as take() method call<br>
+     * 2... -> parallel processor<br>
+     */
+    public void setThreadCount(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns cache used by this aligner (can be used to retrieve hit-rate statistics).
+     */
+    public AlignmentResultCache<S, AlignmentResult<H>> getCache() {
+        return cache;
+    }
+
+    @Override
+    public void addReference(S sequence, P payload) {
+        cache.clear();
+        aligner.addReference(sequence, payload);
+    }
+
+    @Override
+    public AlignmentResult<H> align(S sequence) {
+        AlignmentResult<H> result = cache.get(sequence, -1, -1, null);
+        if (result == null) {
+            result = aligner.align(sequence);
+            cache.put(sequence, -1, -1, null, result);
+        }
+        return result;
+    }
+
+    @Override
+    public AlignmentResult<H> align(S sequence, int from, int to) {
+        AlignmentResult<H> result = cache.get(sequence, from, to, null);
+        if (result == null) {
+            result = aligner.align(sequence, from, to);
+            cache.put(sequence, from, to, null, result);
+        }
+        return result;
+    }
+}
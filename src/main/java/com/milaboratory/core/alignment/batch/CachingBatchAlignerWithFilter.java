@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.batch;
+
+import cc.redberry.primitives.Filter;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.BitArray;
+
+/**
+ * Wraps {@link BatchAlignerWithBaseWithFilter} and caches alignment results for repeated queries, including filtered
+ * alignments (filters are compared by content). Cached results are shared between all callers and must not be
+ * modified.
+ *
+ * @param <S> type of sequence
+ * @param <P> type of record payload
+ * @param <H> type of hit
+ */
+public class CachingBatchAlignerWithFilter<S extends Sequence<S>, P, H extends AlignmentHit<S, P>>
+        extends CachingBatchAligner<S, P, H>
+        implements BatchAlignerWithBaseWithFilter<S, P, H> {
+    final BatchAlignerWithBaseWithFilter<S, P, H> filteringAligner;
+
+    /**
+     * Creates caching wrapper.
+     *
+     * @param aligner      aligner to wrap
+     * @param maxCacheSize maximal number of cached results
+     */
+    public CachingBatchAlignerWithFilter(BatchAlignerWithBaseWithFilter<S, P, H> aligner, int maxCacheSize) {
+        super(aligner, maxCacheSize);
+        this.filteringAligner = aligner;
+    }
+
+    @Override
+    public BitArray createFilter(Filter<P> filter) {
+        return filteringAligner.createFilter(filter);
+    }
+
+    @Override
+    public AlignmentResult<H> align(S sequence, int from, int to, BitArray filter) {
+        AlignmentResult<H> result = cache.get(sequence, from, to, filter);
+        if (result == null) {
+            result = filteringAligner.align(sequence, from, to, filter);
+            cache.put(sequence, from, to, filter, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns caching wrapper of the aligner with floating left bound (results are cached separately from results
+     * of this aligner).
+     */
+    @Override
+    public CachingBatchAlignerWithFilter<S, P, H> setFloatingLeftBound(boolean floatingLeftBound) {
+        return copy(filteringAligner.setFloatingLeftBound(floatingLeftBound));
+    }
+
+    /**
+     * Returns caching wrapper of the aligner with floating right bound (results are cached separately from results
+     * of this aligner).
+     */
+    @Override
+    public CachingBatchAlignerWithFilter<S, P, H> setFloatingRightBound(boolean floatingRightBound) {
+        return copy(filteringAligner.setFloatingRightBound(floatingRightBound));
+    }
+
+    private CachingBatchAlignerWithFilter<S, P, H> copy(BatchAlignerWithBaseWithFilter<S, P, H> aligner) {
+        CachingBatchAlignerWithFilter<S, P, H> copy = new CachingBatchAlignerWithFilter<>(aligner, maxCacheSize);
+        copy.threads = threads;
+        copy.batchedProcessing = batchedProcessing;
+        return copy;
+    }
+}
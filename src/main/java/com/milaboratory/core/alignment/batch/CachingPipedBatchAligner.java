@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.batch;
+
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.sequence.Sequence;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Wraps {@link PipedBatchAlignerWithBase} (e.g. BLAST based aligners, which support only piped processing) and caches
+ * alignment results for repeated query sequences. Only queries with sequences absent in the cache are passed to the
+ * underlying aligner, results for other queries are returned as soon as they are read from the input. Input is read
+ * only on demand, so cached results are never buffered. Order of results is not preserved.
+ *
+ * @param <S> type of sequence
+ * @param <P> type of record payload
+ * @param <H> type of hit
+ */
+public class CachingPipedBatchAligner<S extends Sequence<S>, P, H extends AlignmentHit<? extends S, ? extends P>>
+        implements PipedBatchAlignerWithBase<S, P, H> {
+    final PipedBatchAlignerWithBase<S, P, H> aligner;
+    final AlignmentResultCache<S, List<H>> cache;
+    /**
+     * Maximal number of queries waiting to be read by the underlying aligner
+     */
+    final int bufferSize;
+
+    /**
+     * Creates caching wrapper.
+     *
+     * @param aligner      aligner to wrap
+     * @param maxCacheSize maximal number of cached results
+     */
+    public CachingPipedBatchAligner(PipedBatchAlignerWithBase<S, P, H> aligner, int maxCacheSize) {
+        this(aligner, maxCacheSize, 1024);
+    }
+
+    /**
+     * Creates caching wrapper.
+     *
+     * @param aligner      aligner to wrap
+     * @param maxCacheSize maximal number of cached results
+     * @param bufferSize   maximal number of queries absent in cache waiting to be read by the underlying aligner
+     */
+    public CachingPipedBatchAligner(PipedBatchAlignerWithBase<S, P, H> aligner, int maxCacheSize, int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        this.aligner = aligner;
+        this.cache = new AlignmentResultCache<>(maxCacheSize);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns cache used by this aligner (can be used to retrieve hit-rate statistics).
+     */
+    public AlignmentResultCache<S, List<H>> getCache() {
+        return cache;
+    }
+
+    @Override
+    public void addReference(S sequence, P payload) {
+        cache.clear();
+        aligner.addReference(sequence, payload);
+    }
+
+    @Override
+    public <Q> OutputPort<PipedAlignmentResult<H, Q>> align(final OutputPort<Q> input,
+                                                            final SequenceExtractor<Q, S> extractor) {
+        return new CachingPort<>(input, extractor);
+    }
+
+    /**
+     * Marks end of stream in queues of {@link CachingPort}
+     */
+    private static final Object END = new Object();
+
+    /**
+     * Reads input only on demand: results for queries found in cache are returned directly from {@link #take()}, other
+     * queries are passed to the underlying aligner through a bounded queue, and its results are collected by a
+     * separate thread (so that reading of input never waits for the underlying aligner to produce a result).
+     */
+    private final class CachingPort<Q> implements OutputPort<PipedAlignmentResult<H, Q>> {
+        final OutputPort<Q> input;
+        final SequenceExtractor<Q, S> extractor;
+        /**
+         * Queries absent in cache, to be passed to the underlying aligner
+         */
+        final BlockingQueue<Object> missed = new ArrayBlockingQueue<>(bufferSize);
+        /**
+         * Results of the underlying aligner (at most one per missed query not yet returned)
+         */
+        final BlockingQueue<Object> aligned = new LinkedBlockingQueue<>();
+        /**
+         * Number of queries passed to the underlying aligner and not yet returned
+         */
+        int inFlight = 0;
+        boolean inputDrained = false;
+        Thread collector;
+
+        CachingPort(OutputPort<Q> input, SequenceExtractor<Q, S> extractor) {
+            this.input = input;
+            this.extractor = extractor;
+        }
+
+        @Override
+        public synchronized PipedAlignmentResult<H, Q> take() {
+            Object result;
+            while ((result = aligned.poll()) == null) {
+                if (inputDrained) {
+                    if (inFlight == 0)
+                        return null;
+                    result = takeUninterruptibly(aligned);
+                    break;
+                }
+
+                Q query = input.take();
+                if (query == null) {
+                    inputDrained = true;
+                    if (collector != null)
+                        putUninterruptibly(missed, END);
+                    continue;
+                }
+
+                List<H> hits = cache.get(extractor.extract(query), -1, -1, null);
+                if (hits != null)
+                    return new PipedAlignmentResultImpl<>(hits, query);
+
+                if (collector == null)
+                    startCollector();
+                putUninterruptibly(missed, query);
+                ++inFlight;
+            }
+            return processAligned(result);
+        }
+
+        @SuppressWarnings("unchecked")
+        private PipedAlignmentResult<H, Q> processAligned(Object result) {
+            if (result instanceof Throwable) {
+                // Keeping the error for subsequent invocations
+                aligned.add(result);
+                if (result instanceof RuntimeException)
+                    throw (RuntimeException) result;
+                if (result instanceof Error)
+                    throw (Error) result;
+                throw new RuntimeException((Throwable) result);
+            }
+            --inFlight;
+            PipedAlignmentResult<H, Q> r = (PipedAlignmentResult<H, Q>) result;
+            cache.put(extractor.extract(r.getQuery()), -1, -1, null, r.getHits());
+            return r;
+        }
+
+        private void startCollector() {
+            final OutputPort<? extends PipedAlignmentResult<H, Q>> results = aligner.align(new OutputPort<Q>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public synchronized Q take() {
+                    Object query = takeUninterruptibly(missed);
+                    if (query == END) {
+                        // All subsequent invocations also return null
+                        missed.add(END);
+                        return null;
+                    }
+                    return (Q) query;
+                }
+            }, extractor);
+            collector = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        PipedAlignmentResult<H, Q> result;
+                        while ((result = results.take()) != null)
+                            aligned.add(result);
+                    } catch (Throwable e) {
+                        aligned.add(e);
+                    }
+                }
+            }, "caching-aligner");
+            collector.setDaemon(true);
+            collector.start();
+        }
+    }
+
+    private static Object takeUninterruptibly(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Object> queue, Object element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <Q extends HasSequence<S>> OutputPort<PipedAlignmentResult<H, Q>> align(OutputPort<Q> input) {
+        return align(input, new SequenceExtractor<Q, S>() {
+            @Override
+            public S extract(Q object) {
+                return object.getSequence();
+            }
+        });
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.batch.*;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.IntArrayList;
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * In-process seed-and-extend aligner producing BLAST-style hits. Can be used as a replacement of {@link NBlastAligner}
+ * / {@link AABlastAligner} which do not require external BLAST installation and avoid process spawning and text
+ * parsing overhead.
+ *
+ * <p>Alignment is performed in three steps: (1) query positions are looked up in the index of spaced seeds built from
+ * all reference sequences, (2) each new seed is extended without gaps using X-drop criterion, (3) the best ungapped
+ * segment for each reference is extended with gaps using affine local alignment of the query with the window of the
+ * reference around the diagonal of the ungapped segment (window is wider than the query part by the band width on
+ * each side; dynamic programming is not banded inside the window).</p>
+ *
+ * <p>All references must be added before the first alignment.</p>
+ *
+ * @param <S> type of sequence
+ * @param <P> type of record payload
+ */
+public class InProcessBlastAligner<S extends Sequence<S>, P> extends AbstractBatchAligner<S, BlastHit<S, P>>
+        implements BatchAlignerWithBase<S, P, BlastHit<S, P>>, PipedBatchAlignerWithBase<S, P, BlastHit<S, P>> {
+    private final InProcessBlastAlignerParameters<S> parameters;
+    /**
+     * Positions of '1' in seed pattern
+     */
+    private final int[] seedOffsets;
+    /**
+     * Length of seed pattern
+     */
+    private final int seedSpan;
+    private final List<S> references = new ArrayList<>();
+    private final List<P> payloads = new ArrayList<>();
+    private long totalReferenceLength = 0;
+
+    // Not initialized -> null
+    private volatile SeedIndex index = null;
+
+    public InProcessBlastAligner(InProcessBlastAlignerParameters<S> parameters) {
+        this.parameters = parameters.clone();
+        String pattern = parameters.getSeedPattern();
+        IntArrayList offsets = new IntArrayList();
+        for (int i = 0; i < pattern.length(); i++)
+            if (pattern.charAt(i) == '1')
+                offsets.add(i);
+        this.seedOffsets = offsets.toArray();
+        this.seedSpan = pattern.length();
+    }
+
+    /**
+     * Sets number of threads to be used in piped processing.<br><br>
+     *
+     * 0    -> Runtime.getRuntime().availableProcessors()<br>
+     * 1    -> process in the same thread as take() method call<br>
+     * 2... -> parallel processor<br>
+     */
+    public void setThreadCount(int threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public synchronized void addReference(S sequence, P payload) {
+        if (index != null)
+            throw new IllegalStateException("Aligner is already in use, can't add sequence to database.");
+        references.add(sequence);
+        payloads.add(payload);
+        totalReferenceLength += sequence.size();
+    }
+
+    @Override
+    public AlignmentResult<BlastHit<S, P>> align(S sequence) {
+        return align(sequence, 0, sequence.size());
+    }
+
+    @Override
+    public AlignmentResult<BlastHit<S, P>> align(S query, int from, int to) {
+        final SeedIndex index = ensureBuilt();
+        final AffineGapAlignmentScoring<S> scoring = parameters.getScoring();
+
+        // Best ungapped segment for each reference: reference id -> index of segment in segments list
+        final TIntIntHashMap bestSegment = new TIntIntHashMap(16, 0.5f, -1, -1);
+        // Ungapped segments: (queryFrom, queryTo, targetFrom, score) for each segment
+        final IntArrayList segments = new IntArrayList();
+        // (reference id, diagonal) -> query position up to which diagonal was already extended
+        final TLongIntHashMap extended = new TLongIntHashMap(16, 0.5f, Long.MIN_VALUE, Integer.MIN_VALUE);
+
+        for (int qPos = from; qPos + seedSpan <= to; ++qPos) {
+            long key = seedKey(query, qPos);
+            if (key == -1)
+                continue;
+
+            int slot = index.slots.get(key);
+            if (slot == -1)
+                continue;
+
+            for (int p = index.slotStart[slot]; p < index.slotStart[slot + 1]; p += 2) {
+                int id = index.postings[p], tPos = index.postings[p + 1];
+                long diagonalKey = ((long) id << 32) | ((tPos - qPos) & 0xFFFFFFFFL);
+
+                // This seed is already covered by previous ungapped extension
+                if (extended.get(diagonalKey) > qPos)
+                    continue;
+
+                S target = references.get(id);
+
+                // Seed itself
+                int score = 0;
+                for (int i = 0; i < seedSpan; i++)
+                    score += scoring.getScore(target.codeAt(tPos + i), query.codeAt(qPos + i));
+
+                // Extension to the right
+                int max = score, right = seedSpan, current = score;
+                for (int i = seedSpan; qPos + i < to && tPos + i < target.size(); i++) {
+                    current += scoring.getScore(target.codeAt(tPos + i), query.codeAt(qPos + i));
+                    if (current > max) {
+                        max = current;
+                        right = i + 1;
+                    } else if (max - current > parameters.getXDrop())
+                        break;
+                }
+
+                // Extension to the left
+                int left = 0;
+                current = max;
+                for (int i = 1; qPos - i >= from && tPos - i >= 0; i++) {
+                    current += scoring.getScore(target.codeAt(tPos - i), query.codeAt(qPos - i));
+                    if (current > max) {
+                        max = current;
+                        left = i;
+                    } else if (max - current > parameters.getXDrop())
+                        break;
+                }
+
+                extended.put(diagonalKey, qPos + right);
+
+                if (max < parameters.getMinUngappedScore())
+                    continue;
+
+                int segmentIndex = bestSegment.get(id);
+                if (segmentIndex == -1) {
+                    bestSegment.put(id, segments.size());
+                    segments.add(qPos - left);
+                    segments.add(qPos + right);
+                    segments.add(tPos - left);
+                    segments.add(max);
+                } else if (segments.get(segmentIndex + 3) < max) {
+                    segments.set(segmentIndex, qPos - left);
+                    segments.set(segmentIndex + 1, qPos + right);
+                    segments.set(segmentIndex + 2, tPos - left);
+                    segments.set(segmentIndex + 3, max);
+                }
+            }
+        }
+
+        if (bestSegment.isEmpty())
+            return new AlignmentResultImpl<>();
+
+        // Gapped extension
+        final S queryPart = query.getRange(from, to);
+        final List<BlastHit<S, P>> hits = new ArrayList<>(bestSegment.size());
+        TIntIntIterator it = bestSegment.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            int id = it.key(), segmentIndex = it.value();
+            S target = references.get(id);
+
+            // Position in target corresponding to the beginning of query part on the segment diagonal
+            int diagonalStart = segments.get(segmentIndex + 2) - (segments.get(segmentIndex) - from);
+            Alignment<S> alignment = BatchAlignmentUtil.alignAroundDiagonal(scoring, target, queryPart, from,
+                    diagonalStart, parameters.getBandWidth());
+            if (alignment == null || alignment.getScore() < parameters.getAbsoluteMinScore())
+                continue;
+
+            hits.add(createHit(alignment, id, to - from));
+        }
+
+        if (hits.isEmpty())
+            return new AlignmentResultImpl<>();
+
+        Collections.sort(hits, SCORE_COMPARATOR);
+
+        float threshold = Math.max(parameters.getAbsoluteMinScore(),
+                parameters.getRelativeMinScore() * hits.get(0).getAlignment().getScore());
+        int i = 0;
+        for (; i < parameters.getMaxHits() && i < hits.size(); ++i)
+            if (hits.get(i).getAlignment().getScore() < threshold)
+                break;
+
+        return new AlignmentResultImpl<>(i == hits.size() ? hits : new ArrayList<>(hits.subList(0, i)));
+    }
+
+    private BlastHit<S, P> createHit(Alignment<S> alignment, int id, int queryLength) {
+        double score = alignment.getScore(), bitScore = Double.NaN, eValue = Double.NaN;
+        double lambda = parameters.getLambda(), k = parameters.getK();
+        if (!Double.isNaN(lambda) && !Double.isNaN(k)) {
+            bitScore = (lambda * score - Math.log(k)) / Math.log(2);
+            eValue = k * queryLength * totalReferenceLength * Math.exp(-lambda * score);
+        }
+        return new BlastHit<>(alignment, payloads.get(id), score, bitScore, eValue,
+                alignment.getSequence1Range(), BlastDBBuilder.getIdKey(id), null);
+    }
+
+    /**
+     * Calculates spaced seed key for the specified position or returns -1 if seed contains wildcards.
+     */
+    private long seedKey(S sequence, int position) {
+        final int basicSize = sequence.getAlphabet().basicSize();
+        long key = 0;
+        for (int offset : seedOffsets) {
+            byte code = sequence.codeAt(position + offset);
+            if (code >= basicSize)
+                return -1;
+            key = key * basicSize + code;
+        }
+        return key;
+    }
+
+    private SeedIndex ensureBuilt() {
+        SeedIndex index = this.index;
+        return index != null ? index : buildIndex();
+    }
+
+    private synchronized SeedIndex buildIndex() {
+        if (index != null)
+            return index;
+
+        // Counting postings for each seed
+        TLongIntHashMap slots = new TLongIntHashMap(16, 0.5f, Long.MIN_VALUE, -1);
+        IntArrayList counts = new IntArrayList();
+        for (S reference : references)
+            for (int i = 0; i + seedSpan <= reference.size(); i++) {
+                long key = seedKey(reference, i);
+                if (key == -1)
+                    continue;
+                int slot = slots.get(key);
+                if (slot == -1) {
+                    slots.put(key, counts.size());
+                    counts.add(1);
+                } else
+                    counts.set(slot, counts.get(slot) + 1);
+            }
+
+        // Prefix sums
+        int[] slotStart = new int[counts.size() + 1];
+        for (int i = 0; i < counts.size(); i++)
+            slotStart[i + 1] = slotStart[i] + 2 * counts.get(i);
+
+        // Filling postings
+        int[] postings = new int[slotStart[counts.size()]];
+        int[] pointers = slotStart.clone();
+        for (int id = 0; id < references.size(); id++) {
+            S reference = references.get(id);
+            for (int i = 0; i + seedSpan <= reference.size(); i++) {
+                long key = seedKey(reference, i);
+                if (key == -1)
+                    continue;
+                int slot = slots.get(key);
+                postings[pointers[slot]++] = id;
+                postings[pointers[slot]++] = i;
+            }
+        }
+
+        return index = new SeedIndex(slots, slotStart, postings);
+    }
+
+    private static final class SeedIndex {
+        /**
+         * Seed key -> slot
+         */
+        final TLongIntHashMap slots;
+        /**
+         * Start of postings for each slot in postings array
+         */
+        final int[] slotStart;
+        /**
+         * (reference id, position) pairs
+         */
+        final int[] postings;
+
+        SeedIndex(TLongIntHashMap slots, int[] slotStart, int[] postings) {
+            this.slots = slots;
+            this.slotStart = slotStart;
+            this.postings = postings;
+        }
+    }
+
+    private static final Comparator<BlastHit<?, ?>> SCORE_COMPARATOR = new Comparator<BlastHit<?, ?>>() {
+        @Override
+        public int compare(BlastHit<?, ?> o1, BlastHit<?, ?> o2) {
+            return Float.compare(o2.getAlignment().getScore(), o1.getAlignment().getScore());
+        }
+    };
+}
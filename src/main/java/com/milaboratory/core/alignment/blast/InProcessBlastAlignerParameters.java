@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+
+/**
+ * Parameters of {@link InProcessBlastAligner}.
+ *
+ * @param <S> type of sequence
+ */
+public class InProcessBlastAlignerParameters<S extends Sequence<S>> implements Cloneable {
+    /**
+     * Scoring used for ungapped and gapped extension
+     */
+    private AffineGapAlignmentScoring<S> scoring;
+    /**
+     * Spaced seed pattern: '1' - position must match, '0' - any letter allowed (e.g. "1101011")
+     */
+    private String seedPattern;
+    /**
+     * Ungapped extension is stopped when score drops by this value below the maximal score
+     */
+    private int xDrop;
+    /**
+     * Minimal score of ungapped segment to trigger gapped extension
+     */
+    private int minUngappedScore;
+    /**
+     * Number of target positions the gapped extension window is widened by on each side of the ungapped segment's
+     * diagonal (alignment inside the window is not banded)
+     */
+    private int bandWidth;
+    /**
+     * Minimal score of final alignment
+     */
+    private int absoluteMinScore;
+    /**
+     * Minimal score of final alignment relative to the top hit score
+     */
+    private float relativeMinScore;
+    /**
+     * Maximal number of hits to report
+     */
+    private int maxHits;
+    /**
+     * Karlin-Altschul parameters of the scoring system, used to calculate bit scores and e-values (NaN if unknown)
+     */
+    private double lambda = Double.NaN, k = Double.NaN;
+
+    public InProcessBlastAlignerParameters(AffineGapAlignmentScoring<S> scoring, String seedPattern,
+                                           int xDrop, int minUngappedScore, int bandWidth,
+                                           int absoluteMinScore, float relativeMinScore, int maxHits) {
+        this.scoring = scoring;
+        setSeedPattern(seedPattern);
+        this.xDrop = xDrop;
+        this.minUngappedScore = minUngappedScore;
+        this.bandWidth = bandWidth;
+        this.absoluteMinScore = absoluteMinScore;
+        this.relativeMinScore = relativeMinScore;
+        this.maxHits = maxHits;
+    }
+
+    /**
+     * Returns default parameters for nucleotide references (blastn-like sensitivity, weight 11 spaced seed).
+     */
+    public static InProcessBlastAlignerParameters<NucleotideSequence> getNucleotideDefaults() {
+        return new InProcessBlastAlignerParameters<>(AffineGapAlignmentScoring.getNucleotideBLASTScoring(),
+                "111010010100110111", 20, 50, 10, 100, 0.0f, 500);
+    }
+
+    /**
+     * Returns default parameters for amino acid references (blastp-like sensitivity, weight 3 spaced seed).
+     *
+     * @param matrix substitution matrix
+     */
+    public static InProcessBlastAlignerParameters<AminoAcidSequence> getAminoAcidDefaults(BLASTMatrix matrix) {
+        return new InProcessBlastAlignerParameters<>(AffineGapAlignmentScoring.getAminoAcidBLASTScoring(matrix),
+                "1101", 16, 25, 10, 30, 0.0f, 500);
+    }
+
+    public AffineGapAlignmentScoring<S> getScoring() {
+        return scoring;
+    }
+
+    public InProcessBlastAlignerParameters<S> setScoring(AffineGapAlignmentScoring<S> scoring) {
+        this.scoring = scoring;
+        return this;
+    }
+
+    public String getSeedPattern() {
+        return seedPattern;
+    }
+
+    public InProcessBlastAlignerParameters<S> setSeedPattern(String seedPattern) {
+        if (!seedPattern.matches("1[01]*1|1"))
+            throw new IllegalArgumentException("Seed pattern must consist of '0' and '1' and start and end with '1': "
+                    + seedPattern);
+        this.seedPattern = seedPattern;
+        return this;
+    }
+
+    public int getXDrop() {
+        return xDrop;
+    }
+
+    public InProcessBlastAlignerParameters<S> setXDrop(int xDrop) {
+        this.xDrop = xDrop;
+        return this;
+    }
+
+    public int getMinUngappedScore() {
+        return minUngappedScore;
+    }
+
+    public InProcessBlastAlignerParameters<S> setMinUngappedScore(int minUngappedScore) {
+        this.minUngappedScore = minUngappedScore;
+        return this;
+    }
+
+    /**
+     * Returns number of target positions the gapped extension window is widened by on each side of the diagonal
+     */
+    public int getBandWidth() {
+        return bandWidth;
+    }
+
+    /**
+     * Sets number of target positions the gapped extension window is widened by on each side of the diagonal (larger
+     * values allow longer indels, at the cost of proportionally larger dynamic programming matrices)
+     */
+    public InProcessBlastAlignerParameters<S> setBandWidth(int bandWidth) {
+        this.bandWidth = bandWidth;
+        return this;
+    }
+
+    public int getAbsoluteMinScore() {
+        return absoluteMinScore;
+    }
+
+    public InProcessBlastAlignerParameters<S> setAbsoluteMinScore(int absoluteMinScore) {
+        this.absoluteMinScore = absoluteMinScore;
+        return this;
+    }
+
+    public float getRelativeMinScore() {
+        return relativeMinScore;
+    }
+
+    public InProcessBlastAlignerParameters<S> setRelativeMinScore(float relativeMinScore) {
+        this.relativeMinScore = relativeMinScore;
+        return this;
+    }
+
+    public int getMaxHits() {
+        return maxHits;
+    }
+
+    public InProcessBlastAlignerParameters<S> setMaxHits(int maxHits) {
+        this.maxHits = maxHits;
+        return this;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getK() {
+        return k;
+    }
+
+    /**
+     * Sets Karlin-Altschul parameters of the scoring system, used to calculate bit scores and e-values.
+     *
+     * @param lambda lambda
+     * @param k      K
+     * @return parameters object
+     */
+    public InProcessBlastAlignerParameters<S> setKarlinAltschulParameters(double lambda, double k) {
+        this.lambda = lambda;
+        this.k = k;
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public InProcessBlastAlignerParameters<S> clone() {
+        try {
+            return (InProcessBlastAlignerParameters<S>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
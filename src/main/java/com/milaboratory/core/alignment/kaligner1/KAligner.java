@@ -15,14 +15,13 @@
  */
 package com.milaboratory.core.alignment.kaligner1;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.Processor;
-import cc.redberry.pipe.blocks.ParallelProcessor;
 import cc.redberry.primitives.Filter;
 import com.milaboratory.core.alignment.batch.*;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.OrderedParallelProcessor;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -69,6 +68,10 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
      * Number fo threads to use in piped processing.
      */
     volatile int threads = 1;
+    /**
+     * Settings of batched parallel processing (if not null, used in piped processing instead of threads)
+     */
+    transient volatile OrderedParallelProcessor.Settings batchedProcessing;
 
     /**
      * <p>Creates new KAligner.</p>
@@ -107,13 +110,15 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
                      KAlignerParameters parameters,
                      List<NucleotideSequence> sequences,
                      TIntObjectHashMap<P> payloads,
-                     boolean lazyResults, int threads) {
+                     boolean lazyResults, int threads,
+                     OrderedParallelProcessor.Settings batchedProcessing) {
         this.mapper = mapper;
         this.parameters = parameters;
         this.sequences = sequences;
         this.payloads = payloads;
         this.lazyResults = lazyResults;
         this.threads = threads;
+        this.batchedProcessing = batchedProcessing;
     }
 
     /**
@@ -127,6 +132,17 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         this.threads = threads;
     }
 
+    /**
+     * Sets up batched order-preserving parallel processing for piped alignment (overrides thread count set by {@link
+     * #setThreadCount(int)}), see {@link
+     * OrderedParallelProcessor.Settings#wrap(OrderedParallelProcessor.Settings, OutputPort, Processor, int)}.
+     *
+     * @param settings batched processing settings, {@code null} to use thread count
+     */
+    public void setBatchedProcessing(OrderedParallelProcessor.Settings settings) {
+        this.batchedProcessing = settings;
+    }
+
     /**
      * Adds new reference sequence to the base of this aligner and returns index assigned to it.
      *
@@ -137,6 +153,34 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         return addReference(sequence, 0, sequence.size());
     }
 
+    /**
+     * Adds several reference sequences to the base using parallel index construction, see {@link
+     * KMapper#addReferences(List, int)}, and returns index assigned to the first of them.
+     *
+     * @param sequences sequences
+     * @param threads   number of threads, 0 for the number of available processors
+     * @return index assigned to the first sequence
+     */
+    public int addReferences(List<NucleotideSequence> sequences, int threads) {
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.containWildcards())
+                throw new IllegalArgumentException("Reference sequences with wildcards not supported.");
+        int id = mapper.addReferences(sequences, threads);
+        assert this.sequences.size() == id;
+        this.sequences.addAll(sequences);
+        return id;
+    }
+
+    /**
+     * Enables caching of filtered sub-indices of the mapper base for recurring filters, see {@link
+     * KMapper#setFilteredIndexCacheSize(int)}.
+     *
+     * @param size maximal number of cached sub-indices, 0 to disable caching
+     */
+    public void setFilteredIndexCacheSize(int size) {
+        mapper.setFilteredIndexCacheSize(size);
+    }
+
     @Override
     public BitArray createFilter(Filter<P> filter) {
         BitArray ret = new BitArray(sequences.size());
@@ -186,7 +230,7 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
             return this;
         KAlignerParameters parameters = this.parameters.clone();
         parameters.setFloatingLeftBound(floatingLeftBound);
-        return new KAligner<>(mapper.setFloatingLeftBound(floatingLeftBound), parameters, sequences, payloads, lazyResults, threads);
+        return new KAligner<>(mapper.setFloatingLeftBound(floatingLeftBound), parameters, sequences, payloads, lazyResults, threads, batchedProcessing);
     }
 
     @Override
@@ -196,7 +240,7 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
             return this;
         KAlignerParameters parameters = this.parameters.clone();
         parameters.setFloatingRightBound(floatingRightBound);
-        return new KAligner<>(mapper.setFloatingRightBound(floatingRightBound), parameters, sequences, payloads, lazyResults, threads);
+        return new KAligner<>(mapper.setFloatingRightBound(floatingRightBound), parameters, sequences, payloads, lazyResults, threads, batchedProcessing);
     }
 
     /**
@@ -318,7 +362,7 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         };
 
 
-        return wrapPipe(proc, input);
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
     }
 
     @Override
@@ -335,7 +379,7 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
             }
         };
 
-        return wrapPipe(proc, input);
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
     }
 
     @Override
@@ -343,13 +387,4 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         int id = addReference(sequence);
         payloads.put(id, payload);
     }
-
-    private <Q> OutputPort<KAlignmentResultP<P, Q>> wrapPipe(Processor<Q, KAlignmentResultP<P, Q>> proc, OutputPort<Q> input) {
-        if (threads == 1)
-            return CUtils.wrap(input, proc);
-
-        int t = (threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
-
-        return new ParallelProcessor<>(input, proc, t);
-    }
 }
@@ -17,13 +17,22 @@ package com.milaboratory.core.alignment.kaligner1;
 
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.CompressedBitArray;
 import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.ParallelUtils;
 import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.Well19937c;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static java.lang.Math.*;
 import static java.util.Arrays.copyOf;
@@ -121,6 +130,12 @@ public final class KMapper implements java.io.Serializable {
      */
     private BitArray allFilter;
 
+    /**
+     * Filtered sub-indices of the base, keyed by compressed copies of filters, see {@link
+     * #setFilteredIndexCacheSize(int)}
+     */
+    private transient volatile Map<CompressedBitArray, FutureTask<int[][]>> filteredBases;
+
     /**
      * Creates new KMer mapper.
      *
@@ -225,16 +240,22 @@ public final class KMapper implements java.io.Serializable {
 
     KMapper setFloatingLeftBound(boolean floatingLeftBound) {
         ensureBuilt();
-        return new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
+        KMapper mapper = new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
                 mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels, floatingLeftBound, floatingRightBound,
                 minDistance, maxDistance, built, refFrom, refLength, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
+        // Filtered sub-indices depend only on the base, which is shared
+        mapper.filteredBases = filteredBases;
+        return mapper;
     }
 
     KMapper setFloatingRightBound(boolean floatingRightBound) {
         ensureBuilt();
-        return new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
+        KMapper mapper = new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
                 mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels, floatingLeftBound, floatingRightBound,
                 minDistance, maxDistance, built, refFrom, refLength, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
+        // Filtered sub-indices depend only on the base, which is shared
+        mapper.filteredBases = filteredBases;
+        return mapper;
     }
 
     /**
@@ -340,6 +361,100 @@ public final class KMapper implements java.io.Serializable {
         maxReferenceLength = max(maxReferenceLength, sequence.size());
         minReferenceLength = Math.min(minReferenceLength, sequence.size());
 
+        forEachKmer(sequence, offset, length, (kmer, position) -> addKmer(kmer, id, position));
+
+        return id;
+    }
+
+    /**
+     * Adds several reference sequences to the base of this mapper and returns index assigned to the first of them
+     * (subsequent sequences get consecutive indices). Resulting base is the same as after adding sequences one by one
+     * with {@link #addReference(NucleotideSequence)}, but postings are counted and filled in two parallel passes over
+     * the sequences (count, then scatter into arrays of exact size), so large bases are built much faster.
+     *
+     * @param sequences sequences
+     * @param threads   number of threads, 0 for the number of available processors
+     * @return index assigned to the first sequence
+     */
+    public int addReferences(List<NucleotideSequence> sequences, int threads) {
+        for (NucleotideSequence sequence : sequences)
+            if (((sequence.size() - kValue) & offsetMask) != sequence.size() - kValue)
+                throw new IllegalArgumentException("Record is too long.");
+
+        //Resetting built flag
+        built = false;
+
+        //Next ids
+        final int firstId = sequencesInBase;
+        sequencesInBase += sequences.size();
+        if (refLength.length < sequencesInBase) {
+            refLength = copyOf(refLength, sequencesInBase);
+            refFrom = copyOf(refFrom, sequencesInBase);
+        }
+
+        //Calculating min and max reference sequences lengths
+        for (int i = 0; i < sequences.size(); ++i) {
+            NucleotideSequence sequence = sequences.get(i);
+            refLength[firstId + i] = sequence.size();
+            maxReferenceLength = max(maxReferenceLength, sequence.size());
+            minReferenceLength = Math.min(minReferenceLength, sequence.size());
+        }
+
+        final AtomicIntegerArray counters = new AtomicIntegerArray(base.length);
+        final int[] starts = new int[base.length];
+        ForkJoinPool pool = ParallelUtils.createPool(threads);
+        try {
+            // Pass 1: counting records for each kMer
+            ParallelUtils.forEach(pool, 0, sequences.size(), i -> {
+                NucleotideSequence sequence = sequences.get(i);
+                forEachKmer(sequence, 0, sequence.size(), (kmer, position) -> counters.incrementAndGet(kmer));
+            });
+
+            // Allocating arrays of exact size, counters are converted to positions of first new record
+            ParallelUtils.forEach(pool, 0, base.length, kmer -> {
+                int count = counters.get(kmer);
+                starts[kmer] = lengths[kmer];
+                if (count == 0)
+                    return;
+                base[kmer] = copyOf(base[kmer], lengths[kmer] + count);
+                counters.set(kmer, lengths[kmer]);
+                lengths[kmer] += count;
+            });
+
+            // Pass 2: scattering records
+            ParallelUtils.forEach(pool, 0, sequences.size(), i -> {
+                NucleotideSequence sequence = sequences.get(i);
+                int id = firstId + i;
+                forEachKmer(sequence, 0, sequence.size(), (kmer, position) ->
+                        base[kmer][counters.getAndIncrement(kmer)] = (id << bitsForOffset) | position);
+            });
+
+            // Restoring order of sequential insertion (ascending ids and offsets, i.e. records compared as unsigned
+            // values) in the scattered part of each array
+            ParallelUtils.forEach(pool, 0, base.length, kmer -> {
+                int from = starts[kmer], to = lengths[kmer];
+                if (to - from < 2)
+                    return;
+                int[] records = base[kmer];
+                for (int i = from; i < to; ++i)
+                    records[i] ^= Integer.MIN_VALUE;
+                Arrays.sort(records, from, to);
+                for (int i = from; i < to; ++i)
+                    records[i] ^= Integer.MIN_VALUE;
+            });
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        return firstId;
+    }
+
+    /**
+     * Invokes consumer for all non-homopolymeric kMers (first kMer is always included) of the specified part of the
+     * sequence.
+     */
+    private void forEachKmer(NucleotideSequence sequence, int offset, int length, KmerConsumer consumer) {
         int kmer = 0;
         int kmerMask = 0xFFFFFFFF >>> (32 - kValue * 2);
         int tMask = 0xFFFFFFFF >>> (34 - kValue * 2);
@@ -347,7 +462,7 @@ public final class KMapper implements java.io.Serializable {
         int to = length - kValue;
         for (int j = 0; j < kValue; ++j)
             kmer = kmer << 2 | sequence.codeAt(j + offset);
-        addKmer(kmer, id, offset);
+        consumer.accept(kmer, offset);
 
         for (int i = 1; i <= to; ++i) {
             //Next kMer
@@ -358,10 +473,12 @@ public final class KMapper implements java.io.Serializable {
                     ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
                 continue;
 
-            addKmer(kmer, id, i + offset);
+            consumer.accept(kmer, i + offset);
         }
+    }
 
-        return id;
+    private interface KmerConsumer {
+        void accept(int kmer, int position);
     }
 
     /**
@@ -369,11 +486,26 @@ public final class KMapper implements java.io.Serializable {
      * {@link #align(com.milaboratory.core.sequence.NucleotideSequence, int, int)} method.
      */
     void ensureBuilt() {
+        build(1);
+    }
+
+    /**
+     * Builds additional data fields used by this mapper (compacts records of individual kMers) using specified number
+     * of threads.
+     *
+     * @param threads number of threads, 0 for the number of available processors
+     */
+    public void build(int threads) {
         if (!built)
             synchronized (this) {
                 if (!built) {
-                    for (int i = 0; i < base.length; ++i)
-                        base[i] = copyOf(base[i], lengths[i]);
+                    ForkJoinPool pool = ParallelUtils.createPool(threads);
+                    try {
+                        ParallelUtils.forEach(pool, 0, base.length, i -> base[i] = copyOf(base[i], lengths[i]));
+                    } finally {
+                        if (pool != null)
+                            pool.shutdown();
+                    }
                     refLength = copyOf(refLength, sequencesInBase);
                     refFrom = copyOf(refFrom, sequencesInBase);
                     allFilter = new BitArray(sequencesInBase);
@@ -383,6 +515,87 @@ public final class KMapper implements java.io.Serializable {
             }
     }
 
+    /**
+     * Returns records of the base (used in tests).
+     */
+    int[][] getBase() {
+        ensureBuilt();
+        return base;
+    }
+
+    /**
+     * Enables caching of filtered sub-indices of the base for up to {@code size} most recently used filters (disabled by
+     * default). Sub-indices contain only records of the targets passing the filter (posting lists not affected by the
+     * filter are shared with the main index), so alignments with recurring filters selecting a small subset of the
+     * base only touch relevant records. Filters are compared by content (compressed copies of filters, see {@link
+     * CompressedBitArray}, are kept as keys).
+     *
+     * @param size maximal number of cached sub-indices, 0 to disable caching
+     */
+    public void setFilteredIndexCacheSize(final int size) {
+        if (size < 0)
+            throw new IllegalArgumentException();
+        filteredBases = size == 0
+                ? null
+                : new LinkedHashMap<CompressedBitArray, FutureTask<int[][]>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CompressedBitArray, FutureTask<int[][]>> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns cached (or creates) sub-index for the filter, or null if caching is disabled. Sub-index for each filter
+     * is built only once, concurrent callers with the same filter wait for it.
+     */
+    int[][] getFilteredBase(BitArray filter) {
+        Map<CompressedBitArray, FutureTask<int[][]>> cache = filteredBases;
+        if (cache == null)
+            return null;
+        FutureTask<int[][]> task;
+        boolean build = false;
+        // Compressed snapshot of the filter is used as a key, so sparse filters take little space in the cache
+        CompressedBitArray key = CompressedBitArray.compress(filter);
+        synchronized (cache) {
+            task = cache.get(key);
+            if (task == null) {
+                cache.put(key, task = new FutureTask<>(() -> buildFilteredBase(filter)));
+                build = true;
+            }
+        }
+        // Sub-index is built in this thread, before the filter may be modified by the caller
+        if (build)
+            task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                cache.remove(key, task);
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private int[][] buildFilteredBase(BitArray filter) {
+        int[] zero = new int[0];
+        int[][] filtered = new int[base.length][];
+        IntArrayList buffer = new IntArrayList();
+        for (int kmer = 0; kmer < base.length; ++kmer) {
+            buffer.clear();
+            for (int record : base[kmer])
+                if (filter.get(record >>> bitsForOffset))
+                    buffer.add(record);
+            filtered[kmer] = buffer.size() == base[kmer].length
+                    ? base[kmer]
+                    : buffer.isEmpty() ? zero : buffer.toArray();
+        }
+        return filtered;
+    }
+
     /**
      * Calculates maximal estimate of score for the hit.
      */
@@ -468,6 +681,11 @@ public final class KMapper implements java.io.Serializable {
 
         int[] seeds = new int[seedPositions.size()];
 
+        // Records of the cached filtered sub-index don't need to be checked against the filter
+        final int[][] filteredBase = filter == allFilter ? null : getFilteredBase(filter);
+        final int[][] base = filteredBase == null ? this.base : filteredBase;
+        final boolean filtered = filter != allFilter && filteredBase == null;
+
         int kmer;
         IntArrayList[] candidates = new IntArrayList[sequencesInBase];
 
@@ -486,7 +704,7 @@ public final class KMapper implements java.io.Serializable {
                 id = record >>> bitsForOffset;
 
                 // Apply filter
-                if (!filter.get(id))
+                if (filtered && !filter.get(id))
                     continue;
 
                 offset = record & offsetMask;
@@ -504,7 +722,8 @@ public final class KMapper implements java.io.Serializable {
         int cFrom, cTo, siFrom, siTo;
         int j, i;
         double preScore;
-        for (i = candidates.length - 1; i >= 0; --i) {
+        // Only candidates passing the filter may contain records
+        for (i = filter.previousSetBit(candidates.length - 1); i >= 0; i = filter.previousSetBit(i - 1)) {
             if (candidates[i] != null && candidates[i].size() >= ((minAlignmentLength - kValue + 1) / maxDistance)) {
 
                 //Sorting (important)
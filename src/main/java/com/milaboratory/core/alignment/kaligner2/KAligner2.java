@@ -1,18 +1,21 @@
 package com.milaboratory.core.alignment.kaligner2;
 
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
 import cc.redberry.primitives.Filter;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
 import com.milaboratory.core.alignment.Alignment;
 import com.milaboratory.core.alignment.BandedAffineAligner;
 import com.milaboratory.core.alignment.BandedSemiLocalResult;
-import com.milaboratory.core.alignment.batch.BatchAlignerWithBaseWithFilter;
+import com.milaboratory.core.alignment.batch.*;
 import com.milaboratory.core.alignment.kaligner2.KMapper2.ArrList;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.BitArray;
 import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.OrderedParallelProcessor;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -25,7 +28,8 @@ import java.util.List;
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  */
-public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSequence, P, KAlignmentHit2<P>> {
+public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSequence, P, KAlignmentHit2<P>>,
+        PipedBatchAlignerWithBase<NucleotideSequence, P, KAlignmentHit2<P>> {
     /**
      * Link to KMapper
      */
@@ -46,6 +50,18 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
      * Statistics aggregator
      */
     private final KAligner2Statistics stat;
+    /**
+     * Per-thread alignment contexts (shared between copies of this aligner created by setFloating*Bound methods)
+     */
+    private final ThreadLocal<AlignmentContext> contexts;
+    /**
+     * Number fo threads to use in piped processing.
+     */
+    volatile int threads = 1;
+    /**
+     * Settings of batched parallel processing (if not null, used in piped processing instead of threads)
+     */
+    volatile OrderedParallelProcessor.Settings batchedProcessing;
 
     public KAligner2(KAlignerParameters2 parameters) {
         this(parameters, null);
@@ -57,18 +73,58 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         this.stat = stat;
         this.sequences = new ArrayList<>();
         this.payloads = new TIntObjectHashMap<>();
+        this.contexts = createContexts(stat);
     }
 
     private KAligner2(KMapper2 mapper,
                       KAlignerParameters2 parameters,
                       List<NucleotideSequence> sequences,
                       TIntObjectHashMap<P> payloads,
-                      KAligner2Statistics stat) {
+                      KAligner2Statistics stat,
+                      ThreadLocal<AlignmentContext> contexts,
+                      int threads,
+                      OrderedParallelProcessor.Settings batchedProcessing) {
         this.mapper = mapper;
         this.parameters = parameters;
         this.sequences = sequences;
         this.payloads = payloads;
         this.stat = stat;
+        this.contexts = contexts;
+        this.threads = threads;
+        this.batchedProcessing = batchedProcessing;
+    }
+
+    private static ThreadLocal<AlignmentContext> createContexts(final KAligner2Statistics stat) {
+        return new ThreadLocal<AlignmentContext>() {
+            @Override
+            protected AlignmentContext initialValue() {
+                if (stat != null)
+                    stat.alignmentContextCreated();
+                return new AlignmentContext();
+            }
+        };
+    }
+
+    /**
+     * Sets number of threads to be used in piped processing.<br><br>
+     *
+     * 0    -> Runtime.getRuntime().availableProcessors()<br>
+     * 1    -> process in the same thread as take() method call<br>
+     * 2... -> parallel processor<br>
+     */
+    public void setThreadCount(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets up batched order-preserving parallel processing for piped alignment (overrides thread count set by {@link
+     * #setThreadCount(int)}), see {@link
+     * OrderedParallelProcessor.Settings#wrap(OrderedParallelProcessor.Settings, OutputPort, Processor, int)}.
+     *
+     * @param settings batched processing settings, {@code null} to use thread count
+     */
+    public void setBatchedProcessing(OrderedParallelProcessor.Settings settings) {
+        this.batchedProcessing = settings;
     }
 
     @Override
@@ -78,7 +134,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
             return this;
         KAlignerParameters2 parameters = this.parameters.clone();
         parameters.setFloatingLeftBound(floatingLeftBound);
-        return new KAligner2<>(mapper.setFloatingLeftBound(floatingLeftBound), parameters, sequences, payloads, stat);
+        return new KAligner2<>(mapper.setFloatingLeftBound(floatingLeftBound), parameters, sequences, payloads, stat, contexts, threads, batchedProcessing);
     }
 
     @Override
@@ -88,7 +144,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
             return this;
         KAlignerParameters2 parameters = this.parameters.clone();
         parameters.setFloatingRightBound(floatingRightBound);
-        return new KAligner2<>(mapper.setFloatingRightBound(floatingRightBound), parameters, sequences, payloads, stat);
+        return new KAligner2<>(mapper.setFloatingRightBound(floatingRightBound), parameters, sequences, payloads, stat, contexts, threads, batchedProcessing);
     }
 
     /**
@@ -106,6 +162,34 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         return id;
     }
 
+    /**
+     * Adds several reference sequences to the base using parallel index construction, see {@link
+     * KMapper2#addReferences(List, int)}, and returns index assigned to the first of them.
+     *
+     * @param sequences sequences
+     * @param threads   number of threads, 0 for the number of available processors
+     * @return index assigned to the first sequence
+     */
+    public int addReferences(List<NucleotideSequence> sequences, int threads) {
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.containWildcards())
+                throw new IllegalArgumentException("Reference sequences with wildcards not supported.");
+        int id = mapper.addReferences(sequences, threads);
+        assert this.sequences.size() == id;
+        this.sequences.addAll(sequences);
+        return id;
+    }
+
+    /**
+     * Enables caching of filtered sub-indices of the mapper base for recurring filters, see {@link
+     * KMapper2#setFilteredIndexCacheSize(int)}.
+     *
+     * @param size maximal number of cached sub-indices, 0 to disable caching
+     */
+    public void setFilteredIndexCacheSize(int size) {
+        mapper.setFilteredIndexCacheSize(size);
+    }
+
     @Override
     public BitArray createFilter(Filter<P> filter) {
         BitArray ret = new BitArray(sequences.size());
@@ -145,10 +229,28 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
 
     @Override
     public KAlignmentResult2<P> align(final NucleotideSequence query, final int from, final int to, BitArray filter) {
+        return align(query, from, to, filter, contexts.get());
+    }
+
+    /**
+     * Aligns query using buffers from the provided context. Context must not be used by several threads
+     * simultaneously.
+     *
+     * @param query   query sequence
+     * @param from    query from (inclusive)
+     * @param to      query to (exclusive)
+     * @param filter  filter of references (may be null)
+     * @param context alignment context to take matrices and mutation buffers from
+     * @return alignment result
+     */
+    public KAlignmentResult2<P> align(final NucleotideSequence query, final int from, final int to, BitArray filter,
+                                      final AlignmentContext context) {
         if (stat != null)
             stat.nextQuery();
 
-        final BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        final BandedAffineAligner.MatrixCache cache = context.cache;
+        final MutationsBuilder<NucleotideSequence> mutations = context.mutations;
+        final long allocationsBefore = cache.getAllocations();
 
         final AffineGapAlignmentScoring<NucleotideSequence> scoring = parameters.getScoring();
 
@@ -169,8 +271,10 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
 
         KAlignmentResult2<P> kAlignmentResult = new KAlignmentResult2<>(mapping, hits, query, from, to);
         if (mapping.getHits().isEmpty()) {
-            if (stat != null)
+            if (stat != null) {
+                stat.matrixAllocations(cache.getAllocations() - allocationsBefore);
                 stat.kAlignerResult(kAlignmentResult);
+            }
 
             return kAlignmentResult;
         }
@@ -181,8 +285,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         for (int hitIndex = 0; hitIndex < mapping.getHits().size(); hitIndex++) {
             final KMappingHit2 mappingHit = mapping.getHits().get(hitIndex);
             final NucleotideSequence target = sequences.get(mappingHit.id);
-            final MutationsBuilder<NucleotideSequence> mutations =
-                    new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            mutations.clear();
 
             //Left edge alignment
             int seedPosition2 = seeds.get(mappingHit.indexById(0)) + leftBoundaryOffset;
@@ -299,7 +402,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
             seq1To = br.sequence1Stop + 1;
             seq2To = br.sequence2Stop + 1;
 
-            Mutations<NucleotideSequence> muts = mutations.createAndDestroy();
+            Mutations<NucleotideSequence> muts = mutations.createAndClear();
             hits.add(new KAlignmentHit2<>(kAlignmentResult, mappingHit.id,
                     new Alignment<>(target, muts,
                             new Range(seq1From, seq1To),
@@ -318,12 +421,63 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         if (i < hits.size())
             hits.removeRange(i, hits.size());
 
-        if (stat != null)
+        if (stat != null) {
+            stat.matrixAllocations(cache.getAllocations() - allocationsBefore);
             stat.kAlignerResult(kAlignmentResult);
+        }
 
         return kAlignmentResult;
     }
 
+    @Override
+    public <Q> OutputPort<PipedAlignmentResult<KAlignmentHit2<P>, Q>> align(OutputPort<Q> input,
+                                                                             final SequenceExtractor<Q, NucleotideSequence> extractor) {
+        Processor<Q, PipedAlignmentResult<KAlignmentHit2<P>, Q>> proc = new Processor<Q, PipedAlignmentResult<KAlignmentHit2<P>, Q>>() {
+            @Override
+            public PipedAlignmentResult<KAlignmentHit2<P>, Q> process(Q input) {
+                NucleotideSequence seq = extractor.extract(input);
+                return new PipedAlignmentResultImpl<>(align(seq).getHits(), input);
+            }
+        };
+
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
+    }
+
+    @Override
+    public <Q extends HasSequence<NucleotideSequence>> OutputPort<PipedAlignmentResult<KAlignmentHit2<P>, Q>> align(OutputPort<Q> input) {
+        Processor<Q, PipedAlignmentResult<KAlignmentHit2<P>, Q>> proc = new Processor<Q, PipedAlignmentResult<KAlignmentHit2<P>, Q>>() {
+            @Override
+            public PipedAlignmentResult<KAlignmentHit2<P>, Q> process(Q input) {
+                return new PipedAlignmentResultImpl<>(align(input.getSequence()).getHits(), input);
+            }
+        };
+
+        return OrderedParallelProcessor.Settings.wrap(batchedProcessing, input, proc, threads);
+    }
+
+    /**
+     * Creates new alignment context, that can be used to align queries from a single worker thread without
+     * allocation of alignment matrices and mutation buffers for each query.
+     *
+     * @return new alignment context
+     */
+    public AlignmentContext createContext() {
+        if (stat != null)
+            stat.alignmentContextCreated();
+        return new AlignmentContext();
+    }
+
+    /**
+     * Reusable buffers used in alignment of a single query. Not thread-safe.
+     */
+    public static final class AlignmentContext {
+        final BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        final MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+
+        AlignmentContext() {
+        }
+    }
+
     private static final Comparator<KAlignmentHit2> SCORE_COMPARATOR = new Comparator<KAlignmentHit2>() {
         @Override
         public int compare(KAlignmentHit2 o1, KAlignmentHit2 o2) {
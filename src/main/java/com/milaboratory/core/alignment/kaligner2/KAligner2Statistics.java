@@ -22,6 +22,7 @@ import com.milaboratory.util.AtomicEnumHistogram;
 import com.milaboratory.util.AtomicHistogram;
 import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.MetricsRegistry;
 
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -56,6 +57,9 @@ public final class KAligner2Statistics {
             numberOfAlignmentsHits = new AtomicHistogram(0, 20);
     public final AtomicHistogram filteredHitsByAlignments = new AtomicHistogram(0, 50);
 
+    // Allocations
+    public final AtomicLong alignmentContexts = new AtomicLong(), matrixAllocations = new AtomicLong();
+
     // Timing
     public final AtomicHistogram seedExtractionTime = new AtomicHistogram(0, 10000, 400),
             hitCalculationTime = new AtomicHistogram(0, 10000, 400),
@@ -157,6 +161,37 @@ public final class KAligner2Statistics {
             topUntangledClusters.add(clusters);
     }
 
+    public void alignmentContextCreated() {
+        alignmentContexts.incrementAndGet();
+    }
+
+    public void matrixAllocations(long count) {
+        if (count != 0)
+            matrixAllocations.addAndGet(count);
+    }
+
+    /**
+     * Sets gauges of the registry to the current values of the counters of this object (should be called again to
+     * refresh published values).
+     *
+     * @param registry metrics registry
+     * @param prefix   prefix of metric names (e.g. "kaligner2_")
+     */
+    public void publishTo(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + "input_queries").set(inputQueries.get());
+        registry.gauge(prefix + "reruns").set(rerun.get());
+        registry.gauge(prefix + "change_of_top1").set(changeOfTop1.get());
+        registry.gauge(prefix + "change_of_top2").set(changeOfTop2.get());
+        registry.gauge(prefix + "alignment_contexts").set(alignmentContexts.get());
+        registry.gauge(prefix + "matrix_allocations").set(matrixAllocations.get());
+        // Mean timings in microseconds
+        registry.gauge(prefix + "seed_extraction_mean_us").set(seedExtractionTime.mean());
+        registry.gauge(prefix + "hit_calculation_mean_us").set(hitCalculationTime.mean());
+        registry.gauge(prefix + "mapper_mean_us").set(mapperTotalTime.mean());
+        registry.gauge(prefix + "aligner_mean_us").set(alignerTime.mean());
+        registry.gauge(prefix + "total_mean_us").set(totalTime.mean());
+    }
+
     public void reRunBecauseOfMicroTangling() {
         rerun.incrementAndGet();
     }
@@ -99,6 +99,12 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
      */
     private int mapperMinSeedsDistance, mapperMaxSeedsDistance;
 
+    /**
+     * If true, seed positions and holes masks in query are determined by its length only (static seed schedule), so
+     * mapping results are reproducible between runs and do not depend on thread schedule
+     */
+    private boolean mapperDeterministic;
+
     /* MAPPER PARAMETERS END */
 
     /* ALIGNER PARAMETERS BEGIN */
@@ -358,6 +364,26 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         return this;
     }
 
+    /**
+     * Returns true if seed positions and holes masks are determined by query length only (deterministic mapping)
+     *
+     * @return true if mapping is deterministic
+     */
+    public boolean isMapperDeterministic() {
+        return mapperDeterministic;
+    }
+
+    /**
+     * Sets whether seed positions and holes masks should be determined by query length only (deterministic mapping)
+     *
+     * @param mapperDeterministic true for deterministic mapping
+     * @return parameters object
+     */
+    public KAlignerParameters2 setMapperDeterministic(boolean mapperDeterministic) {
+        this.mapperDeterministic = mapperDeterministic;
+        return this;
+    }
+
     /**
      * Number of simultaneously constructed clusters in one-pass initial cluster detection algorithm
      */
@@ -659,6 +685,7 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         if (Float.compare(that.mapperRelativeMinScore, mapperRelativeMinScore) != 0) return false;
         if (mapperMinSeedsDistance != that.mapperMinSeedsDistance) return false;
         if (mapperMaxSeedsDistance != that.mapperMaxSeedsDistance) return false;
+        if (mapperDeterministic != that.mapperDeterministic) return false;
         if (alignmentStopPenalty != that.alignmentStopPenalty) return false;
         if (absoluteMinScore != that.absoluteMinScore) return false;
         if (Float.compare(that.relativeMinScore, relativeMinScore) != 0) return false;
@@ -683,6 +710,7 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         result = 31 * result + (mapperRelativeMinScore != +0.0f ? Float.floatToIntBits(mapperRelativeMinScore) : 0);
         result = 31 * result + mapperMinSeedsDistance;
         result = 31 * result + mapperMaxSeedsDistance;
+        result = 31 * result + (mapperDeterministic ? 1 : 0);
         result = 31 * result + alignmentStopPenalty;
         result = 31 * result + absoluteMinScore;
         result = 31 * result + (relativeMinScore != +0.0f ? Float.floatToIntBits(relativeMinScore) : 0);
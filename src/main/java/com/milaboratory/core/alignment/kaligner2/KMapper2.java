@@ -18,16 +18,28 @@ package com.milaboratory.core.alignment.kaligner2;
 import cc.redberry.pipe.CUtils;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.CompressedBitArray;
 import com.milaboratory.util.IntArrayList;
 import com.milaboratory.util.IntCombinations;
+import com.milaboratory.util.HashFunctions;
+import com.milaboratory.util.ParallelUtils;
 import com.milaboratory.util.RandomUtil;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static com.milaboratory.core.alignment.kaligner2.KAligner2Statistics.ClusterTrimmingType.*;
 import static com.milaboratory.core.alignment.kaligner2.OffsetPacksAccumulator.*;
@@ -136,6 +148,11 @@ public final class KMapper2 implements java.io.Serializable {
      * Minimal and maximal distance between kMer seed positions in target sequence
      */
     private final int minDistance, maxDistance;
+    /**
+     * If true, seed positions and holes masks are taken from the static schedule determined only by the length of
+     * query, so mapping results do not depend on thread-local random state
+     */
+    private final boolean deterministic;
 
     /*                  Utility fields                   */
     private volatile boolean built = false;
@@ -147,6 +164,12 @@ public final class KMapper2 implements java.io.Serializable {
      */
     private BitArray allFilter;
 
+    /**
+     * Filtered sub-indices of the base, keyed by compressed copies of filters, see {@link
+     * #setFilteredIndexCacheSize(int)}
+     */
+    private transient volatile Map<CompressedBitArray, FutureTask<int[][][]>> filteredBases;
+
     /**
      * Cache to prevent excessive memory allocation
      */
@@ -209,6 +232,35 @@ public final class KMapper2 implements java.io.Serializable {
                     int slotCount, int maxClusters, int maxClusterIndels, int kMersPerPosition,
                     boolean floatingLeftBound, boolean floatingRightBound,
                     KAligner2Statistics stat) {
+        this(nValue, kValue, minDistance, maxDistance, absoluteMinClusterScore, extraClusterScore, absoluteMinScore,
+                relativeMinScore, matchScore, mismatchScore, offsetShiftScore, slotCount, maxClusters, maxClusterIndels,
+                kMersPerPosition, floatingLeftBound, floatingRightBound, false, stat);
+    }
+
+    /**
+     * Creates new KMer mapper.
+     *
+     * @param nValue                  nucleotides in kMer (value of k)
+     * @param minDistance             minimal distance between kMer seed positions in target sequence
+     * @param maxDistance             maximal distance between kMer seed positions in target sequence
+     * @param absoluteMinClusterScore minimal score
+     * @param relativeMinScore        maximal ratio between best hit score and other hits scores in returned result
+     * @param matchScore              reward for match (must be > 0)
+     * @param mismatchScore           penalty for mismatch (must be < 0)
+     * @param floatingLeftBound       true if left bound of alignment could be floating
+     * @param floatingRightBound      true if right bound of alignment could be floating
+     * @param deterministic           true if seed positions and holes masks should be taken from static per-length
+     *                                schedule instead of thread-local random generator
+     * @param stat                    stat
+     */
+    public KMapper2(int nValue, int kValue,
+                    int minDistance, int maxDistance,
+                    int absoluteMinClusterScore, int extraClusterScore,
+                    int absoluteMinScore, float relativeMinScore,
+                    int matchScore, int mismatchScore, int offsetShiftScore,
+                    int slotCount, int maxClusters, int maxClusterIndels, int kMersPerPosition,
+                    boolean floatingLeftBound, boolean floatingRightBound, boolean deterministic,
+                    KAligner2Statistics stat) {
         if (nValue - kValue <= 2)
             throw new IllegalArgumentException("Wrong combination of K and N values. K = " + kValue + " N = " + nValue + ".");
 
@@ -248,6 +300,7 @@ public final class KMapper2 implements java.io.Serializable {
         this.maxClusterIndels = maxClusterIndels;
         this.floatingLeftBound = floatingLeftBound;
         this.floatingRightBound = floatingRightBound;
+        this.deterministic = deterministic;
         this.stat = stat;
     }
 
@@ -258,7 +311,7 @@ public final class KMapper2 implements java.io.Serializable {
                      int slotCount, int maxClusterIndels,
                      int maxClusters, int absoluteMinScore, float relativeMinScore,
                      boolean floatingLeftBound, boolean floatingRightBound,
-                     int minDistance, int maxDistance,
+                     int minDistance, int maxDistance, boolean deterministic,
                      boolean built, int maxReferenceLength,
                      int minReferenceLength, int sequencesInBase,
                      BitArray allFilter, KAligner2Statistics stat) {
@@ -281,6 +334,7 @@ public final class KMapper2 implements java.io.Serializable {
         this.floatingRightBound = floatingRightBound;
         this.minDistance = minDistance;
         this.maxDistance = maxDistance;
+        this.deterministic = deterministic;
         this.built = built;
         this.maxReferenceLength = maxReferenceLength;
         this.minReferenceLength = minReferenceLength;
@@ -302,20 +356,26 @@ public final class KMapper2 implements java.io.Serializable {
 
     KMapper2 setFloatingLeftBound(boolean floatingLeftBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        KMapper2 mapper = new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
-                floatingLeftBound, floatingRightBound, minDistance, maxDistance,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, deterministic,
                 built, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
+        // Filtered sub-indices depend only on the base, which is shared
+        mapper.filteredBases = filteredBases;
+        return mapper;
     }
 
     KMapper2 setFloatingRightBound(boolean floatingRightBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        KMapper2 mapper = new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
-                floatingLeftBound, floatingRightBound, minDistance, maxDistance,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, deterministic,
                 built, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
+        // Filtered sub-indices depend only on the base, which is shared
+        mapper.filteredBases = filteredBases;
+        return mapper;
     }
 
     /**
@@ -336,7 +396,8 @@ public final class KMapper2 implements java.io.Serializable {
                 parameters.getMapperOffsetShiftScore(), parameters.getMapperSlotCount(),
                 parameters.getMapperMaxClusters(),
                 parameters.getMapperMaxClusterIndels(), parameters.getMapperKMersPerPosition(),
-                parameters.isFloatingLeftBound(), parameters.isFloatingRightBound(), stat);
+                parameters.isFloatingLeftBound(), parameters.isFloatingRightBound(),
+                parameters.isMapperDeterministic(), stat);
     }
 
     /**
@@ -414,24 +475,139 @@ public final class KMapper2 implements java.io.Serializable {
         return id;
     }
 
+    /**
+     * Adds several reference sequences to the base of this mapper and returns index assigned to the first of them
+     * (subsequent sequences get consecutive indices). Resulting base is the same as after adding sequences one by one
+     * with {@link #addReference(NucleotideSequence)}, but postings are counted and filled in two parallel passes over
+     * the sequences (count, then scatter into arrays of exact size), so large bases are built much faster.
+     *
+     * @param sequences sequences
+     * @param threads   number of threads, 0 for the number of available processors
+     * @return index assigned to the first sequence
+     */
+    public int addReferences(List<NucleotideSequence> sequences, int threads) {
+        if (built)
+            throw new IllegalStateException("Already in use.");
+
+        // Checking parameters
+        if (sequencesInBase + sequences.size() > (1 << bitsForIndex))
+            throw new IllegalArgumentException("Maximum number of records reached.");
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.size() - nValue > offsetMask)
+                throw new IllegalArgumentException("Record is too long.");
+
+        final int firstId = sequencesInBase;
+        sequencesInBase += sequences.size();
+
+        //Calculating min and max reference sequences lengths
+        for (NucleotideSequence sequence : sequences) {
+            maxReferenceLength = max(maxReferenceLength, sequence.size());
+            minReferenceLength = Math.min(minReferenceLength, sequence.size());
+        }
+
+        final int[] holesMasks = getHolesMasks();
+        final AtomicIntegerArray[] counters = new AtomicIntegerArray[base.length];
+        for (int holesMask : holesMasks)
+            counters[holesMask] = new AtomicIntegerArray(base[holesMask].length);
+
+        ForkJoinPool pool = ParallelUtils.createPool(threads);
+        try {
+            // Pass 1: counting records for each kMer
+            ParallelUtils.forEach(pool, 0, sequences.size(), i -> {
+                NucleotideSequence sequence = sequences.get(i);
+                for (int holesMask : holesMasks)
+                    for (int offset = 0; offset <= sequence.size() - nValue; ++offset)
+                        counters[holesMask].incrementAndGet(kmer(sequence, holesMask, offset));
+            });
+
+            // Allocating arrays of exact size, counters are converted to positions of first new record
+            for (int holesMask : holesMasks) {
+                final int[][] hBase = base[holesMask];
+                final int[] hLengths = lengths[holesMask];
+                final AtomicIntegerArray hCounters = counters[holesMask];
+                ParallelUtils.forEach(pool, 0, hBase.length, kmer -> {
+                    int count = hCounters.get(kmer);
+                    if (count == 0)
+                        return;
+                    int length = hLengths[kmer];
+                    hBase[kmer] = hBase[kmer] == null ? new int[count] : copyOf(hBase[kmer], length + count);
+                    hLengths[kmer] = length + count;
+                    hCounters.set(kmer, length);
+                });
+            }
+
+            // Pass 2: scattering records
+            ParallelUtils.forEach(pool, 0, sequences.size(), i -> {
+                NucleotideSequence sequence = sequences.get(i);
+                int id = firstId + i;
+                for (int holesMask : holesMasks)
+                    for (int offset = 0; offset <= sequence.size() - nValue; ++offset) {
+                        int kmer = kmer(sequence, holesMask, offset);
+                        base[holesMask][kmer][counters[holesMask].getAndIncrement(kmer)] = record(offset, id);
+                    }
+            });
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        return firstId;
+    }
+
+    /**
+     * Encodes kMer at specified position of the sequence, skipping positions marked in holes mask.
+     */
+    private int kmer(NucleotideSequence sequence, int holesMask, int position) {
+        int kmer = 0;
+        for (int j = 0; j < nValue; ++j)
+            if (((holesMask >> j) & 1) == 0)
+                kmer = (kmer << 2 | sequence.codeAt(position + j));
+        return kmer;
+    }
+
+    private int[] getHolesMasks() {
+        IntArrayList holesMasks = new IntArrayList();
+        IntCombinations combinations = new IntCombinations(nValue, kValue);
+        for (int[] combination : CUtils.it(combinations))
+            holesMasks.add(getCombinationMask(combination));
+        return holesMasks.toArray();
+    }
+
     /**
      * Builds additional data fields used by this mapper. Invoked automatically if this mapper is not yet built by
      * {@link #align(NucleotideSequence, int, int)} method.
      */
     void ensureBuilt() {
+        build(1);
+    }
+
+    /**
+     * Builds additional data fields used by this mapper (compacts and sorts records of individual kMers) using
+     * specified number of threads. After this method is invoked no new reference sequences can be added.
+     *
+     * @param threads number of threads, 0 for the number of available processors
+     */
+    public void build(int threads) {
         if (!built)
             synchronized (this) {
                 if (!built) {
-                    int[] zero = new int[0];
-                    IntCombinations combinations = new IntCombinations(nValue, kValue);
-                    for (int[] combination : CUtils.it(combinations)) {
-                        int holeMask = getCombinationMask(combination);
-                        for (int kMer = 0; kMer < base[holeMask].length; ++kMer)
-                            if (base[holeMask][kMer] != null) {
-                                base[holeMask][kMer] = copyOf(base[holeMask][kMer], lengths[holeMask][kMer]);
-                                Arrays.sort(base[holeMask][kMer]);
-                            } else
-                                base[holeMask][kMer] = zero;
+                    final int[] zero = new int[0];
+                    ForkJoinPool pool = ParallelUtils.createPool(threads);
+                    try {
+                        for (int holeMask : getHolesMasks()) {
+                            final int[][] hBase = base[holeMask];
+                            final int[] hLengths = lengths[holeMask];
+                            ParallelUtils.forEach(pool, 0, hBase.length, kMer -> {
+                                if (hBase[kMer] != null) {
+                                    hBase[kMer] = copyOf(hBase[kMer], hLengths[kMer]);
+                                    Arrays.sort(hBase[kMer]);
+                                } else
+                                    hBase[kMer] = zero;
+                            });
+                        }
+                    } finally {
+                        if (pool != null)
+                            pool.shutdown();
                     }
 
                     allFilter = new BitArray(sequencesInBase);
@@ -442,6 +618,91 @@ public final class KMapper2 implements java.io.Serializable {
             }
     }
 
+    /**
+     * Returns records of the base (used in tests).
+     */
+    int[][][] getBase() {
+        ensureBuilt();
+        return base;
+    }
+
+    /**
+     * Enables caching of filtered sub-indices of the base for up to {@code size} most recently used filters (disabled by
+     * default). Sub-indices contain only records of the targets passing the filter (posting lists not affected by the
+     * filter are shared with the main index), so alignments with recurring filters selecting a small subset of the
+     * base only touch relevant records. Filters are compared by content (compressed copies of filters, see {@link
+     * CompressedBitArray}, are kept as keys).
+     *
+     * @param size maximal number of cached sub-indices, 0 to disable caching
+     */
+    public void setFilteredIndexCacheSize(final int size) {
+        if (size < 0)
+            throw new IllegalArgumentException();
+        filteredBases = size == 0
+                ? null
+                : new LinkedHashMap<CompressedBitArray, FutureTask<int[][][]>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CompressedBitArray, FutureTask<int[][][]>> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns cached (or creates) sub-index for the filter, or null if caching is disabled. Sub-index for each filter
+     * is built only once, concurrent callers with the same filter wait for it.
+     */
+    int[][][] getFilteredBase(BitArray filter) {
+        Map<CompressedBitArray, FutureTask<int[][][]>> cache = filteredBases;
+        if (cache == null)
+            return null;
+        FutureTask<int[][][]> task;
+        boolean build = false;
+        // Compressed snapshot of the filter is used as a key, so sparse filters take little space in the cache
+        CompressedBitArray key = CompressedBitArray.compress(filter);
+        synchronized (cache) {
+            task = cache.get(key);
+            if (task == null) {
+                cache.put(key, task = new FutureTask<>(() -> buildFilteredBase(filter)));
+                build = true;
+            }
+        }
+        // Sub-index is built in this thread, before the filter may be modified by the caller
+        if (build)
+            task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                cache.remove(key, task);
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private int[][][] buildFilteredBase(BitArray filter) {
+        int[] zero = new int[0];
+        int[][][] filtered = new int[base.length][][];
+        for (int holesMask = 0; holesMask < base.length; ++holesMask) {
+            if (base[holesMask] == null)
+                continue;
+            filtered[holesMask] = new int[base[holesMask].length][];
+            IntArrayList buffer = new IntArrayList();
+            for (int kmer = 0; kmer < base[holesMask].length; ++kmer) {
+                int[] records = base[holesMask][kmer];
+                buffer.clear();
+                addFiltered(buffer, records, filter);
+                filtered[holesMask][kmer] = buffer.size() == records.length
+                        ? records
+                        : buffer.isEmpty() ? zero : buffer.toArray();
+            }
+        }
+        return filtered;
+    }
+
     /**
      * Performs an alignment.
      *
@@ -491,6 +752,12 @@ public final class KMapper2 implements java.io.Serializable {
         ThreadLocalCache cache = memoryCache.get();
         cache.reset();
 
+        // Records are filtered in bulk while collecting them from the index (or taken from the cached filtered
+        // sub-index), so that filtered records don't take part in sorting below
+        final int[][][] filteredBase = filter == allFilter ? null : getFilteredBase(filter);
+        final int[][][] base = filteredBase == null ? this.base : filteredBase;
+        final boolean filtered = filter != allFilter && filteredBase == null;
+
         final ArrList<KMappingHit2> result = new ArrList<>();
 
         // Sequence is shorter than k values
@@ -506,18 +773,18 @@ public final class KMapper2 implements java.io.Serializable {
 
         // Positions of first nucleotides of seed k-mers in query sequence
         final IntArrayList seedPositions = cache.seedPositions;
-        int seedPosition = from;
-
-        // Adding firs possible position
-        seedPositions.add(seedPosition);
-
-        // Generating random positions of seeds
-        RandomGenerator random = RandomUtil.getThreadLocalRandom();
-        while ((seedPosition += random.nextInt(maxDistance + 1 - minDistance) + minDistance) < to - nValue)
-            seedPositions.add(seedPosition);
-
-        // Adding last possible position to the lis of seed positions
-        seedPositions.add(to - nValue);
+        // Holes masks for each seed position (kMersPerPosition masks per position)
+        final IntArrayList holesMasks = cache.holesMasks;
+
+        if (deterministic) {
+            SeedSchedule schedule = cache.schedules.get(to - from);
+            if (schedule == null)
+                cache.schedules.put(to - from, schedule = createSchedule(to - from));
+            for (int offset : schedule.seedOffsets)
+                seedPositions.add(from + offset);
+            holesMasks.addAll(schedule.holesMasks);
+        } else
+            generateSeeds(RandomUtil.getThreadLocalRandom(), from, to, seedPositions, holesMasks);
 
         int kmer;
         final IntArrayList[] candidates = cache.candidates;
@@ -527,36 +794,23 @@ public final class KMapper2 implements java.io.Serializable {
         int id, positionInTarget;
         IntArrayList allRecords = cache.cachedIntArray1;
 
-        final int allPositionsMask = 0xFFFFFFFF >>> (32 - nValue);
-        final int nValue2 = nValue / 2;
         int holesMask;
 
         for (int i = 0; i < seedPositions.size(); ++i) {
             allRecords.clear();
 
-            int notForbidden = allPositionsMask;
-
             for (int holesMaskIter = 0; holesMaskIter < kMersPerPosition; ++holesMaskIter) {
-                if (nValue2 <= bitCount(notForbidden)) {
-                    holesMask = 0;
-                    while (bitCount(holesMask) != kValue) {
-                        holesMask |= 1 << random.nextInt(nValue);
-                        holesMask &= notForbidden;
-                    }
-                } else {
-                    holesMask = notForbidden;
-                    while (bitCount(holesMask) != kValue)
-                        holesMask &= ~(1 << random.nextInt(nValue));
-                }
-
-                notForbidden &= ~holesMask;
+                holesMask = holesMasks.get(i * kMersPerPosition + holesMaskIter);
 
                 kmer = 0;
                 for (int j = 0; j < nValue; ++j)
                     if (((holesMask >> j) & 1) == 0)
                         kmer = kmer << 2 | sequence.codeAt(seedPositions.get(i) + j);
 
-                allRecords.addAll(base[holesMask][kmer]);
+                if (filtered)
+                    addFiltered(allRecords, base[holesMask][kmer], filter);
+                else
+                    allRecords.addAll(base[holesMask][kmer]);
             }
 
             // Adding each records for it's corresponding candidate
@@ -568,12 +822,9 @@ public final class KMapper2 implements java.io.Serializable {
                     continue;
 
                 // Id of target sequence, where the kMer was found
+                // (filter is already applied)
                 id = index(record);
 
-                // Apply filter
-                if (!filter.get(id))
-                    continue;
-
                 // Position of the kMer in target sequence
                 positionInTarget = offset(record);
 
@@ -585,6 +836,9 @@ public final class KMapper2 implements java.io.Serializable {
                 assert candidates[id].isEmpty() || index(candidates[id].last()) != i
                         || offset(candidates[id].last()) < positionInTarget - seedPositions.get(i);
 
+                if (candidates[id].isEmpty())
+                    cache.touchedCandidates.add(id);
+
                 // Adding restructured record to candidate list
                 candidates[id].add(record(positionInTarget - seedPositions.get(i), i));
             }
@@ -599,7 +853,8 @@ public final class KMapper2 implements java.io.Serializable {
 
         // Calculating hits for each candidate
         // Truncation & Untangling of clusters happens here
-        for (int i = 0; i < candidates.length; i++) {
+        // Only candidates passing the filter may contain records
+        for (int i = filter.nextSetBit(0); i >= 0 && i < candidates.length; i = filter.nextSetBit(i + 1)) {
             // No records
             if (candidates[i] == null)
                 continue;
@@ -627,7 +882,8 @@ public final class KMapper2 implements java.io.Serializable {
             result.removeRange(i, result.size());
         }
 
-        KMappingResult2 kMappingResult2 = new KMappingResult2(seedPositions, result);
+        // Seed positions list is reused by subsequent calls in this thread, while results may be retained (e.g. cached)
+        KMappingResult2 kMappingResult2 = new KMappingResult2(seedPositions.clone(), result);
 
         // Collecting statistics
         if (stat != null)
@@ -636,6 +892,79 @@ public final class KMapper2 implements java.io.Serializable {
         return kMappingResult2;
     }
 
+    /**
+     * Generates seed positions and holes masks for a part of query sequence.
+     *
+     * @param random        source of randomness
+     * @param from          first nucleotide to align (inclusive)
+     * @param to            last nucleotide to align (exclusive)
+     * @param seedPositions output list of seed positions
+     * @param holesMasks    output list of holes masks (kMersPerPosition masks for each seed position)
+     */
+    private void generateSeeds(RandomGenerator random, int from, int to,
+                               IntArrayList seedPositions, IntArrayList holesMasks) {
+        int seedPosition = from;
+
+        // Adding firs possible position
+        seedPositions.add(seedPosition);
+
+        // Generating random positions of seeds
+        while ((seedPosition += random.nextInt(maxDistance + 1 - minDistance) + minDistance) < to - nValue)
+            seedPositions.add(seedPosition);
+
+        // Adding last possible position to the lis of seed positions
+        seedPositions.add(to - nValue);
+
+        final int allPositionsMask = 0xFFFFFFFF >>> (32 - nValue);
+        final int nValue2 = nValue / 2;
+        int holesMask;
+
+        for (int i = 0; i < seedPositions.size(); ++i) {
+            int notForbidden = allPositionsMask;
+
+            for (int holesMaskIter = 0; holesMaskIter < kMersPerPosition; ++holesMaskIter) {
+                if (nValue2 <= bitCount(notForbidden)) {
+                    holesMask = 0;
+                    while (bitCount(holesMask) != kValue) {
+                        holesMask |= 1 << random.nextInt(nValue);
+                        holesMask &= notForbidden;
+                    }
+                } else {
+                    holesMask = notForbidden;
+                    while (bitCount(holesMask) != kValue)
+                        holesMask &= ~(1 << random.nextInt(nValue));
+                }
+
+                notForbidden &= ~holesMask;
+                holesMasks.add(holesMask);
+            }
+        }
+    }
+
+    /**
+     * Creates static seed schedule for queries of specified length (used in deterministic mode).
+     *
+     * @param length length of query part to be aligned
+     * @return seed schedule
+     */
+    private SeedSchedule createSchedule(int length) {
+        IntArrayList seedOffsets = new IntArrayList(), holesMasks = new IntArrayList();
+        generateSeeds(new Well19937c(HashFunctions.JenkinWang64shift(length)), 0, length, seedOffsets, holesMasks);
+        return new SeedSchedule(seedOffsets.toArray(), holesMasks.toArray());
+    }
+
+    /**
+     * Seed positions (relative to the beginning of aligned range) and holes masks for a fixed query length.
+     */
+    private static final class SeedSchedule {
+        final int[] seedOffsets, holesMasks;
+
+        SeedSchedule(int[] seedOffsets, int[] holesMasks) {
+            this.seedOffsets = seedOffsets;
+            this.holesMasks = holesMasks;
+        }
+    }
+
     private static final Comparator<KMappingHit2> SCORE_COMPARATOR = new Comparator<KMappingHit2>() {
         @Override
         public int compare(final KMappingHit2 o1, final KMappingHit2 o2) {
@@ -1184,6 +1513,15 @@ public final class KMapper2 implements java.io.Serializable {
         return relativeMinScore;
     }
 
+    /**
+     * Adds records of targets passing the filter
+     */
+    private static void addFiltered(IntArrayList target, int[] records, BitArray filter) {
+        for (int record : records)
+            if (filter.get(index(record)))
+                target.add(record);
+    }
+
     static int index(final int record) {
         return record & indexMask;
     }
@@ -1240,14 +1578,18 @@ public final class KMapper2 implements java.io.Serializable {
     }
 
     private static final class ThreadLocalCache {
-        final IntArrayList seedPositions;
+        final IntArrayList seedPositions, holesMasks;
+        final TIntObjectHashMap<SeedSchedule> schedules = new TIntObjectHashMap<>();
         final IntArrayList cachedIntArray1, cachedIntArray2, cachedIntArray3;
         final IntArrayList[] candidates;
+        // Ids of non-empty candidate lists
+        final IntArrayList touchedCandidates = new IntArrayList();
         final OffsetPacksAccumulator offsetPacksAccumulator;
 
         public ThreadLocalCache(int sequencesInBase, int slotCount, int maxClusterIndels, int matchScore,
                                 int mismatchScore, int offsetShiftScore, int absoluteMinClusterScore) {
             this.seedPositions = new IntArrayList();
+            this.holesMasks = new IntArrayList();
             this.cachedIntArray1 = new IntArrayList();
             this.cachedIntArray2 = new IntArrayList();
             this.cachedIntArray3 = new IntArrayList();
@@ -1264,11 +1606,14 @@ public final class KMapper2 implements java.io.Serializable {
 
         public void reset() {
             seedPositions.clear();
+            holesMasks.clear();
             cachedIntArray1.clear();
             cachedIntArray2.clear();
             cachedIntArray3.clear();
-            for (IntArrayList candidate : candidates)
-                candidate.clear();
+            // Clearing only candidate lists filled during previous call
+            for (int i = 0; i < touchedCandidates.size(); i++)
+                candidates[touchedCandidates.get(i)].clear();
+            touchedCandidates.clear();
         }
     }
 
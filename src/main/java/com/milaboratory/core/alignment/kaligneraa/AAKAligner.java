@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.batch.*;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-process aligner of amino acid sequences. Candidate references are selected with {@link AAKMapper} and then
+ * aligned with the query using affine local alignment with the window of the reference around the most voted
+ * diagonal (window is wider than the query part by the band width on each side).
+ *
+ * <p>All references must be added before the first alignment.</p>
+ *
+ * @param <P> type of record payload
+ */
+public class AAKAligner<P> extends AbstractBatchAligner<AminoAcidSequence, AlignmentHit<AminoAcidSequence, P>>
+        implements BatchAlignerWithBase<AminoAcidSequence, P, AlignmentHit<AminoAcidSequence, P>>,
+        PipedBatchAlignerWithBase<AminoAcidSequence, P, AlignmentHit<AminoAcidSequence, P>> {
+    private final AAKAlignerParameters parameters;
+    private final AAKMapper mapper;
+    private final List<P> payloads = new ArrayList<>();
+
+    public AAKAligner(AAKAlignerParameters parameters) {
+        this.parameters = parameters.clone();
+        this.mapper = new AAKMapper(parameters);
+    }
+
+    /**
+     * Sets number of threads to be used in piped processing.<br><br>
+     *
+     * 0    -> Runtime.getRuntime().availableProcessors()<br>
+     * 1    -> process in the same thread as take() method call<br>
+     * 2... -> parallel processor<br>
+     */
+    public void setThreadCount(int threads) {
+        this.threads = threads;
+    }
+
+    public AAKMapper getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public synchronized void addReference(AminoAcidSequence sequence, P payload) {
+        mapper.addReference(sequence);
+        payloads.add(payload);
+    }
+
+    @Override
+    public AlignmentResult<AlignmentHit<AminoAcidSequence, P>> align(AminoAcidSequence sequence) {
+        return align(sequence, 0, sequence.size());
+    }
+
+    @Override
+    public AlignmentResult<AlignmentHit<AminoAcidSequence, P>> align(AminoAcidSequence query, int from, int to) {
+        List<AAKMapperHit> candidates = mapper.map(query, from, to);
+        if (candidates.isEmpty())
+            return new AlignmentResultImpl<>();
+
+        final AminoAcidSequence queryPart = query.getRange(from, to);
+        final List<AlignmentHit<AminoAcidSequence, P>> hits = new ArrayList<>(candidates.size());
+        for (AAKMapperHit candidate : candidates) {
+            AminoAcidSequence target = mapper.getReference(candidate.id);
+
+            // Position in target corresponding to the beginning of query part on the voted diagonal
+            Alignment<AminoAcidSequence> alignment = BatchAlignmentUtil.alignAroundDiagonal(parameters.getScoring(),
+                    target, queryPart, from, candidate.offset + from, parameters.getBandWidth());
+            if (alignment == null || alignment.getScore() < parameters.getAbsoluteMinScore())
+                continue;
+
+            hits.add(new AlignmentHitImpl<>(alignment, payloads.get(candidate.id)));
+        }
+
+        if (hits.isEmpty())
+            return new AlignmentResultImpl<>();
+
+        Collections.sort(hits, BatchAlignmentUtil.ALIGNMENT_SCORE_HIT_COMPARATOR);
+
+        float threshold = Math.max(parameters.getAbsoluteMinScore(),
+                parameters.getRelativeMinScore() * hits.get(0).getAlignment().getScore());
+        int i = 0;
+        for (; i < parameters.getMaxHits() && i < hits.size(); ++i)
+            if (hits.get(i).getAlignment().getScore() < threshold)
+                break;
+
+        return new AlignmentResultImpl<>(i == hits.size() ? hits : new ArrayList<>(hits.subList(0, i)));
+    }
+}
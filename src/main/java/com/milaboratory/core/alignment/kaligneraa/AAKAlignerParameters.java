@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+
+/**
+ * Parameters of {@link AAKMapper} and {@link AAKAligner}.
+ */
+public final class AAKAlignerParameters implements Cloneable {
+    /**
+     * Reduced alphabet used to encode k-mers
+     */
+    private ReducedAminoAcidAlphabet alphabet;
+    /**
+     * Length of k-mers
+     */
+    private int kValue;
+    /**
+     * Minimal score of neighborhood word; if {@link Integer#MAX_VALUE}, only exact reduced k-mers of query are
+     * looked up in the index
+     */
+    private int neighborhoodThreshold;
+    /**
+     * Minimal number of seeds on the same diagonal to consider reference as a candidate
+     */
+    private int minSeedHits;
+    /**
+     * Maximal number of candidates passed to alignment stage
+     */
+    private int maxCandidates;
+    /**
+     * Scoring used for final alignment and neighborhood words generation
+     */
+    private AffineGapAlignmentScoring<AminoAcidSequence> scoring;
+    /**
+     * Max allowed deviation of alignment from the seed diagonal
+     */
+    private int bandWidth;
+    /**
+     * Minimal score of final alignment
+     */
+    private int absoluteMinScore;
+    /**
+     * Minimal score of final alignment relative to the top hit score
+     */
+    private float relativeMinScore;
+    /**
+     * Maximal number of hits to report
+     */
+    private int maxHits;
+
+    public AAKAlignerParameters(ReducedAminoAcidAlphabet alphabet, int kValue, int neighborhoodThreshold,
+                                int minSeedHits, int maxCandidates,
+                                AffineGapAlignmentScoring<AminoAcidSequence> scoring, int bandWidth,
+                                int absoluteMinScore, float relativeMinScore, int maxHits) {
+        this.alphabet = alphabet;
+        this.kValue = kValue;
+        this.neighborhoodThreshold = neighborhoodThreshold;
+        this.minSeedHits = minSeedHits;
+        this.maxCandidates = maxCandidates;
+        this.scoring = scoring;
+        this.bandWidth = bandWidth;
+        this.absoluteMinScore = absoluteMinScore;
+        this.relativeMinScore = relativeMinScore;
+        this.maxHits = maxHits;
+    }
+
+    /**
+     * Returns default parameters (Murphy 10-letter alphabet, k = 4, no neighborhood words).
+     *
+     * @param matrix substitution matrix
+     */
+    public static AAKAlignerParameters getDefaults(BLASTMatrix matrix) {
+        return new AAKAlignerParameters(ReducedAminoAcidAlphabet.MURPHY_10, 4, Integer.MAX_VALUE, 2, 16,
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(matrix), 8, 30, 0.8f, 8);
+    }
+
+    public ReducedAminoAcidAlphabet getAlphabet() {
+        return alphabet;
+    }
+
+    public AAKAlignerParameters setAlphabet(ReducedAminoAcidAlphabet alphabet) {
+        this.alphabet = alphabet;
+        return this;
+    }
+
+    public int getKValue() {
+        return kValue;
+    }
+
+    public AAKAlignerParameters setKValue(int kValue) {
+        this.kValue = kValue;
+        return this;
+    }
+
+    public int getNeighborhoodThreshold() {
+        return neighborhoodThreshold;
+    }
+
+    public AAKAlignerParameters setNeighborhoodThreshold(int neighborhoodThreshold) {
+        this.neighborhoodThreshold = neighborhoodThreshold;
+        return this;
+    }
+
+    public boolean isNeighborhoodEnabled() {
+        return neighborhoodThreshold != Integer.MAX_VALUE;
+    }
+
+    public int getMinSeedHits() {
+        return minSeedHits;
+    }
+
+    public AAKAlignerParameters setMinSeedHits(int minSeedHits) {
+        this.minSeedHits = minSeedHits;
+        return this;
+    }
+
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public AAKAlignerParameters setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+        return this;
+    }
+
+    public AffineGapAlignmentScoring<AminoAcidSequence> getScoring() {
+        return scoring;
+    }
+
+    public AAKAlignerParameters setScoring(AffineGapAlignmentScoring<AminoAcidSequence> scoring) {
+        this.scoring = scoring;
+        return this;
+    }
+
+    public int getBandWidth() {
+        return bandWidth;
+    }
+
+    public AAKAlignerParameters setBandWidth(int bandWidth) {
+        this.bandWidth = bandWidth;
+        return this;
+    }
+
+    public int getAbsoluteMinScore() {
+        return absoluteMinScore;
+    }
+
+    public AAKAlignerParameters setAbsoluteMinScore(int absoluteMinScore) {
+        this.absoluteMinScore = absoluteMinScore;
+        return this;
+    }
+
+    public float getRelativeMinScore() {
+        return relativeMinScore;
+    }
+
+    public AAKAlignerParameters setRelativeMinScore(float relativeMinScore) {
+        this.relativeMinScore = relativeMinScore;
+        return this;
+    }
+
+    public int getMaxHits() {
+        return maxHits;
+    }
+
+    public AAKAlignerParameters setMaxHits(int maxHits) {
+        this.maxHits = maxHits;
+        return this;
+    }
+
+    @Override
+    public AAKAlignerParameters clone() {
+        try {
+            return (AAKAlignerParameters) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
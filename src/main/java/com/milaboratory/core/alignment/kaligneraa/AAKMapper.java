@@ -0,0 +1,278 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.util.IntArrayList;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * K-mer mapper for amino acid sequences. Reference k-mers are encoded using a {@link ReducedAminoAcidAlphabet} and
+ * stored in a direct-address index (one slot for each possible reduced k-mer). Optionally, each query k-mer is expanded
+ * into a set of neighborhood words: reduced k-mers whose best possible substitution score against the query k-mer
+ * (according to the scoring matrix) is not less than a threshold, as it is done in BLAST.
+ *
+ * <p>Candidates are selected by counting seeds on each (reference, diagonal) pair.</p>
+ *
+ * <p>All references must be added before the first mapping. Mapping is thread-safe.</p>
+ */
+public final class AAKMapper {
+    /**
+     * Max number of slots in the index
+     */
+    private static final int MAX_SLOTS = 1 << 26;
+
+    private final AAKAlignerParameters parameters;
+    private final ReducedAminoAcidAlphabet alphabet;
+    private final int kValue;
+    /**
+     * Best substitution score for each pair (amino acid code, reduced group)
+     */
+    private final int[][] bestScores;
+    /**
+     * Maximal value in each row of bestScores
+     */
+    private final int[] rowMax;
+    private final List<AminoAcidSequence> references = new ArrayList<>();
+
+    // Not initialized -> null
+    private volatile int[] slotStart = null, postings = null;
+
+    public AAKMapper(AAKAlignerParameters parameters) {
+        this.parameters = parameters.clone();
+        this.alphabet = parameters.getAlphabet();
+        this.kValue = parameters.getKValue();
+        if (kValue <= 0 || Math.pow(alphabet.size(), kValue) > MAX_SLOTS)
+            throw new IllegalArgumentException("Unsupported k-mer length for the alphabet: " + kValue);
+
+        AffineGapAlignmentScoring<AminoAcidSequence> scoring = parameters.getScoring();
+        int size = AminoAcidSequence.ALPHABET.size();
+        this.bestScores = new int[size][alphabet.size()];
+        this.rowMax = new int[size];
+        for (byte a = 0; a < size; a++) {
+            int[] row = bestScores[a];
+            Arrays.fill(row, Integer.MIN_VALUE);
+            for (byte b = 0; b < size; b++) {
+                int group = alphabet.getGroup(b);
+                if (group >= 0)
+                    row[group] = Math.max(row[group], scoring.getScore(a, b));
+            }
+            int max = Integer.MIN_VALUE;
+            for (int s : row)
+                max = Math.max(max, s);
+            rowMax[a] = max;
+        }
+    }
+
+    /**
+     * Adds reference sequence to the index.
+     *
+     * @param sequence reference sequence
+     * @return id of the reference
+     */
+    public synchronized int addReference(AminoAcidSequence sequence) {
+        if (slotStart != null)
+            throw new IllegalStateException("Mapper is already in use, can't add sequence to index.");
+        references.add(sequence);
+        return references.size() - 1;
+    }
+
+    public AminoAcidSequence getReference(int id) {
+        return references.get(id);
+    }
+
+    public int size() {
+        return references.size();
+    }
+
+    /**
+     * Finds candidate references for the query.
+     *
+     * @param query query sequence
+     * @return list of candidates sorted by number of seed hits (best first)
+     */
+    public List<AAKMapperHit> map(AminoAcidSequence query) {
+        return map(query, 0, query.size());
+    }
+
+    /**
+     * Finds candidate references for the part of query.
+     *
+     * @param query query sequence
+     * @param from  left bound of the query part (inclusive)
+     * @param to    right bound of the query part (exclusive)
+     * @return list of candidates sorted by number of seed hits (best first)
+     */
+    public List<AAKMapperHit> map(AminoAcidSequence query, int from, int to) {
+        ensureBuilt();
+        final int[] slotStart = this.slotStart, postings = this.postings;
+
+        // (reference id, diagonal) -> number of seeds
+        final TLongIntHashMap votes = new TLongIntHashMap(16, 0.5f, Long.MIN_VALUE, 0);
+        final IntArrayList words = new IntArrayList();
+        // Buffers for neighborhood generation
+        final byte[] codes = new byte[kValue];
+        final int[] suffixMax = new int[kValue + 1];
+
+        for (int qPos = from; qPos + kValue <= to; ++qPos) {
+            words.clear();
+            if (parameters.isNeighborhoodEnabled())
+                neighborhood(query, qPos, codes, suffixMax, words);
+            else {
+                int key = kmerKey(query, qPos);
+                if (key == -1)
+                    continue;
+                words.add(key);
+            }
+
+            for (int w = 0; w < words.size(); w++) {
+                int key = words.get(w);
+                for (int p = slotStart[key]; p < slotStart[key + 1]; p += 2) {
+                    long diagonalKey = ((long) postings[p] << 32) | ((postings[p + 1] - qPos) & 0xFFFFFFFFL);
+                    votes.adjustOrPutValue(diagonalKey, 1, 1);
+                }
+            }
+        }
+
+        // Best diagonal for each reference
+        TIntObjectHashMap<AAKMapperHit> best = new TIntObjectHashMap<>();
+        TLongIntIterator it = votes.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            if (it.value() < parameters.getMinSeedHits())
+                continue;
+            int id = (int) (it.key() >>> 32), offset = (int) it.key();
+            AAKMapperHit current = best.get(id);
+            if (current == null || current.seedHits < it.value())
+                best.put(id, new AAKMapperHit(id, offset, it.value()));
+        }
+
+        List<AAKMapperHit> result = new ArrayList<>(best.valueCollection());
+        Collections.sort(result, SEED_HITS_COMPARATOR);
+        if (result.size() > parameters.getMaxCandidates())
+            result = new ArrayList<>(result.subList(0, parameters.getMaxCandidates()));
+        return result;
+    }
+
+    /**
+     * Calculates reduced k-mer key for the specified position or returns -1 if k-mer contains letters not included in
+     * the reduced alphabet.
+     */
+    private int kmerKey(AminoAcidSequence sequence, int position) {
+        int key = 0;
+        for (int i = 0; i < kValue; i++) {
+            int group = alphabet.getGroup(sequence.codeAt(position + i));
+            if (group == -1)
+                return -1;
+            key = key * alphabet.size() + group;
+        }
+        return key;
+    }
+
+    /**
+     * Adds keys of all neighborhood words of query k-mer at the specified position. Exact reduced k-mer is always
+     * included.
+     *
+     * @param codes     buffer of length k for codes of query k-mer
+     * @param suffixMax buffer of length k + 1 (last element must be zero) for maximal scores achievable on positions
+     *                  i...k-1
+     */
+    private void neighborhood(AminoAcidSequence query, int position, byte[] codes, int[] suffixMax,
+                              IntArrayList words) {
+        for (int i = kValue - 1; i >= 0; --i) {
+            codes[i] = query.codeAt(position + i);
+            if (alphabet.getGroup(codes[i]) == -1)
+                return;
+            suffixMax[i] = suffixMax[i + 1] + rowMax[codes[i]];
+        }
+        neighborhood(codes, suffixMax, 0, 0, 0, true, words);
+    }
+
+    private void neighborhood(byte[] codes, int[] suffixMax, int i, int key, int score, boolean exact,
+                              IntArrayList words) {
+        if (i == kValue) {
+            words.add(key);
+            return;
+        }
+        int[] row = bestScores[codes[i]];
+        int own = alphabet.getGroup(codes[i]);
+        for (int group = 0; group < row.length; group++) {
+            boolean e = exact && group == own;
+            if (!e && score + row[group] + suffixMax[i + 1] < parameters.getNeighborhoodThreshold())
+                continue;
+            neighborhood(codes, suffixMax, i + 1, key * alphabet.size() + group, score + row[group], e, words);
+        }
+    }
+
+    private void ensureBuilt() {
+        if (slotStart == null)
+            build();
+    }
+
+    private synchronized void build() {
+        if (slotStart != null)
+            return;
+
+        int slots = (int) Math.pow(alphabet.size(), kValue);
+
+        // Counting postings for each k-mer
+        int[] slotStart = new int[slots + 1];
+        for (AminoAcidSequence reference : references)
+            for (int i = 0; i + kValue <= reference.size(); i++) {
+                int key = kmerKey(reference, i);
+                if (key != -1)
+                    slotStart[key + 1] += 2;
+            }
+
+        // Prefix sums
+        for (int i = 0; i < slots; i++)
+            slotStart[i + 1] += slotStart[i];
+
+        // Filling postings
+        int[] postings = new int[slotStart[slots]];
+        int[] pointers = Arrays.copyOf(slotStart, slots);
+        for (int id = 0; id < references.size(); id++) {
+            AminoAcidSequence reference = references.get(id);
+            for (int i = 0; i + kValue <= reference.size(); i++) {
+                int key = kmerKey(reference, i);
+                if (key == -1)
+                    continue;
+                postings[pointers[key]++] = id;
+                postings[pointers[key]++] = i;
+            }
+        }
+
+        this.postings = postings;
+        this.slotStart = slotStart;
+    }
+
+    private static final Comparator<AAKMapperHit> SEED_HITS_COMPARATOR = new Comparator<AAKMapperHit>() {
+        @Override
+        public int compare(AAKMapperHit o1, AAKMapperHit o2) {
+            int c = Integer.compare(o2.seedHits, o1.seedHits);
+            return c != 0 ? c : Integer.compare(o1.id, o2.id);
+        }
+    };
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+/**
+ * Candidate reference found by {@link AAKMapper}.
+ */
+public final class AAKMapperHit {
+    final int id, offset, seedHits;
+
+    public AAKMapperHit(int id, int offset, int seedHits) {
+        this.id = id;
+        this.offset = offset;
+        this.seedHits = seedHits;
+    }
+
+    /**
+     * Returns reference id (index in order of addition)
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns most voted diagonal (position in reference minus position in query)
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns number of seeds on the diagonal
+     */
+    public int getSeedHits() {
+        return seedHits;
+    }
+
+    @Override
+    public String toString() {
+        return "AAKMapperHit{id=" + id + ", offset=" + offset + ", seedHits=" + seedHits + '}';
+    }
+}
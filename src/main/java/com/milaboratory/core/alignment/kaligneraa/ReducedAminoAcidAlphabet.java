@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+
+import java.util.Arrays;
+
+/**
+ * Reduced amino acid alphabets used to encode k-mers in {@link AAKMapper}. Letters from the same group are treated as
+ * identical in the index, which increases sensitivity of seeding for diverged sequences.
+ */
+public enum ReducedAminoAcidAlphabet {
+    /**
+     * No reduction (20 standard amino acids)
+     */
+    NONE("A", "C", "D", "E", "F", "G", "H", "I", "K", "L", "M", "N", "P", "Q", "R", "S", "T", "V", "W", "Y"),
+    /**
+     * Murphy et al. 15-letter alphabet
+     */
+    MURPHY_15("LVIM", "C", "A", "G", "S", "T", "P", "FY", "W", "E", "D", "N", "Q", "KR", "H"),
+    /**
+     * Murphy et al. 10-letter alphabet
+     */
+    MURPHY_10("LVIM", "C", "A", "G", "ST", "P", "FYW", "EDNQ", "KR", "H");
+
+    private final String[] groups;
+    /**
+     * Amino acid code -> group index (-1 for letters not included in any group, e.g. stop codon or wildcards)
+     */
+    private final byte[] codeToGroup;
+
+    ReducedAminoAcidAlphabet(String... groups) {
+        this.groups = groups;
+        this.codeToGroup = new byte[AminoAcidSequence.ALPHABET.size()];
+        Arrays.fill(codeToGroup, (byte) -1);
+        for (int g = 0; g < groups.length; g++)
+            for (char c : groups[g].toCharArray())
+                codeToGroup[AminoAcidSequence.ALPHABET.symbolToCodeWithException(c)] = (byte) g;
+    }
+
+    /**
+     * Returns number of groups
+     */
+    public int size() {
+        return groups.length;
+    }
+
+    /**
+     * Returns group index of the amino acid or -1 if letter is not included in any group
+     *
+     * @param code amino acid code
+     * @return group index or -1
+     */
+    public int getGroup(byte code) {
+        return codeToGroup[code];
+    }
+
+    /**
+     * Returns true if amino acid with specified code belongs to the group
+     *
+     * @param code  amino acid code
+     * @param group group index
+     */
+    public boolean inGroup(byte code, int group) {
+        return codeToGroup[code] == group;
+    }
+}
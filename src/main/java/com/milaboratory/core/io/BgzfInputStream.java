@@ -0,0 +1,266 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of BGZF files (blocked gzip, see SAM specification) supporting positioning by virtual offsets.
+ *
+ * <p>Virtual offset is {@code (compressedBlockAddress << 16) | offsetInsideUncompressedBlock}. Stream reads data
+ * starting from the specified virtual offset and stops at the specified end virtual offset (exclusive), so several
+ * independent streams may read disjoint ranges of the same file. All reads use positional access to the channel, so
+ * the channel may be shared between streams.
+ */
+public final class BgzfInputStream extends InputStream {
+    private static final int HEADER_SIZE = 18, TRAILER_SIZE = 8, MAX_BLOCK_SIZE = 0x10000;
+    private final FileChannel channel;
+    private final boolean closeChannel;
+    private final long endAddress;
+    private final int endOffset;
+    private final long channelSize;
+    private final Inflater inflater = new Inflater(true);
+    private final ByteBuffer compressed = ByteBuffer.allocate(MAX_BLOCK_SIZE);
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    private long blockAddress, nextBlockAddress;
+    private int blockLength, pointer, limit;
+    private boolean eof = false;
+
+    /**
+     * Opens file and reads all its content.
+     *
+     * @param file BGZF file
+     */
+    public BgzfInputStream(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), true, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates stream reading the specified range of the channel. Channel is not closed by this stream.
+     *
+     * @param channel      channel
+     * @param startVirtual virtual offset of the first byte to read
+     * @param endVirtual   virtual offset of the first byte not to read ({@link Long#MAX_VALUE} to read until the end
+     *                     of file)
+     */
+    public BgzfInputStream(FileChannel channel, long startVirtual, long endVirtual) throws IOException {
+        this(channel, false, startVirtual, endVirtual);
+    }
+
+    private BgzfInputStream(FileChannel channel, boolean closeChannel, long startVirtual, long endVirtual)
+            throws IOException {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.channelSize = channel.size();
+        this.endAddress = endVirtual >>> 16;
+        this.endOffset = (int) (endVirtual & 0xFFFF);
+        this.nextBlockAddress = startVirtual >>> 16;
+        if (!loadNextBlock())
+            return;
+        int startOffset = (int) (startVirtual & 0xFFFF);
+        if (startOffset > blockLength)
+            throw new IOException("Wrong virtual offset.");
+        pointer = Math.min(startOffset, limit);
+    }
+
+    /**
+     * Returns virtual offset of the next byte to be read.
+     */
+    public long getVirtualOffset() {
+        return (blockAddress << 16) | pointer;
+    }
+
+    /**
+     * Returns address of the current compressed block.
+     */
+    public long getBlockAddress() {
+        return blockAddress;
+    }
+
+    private boolean loadNextBlock() throws IOException {
+        while (true) {
+            if (nextBlockAddress >= channelSize || nextBlockAddress > endAddress) {
+                eof = true;
+                return false;
+            }
+            blockAddress = nextBlockAddress;
+            compressed.clear();
+            compressed.limit(HEADER_SIZE);
+            readFully(compressed, blockAddress);
+            int bsize = checkHeader(compressed.array(), 0);
+            if (bsize < 0)
+                throw new IOException("Not a BGZF block at " + blockAddress);
+            int cSize = bsize + 1;
+            compressed.clear();
+            compressed.limit(cSize);
+            readFully(compressed, blockAddress);
+            byte[] cData = compressed.array();
+            int iSize = getInt(cData, cSize - 4);
+            inflater.reset();
+            inflater.setInput(cData, HEADER_SIZE, cSize - HEADER_SIZE - TRAILER_SIZE);
+            try {
+                blockLength = inflater.inflate(block, 0, block.length);
+            } catch (DataFormatException e) {
+                throw new IOException("Broken BGZF block at " + blockAddress, e);
+            }
+            if (blockLength != iSize || !inflater.finished())
+                throw new IOException("Broken BGZF block at " + blockAddress);
+            nextBlockAddress = blockAddress + cSize;
+            pointer = 0;
+            limit = blockAddress == endAddress ? Math.min(endOffset, blockLength) : blockLength;
+            if (limit > 0)
+                return true;
+            if (blockAddress == endAddress) {
+                eof = true;
+                return false;
+            }
+        }
+    }
+
+    private boolean ensureData() throws IOException {
+        if (eof)
+            return false;
+        if (pointer < limit)
+            return true;
+        return blockAddress < endAddress && loadNextBlock();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData())
+            return -1;
+        return block[pointer++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!ensureData())
+            return -1;
+        int n = Math.min(len, limit - pointer);
+        System.arraycopy(block, pointer, b, off, n);
+        pointer += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && ensureData()) {
+            int k = (int) Math.min(n - skipped, limit - pointer);
+            pointer += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return eof ? 0 : limit - pointer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        eof = true;
+        inflater.end();
+        if (closeChannel)
+            channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int r = channel.read(buffer, position + buffer.position());
+            if (r == -1)
+                throw new EOFException("Unexpected end of BGZF file.");
+        }
+    }
+
+    /**
+     * Returns BSIZE field (total block size minus one) if buffer contains BGZF block header at the specified
+     * position, or -1 otherwise.
+     */
+    static int checkHeader(byte[] buffer, int position) {
+        if (buffer[position] != 0x1f || buffer[position + 1] != (byte) 0x8b || buffer[position + 2] != 8
+                || (buffer[position + 3] & 4) == 0
+                || buffer[position + 10] != 6 || buffer[position + 11] != 0
+                || buffer[position + 12] != 'B' || buffer[position + 13] != 'C'
+                || buffer[position + 14] != 2 || buffer[position + 15] != 0)
+            return -1;
+        int bsize = (buffer[position + 16] & 0xFF) | ((buffer[position + 17] & 0xFF) << 8);
+        return bsize + 1 < HEADER_SIZE + TRAILER_SIZE ? -1 : bsize;
+    }
+
+    private static int getInt(byte[] buffer, int position) {
+        return (buffer[position] & 0xFF)
+                | ((buffer[position + 1] & 0xFF) << 8)
+                | ((buffer[position + 2] & 0xFF) << 16)
+                | ((buffer[position + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Returns true if channel starts with BGZF block.
+     */
+    public static boolean isBgzf(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE)
+            return false;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) == -1)
+                return false;
+        return checkHeader(header.array(), 0) >= 0;
+    }
+
+    /**
+     * Finds address of the first BGZF block starting at or after the specified position. Candidate block is accepted
+     * only if it is followed by another valid block header or by the end of file.
+     *
+     * @return address of the block or channel size if there are no blocks after the position
+     */
+    public static long findBlock(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        // Any block is shorter than 64K, so a block header should be found within two max block sizes
+        ByteBuffer window = ByteBuffer.allocate(3 * MAX_BLOCK_SIZE + HEADER_SIZE);
+        while (window.hasRemaining()) {
+            int r = channel.read(window, position + window.position());
+            if (r == -1)
+                break;
+        }
+        byte[] data = window.array();
+        int length = window.position();
+        for (int i = 0; i + HEADER_SIZE <= length; i++) {
+            int bsize = checkHeader(data, i);
+            if (bsize < 0)
+                continue;
+            int next = i + bsize + 1;
+            if (position + next == size)
+                return position + i;
+            if (next + HEADER_SIZE <= length && checkHeader(data, next) >= 0)
+                return position + i;
+        }
+        if (position + length == size)
+            return size;
+        throw new IOException("Can't find BGZF block after position " + position);
+    }
+}
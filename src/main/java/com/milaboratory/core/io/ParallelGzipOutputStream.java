@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream producing gzip-compatible output using several threads for compression (like pigz).
+ *
+ * <p>Data is split into independent blocks, each block is compressed on a worker thread as a separate gzip member,
+ * and compressed members are written to the underlying stream in the original order. The result is a multi-member gzip
+ * file readable by any gzip decompressor (including {@link java.util.zip.GZIPInputStream}).</p>
+ *
+ * <p>In BGZF mode blocks are additionally split into members of at most {@link #BGZF_MAX_BLOCK_SIZE} uncompressed
+ * bytes carrying the "BC" extra field, and the end-of-file marker block is appended on close, so the output is
+ * compatible with samtools / htslib. Offsets of all BGZF blocks are recorded and can be saved as ".gzi" index with
+ * {@link #writeGziIndex(OutputStream)}.</p>
+ *
+ * <p>Number of blocks being compressed simultaneously is limited to twice the number of threads, so writing thread
+ * blocks if compression can't keep up.</p>
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int BGZF_MAX_BLOCK_SIZE = 0xFF00;
+    /**
+     * Empty BGZF block used as end-of-file marker
+     */
+    private static final byte[] BGZF_EOF = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43,
+            0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final int blockSize;
+    private final int level;
+    private final boolean bgzf;
+    private final ArrayDeque<Future<CompressedBlock>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int pointer;
+    private boolean closed = false;
+    // BGZF index
+    private long compressedOffset = 0, uncompressedOffset = 0;
+    private long[] index = new long[16];
+    private int indexSize = 0;
+
+    public ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, false);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int threads, boolean bgzf) {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, bgzf);
+    }
+
+    /**
+     * Creates stream.
+     *
+     * @param out       underlying stream
+     * @param threads   number of compression threads (0 - number of available processors)
+     * @param blockSize size of independently compressed block
+     * @param level     compression level
+     * @param bgzf      produce BGZF output
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level, boolean bgzf) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Wrong block size: " + blockSize);
+        if (threads == 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        this.out = out;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "gzip-compressor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.maxPending = 2 * threads;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.bgzf = bgzf;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (pointer == blockSize)
+            submit();
+        block[pointer++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (pointer == blockSize)
+                submit();
+            int l = Math.min(len, blockSize - pointer);
+            System.arraycopy(b, off, block, pointer, l);
+            pointer += l;
+            off += l;
+            len -= l;
+        }
+    }
+
+    /**
+     * Sends current block to compression, and writes already compressed blocks if too many blocks are pending.
+     */
+    private void submit() throws IOException {
+        ensureOpen();
+        if (pointer == 0)
+            return;
+        final byte[] data = block;
+        final int length = pointer;
+        pending.add(executor.submit(new Callable<CompressedBlock>() {
+            @Override
+            public CompressedBlock call() {
+                return compress(data, length);
+            }
+        }));
+        block = new byte[blockSize];
+        pointer = 0;
+        while (pending.size() >= maxPending)
+            writeNext();
+    }
+
+    private void writeNext() throws IOException {
+        CompressedBlock compressed;
+        try {
+            compressed = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        out.write(compressed.data, 0, compressed.length);
+        if (bgzf)
+            for (int i = 0; i < compressed.memberSizes.length; i += 2) {
+                addIndexEntry(compressedOffset, uncompressedOffset);
+                compressedOffset += compressed.memberSizes[i];
+                uncompressedOffset += compressed.memberSizes[i + 1];
+            }
+    }
+
+    private void addIndexEntry(long compressed, long uncompressed) {
+        if (indexSize == index.length)
+            index = Arrays.copyOf(index, index.length * 2);
+        index[indexSize++] = compressed;
+        index[indexSize++] = uncompressed;
+    }
+
+    /**
+     * Compresses all buffered data, waits for all pending blocks and flushes underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        submit();
+        while (!pending.isEmpty())
+            writeNext();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        // Underlying stream is closed even if flushing fails
+        try (OutputStream out = this.out) {
+            flush();
+            if (bgzf)
+                out.write(BGZF_EOF);
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes ".gzi" index of BGZF blocks (in htslib format). Must be called after the stream is closed.
+     *
+     * @param os output stream to write index to
+     */
+    public void writeGziIndex(OutputStream os) throws IOException {
+        if (!bgzf)
+            throw new IllegalStateException("Not a BGZF stream.");
+        if (!closed)
+            throw new IllegalStateException("Stream is not closed.");
+        // First block (at offset 0, 0) is not included
+        int entries = indexSize / 2 - 1;
+        byte[] buffer = new byte[8 * (1 + 2 * Math.max(entries, 0))];
+        int p = putLong(buffer, 0, Math.max(entries, 0));
+        for (int i = 2; i < indexSize; i++)
+            p = putLong(buffer, p, index[i]);
+        os.write(buffer);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+    }
+
+    private CompressedBlock compress(byte[] data, int length) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (!bgzf) {
+                byte[] result = new byte[length + (length >> 3) + 64];
+                int p = putGzipHeader(result, 0, false, 0);
+                p = deflate(deflater, data, 0, length, result, p);
+                p = writeTrailer(result, p, data, 0, length);
+                return new CompressedBlock(result, p, null);
+            }
+
+            int members = (length + BGZF_MAX_BLOCK_SIZE - 1) / BGZF_MAX_BLOCK_SIZE;
+            byte[] result = new byte[(members + 1) * 0x10000];
+            int[] memberSizes = new int[members * 2];
+            int p = 0;
+            for (int m = 0; m < members; m++) {
+                int from = m * BGZF_MAX_BLOCK_SIZE, len = Math.min(BGZF_MAX_BLOCK_SIZE, length - from);
+                int start = p;
+                deflater.reset();
+                p = deflate(deflater, data, from, len, result, start + 18);
+                if (p - start + 8 > 0x10000) {
+                    // Incompressible data, storing it without compression
+                    Deflater store = new Deflater(Deflater.NO_COMPRESSION, true);
+                    try {
+                        p = deflate(store, data, from, len, result, start + 18);
+                    } finally {
+                        store.end();
+                    }
+                }
+                p = writeTrailer(result, p, data, from, len);
+                putGzipHeader(result, start, true, p - start - 1);
+                memberSizes[2 * m] = p - start;
+                memberSizes[2 * m + 1] = len;
+            }
+            return new CompressedBlock(result, p, memberSizes);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflates data into the result array starting from the specified position; returns position after the last
+     * written byte. Result array must have enough space for compressed data.
+     */
+    private static int deflate(Deflater deflater, byte[] data, int from, int length, byte[] result, int position) {
+        deflater.setInput(data, from, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (position == result.length)
+                throw new IllegalStateException("Buffer overflow.");
+            position += deflater.deflate(result, position, result.length - position);
+        }
+        return position;
+    }
+
+    private static int writeTrailer(byte[] result, int position, byte[] data, int from, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, from, length);
+        position = putInt(result, position, (int) crc.getValue());
+        return putInt(result, position, length);
+    }
+
+    private static int putGzipHeader(byte[] buffer, int position, boolean bgzf, int bsize) {
+        buffer[position++] = 0x1f;
+        buffer[position++] = (byte) 0x8b;
+        buffer[position++] = 8; // deflate
+        buffer[position++] = (byte) (bgzf ? 4 : 0); // FEXTRA
+        position = putInt(buffer, position, 0); // MTIME
+        buffer[position++] = 0; // XFL
+        buffer[position++] = (byte) 0xff; // OS - unknown
+        if (bgzf) {
+            buffer[position++] = 6; // XLEN
+            buffer[position++] = 0;
+            buffer[position++] = 'B';
+            buffer[position++] = 'C';
+            buffer[position++] = 2; // SLEN
+            buffer[position++] = 0;
+            buffer[position++] = (byte) bsize;
+            buffer[position++] = (byte) (bsize >>> 8);
+        }
+        return position;
+    }
+
+    private static int putInt(byte[] buffer, int position, int value) {
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 24);
+        return position;
+    }
+
+    private static int putLong(byte[] buffer, int position, long value) {
+        position = putInt(buffer, position, (int) value);
+        return putInt(buffer, position, (int) (value >>> 32));
+    }
+
+    private static final class CompressedBlock {
+        final byte[] data;
+        final int length;
+        /**
+         * (compressed size, uncompressed size) for each BGZF member
+         */
+        final int[] memberSizes;
+
+        CompressedBlock(byte[] data, int length, int[] memberSizes) {
+            this.data = data;
+            this.length = length;
+            this.memberSizes = memberSizes;
+        }
+    }
+}
@@ -37,4 +37,26 @@ public final class SequenceReadUtil {
         else
             return new MultiRead(sReads);
     }
+
+    /**
+     * Releases pooled buffers pinned by lazy reads (see {@link SingleReadLazy#release()}).
+     */
+    public static void release(SequenceRead read) {
+        for (int i = 0; i < read.numberOfReads(); i++) {
+            SingleRead sRead = read.getRead(i);
+            if (sRead instanceof SingleReadLazy)
+                ((SingleReadLazy) sRead).release();
+        }
+    }
+
+    /**
+     * Parses all lazy reads and releases pooled buffers pinned by them (see {@link SingleReadLazy#materialize()}).
+     */
+    public static void materialize(SequenceRead read) {
+        for (int i = 0; i < read.numberOfReads(); i++) {
+            SingleRead sRead = read.getRead(i);
+            if (sRead instanceof SingleReadLazy)
+                ((SingleReadLazy) sRead).materialize();
+        }
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.milaboratory.core.io.sequence;
 
+import com.milaboratory.core.io.sequence.fastq.FastqBufferPool;
 import com.milaboratory.core.io.sequence.fastq.QualityFormat;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.UnsafeFactory;
@@ -36,6 +37,11 @@ public final class SingleReadLazy implements SingleRead {
     final byte phredQualityOffset;
     NSequenceWithQuality sequenceWithQuality;
     String description;
+    /**
+     * Pooled buffer pinned by this read (null if buffer is not pooled or was already released)
+     */
+    FastqBufferPool.Slab slab;
+    boolean released;
 
     private SingleReadLazy(long id,
                            byte[] buffer,
@@ -45,7 +51,8 @@ public final class SingleReadLazy implements SingleRead {
                            short dataLength,
                            short descriptionLength,
                            boolean replaceWildcards,
-                           byte phredQualityOffset) {
+                           byte phredQualityOffset,
+                           FastqBufferPool.Slab slab) {
         this.id = id;
         this.buffer = buffer;
         this.descriptionFrom = descriptionFrom;
@@ -55,12 +62,13 @@ public final class SingleReadLazy implements SingleRead {
         this.descriptionLength = descriptionLength;
         this.replaceWildcards = replaceWildcards;
         this.phredQualityOffset = phredQualityOffset;
+        this.slab = slab;
     }
 
     private SingleReadLazy(long id, byte[] buffer, int descriptionFrom,
                            short sequenceOffset, short qualityOffset, short dataLength, short descriptionLength,
                            boolean replaceWildcards, byte phredQualityOffset, NSequenceWithQuality sequenceWithQuality,
-                           String description) {
+                           String description, FastqBufferPool.Slab slab, boolean released) {
         this.id = id;
         this.buffer = buffer;
         this.descriptionFrom = descriptionFrom;
@@ -72,15 +80,57 @@ public final class SingleReadLazy implements SingleRead {
         this.phredQualityOffset = phredQualityOffset;
         this.sequenceWithQuality = sequenceWithQuality;
         this.description = description;
+        this.slab = slab;
+        this.released = released;
     }
 
     public byte getQualityOffset() {
         return phredQualityOffset;
     }
 
+    /**
+     * Returns copy of this read with another id. Pinned buffer (if any) is transferred to the returned read, so only
+     * the returned read should be released.
+     */
     SingleReadLazy setReadId(long readId) {
-        return new SingleReadLazy(readId, buffer, descriptionFrom, sequenceOffset, qualityOffset,
-                dataLength, descriptionLength, replaceWildcards, phredQualityOffset, sequenceWithQuality, description);
+        SingleReadLazy result = new SingleReadLazy(readId, buffer, descriptionFrom, sequenceOffset, qualityOffset,
+                dataLength, descriptionLength, replaceWildcards, phredQualityOffset, sequenceWithQuality, description,
+                slab, released);
+        slab = null;
+        return result;
+    }
+
+    /**
+     * Parses all lazy fields and releases pinned pooled buffer. The read stays fully usable.
+     */
+    public void materialize() {
+        getData();
+        getDescription();
+        release0();
+    }
+
+    /**
+     * Releases pinned pooled buffer, so it can be reused for the next records. Fields that were not parsed before
+     * this call become unavailable. Does nothing if buffer is not pooled.
+     */
+    public void release() {
+        if (slab == null)
+            return;
+        release0();
+        released = true;
+    }
+
+    private void release0() {
+        FastqBufferPool.Slab s = slab;
+        if (s == null)
+            return;
+        slab = null;
+        s.release();
+    }
+
+    private void checkReleased() {
+        if (released)
+            throw new IllegalStateException("Read buffer is already released.");
     }
 
     @Override
@@ -98,10 +148,12 @@ public final class SingleReadLazy implements SingleRead {
     }
 
     private String createDescription() {
+        checkReleased();
         return new String(buffer, descriptionFrom, descriptionLength, Charset.defaultCharset());
     }
 
     private NSequenceWithQuality createNSequenceWithQuality() {
+        checkReleased();
         try {
             return UnsafeFactory.fastqParse(buffer, descriptionFrom + sequenceOffset,
                     descriptionFrom + qualityOffset, dataLength, getQualityOffset(), id, replaceWildcards);
@@ -142,12 +194,29 @@ public final class SingleReadLazy implements SingleRead {
                                         short dataLength,
                                         short descriptionLength,
                                         boolean replaceWildcards) {
+        return create(format, id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength, descriptionLength,
+                replaceWildcards, null);
+    }
+
+    /**
+     * Creates lazy read over a pooled buffer; the read takes ownership of one reference to the slab.
+     */
+    public static SingleReadLazy create(final QualityFormat format,
+                                        long id,
+                                        byte[] buffer,
+                                        int descriptionFrom,
+                                        short dataOffset,
+                                        short qualityOffset,
+                                        short dataLength,
+                                        short descriptionLength,
+                                        boolean replaceWildcards,
+                                        FastqBufferPool.Slab slab) {
         if (format == QualityFormat.Phred33)
             return new SingleReadLazy(id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
-                    descriptionLength, replaceWildcards, (byte) 33);
+                    descriptionLength, replaceWildcards, (byte) 33, slab);
         else if (format == QualityFormat.Phred64)
             return new SingleReadLazy(id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
-                    descriptionLength, replaceWildcards, (byte) 64);
+                    descriptionLength, replaceWildcards, (byte) 64, slab);
         throw new IllegalArgumentException("Unknown quality format.");
     }
 
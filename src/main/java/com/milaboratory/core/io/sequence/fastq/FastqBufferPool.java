@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reference-counted buffers (slabs) for lazy FASTQ reading.
+ *
+ * <p>In lazy mode {@link FastqRecordsReader} can not reuse its buffer, because created reads still reference it.
+ * With a pool each lazy read pins the slab it was parsed from, and the slab is returned to the pool after the reader
+ * moved on and all reads referencing it were released with {@link com.milaboratory.core.io.sequence.SingleReadLazy#release()}
+ * (or {@link com.milaboratory.core.io.sequence.SingleReadLazy#materialize()}). Reads that were never released are
+ * simply garbage collected together with their slab, so forgetting to release reads only reduces the pool efficiency.
+ *
+ * <p>Pool is thread-safe and may be shared by several readers with the same buffer size.
+ */
+public final class FastqBufferPool {
+    private final int slabSize;
+    private final ArrayBlockingQueue<Slab> free;
+    private final AtomicLong allocated = new AtomicLong(), reused = new AtomicLong();
+
+    /**
+     * @param slabSize  size of buffers; should be equal to the buffer size of readers using this pool
+     * @param maxPooled maximal number of free slabs kept in the pool
+     */
+    public FastqBufferPool(int slabSize, int maxPooled) {
+        if (slabSize <= 0 || maxPooled <= 0)
+            throw new IllegalArgumentException();
+        this.slabSize = slabSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public FastqBufferPool(int maxPooled) {
+        this(SingleFastqReader.DEFAULT_BUFFER_SIZE, maxPooled);
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Returns number of slabs allocated by this pool
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * Returns number of slabs taken from the pool instead of allocation
+     */
+    public long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * Returns number of free slabs currently in the pool
+     */
+    public int getFree() {
+        return free.size();
+    }
+
+    /**
+     * Takes slab from the pool (or allocates a new one) with reference count of one, owned by the caller.
+     *
+     * @param size required size; slabs of sizes different from {@link #getSlabSize()} are not pooled
+     */
+    Slab acquire(int size) {
+        if (size != slabSize)
+            return new Slab(new byte[size], null);
+        Slab slab = free.poll();
+        if (slab == null) {
+            allocated.incrementAndGet();
+            return new Slab(new byte[slabSize], this);
+        }
+        reused.incrementAndGet();
+        slab.refs.set(1);
+        return slab;
+    }
+
+    /**
+     * Reference-counted buffer.
+     */
+    public static final class Slab {
+        final byte[] data;
+        final FastqBufferPool pool;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Slab(byte[] data, FastqBufferPool pool) {
+            this.data = data;
+            this.pool = pool;
+        }
+
+        void retain() {
+            if (refs.getAndIncrement() <= 0)
+                throw new IllegalStateException("Slab is already released.");
+        }
+
+        /**
+         * Drops one reference; slab is returned to the pool after the last reference is dropped.
+         */
+        public void release() {
+            int r = refs.decrementAndGet();
+            if (r < 0)
+                throw new IllegalStateException("Slab is released more times than retained.");
+            if (r == 0 && pool != null)
+                pool.free.offer(this);
+        }
+    }
+}
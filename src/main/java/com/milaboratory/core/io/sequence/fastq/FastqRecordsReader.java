@@ -51,6 +51,14 @@ public final class FastqRecordsReader implements AutoCloseable {
      * values.
      */
     final boolean replaceWildcards;
+    /**
+     * Pool of buffers for lazy reads (may be null)
+     */
+    FastqBufferPool bufferPool;
+    /**
+     * Slab backing current buffer if buffer pool is used
+     */
+    FastqBufferPool.Slab slab;
 
     /**
      * See main constructor for parameters.
@@ -86,8 +94,19 @@ public final class FastqRecordsReader implements AutoCloseable {
         this.autoClose = autoClose;
     }
 
+    /**
+     * Sets pool of buffers used for lazy reads. Buffers allocated before this call are not pooled.
+     */
+    void setBufferPool(FastqBufferPool bufferPool) {
+        if (!lazyReads)
+            throw new IllegalStateException("Buffer pool can be used only with lazy reads.");
+        this.bufferPool = bufferPool;
+    }
+
     public SingleRead createRead(long id, QualityFormat format) {
-        if (lazyReads)
+        if (lazyReads) {
+            if (slab != null)
+                slab.retain();
             return SingleReadLazy.create(format,
                     id,
                     buffer,
@@ -96,8 +115,9 @@ public final class FastqRecordsReader implements AutoCloseable {
                     (short) (qualityBegin - descriptionBegin),
                     (short) (sequenceEnd - sequenceBegin),
                     (short) (sequenceBegin - descriptionBegin - 1),
-                    replaceWildcards);
-        else
+                    replaceWildcards,
+                    slab);
+        } else
             return new SingleReadImpl(id,
                     UnsafeFactory.fastqParse(buffer, sequenceBegin, qualityBegin,
                             sequenceEnd - sequenceBegin, format.getOffset(), id, replaceWildcards),
@@ -109,9 +129,15 @@ public final class FastqRecordsReader implements AutoCloseable {
         if (closed.get())
             return;
         byte[] newBuffer;
-        if (lazyReads)
-            newBuffer = new byte[size];//if lazy reads, we shall not overwrite buffer content!
-        else {
+        FastqBufferPool.Slab newSlab = null;
+        if (lazyReads) {
+            //if lazy reads, we shall not overwrite buffer content!
+            if (bufferPool != null) {
+                newSlab = bufferPool.acquire(size);
+                newBuffer = newSlab.data;
+            } else
+                newBuffer = new byte[size];
+        } else {
             if (buffer == null)
                 buffer = new byte[size];
             if (buffer.length != size) //needed after automatic quality format guessing to shrink buffer size
@@ -125,6 +151,9 @@ public final class FastqRecordsReader implements AutoCloseable {
         currentBufferSize = (readBytes == -1 ? 0 : readBytes) + currentBufferSize - pointer;
         pointer = 0;
         buffer = newBuffer;
+        if (slab != null) //reads created from the old slab still keep it
+            slab.release();
+        slab = newSlab;
         if (readBytes == -1 && autoClose)
             close();
     }
@@ -223,6 +252,11 @@ public final class FastqRecordsReader implements AutoCloseable {
         if (!closed.compareAndSet(false, true))
             return;
 
+        if (slab != null) {
+            slab.release();
+            slab = null;
+        }
+
         //is synchronized with itself and _next calls,
         //so no synchronization on inner reader is needed
         try {
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import java.io.File;
+
+/**
+ * Range of FASTQ file produced by {@link FastqSplitter}. For uncompressed files {@link #getStart()} and {@link
+ * #getEnd()} are byte offsets, for BGZF files - virtual offsets.
+ */
+public final class FastqSplit {
+    final File file;
+    final boolean bgzf;
+    final int index;
+    final long start, end;
+    /**
+     * Size of the file at the moment of splitting, used to estimate progress
+     */
+    final long fileSize;
+
+    FastqSplit(File file, boolean bgzf, int index, long start, long end, long fileSize) {
+        this.file = file;
+        this.bgzf = bgzf;
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.fileSize = fileSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isBgzf() {
+        return bgzf;
+    }
+
+    /**
+     * Returns index of this range in the file
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns end offset of the range (exclusive); {@link Long#MAX_VALUE} for the last range of BGZF file
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns approximate size of this range on disk
+     */
+    public long getCompressedSize() {
+        return compressedEnd() - compressedStart();
+    }
+
+    long compressedStart() {
+        return bgzf ? start >>> 16 : start;
+    }
+
+    long compressedEnd() {
+        return bgzf ? (end == Long.MAX_VALUE ? fileSize : end >>> 16) : end;
+    }
+
+    @Override
+    public String toString() {
+        return "FastqSplit{" + file.getName() + ", #" + index + ", " + start + "-" + end + "}";
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.BgzfInputStream;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of a single {@link FastqSplit}. Each reader opens its own channel, so readers of different ranges of the
+ * same file can be used from different threads without any synchronization between them.
+ *
+ * <p>Read ids are numbered from zero inside each range, so they are not equal to the global record numbers of the
+ * file; {@code (split.getIndex(), read.getId())} pair uniquely identifies the read.
+ */
+public final class FastqSplitReader implements SingleReader, CanReportProgress {
+    private final FastqSplit split;
+    private final QualityFormat format;
+    private final FileChannel channel;
+    private final RangeInputStream rangeStream;
+    private final FastqRecordsReader recordsReader;
+    private long idCounter;
+    private volatile boolean finished = false;
+
+    public FastqSplitReader(FastqSplit split) throws IOException {
+        this(split, SingleFastqReader.DEFAULT_QUALITY_FORMAT, SingleFastqReader.DEFAULT_BUFFER_SIZE, false, true);
+    }
+
+    /**
+     * @param split            range to read
+     * @param format           quality format (no automatic guessing is performed for splits)
+     * @param bufferSize       buffer size
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set
+     *                         to a minimum possible values
+     * @param lazyReads        allow lazy initialization of single reads
+     */
+    public FastqSplitReader(FastqSplit split, QualityFormat format, int bufferSize,
+                            boolean replaceWildcards, boolean lazyReads) throws IOException {
+        this.split = split;
+        this.format = format;
+        this.channel = FileChannel.open(split.file.toPath(), StandardOpenOption.READ);
+        InputStream data = split.bgzf
+                ? new BgzfInputStream(channel, split.start, split.end)
+                : new PlainRangeStream(channel, split.start, split.end);
+        this.rangeStream = new RangeInputStream(data);
+        this.recordsReader = new FastqRecordsReader(lazyReads, rangeStream, bufferSize, replaceWildcards, true);
+    }
+
+    /**
+     * Makes this reader take buffers from the specified pool (see {@link FastqBufferPool}). Applicable only to
+     * readers of lazy reads.
+     *
+     * @param bufferPool buffer pool
+     * @return this
+     */
+    public synchronized FastqSplitReader setBufferPool(FastqBufferPool bufferPool) {
+        recordsReader.setBufferPool(bufferPool);
+        return this;
+    }
+
+    public FastqSplit getSplit() {
+        return split;
+    }
+
+    @Override
+    public double getProgress() {
+        long size = split.getCompressedSize();
+        if (size == 0 || isFinished())
+            return 1.0;
+        return Math.min(1.0, 1.0 * (rangeStream.compressedPosition() - split.compressedStart()) / size);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished || recordsReader.closed.get();
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        if (recordsReader.closed.get())
+            return null;
+
+        try {
+            if (!recordsReader.nextRecord(true)) {
+                finished = true;
+                return null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("While reading fastq record with id=" + idCounter +
+                    " in " + split, e);
+        }
+        return recordsReader.createRead(idCounter++, format);
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return idCounter;
+    }
+
+    @Override
+    public void close() {
+        recordsReader.close();
+    }
+
+    /**
+     * Closes the underlying channel together with the data stream and tracks position.
+     */
+    private final class RangeInputStream extends InputStream {
+        final InputStream inner;
+
+        RangeInputStream(InputStream inner) {
+            this.inner = inner;
+        }
+
+        long compressedPosition() {
+            return inner instanceof BgzfInputStream
+                    ? ((BgzfInputStream) inner).getBlockAddress()
+                    : ((PlainRangeStream) inner).position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return inner.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return inner.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                inner.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static final class PlainRangeStream extends InputStream {
+        final FileChannel channel;
+        final long end;
+        volatile long position;
+
+        PlainRangeStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end)
+                return -1;
+            int r = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (r > 0)
+                position += r;
+            return r;
+        }
+    }
+}
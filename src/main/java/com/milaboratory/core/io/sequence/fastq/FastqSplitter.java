@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.BgzfInputStream;
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Divides uncompressed or BGZF-compressed FASTQ file into byte ranges that can be read independently and in parallel
+ * with {@link FastqSplitReader} without building a file index.
+ *
+ * <p>Range boundaries are first placed uniformly over the (compressed) file and then moved forward to the nearest
+ * record start, detected with the standard four-line heuristic: line starting with '@', sequence line, line starting
+ * with '+', quality line of the same length as the sequence, followed by the next '@' line or the end of file.
+ * Concatenation of records from all ranges is exactly the content of the file.
+ */
+public final class FastqSplitter {
+    private static final int INITIAL_WINDOW = 1 << 16;
+    private static final int MAX_WINDOW = 1 << 26;
+
+    private FastqSplitter() {
+    }
+
+    /**
+     * Splits file into at most {@code parts} ranges (some nominal ranges may collapse if records are large compared
+     * to the range size).
+     *
+     * @param file  uncompressed or BGZF-compressed FASTQ file
+     * @param parts number of parts
+     * @return list of non-empty ranges covering the whole file
+     * @throws IllegalArgumentException if file is compressed with non-splittable compression
+     */
+    public static List<FastqSplit> split(File file, int parts) throws IOException {
+        if (parts <= 0)
+            throw new IllegalArgumentException("parts <= 0");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            boolean bgzf = BgzfInputStream.isBgzf(channel);
+            if (!bgzf && isGzip(channel))
+                throw new IllegalArgumentException("Only BGZF compressed files can be split: " + file);
+            long size = channel.size();
+
+            // Boundaries (plain offsets or virtual offsets for BGZF), first is the file start
+            List<Long> boundaries = new ArrayList<>();
+            boundaries.add(0L);
+            long last = 0;
+            for (int i = 1; i < parts; i++) {
+                long nominal = size * i / parts;
+                if (nominal == 0)
+                    continue;
+                long boundary = bgzf ? resyncBgzf(channel, nominal) : resyncPlain(channel, nominal);
+                if (boundary <= last)
+                    continue;
+                if (boundary == Long.MAX_VALUE)
+                    break;
+                boundaries.add(boundary);
+                last = boundary;
+            }
+
+            List<FastqSplit> result = new ArrayList<>(boundaries.size());
+            for (int i = 0; i < boundaries.size(); i++) {
+                long start = boundaries.get(i);
+                long end = i == boundaries.size() - 1 ? (bgzf ? Long.MAX_VALUE : size) : boundaries.get(i + 1);
+                result.add(new FastqSplit(file, bgzf, i, start, end, size));
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    private static boolean isGzip(FileChannel channel) throws IOException {
+        if (channel.size() < 2)
+            return false;
+        ByteBuffer header = ByteBuffer.allocate(2);
+        channel.read(header, 0);
+        return header.get(0) == 0x1f && header.get(1) == (byte) 0x8b;
+    }
+
+    /**
+     * Returns offset of the first record starting after the nominal position or Long.MAX_VALUE if there are no
+     * records after the position.
+     */
+    private static long resyncPlain(FileChannel channel, long nominal) throws IOException {
+        long size = channel.size();
+        // Window starts one byte before the nominal position, so that record starting exactly at the nominal position
+        // can be detected by the preceding line break
+        long from = nominal - 1;
+        for (int window = INITIAL_WINDOW; ; window *= 2) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(window, size - from));
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, from + buffer.position()) == -1)
+                    break;
+            boolean atEof = from + buffer.position() == size;
+            int r = findRecordStart(buffer.array(), buffer.position(), atEof);
+            if (r >= 0)
+                return r == buffer.position() ? Long.MAX_VALUE : from + r;
+            if (window >= MAX_WINDOW)
+                throw new IllegalFileFormatException("Can't find FASTQ record boundary after position " + nominal);
+        }
+    }
+
+    /**
+     * Returns virtual offset of the first record starting in the first BGZF block at or after the nominal position,
+     * or Long.MAX_VALUE if there are no records after the position.
+     */
+    private static long resyncBgzf(FileChannel channel, long nominal) throws IOException {
+        long blockAddress = BgzfInputStream.findBlock(channel, nominal);
+        if (blockAddress >= channel.size())
+            return Long.MAX_VALUE;
+        long startVirtual = blockAddress << 16;
+        for (int window = INITIAL_WINDOW; ; window *= 2) {
+            byte[] buffer = new byte[window];
+            int length;
+            boolean atEof;
+            try (BgzfInputStream is = new BgzfInputStream(channel, startVirtual, Long.MAX_VALUE)) {
+                length = readFully(is, buffer);
+                atEof = length < buffer.length || is.read() == -1;
+            }
+            int r = findRecordStart(buffer, length, atEof);
+            if (r >= 0) {
+                if (r == length)
+                    return Long.MAX_VALUE;
+                try (BgzfInputStream is = new BgzfInputStream(channel, startVirtual, Long.MAX_VALUE)) {
+                    if (is.skip(r) != r)
+                        throw new IOException();
+                    // normalize offset pointing to the end of block
+                    if (is.available() == 0 && is.read() != -1)
+                        return is.getVirtualOffset() - 1;
+                    return is.getVirtualOffset();
+                }
+            }
+            if (window >= MAX_WINDOW)
+                throw new IllegalFileFormatException("Can't find FASTQ record boundary after position " + nominal);
+        }
+    }
+
+    private static int readFully(InputStream is, byte[] buffer) throws IOException {
+        int total = 0, r;
+        while (total < buffer.length && (r = is.read(buffer, total, buffer.length - total)) != -1)
+            total += r;
+        return total;
+    }
+
+    /**
+     * Searches for the first record start preceded by a line break (so position 0 is never returned).
+     *
+     * @param buffer data
+     * @param length data length
+     * @param atEof  whether data ends at the end of file
+     * @return position of the record start; {@code length} if data contains no records and ends at the end of file;
+     * -1 if more data is needed to make the decision
+     */
+    static int findRecordStart(byte[] buffer, int length, boolean atEof) {
+        for (int i = 1; i < length; i++) {
+            if (buffer[i - 1] != '\n' || buffer[i] != '@')
+                continue;
+            int e1 = lineEnd(buffer, i, length, atEof);
+            if (e1 < 0)
+                return -1;
+            int e2 = lineEnd(buffer, e1 + 1, length, atEof);
+            if (e2 < 0)
+                return -1;
+            if (e2 + 1 >= length) {
+                if (atEof)
+                    continue;
+                return -1;
+            }
+            if (buffer[e2 + 1] != '+')
+                continue;
+            int e3 = lineEnd(buffer, e2 + 1, length, atEof);
+            if (e3 < 0)
+                return -1;
+            int e4 = lineEnd(buffer, e3 + 1, length, atEof);
+            if (e4 < 0)
+                return -1;
+            if (e4 - e3 != e2 - e1)
+                continue;
+            if (e4 + 1 >= length) {
+                if (atEof)
+                    return i;
+                return -1;
+            }
+            if (buffer[e4 + 1] == '@')
+                return i;
+        }
+        return atEof ? length : -1;
+    }
+
+    private static int lineEnd(byte[] buffer, int from, int length, boolean atEof) {
+        for (int i = from; i < length; i++)
+            if (buffer[i] == '\n')
+                return i;
+        return atEof ? length : -1;
+    }
+}
@@ -39,6 +39,12 @@ public final class PairedFastqWriter implements PairedSequenceWriter {
                 new SingleFastqWriter(new FileOutputStream(file2), qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE));
     }
 
+    public PairedFastqWriter(String file1, String file2, QualityFormat qualityFormat, CompressionType ct,
+                             int compressionThreads) throws IOException {
+        this(new SingleFastqWriter(file1, qualityFormat, ct, compressionThreads),
+                new SingleFastqWriter(file2, qualityFormat, ct, compressionThreads));
+    }
+
     public PairedFastqWriter(SingleFastqWriter writer1, SingleFastqWriter writer2) {
         this.writers = new SingleFastqWriter[]{writer1, writer2};
     }
@@ -275,6 +275,18 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
         return this;
     }
 
+    /**
+     * Makes this reader take buffers from the specified pool, so buffers are reused after all lazy reads created from
+     * them are released (see {@link FastqBufferPool}). Applicable only to readers of lazy reads.
+     *
+     * @param bufferPool buffer pool
+     * @return this
+     */
+    public synchronized SingleFastqReader setBufferPool(FastqBufferPool bufferPool) {
+        recordsReader.setBufferPool(bufferPool);
+        return this;
+    }
+
     public QualityFormat getQualityFormat() {
         assert format != null;
         return format;
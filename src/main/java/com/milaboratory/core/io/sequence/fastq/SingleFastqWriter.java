@@ -16,6 +16,7 @@
 package com.milaboratory.core.io.sequence.fastq;
 
 import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.ParallelGzipOutputStream;
 import com.milaboratory.core.io.sequence.SingleRead;
 import com.milaboratory.core.io.sequence.SingleSequenceWriter;
 import com.milaboratory.core.sequence.NucleotideAlphabet;
@@ -54,12 +55,35 @@ public final class SingleFastqWriter implements SingleSequenceWriter {
         this(new FileOutputStream(fileName), qualityFormat, ct, DEFAULT_BUFFER_SIZE);
     }
 
+    public SingleFastqWriter(String fileName, QualityFormat qualityFormat, CompressionType ct, int compressionThreads) throws IOException {
+        this(new FileOutputStream(fileName), qualityFormat, ct, DEFAULT_BUFFER_SIZE, compressionThreads);
+    }
+
     public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct) throws IOException {
         this(outputStream, qualityFormat, ct, DEFAULT_BUFFER_SIZE);
     }
 
     public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize) throws IOException {
-        this.outputStream = ct.createOutputStream(outputStream, bufferSize / 2);
+        this(outputStream, qualityFormat, ct, bufferSize, 1);
+    }
+
+    /**
+     * Creates writer.
+     *
+     * @param outputStream       output stream
+     * @param qualityFormat      quality format
+     * @param ct                 compression type
+     * @param bufferSize         size of formatting buffer
+     * @param compressionThreads number of threads used for gzip compression (0 - number of available processors); if
+     *                           not 1 and compression type is {@link CompressionType#GZIP}, output is compressed in
+     *                           parallel as a sequence of independent gzip members (see {@link
+     *                           ParallelGzipOutputStream})
+     */
+    public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize,
+                             int compressionThreads) throws IOException {
+        this.outputStream = ct == CompressionType.GZIP && compressionThreads != 1
+                ? new ParallelGzipOutputStream(outputStream, compressionThreads)
+                : ct.createOutputStream(outputStream, bufferSize / 2);
         this.qualityFormat = qualityFormat;
         this.buffer = new byte[bufferSize];
     }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.mutations;
+
+import com.milaboratory.core.Range;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe coverage accumulator. Coverage is stored as a set of difference arrays (stripes), so addition of a
+ * constant delta to a range takes O(1) time. Each thread adds values to one of the stripes (selected by thread id),
+ * so concurrent aggregation from several threads rarely contends on the same lock. Stripes are merged on read; merged
+ * coverage is cached until the next modification.
+ */
+public final class ConcurrentCoverageCounter {
+    final int refFrom, refTo;
+    final long[][] stripes;
+    final AtomicLong modifications = new AtomicLong();
+    private volatile Snapshot snapshot = null;
+
+    public ConcurrentCoverageCounter(Range seqRange) {
+        this(seqRange.getFrom(), seqRange.getTo());
+    }
+
+    public ConcurrentCoverageCounter(int refFrom, int refTo) {
+        this(refFrom, refTo, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentCoverageCounter(int refFrom, int refTo, int stripes) {
+        if (stripes <= 0)
+            throw new IllegalArgumentException("Wrong number of stripes: " + stripes);
+        this.refFrom = refFrom;
+        this.refTo = refTo;
+        this.stripes = new long[stripes][refTo - refFrom + 1];
+    }
+
+    private long[] stripe() {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < refFrom || to > refTo)
+            throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Adds constant delta to all positions of the range, O(1).
+     */
+    public void aggregate(final Range r, final long delta) {
+        final int from = r.getFrom(), to = r.getTo();
+        checkRange(from, to);
+        final long[] stripe = stripe();
+        synchronized (stripe) {
+            stripe[from - refFrom] += delta;
+            stripe[to - refFrom] -= delta;
+        }
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * Adds position-dependent delta to all positions of the range, O(length of range).
+     */
+    public void aggregate(final Range r, final CoverageCounter.Provider provider) {
+        final int from = r.getFrom(), to = r.getTo();
+        checkRange(from, to);
+        if (from == to)
+            return;
+        final long[] stripe = stripe();
+        synchronized (stripe) {
+            long previous = 0;
+            for (int i = from; i < to; ++i) {
+                long delta = provider.delta(i);
+                stripe[i - refFrom] += delta - previous;
+                previous = delta;
+            }
+            stripe[to - refFrom] -= previous;
+        }
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * Returns coverage of the position (absolute position in reference sequence)
+     */
+    public long count(int position) {
+        if (position < refFrom || position >= refTo)
+            throw new IndexOutOfBoundsException();
+        return getCoverage()[position - refFrom];
+    }
+
+    /**
+     * Returns merged coverage for all positions from refFrom to refTo. Returned array must not be modified.
+     */
+    public long[] getCoverage() {
+        Snapshot s = snapshot;
+        long mod = modifications.get();
+        if (s != null && s.modifications == mod)
+            return s.coverage;
+
+        long[] coverage = new long[refTo - refFrom];
+        for (long[] stripe : stripes)
+            synchronized (stripe) {
+                for (int i = 0; i < coverage.length; i++)
+                    coverage[i] += stripe[i];
+            }
+        for (int i = 1; i < coverage.length; i++)
+            coverage[i] += coverage[i - 1];
+
+        snapshot = new Snapshot(mod, coverage);
+        return coverage;
+    }
+
+    private static final class Snapshot {
+        final long modifications;
+        final long[] coverage;
+
+        Snapshot(long modifications, long[] coverage) {
+            this.modifications = modifications;
+            this.coverage = coverage;
+        }
+    }
+}
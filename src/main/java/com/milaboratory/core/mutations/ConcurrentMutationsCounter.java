@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.mutations;
+
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import gnu.trove.iterator.TIntLongIterator;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe version of {@link MutationsCounter}. Single mutations (the vast majority of events) are counted by their
+ * primitive int codes in a set of independently locked primitive hash maps (shards), selected by the hash of the
+ * mutation code, so concurrent workers rarely contend for the same lock. Long inserts are rare and are accumulated in
+ * a separate synchronized counter.
+ *
+ * <p>Use {@link #snapshot()} to get a merged {@link MutationsCounter} or {@link #build(Alphabet,
+ * MutationsCounter.Filter)} directly.</p>
+ */
+public final class ConcurrentMutationsCounter {
+    final TIntLongHashMap[] shards;
+    final int mask;
+    /**
+     * Counter for long inserts (guarded by itself)
+     */
+    final MutationsCounter longInserts = new MutationsCounter();
+
+    public ConcurrentMutationsCounter() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates counter.
+     *
+     * @param shards minimal number of shards (rounded up to the power of two)
+     */
+    public ConcurrentMutationsCounter(int shards) {
+        if (shards <= 0)
+            throw new IllegalArgumentException("Wrong number of shards: " + shards);
+        int size = Integer.highestOneBit(shards);
+        if (size < shards)
+            size <<= 1;
+        this.shards = new TIntLongHashMap[size];
+        for (int i = 0; i < size; i++)
+            this.shards[i] = new TIntLongHashMap();
+        this.mask = size - 1;
+    }
+
+    public void adjust(Mutations<?> mutations, int delta) {
+        MutationsEnumerator enumerator = new MutationsEnumerator(mutations);
+        while (enumerator.next())
+            adjust(mutations, enumerator, delta);
+    }
+
+    public void adjust(Mutations<?> mutations, MutationsEnumerator enumerator, int delta) {
+        if (enumerator.getLength() == 1)
+            adjust(mutations.mutations[enumerator.getOffset()], delta);
+        else
+            synchronized (longInserts) {
+                longInserts.adjust(mutations.mutations, enumerator.getOffset(), enumerator.getLength(), delta);
+            }
+    }
+
+    /**
+     * Adjusts count of single mutation.
+     *
+     * @param mutation mutation code
+     * @param delta    delta
+     */
+    public void adjust(int mutation, int delta) {
+        TIntLongHashMap shard = shards[shard(mutation)];
+        synchronized (shard) {
+            shard.adjustOrPutValue(mutation, delta, delta);
+        }
+    }
+
+    /**
+     * Returns current count of single mutation
+     */
+    public long count(int mutation) {
+        TIntLongHashMap shard = shards[shard(mutation)];
+        synchronized (shard) {
+            return shard.get(mutation);
+        }
+    }
+
+    private int shard(int mutation) {
+        int h = mutation * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Merges all shards into a single (non thread-safe) counter
+     */
+    public MutationsCounter snapshot() {
+        MutationsCounter result = new MutationsCounter();
+        for (TIntLongHashMap shard : shards)
+            synchronized (shard) {
+                TIntLongIterator it = shard.iterator();
+                while (it.hasNext()) {
+                    it.advance();
+                    result.counter.adjustOrPutValue(it.key(), it.value(), it.value());
+                }
+            }
+
+        List<int[]> inserts = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        synchronized (longInserts) {
+            if (longInserts.insertMapping != null)
+                for (int[] insert : longInserts.insertMapping.keySet()) {
+                    inserts.add(insert);
+                    counts.add(longInserts.counter.get(longInserts.insertMapping.get(insert)));
+                }
+        }
+        for (int i = 0; i < inserts.size(); i++) {
+            int[] insert = inserts.get(i);
+            long count = counts.get(i);
+            // MutationsCounter.adjust accepts int deltas
+            while (count != 0) {
+                int delta = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, count));
+                result.adjust(insert, 0, insert.length, delta);
+                count -= delta;
+            }
+        }
+        return result;
+    }
+
+    public <S extends Sequence<S>> Mutations<S> build(Alphabet<S> alphabet, MutationsCounter.Filter filter) {
+        return snapshot().build(alphabet, filter);
+    }
+}
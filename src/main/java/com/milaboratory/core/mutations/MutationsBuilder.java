@@ -105,6 +105,25 @@ public final class MutationsBuilder<S extends Sequence<S>> {
         mutations = null;
         size = -1;
 
+        return create(m);
+    }
+
+    /**
+     * Creates mutations object from the current content and clears this builder, keeping internal buffer for reuse.
+     *
+     * @return mutations
+     */
+    public Mutations<S> createAndClear() {
+        if (size == -1)
+            throw new IllegalStateException("Destroyed.");
+
+        final int[] m = mutations == null ? new int[0] : Arrays.copyOf(mutations, size);
+        size = 0;
+
+        return create(m);
+    }
+
+    private Mutations<S> create(int[] m) {
         if (reversed)
             ArraysUtils.reverse(m);
 
@@ -118,6 +137,15 @@ public final class MutationsBuilder<S extends Sequence<S>> {
         return new Mutations<>(alphabet, m, true);
     }
 
+    /**
+     * Removes all mutations from this builder, keeping internal buffer for reuse.
+     */
+    public void clear() {
+        if (size == -1)
+            throw new IllegalStateException("Destroyed.");
+        size = 0;
+    }
+
     public MutationsBuilder<S> append(Mutations<S> other) {
         append(other, 0, other.size());
         return this;
@@ -103,4 +103,94 @@ public final class GeneticCode {
             dest[i + offsetInDest] = basicCode[triplet];
         }
     }
+
+    /**
+     * Returns length of amino acid sequence obtained by translation of the specified frame.
+     *
+     * @param ntLength length of nucleotide sequence
+     * @param frame    frame (0, 1 or 2)
+     * @return number of complete codons in the frame
+     */
+    public static int translatedLength(int ntLength, int frame) {
+        return Math.max(0, (ntLength - frame) / 3);
+    }
+
+    /**
+     * Translates all three forward frames of the sequence in a single pass. Amino acid codes of frame {@code f}
+     * (translation started from nucleotide {@code f}) are written to {@code dest[f]} starting from index 0; each
+     * array must have at least {@link #translatedLength(int, int)} elements.
+     *
+     * @param sequence  nucleotide sequence
+     * @param dest      three destination arrays
+     * @param firstStop if not null, index of the first stop codon in each frame (or -1) is written to this array
+     * @return bit mask of frames without stop codons (bit f is set if frame f contains no stop codons)
+     */
+    public static int translateForwardFrames(NucleotideSequence sequence, byte[][] dest, int[] firstStop) {
+        return translateFrames(sequence, dest, firstStop, false);
+    }
+
+    /**
+     * Translates all six frames of the sequence in a single pass. Forward frames are written to {@code dest[0..2]}
+     * (see {@link #translateForwardFrames(NucleotideSequence, byte[][], int[])}), frames of the reverse complement
+     * sequence are written to {@code dest[3..5]} ({@code dest[3 + f]} contains translation of the reverse complement
+     * sequence started from its nucleotide {@code f}).
+     *
+     * @param sequence  nucleotide sequence
+     * @param dest      six destination arrays
+     * @param firstStop if not null, index of the first stop codon in each frame (or -1) is written to this array
+     * @return bit mask of frames without stop codons (bit f is set if frame f contains no stop codons)
+     */
+    public static int translateSixFrames(NucleotideSequence sequence, byte[][] dest, int[] firstStop) {
+        return translateFrames(sequence, dest, firstStop, true);
+    }
+
+    private static int translateFrames(NucleotideSequence sequence, byte[][] dest, int[] firstStop,
+                                       boolean reverse) {
+        final byte[] data = sequence.data;
+        final int n = data.length, frames = reverse ? 6 : 3;
+        if (dest.length < frames)
+            throw new IllegalArgumentException("Not enough destination arrays.");
+        for (int f = 0; f < frames; f++)
+            if (dest[f].length < translatedLength(n, f % 3))
+                throw new IllegalArgumentException("Destination array for frame " + f + " is too short.");
+
+        // Reverse complement frames are filled from the end, so for them the last found stop codon is the first one
+        int[] stops = firstStop == null ? new int[frames] : firstStop;
+        Arrays.fill(stops, 0, frames, -1);
+
+        int triplet = 0, rcTriplet = 0;
+        byte code, aa;
+        for (int i = 0; i < n; ++i) {
+            code = data[i];
+            triplet = ((triplet << 4) | code) & 0xFFF;
+            if (reverse)
+                rcTriplet = (rcTriplet >>> 4) | (NucleotideAlphabet.complementCode(code) << 8);
+            if (i < 2)
+                continue;
+
+            // Forward codon starting at position i - 2
+            int start = i - 2, frame = start % 3, index = start / 3;
+            aa = wildcardCode[triplet];
+            dest[frame][index] = aa;
+            if (aa == AminoAcidAlphabet.STOP && stops[frame] == -1)
+                stops[frame] = index;
+
+            if (reverse) {
+                // Reverse complement codon starting at position n - 1 - i of the reverse complement sequence
+                start = n - 1 - i;
+                frame = start % 3;
+                index = start / 3;
+                aa = wildcardCode[rcTriplet];
+                dest[3 + frame][index] = aa;
+                if (aa == AminoAcidAlphabet.STOP)
+                    stops[3 + frame] = index;
+            }
+        }
+
+        int open = 0;
+        for (int f = 0; f < frames; f++)
+            if (stops[f] == -1)
+                open |= 1 << f;
+        return open;
+    }
 }
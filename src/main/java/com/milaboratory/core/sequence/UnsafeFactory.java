@@ -27,6 +27,13 @@ public final class UnsafeFactory {
     private UnsafeFactory() {
     }
 
+    /**
+     * Returns internal array of quality values (must not be modified).
+     */
+    public static byte[] getQualityData(SequenceQuality quality) {
+        return quality.data;
+    }
+
     public static NSequenceWithQuality fastqParse(
             byte[] buffer,
             int fromSequence,
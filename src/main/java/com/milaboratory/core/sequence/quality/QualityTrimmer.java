@@ -17,6 +17,7 @@ package com.milaboratory.core.sequence.quality;
 
 import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.UnsafeFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -52,7 +53,34 @@ public final class QualityTrimmer {
                            int leftmostPosition, int rightmostPosition, int scanIncrement,
                            boolean searchForRise,
                            float averageQualityThreshold, int windowSize) {
-        if (quality.size() == 0)
+        return trim(UnsafeFactory.getQualityData(quality), 0, quality.size(), 0,
+                leftmostPosition, rightmostPosition, scanIncrement, searchForRise, averageQualityThreshold, windowSize);
+    }
+
+    /**
+     * Core trimming method operating on raw quality values stored in a byte array (e.g. a buffer with encoded FASTQ
+     * records). Quality value of position {@code i} is {@code data[offset + i] - valueOffset}.
+     *
+     * @param data                    array with quality values
+     * @param offset                  offset of the first quality value in the array
+     * @param size                    number of quality values
+     * @param valueOffset             value subtracted from array elements to get quality values (e.g. 33 for encoded
+     *                                Phred33 qualities, 0 for raw values)
+     * @param leftmostPosition        scanning region from, inclusive
+     * @param rightmostPosition       scanning region to, exclusive
+     * @param scanIncrement           +1 to scan to the right; -1 to scan to the left
+     * @param searchForRise           search mode, see {@link #trim(SequenceQuality, int, int, int, boolean, float,
+     *                                int)}
+     * @param averageQualityThreshold target minimal average quality
+     * @param windowSize              scanning window size
+     * @return trimming position if search was successful (last position of the region) or
+     * (-2 - trimming position) if search was unsuccessful
+     */
+    public static int trim(byte[] data, int offset, int size, int valueOffset,
+                           int leftmostPosition, int rightmostPosition, int scanIncrement,
+                           boolean searchForRise,
+                           float averageQualityThreshold, int windowSize) {
+        if (size == 0)
             return scanIncrement == 1 ? -1 : 0;
 
         if (scanIncrement != -1 && scanIncrement != 1)
@@ -77,7 +105,7 @@ public final class QualityTrimmer {
 
         // Calculating initial sum quality value
         for (int i = 0; i < windowSize; i++) {
-            sum += quality.value(position);
+            sum += (data[offset + position] - valueOffset);
             position += scanIncrement;
         }
 
@@ -87,18 +115,18 @@ public final class QualityTrimmer {
             for (int i = 0; i < windowSize; i++) {
                 windowEndPosition -= scanIncrement;
                 position -= scanIncrement;
-                if (windowEndPosition < 0 || windowEndPosition >= quality.size()) {// Failed to find window meeting the criteria #1
+                if (windowEndPosition < 0 || windowEndPosition >= size) {// Failed to find window meeting the criteria #1
                     // position = (scanIncrement == 1 ? leftmostPosition : rightmostPosition - 1) - scanIncrement;
                     while (position >= leftmostPosition && position < rightmostPosition
-                            && searchForRise ^ (quality.value(position) < averageQualityThreshold))
+                            && searchForRise ^ ((data[offset + position] - valueOffset) < averageQualityThreshold))
                         position -= scanIncrement;
                     return position;
                 }
-                sum += quality.value(windowEndPosition);
-                sum -= quality.value(position);
+                sum += (data[offset + windowEndPosition] - valueOffset);
+                sum -= (data[offset + position] - valueOffset);
                 if (searchForRise ^ (sum >= sumThreshold)) {
                     // Final pass for criteria #2
-                    while ((searchForRise ^ (quality.value(position) < averageQualityThreshold))
+                    while ((searchForRise ^ ((data[offset + position] - valueOffset) < averageQualityThreshold))
                             && i < windowSize) {
                         position -= scanIncrement;
                         ++i;
@@ -113,8 +141,8 @@ public final class QualityTrimmer {
         while ((searchForRise ^ (sum >= sumThreshold)) && // if searchForRise == true, the loop will be terminated on the first position where sum >= sumThreshold
                 position >= leftmostPosition &&
                 position < rightmostPosition) {
-            sum -= quality.value(windowEndPosition);
-            sum += quality.value(position);
+            sum -= (data[offset + windowEndPosition] - valueOffset);
+            sum += (data[offset + position] - valueOffset);
             windowEndPosition += scanIncrement;
             position += scanIncrement;
         }
@@ -127,7 +155,7 @@ public final class QualityTrimmer {
             position -= scanIncrement;
         } while (position >= leftmostPosition &&
                 position < rightmostPosition &&
-                (searchForRise ^ (quality.value(position) < averageQualityThreshold)));
+                (searchForRise ^ ((data[offset + position] - valueOffset) < averageQualityThreshold)));
 
         // assert scanIncrement == 1 ? position >= windowEndPosition : position <= windowEndPosition;
 
@@ -349,4 +377,114 @@ public final class QualityTrimmer {
 
         return bestRange;
     }
+
+    /**
+     * Batch version of {@link #trim(SequenceQuality, QualityTrimmerParameters)}, operating on quality strings stored
+     * in a single byte array (e.g. the buffer of FASTQ reader). No objects are allocated.
+     *
+     * @param buffer      array with quality values
+     * @param offsets     offsets of quality strings in the buffer
+     * @param lengths     lengths of quality strings
+     * @param count       number of quality strings to process
+     * @param valueOffset value subtracted from buffer elements to get quality values (e.g. 33 for Phred33 encoded
+     *                    qualities, 0 for raw values)
+     * @param parameters  trimming parameters
+     * @param result      array of size at least {@code 2 * count}; from (inclusive) and to (exclusive) of the trimmed
+     *                    range of i-th quality string are written to {@code result[2 * i]} and {@code result[2 * i +
+     *                    1]}, or -1 to both if the whole sequence should be trimmed
+     */
+    public static void trim(byte[] buffer, int[] offsets, int[] lengths, int count, int valueOffset,
+                            QualityTrimmerParameters parameters, int[] result) {
+        for (int i = 0; i < count; i++)
+            trim(buffer, offsets[i], lengths[i], valueOffset, parameters, result, 2 * i);
+    }
+
+    /**
+     * Batch version of {@link #bestIsland(SequenceQuality, QualityTrimmerParameters)}, operating on quality strings
+     * stored in a single byte array (e.g. the buffer of FASTQ reader). No objects are allocated.
+     *
+     * @param buffer      array with quality values
+     * @param offsets     offsets of quality strings in the buffer
+     * @param lengths     lengths of quality strings
+     * @param count       number of quality strings to process
+     * @param valueOffset value subtracted from buffer elements to get quality values (e.g. 33 for Phred33 encoded
+     *                    qualities, 0 for raw values)
+     * @param parameters  trimming parameters
+     * @param result      array of size at least {@code 2 * count}; from (inclusive) and to (exclusive) of the best
+     *                    island of i-th quality string are written to {@code result[2 * i]} and {@code result[2 * i +
+     *                    1]}, or -1 to both if there are no islands
+     */
+    public static void bestIsland(byte[] buffer, int[] offsets, int[] lengths, int count, int valueOffset,
+                                  QualityTrimmerParameters parameters, int[] result) {
+        for (int i = 0; i < count; i++)
+            bestIsland(buffer, offsets[i], lengths[i], valueOffset, parameters, result, 2 * i);
+    }
+
+    static void trim(byte[] data, int offset, int size, int valueOffset,
+                     QualityTrimmerParameters parameters, int[] result, int resultOffset) {
+        final float threshold = parameters.getAverageQualityThreshold();
+        final int windowSize = parameters.getWindowSize();
+        int lower = pabs(trim(data, offset, size, valueOffset, 0, size, +1, true, threshold, windowSize)) + 1;
+        int upper = lower == size
+                ? lower
+                : pabs(trim(data, offset, size, valueOffset, lower, size, -1, true, threshold, windowSize));
+        if (upper == lower)
+            lower = upper = -1;
+        result[resultOffset] = lower;
+        result[resultOffset + 1] = upper;
+    }
+
+    static void bestIsland(byte[] data, int offset, int size, int valueOffset,
+                           QualityTrimmerParameters parameters, int[] result, int resultOffset) {
+        final float threshold = parameters.getAverageQualityThreshold();
+        final int windowSize = parameters.getWindowSize();
+
+        // Same as findIslands(...) with from = 0 and direction = +1, but only the best island is kept
+        int bestLower = -1, bestUpper = -1, bestSum = 0;
+        int currentLower = -1, currentUpper = -1;
+        int from = 0;
+        while (true) {
+            int islandStart = -2, islandEnd = 0;
+            if (from >= 0 && from < size)
+                islandStart = trim(data, offset, size, valueOffset, from, size, +1, true, threshold, windowSize);
+
+            if (islandStart >= -1) {
+                islandEnd = pabs(trim(data, offset, size, valueOffset, islandStart + 1, size, +1, false,
+                        threshold, windowSize));
+                if (Math.abs(islandEnd - islandStart) < windowSize) {
+                    from = islandEnd + 1;
+                    continue;
+                }
+                if (currentLower != -1 && currentUpper == islandStart + 1) {
+                    // Merging adjacent islands
+                    currentUpper = islandEnd + 1;
+                    from = islandEnd + 1;
+                    continue;
+                }
+            }
+
+            // Current island is complete
+            if (currentLower != -1) {
+                int sum = 0;
+                for (int i = currentLower; i < currentUpper; i++)
+                    sum += data[offset + i] - valueOffset;
+                if (bestLower == -1 || sum > bestSum) {
+                    bestLower = currentLower;
+                    bestUpper = currentUpper;
+                    bestSum = sum;
+                }
+            }
+
+            if (islandStart < -1)
+                // No more good quality islands
+                break;
+
+            currentLower = islandStart + 1;
+            currentUpper = islandEnd + 1;
+            from = islandEnd + 1;
+        }
+
+        result[resultOffset] = bestLower;
+        result[resultOffset + 1] = bestUpper;
+    }
 }
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.milaboratory.core.tree.DifferenceCombinations.set;
+
+/**
+ * Index for approximate lookup of nucleotide sequences (e.g. barcodes or UMIs against a whitelist) within the same
+ * difference budgets as {@link SequenceTreeMap#getNeighborhoodIterator(com.milaboratory.core.sequence.Sequence,
+ * TreeSearchParameters)}, but without traversal of the tree.
+ *
+ * <p>Uses pigeonhole partitioning: each key is split into {@code k + 1} segments, where {@code k} is the maximal total
+ * number of differences allowed by the parameters, so at least one of the segments is preserved in any matching
+ * query. Segments are indexed by a 64-bit hash of (key length, segment index, content), so candidate generation is a
+ * small constant number of hash lookups per query (one per segment and per shift allowed by indel budgets). Candidates
+ * are then verified exactly: by a bit-parallel Hamming distance of 2-bit packed sequences if only mismatches are
+ * allowed, or by a banded dynamic programming over sets of reachable (mismatches, deletions, insertions) combinations
+ * otherwise.</p>
+ *
+ * <p>Search methods are thread-safe if no modifications are performed concurrently.</p>
+ *
+ * @param <O> value type
+ */
+public final class ApproximateSequenceIndex<O> {
+    final TreeSearchParameters parameters;
+    final DifferenceCombinations dc;
+    final int segments, bandWidth;
+    final ArrayList<NucleotideSequence> keys = new ArrayList<>();
+    final ArrayList<O> values = new ArrayList<>();
+    final ArrayList<long[]> packedKeys = new ArrayList<>();
+    final HashMap<NucleotideSequence, Integer> ids = new HashMap<>();
+    final TLongObjectHashMap<TIntArrayList> segmentsIndex = new TLongObjectHashMap<>();
+    final TIntHashSet keyLengths = new TIntHashSet();
+    // Keys too short to be split into segments, always verified
+    final TIntArrayList shortKeys = new TIntArrayList();
+
+    public ApproximateSequenceIndex(TreeSearchParameters parameters) {
+        this.parameters = parameters;
+        this.dc = new DifferenceCombinations(parameters);
+        this.segments = dc.maxDifferences + 1;
+        this.bandWidth = dc.maxDeletions + dc.maxInsertions + 1;
+    }
+
+    public TreeSearchParameters getParameters() {
+        return parameters;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Puts key-value pair to the index.
+     *
+     * @return previous value associated with the key or null
+     */
+    public O put(NucleotideSequence key, O value) {
+        Integer id = ids.get(key);
+        if (id != null)
+            return values.set(id, value);
+
+        id = keys.size();
+        ids.put(key, id);
+        keys.add(key);
+        values.add(value);
+        packedKeys.add(pack(key));
+
+        int length = key.size();
+        if (length < segments) {
+            shortKeys.add(id);
+            return null;
+        }
+
+        keyLengths.add(length);
+        for (int i = 0; i < segments; ++i) {
+            int from = segmentFrom(length, i), to = segmentFrom(length, i + 1);
+            long hash = hash(length, i, key, from, to - from);
+            TIntArrayList list = segmentsIndex.get(hash);
+            if (list == null)
+                segmentsIndex.put(hash, list = new TIntArrayList(1));
+            list.add(id);
+        }
+        return null;
+    }
+
+    /**
+     * Returns value associated with exactly the same key.
+     */
+    public O get(NucleotideSequence key) {
+        Integer id = ids.get(key);
+        return id == null ? null : values.get(id);
+    }
+
+    /**
+     * Returns all keys matching the query within the search parameters, in the order of addition to the index.
+     */
+    public List<Match<O>> search(NucleotideSequence query) {
+        int[] candidates = candidates(query);
+        Arrays.sort(candidates);
+        Verifier verifier = new Verifier(query);
+        List<Match<O>> result = new ArrayList<>();
+        for (int id : candidates) {
+            int combination = verifier.verify(id);
+            if (combination != -1)
+                result.add(new Match<>(keys.get(id), values.get(id), combination, dc));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key matching the query with the smallest penalty (the first added one in case of a tie), or null if
+     * there are no matching keys.
+     */
+    public Match<O> findBest(NucleotideSequence query) {
+        Integer exact = ids.get(query);
+        if (exact != null)
+            return new Match<>(keys.get(exact), values.get(exact), 0, dc);
+
+        int[] candidates = candidates(query);
+        Arrays.sort(candidates);
+        Verifier verifier = new Verifier(query);
+        int bestId = -1, bestCombination = -1;
+        for (int id : candidates) {
+            int combination = verifier.verify(id);
+            if (combination != -1 &&
+                    (bestId == -1 || dc.penalties[combination] < dc.penalties[bestCombination])) {
+                bestId = id;
+                bestCombination = combination;
+            }
+        }
+        return bestId == -1 ? null : new Match<>(keys.get(bestId), values.get(bestId), bestCombination, dc);
+    }
+
+    private int[] candidates(NucleotideSequence query) {
+        TIntHashSet candidates = new TIntHashSet();
+        candidates.addAll(shortKeys);
+
+        int n = query.size();
+        for (int length = Math.max(segments, n - dc.maxDeletions); length <= n + dc.maxInsertions; ++length) {
+            if (!keyLengths.contains(length))
+                continue;
+            for (int i = 0; i < segments; ++i) {
+                int from = segmentFrom(length, i), segmentLength = segmentFrom(length, i + 1) - from;
+                // Position of preserved segment in query is shifted by (deletions - insertions) preceding it
+                for (int shift = -dc.maxInsertions; shift <= dc.maxDeletions; ++shift) {
+                    int queryFrom = from + shift;
+                    if (queryFrom < 0 || queryFrom + segmentLength > n)
+                        continue;
+                    TIntArrayList list = segmentsIndex.get(hash(length, i, query, queryFrom, segmentLength));
+                    if (list != null)
+                        candidates.addAll(list);
+                }
+            }
+        }
+        return candidates.toArray();
+    }
+
+    private int segmentFrom(int length, int segment) {
+        return (int) ((long) segment * length / segments);
+    }
+
+    private static long hash(int length, int segment, NucleotideSequence seq, int from, int segmentLength) {
+        long h = 0xcbf29ce484222325L ^ (((long) length << 32) | segment);
+        for (int i = 0; i < segmentLength; ++i)
+            h = (h ^ seq.codeAt(from + i)) * 0x100000001b3L;
+        // Final avalanche (MurmurHash3 fmix64)
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Packs sequence into 2-bit codes, 32 nucleotides per long.
+     *
+     * @return packed sequence or null if sequence contains wildcards
+     */
+    static long[] pack(NucleotideSequence seq) {
+        long[] packed = new long[(seq.size() + 31) >>> 5];
+        for (int i = 0; i < seq.size(); ++i) {
+            byte code = seq.codeAt(i);
+            if (code >= 4)
+                return null;
+            packed[i >>> 5] |= ((long) code) << ((i & 31) << 1);
+        }
+        return packed;
+    }
+
+    /**
+     * Returns number of positions with different nucleotides in two packed sequences of the same length.
+     */
+    static int hammingDistance(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; ++i) {
+            long x = a[i] ^ b[i];
+            distance += Long.bitCount((x | (x >>> 1)) & 0x5555555555555555L);
+        }
+        return distance;
+    }
+
+    /**
+     * Exact verification of candidates for a single query.
+     */
+    private final class Verifier {
+        final NucleotideSequence query;
+        final long[] packedQuery;
+        final long[] prev, current;
+
+        Verifier(NucleotideSequence query) {
+            this.query = query;
+            this.packedQuery = dc.maxDeletions == 0 && dc.maxInsertions == 0 ? pack(query) : null;
+            this.prev = new long[bandWidth * dc.words];
+            this.current = new long[bandWidth * dc.words];
+        }
+
+        /**
+         * Returns the best combination of differences transforming query to the key, or -1 if the key doesn't match.
+         */
+        int verify(int id) {
+            NucleotideSequence key = keys.get(id);
+            long[] packedKey;
+            if (packedQuery != null && (packedKey = packedKeys.get(id)) != null) {
+                if (key.size() != query.size())
+                    return -1;
+                int mismatches = hammingDistance(packedQuery, packedKey);
+                if (mismatches > dc.maxMismatches)
+                    return -1;
+                int combination = mismatches * dc.strideM;
+                return DifferenceCombinations.get(dc.allowed, 0, combination) ? combination : -1;
+            }
+            return align(key);
+        }
+
+        private int offset(int depth, int position) {
+            return (position - depth + dc.maxInsertions) * dc.words;
+        }
+
+        private boolean inBand(int depth, int position) {
+            return position >= 0 && position <= query.size() &&
+                    position - depth >= -dc.maxInsertions && position - depth <= dc.maxDeletions;
+        }
+
+        /**
+         * Banded dynamic programming with query as a reference and key letters as consecutive columns (see {@link
+         * LevenshteinNeighborhoodIterator}).
+         */
+        private int align(NucleotideSequence key) {
+            int n = query.size();
+            long[] prev = this.prev, column = this.current, tmp;
+
+            Arrays.fill(column, 0L);
+            set(column, offset(0, 0), 0);
+            for (int j = 1; j <= Math.min(dc.maxDeletions, n); ++j)
+                dc.shiftOr(column, offset(0, j - 1), dc.canAddDeletion, dc.strideD, column, offset(0, j));
+
+            for (int depth = 1; depth <= key.size(); ++depth) {
+                tmp = prev;
+                prev = column;
+                column = tmp;
+                Arrays.fill(column, 0L);
+
+                byte code = key.codeAt(depth - 1);
+                boolean nonEmpty = false;
+                for (int j = Math.max(0, depth - dc.maxInsertions), to = Math.min(n, depth + dc.maxDeletions);
+                     j <= to; ++j) {
+                    int offset = offset(depth, j);
+                    if (j > 0 && inBand(depth - 1, j - 1)) {
+                        if (query.codeAt(j - 1) == code)
+                            dc.or(prev, offset(depth - 1, j - 1), column, offset);
+                        else
+                            dc.shiftOr(prev, offset(depth - 1, j - 1), dc.canAddMismatch, dc.strideM, column, offset);
+                    }
+                    if (inBand(depth - 1, j))
+                        dc.shiftOr(prev, offset(depth - 1, j), dc.canAddInsertion, 1, column, offset);
+                    if (j > 0 && inBand(depth, j - 1))
+                        dc.shiftOr(column, offset(depth, j - 1), dc.canAddDeletion, dc.strideD, column, offset);
+                    nonEmpty |= !dc.isEmpty(column, offset);
+                }
+                if (!nonEmpty)
+                    return -1;
+            }
+
+            return inBand(key.size(), n) ? dc.best(column, offset(key.size(), n)) : -1;
+        }
+    }
+
+    /**
+     * Key found in the index together with the differences between query and the key.
+     */
+    public static final class Match<O> {
+        final NucleotideSequence key;
+        final O value;
+        final int mismatches, deletions, insertions;
+        final double penalty;
+
+        Match(NucleotideSequence key, O value, int combination, DifferenceCombinations dc) {
+            this.key = key;
+            this.value = value;
+            this.mismatches = dc.mismatches(combination);
+            this.deletions = dc.deletions(combination);
+            this.insertions = dc.insertions(combination);
+            this.penalty = dc.penalties[combination];
+        }
+
+        public NucleotideSequence getKey() {
+            return key;
+        }
+
+        public O getValue() {
+            return value;
+        }
+
+        public int getMismatches() {
+            return mismatches;
+        }
+
+        public int getDeletions() {
+            return deletions;
+        }
+
+        public int getInsertions() {
+            return insertions;
+        }
+
+        public double getPenalty() {
+            return penalty;
+        }
+
+        @Override
+        public String toString() {
+            return key + " (S" + mismatches + " D" + deletions + " I" + insertions + ")";
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+/**
+ * Bit set encoding of all combinations of (mismatches, deletions, insertions) counts allowed by {@link
+ * TreeSearchParameters}. Used as a cell value of banded dynamic programming in {@link LevenshteinNeighborhoodIterator}
+ * and {@link ApproximateSequenceIndex}: bit {@code m * strideM + d * strideD + i} is set if the corresponding
+ * combination of differences is reachable.
+ */
+final class DifferenceCombinations {
+    final int maxMismatches, maxDeletions, maxInsertions;
+    final int strideM, strideD, combinations, words;
+    /**
+     * Maximal total number of differences (mismatches + deletions + insertions) of any allowed combination
+     */
+    final int maxDifferences;
+    final long[] canAddMismatch, canAddDeletion, canAddInsertion, allowed;
+    final double[] penalties;
+
+    DifferenceCombinations(TreeSearchParameters parameters) {
+        this.maxMismatches = parameters.getMaxSubstitutions();
+        this.maxDeletions = parameters.getMaxDeletions();
+        this.maxInsertions = parameters.getMaxInsertions();
+        this.strideD = maxInsertions + 1;
+        this.strideM = strideD * (maxDeletions + 1);
+        this.combinations = strideM * (maxMismatches + 1);
+        this.words = (combinations + 63) >>> 6;
+
+        this.canAddMismatch = new long[words];
+        this.canAddDeletion = new long[words];
+        this.canAddInsertion = new long[words];
+        this.allowed = new long[words];
+        this.penalties = new double[combinations];
+        int maxDifferences = 0;
+        for (int m = 0; m <= maxMismatches; ++m)
+            for (int d = 0; d <= maxDeletions; ++d)
+                for (int i = 0; i <= maxInsertions; ++i) {
+                    int c = m * strideM + d * strideD + i;
+                    penalties[c] = m * parameters.getPenalty(0) + d * parameters.getPenalty(1) +
+                            i * parameters.getPenalty(2);
+                    if (penalties[c] > parameters.getMaxPenalty())
+                        continue;
+                    maxDifferences = Math.max(maxDifferences, m + d + i);
+                    set(allowed, 0, c);
+                    if (m < maxMismatches)
+                        set(canAddMismatch, 0, c);
+                    if (d < maxDeletions)
+                        set(canAddDeletion, 0, c);
+                    if (i < maxInsertions)
+                        set(canAddInsertion, 0, c);
+                }
+        this.maxDifferences = maxDifferences;
+    }
+
+    int mismatches(int combination) {
+        return combination / strideM;
+    }
+
+    int deletions(int combination) {
+        return (combination % strideM) / strideD;
+    }
+
+    int insertions(int combination) {
+        return combination % strideD;
+    }
+
+    /**
+     * Returns combination with the smallest penalty from the cell, or -1 if the cell is empty.
+     */
+    int best(long[] bits, int offset) {
+        int best = -1;
+        double bestPenalty = Double.MAX_VALUE;
+        for (int w = 0; w < words; ++w) {
+            long word = bits[offset + w];
+            while (word != 0) {
+                int c = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (penalties[c] < bestPenalty) {
+                    bestPenalty = penalties[c];
+                    best = c;
+                }
+            }
+        }
+        return best;
+    }
+
+    static void set(long[] bits, int offset, int bit) {
+        bits[offset + (bit >>> 6)] |= 1L << bit;
+    }
+
+    static boolean get(long[] bits, int offset, int bit) {
+        return (bits[offset + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * dst |= (src &amp; mask) &lt;&lt; shift, restricted to allowed combinations
+     */
+    void shiftOr(long[] src, int srcOffset, long[] mask, int shift, long[] dst, int dstOffset) {
+        int wordShift = shift >>> 6, bitShift = shift & 63;
+        for (int w = words - 1; w >= wordShift; --w) {
+            int s = w - wordShift;
+            long v = (src[srcOffset + s] & mask[s]) << bitShift;
+            if (bitShift != 0 && s > 0)
+                v |= (src[srcOffset + s - 1] & mask[s - 1]) >>> (64 - bitShift);
+            dst[dstOffset + w] |= v & allowed[w];
+        }
+    }
+
+    void or(long[] src, int srcOffset, long[] dst, int dstOffset) {
+        for (int w = 0; w < words; ++w)
+            dst[dstOffset + w] |= src[srcOffset + w];
+    }
+
+    boolean isEmpty(long[] bits, int offset) {
+        for (int w = 0; w < words; ++w)
+            if (bits[offset + w] != 0)
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
+import com.milaboratory.core.mutations.Mutation;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.milaboratory.core.tree.DifferenceCombinations.get;
+import static com.milaboratory.core.tree.DifferenceCombinations.set;
+
+/**
+ * Neighborhood search over {@link SequenceTreeMap} performed as a single depth-first walk of the trie driven by a
+ * bounded Levenshtein automaton. In contrast to {@link NeighborhoodIterator}, that enumerates all combinations of
+ * differences separately, this iterator visits each node at most once and returns each matching node exactly once,
+ * together with the mutations having the smallest penalty among all alignments satisfying the search parameters.
+ *
+ * <p>Each state of the automaton is a band of dynamic programming cells (one cell per reference position reachable
+ * with allowed number of indels), each cell holding the set of all reachable combinations of (mismatches, deletions,
+ * insertions) counts, encoded as a bit set. This way both per-type limits and the total penalty limit from {@link
+ * TreeSearchParameters} are honored exactly. Greedy flag of the parameters only affects which of the equivalent
+ * mutation sets is reported by {@link NeighborhoodIterator}, so it is ignored here.</p>
+ *
+ * <p>Nodes are returned in the trie order, not in the order of increasing penalty.</p>
+ *
+ * @param <S> sequence type
+ * @param <O> value type
+ */
+public final class LevenshteinNeighborhoodIterator<S extends Sequence<S>, O> {
+    //Reference sequence
+    final S reference;
+
+    //Penalty & other restrictions
+    final TreeSearchParameters parameters;
+    final MutationGuide<S> guide;
+
+    //Encoding of (mismatches, deletions, insertions) combinations
+    final DifferenceCombinations dc;
+    final int maxInsertions, maxDeletions, strideM, strideD, words, bandWidth, cellsLength;
+
+    //Runtime data
+    int depth = 0;
+    SequenceTreeMap.Node<O>[] nodes;
+    byte[] codes;
+    long[][] columns;
+    int bestCombination = -1;
+
+    /**
+     * Constructor for root LevenshteinNeighborhoodIterator iterator.
+     *
+     * @param reference  reference sequence
+     * @param parameters search parameters
+     * @param guide      mutation guide (may be null)
+     * @param root       root node of the tree
+     */
+    public LevenshteinNeighborhoodIterator(S reference, TreeSearchParameters parameters,
+                                           MutationGuide<S> guide, SequenceTreeMap.Node<O> root) {
+        this.reference = reference;
+        this.parameters = parameters;
+        this.guide = guide;
+
+        this.dc = new DifferenceCombinations(parameters);
+        this.maxDeletions = dc.maxDeletions;
+        this.maxInsertions = dc.maxInsertions;
+        this.strideM = dc.strideM;
+        this.strideD = dc.strideD;
+        this.words = dc.words;
+        this.bandWidth = maxDeletions + maxInsertions + 1;
+        this.cellsLength = bandWidth * words;
+
+        int maxDepth = reference.size() + maxInsertions + 1;
+        this.nodes = new SequenceTreeMap.Node[maxDepth];
+        this.codes = new byte[maxDepth];
+        this.columns = new long[maxDepth][];
+        for (int i = 0; i < maxDepth; ++i)
+            columns[i] = new long[cellsLength];
+
+        // Initial column: only deletions of the reference prefix
+        this.nodes[0] = root;
+        this.codes[0] = -1;
+        long[] column = columns[0];
+        set(column, offset(0, 0), 0);
+        for (int j = 1; j <= Math.min(maxDeletions, reference.size()); ++j)
+            if (guide == null || guide.allowMutation(reference, j - 1, (byte) 1, (byte) -1))
+                dc.shiftOr(column, offset(0, j - 1), dc.canAddDeletion, strideD, column, offset(0, j));
+    }
+
+    private int offset(int depth, int position) {
+        return (position - depth + maxInsertions) * words;
+    }
+
+    private boolean inBand(int depth, int position) {
+        return position >= 0 && position <= reference.size() &&
+                position - depth >= -maxInsertions && position - depth <= maxDeletions;
+    }
+
+    /**
+     * Calculates column for the node at given depth reached by the given letter.
+     *
+     * @return false if no cells are reachable
+     */
+    private boolean computeColumn(int depth, byte code) {
+        final long[] prev = columns[depth - 1], column = columns[depth];
+        Arrays.fill(column, 0L);
+        boolean nonEmpty = false;
+        for (int j = Math.max(0, depth - maxInsertions), to = Math.min(reference.size(), depth + maxDeletions);
+             j <= to; ++j) {
+            int offset = offset(depth, j);
+
+            // Match or mismatch of reference letter j - 1
+            if (j > 0 && inBand(depth - 1, j - 1)) {
+                if (reference.codeAt(j - 1) == code)
+                    dc.or(prev, offset(depth - 1, j - 1), column, offset);
+                else if (guide == null || guide.allowMutation(reference, j - 1, (byte) 0, code))
+                    dc.shiftOr(prev, offset(depth - 1, j - 1), dc.canAddMismatch, strideM, column, offset);
+            }
+
+            // Insertion of the letter before reference position j
+            if (inBand(depth - 1, j) && (guide == null || guide.allowMutation(reference, j, (byte) 2, code)))
+                dc.shiftOr(prev, offset(depth - 1, j), dc.canAddInsertion, 1, column, offset);
+
+            // Deletion of reference letter j - 1
+            if (j > 0 && inBand(depth, j - 1) &&
+                    (guide == null || guide.allowMutation(reference, j - 1, (byte) 1, (byte) -1)))
+                dc.shiftOr(column, offset(depth, j - 1), dc.canAddDeletion, strideD, column, offset);
+
+            nonEmpty |= !dc.isEmpty(column, offset);
+        }
+        return nonEmpty;
+    }
+
+    public O next() {
+        SequenceTreeMap.Node<O> n = nextNode();
+        return n == null ? null : n.object;
+    }
+
+    public SequenceTreeMap.Node<O> nextNode() {
+        bestCombination = -1;
+        while (depth >= 0) {
+            SequenceTreeMap.Node<O> node = nodes[depth];
+
+            // First visit of the node (all children are yet to be enumerated)
+            if (codes[depth] == -1) {
+                codes[depth] = 0;
+                if (node.object != null && inBand(depth, reference.size())) {
+                    bestCombination = dc.best(columns[depth], offset(depth, reference.size()));
+                    if (bestCombination != -1)
+                        return node;
+                }
+            }
+
+            // Descending to the next reachable child
+            boolean descended = false;
+            if (depth + 1 < nodes.length)
+                while (codes[depth] < node.links.length) {
+                    byte code = codes[depth]++;
+                    SequenceTreeMap.Node<O> child = node.links[code];
+                    if (child == null || !computeColumn(depth + 1, code))
+                        continue;
+                    nodes[++depth] = child;
+                    codes[depth] = -1;
+                    descended = true;
+                    break;
+                }
+
+            if (!descended)
+                --depth;
+        }
+        return null;
+    }
+
+    private void checkCurrent() {
+        if (bestCombination == -1)
+            throw new IllegalStateException("No current node.");
+    }
+
+    public int getMismatches() {
+        checkCurrent();
+        return dc.mismatches(bestCombination);
+    }
+
+    public int getDeletions() {
+        checkCurrent();
+        return dc.deletions(bestCombination);
+    }
+
+    public int getInsertions() {
+        checkCurrent();
+        return dc.insertions(bestCombination);
+    }
+
+    public int[] getIntroducedDifferences() {
+        return new int[]{getMismatches(), getDeletions(), getInsertions()};
+    }
+
+    public double getPenalty() {
+        checkCurrent();
+        return dc.penalties[bestCombination];
+    }
+
+    /**
+     * Returns mutations transforming reference sequence to the key of the current node, having the smallest penalty.
+     */
+    public Mutations<S> getCurrentMutations() {
+        checkCurrent();
+        // Tracing back through the stored columns, mutations are collected in reverse order
+        int[] reversed = new int[depth + reference.size()];
+        int count = 0;
+        int k = depth, j = reference.size(), c = bestCombination;
+        while (k > 0 || j > 0) {
+            if (k > 0 && j > 0 && inBand(k - 1, j - 1)) {
+                byte code = codes[k - 1];
+                --code; // codes[k - 1] points to the next child to enumerate
+                if (reference.codeAt(j - 1) == code) {
+                    if (get(columns[k - 1], offset(k - 1, j - 1), c)) {
+                        --k;
+                        --j;
+                        continue;
+                    }
+                } else if (c >= strideM && get(columns[k - 1], offset(k - 1, j - 1), c - strideM) &&
+                        (guide == null || guide.allowMutation(reference, j - 1, (byte) 0, code))) {
+                    reversed[count++] = Mutation.createSubstitution(j - 1, reference.codeAt(j - 1), code);
+                    --k;
+                    --j;
+                    c -= strideM;
+                    continue;
+                }
+            }
+            if (j > 0 && (c % strideM) >= strideD && inBand(k, j - 1) &&
+                    get(columns[k], offset(k, j - 1), c - strideD) &&
+                    (guide == null || guide.allowMutation(reference, j - 1, (byte) 1, (byte) -1))) {
+                reversed[count++] = Mutation.createDeletion(j - 1, reference.codeAt(j - 1));
+                --j;
+                c -= strideD;
+                continue;
+            }
+            if (k > 0 && (c % strideD) > 0 && inBand(k - 1, j)) {
+                byte code = (byte) (codes[k - 1] - 1);
+                if (get(columns[k - 1], offset(k - 1, j), c - 1) &&
+                        (guide == null || guide.allowMutation(reference, j, (byte) 2, code))) {
+                    reversed[count++] = Mutation.createInsertion(j, code);
+                    --k;
+                    c -= 1;
+                    continue;
+                }
+            }
+            throw new IllegalStateException("Broken automaton state.");
+        }
+
+        MutationsBuilder<S> builder = new MutationsBuilder<>(reference.getAlphabet()).ensureCapacity(count);
+        for (int i = count - 1; i >= 0; --i)
+            builder.append(reversed[i]);
+        return builder.createAndDestroy();
+    }
+
+    public Alignment<S> getCurrentAlignment() {
+        Mutations<S> currentMutations = getCurrentMutations();
+        return new Alignment<>(reference, currentMutations,
+                new Range(0, reference.size()),
+                new Range(0, reference.size() + currentMutations.getLengthDelta()),
+                (float) (reference.size() + getPenalty()));
+    }
+
+    public Alignment<S> getCurrentAlignment(LinearGapAlignmentScoring<S> scoring) {
+        Mutations<S> currentMutations = getCurrentMutations();
+        return new Alignment<>(reference, currentMutations,
+                new Range(0, reference.size()),
+                new Range(0, reference.size() + currentMutations.getLengthDelta()),
+                scoring);
+    }
+
+    public Iterable<O> it() {
+        return new Iterable<O>() {
+            @Override
+            public Iterator<O> iterator() {
+                return new IteratorWrapper<>(LevenshteinNeighborhoodIterator.this);
+            }
+        };
+    }
+
+    public List<O> toList() {
+        ArrayList<O> list = new ArrayList<>();
+        for (O o : it())
+            list.add(o);
+        return list;
+    }
+
+    private static final class IteratorWrapper<O, S extends Sequence<S>> implements java.util.Iterator<O> {
+        final LevenshteinNeighborhoodIterator<S, O> iterator;
+        O next;
+
+        private IteratorWrapper(LevenshteinNeighborhoodIterator<S, O> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (next = iterator.next()) != null;
+        }
+
+        @Override
+        public O next() {
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
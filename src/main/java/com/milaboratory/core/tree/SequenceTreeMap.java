@@ -195,6 +195,25 @@ public class SequenceTreeMap<S extends Sequence<S>, O>
         return new NeighborhoodIterator<>(reference, parameters, guide, root);
     }
 
+    /**
+     * Returns iterator over nodes in the neighborhood of the reference sequence, that visits each node of the tree at
+     * most once (see {@link LevenshteinNeighborhoodIterator}).
+     */
+    public LevenshteinNeighborhoodIterator<S, O> getLevenshteinNeighborhoodIterator(S reference,
+                                                                                    TreeSearchParameters parameters) {
+        return getLevenshteinNeighborhoodIterator(reference, parameters, null);
+    }
+
+    /**
+     * Returns iterator over nodes in the neighborhood of the reference sequence, that visits each node of the tree at
+     * most once (see {@link LevenshteinNeighborhoodIterator}).
+     */
+    public LevenshteinNeighborhoodIterator<S, O> getLevenshteinNeighborhoodIterator(S reference,
+                                                                                    TreeSearchParameters parameters,
+                                                                                    MutationGuide<S> guide) {
+        return new LevenshteinNeighborhoodIterator<>(reference, parameters, guide, root);
+    }
+
     public static final class Node<O> implements java.io.Serializable {
         final Node<O>[] links;
         O object;
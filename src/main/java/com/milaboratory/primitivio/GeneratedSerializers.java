@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio;
+
+import com.milaboratory.primitivio.annotations.SerializableProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lookup of serializers generated by {@link SerializableProcessor}. Serializer of each class is registered with a
+ * separate resource (see {@link SerializableProcessor#REGISTRY_RESOURCE}) placed next to the class by the processor.
+ */
+final class GeneratedSerializers {
+    private GeneratedSerializers() {
+    }
+
+    /**
+     * Returns new instance of the generated serializer for the type, or null if there is no such serializer.
+     */
+    static Serializer find(Class<?> type) {
+        ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null)
+            return null;
+        URL resource = classLoader.getResource(SerializableProcessor.REGISTRY_RESOURCE + type.getName());
+        if (resource == null)
+            return null;
+        String serializerName;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+            serializerName = reader.readLine();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (serializerName == null || serializerName.trim().isEmpty())
+            throw new RuntimeException("Malformed " + resource + ".");
+        try {
+            return SerializersManager.instantiate(Class.forName(serializerName.trim(), true, classLoader)
+                    .asSubclass(Serializer.class));
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Generated serializer " + serializerName + " not found.", e);
+        }
+    }
+}
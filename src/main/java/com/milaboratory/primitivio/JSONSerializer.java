@@ -16,15 +16,26 @@
 package com.milaboratory.primitivio;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.milaboratory.util.GlobalObjectMappers;
 
 import java.io.IOException;
 import java.util.Objects;
 import java.util.function.Function;
 
+/**
+ * Serializes objects via their Jackson JSON representation.
+ *
+ * <p>By default objects are written as JSON strings. In compact mode the JSON tree is written in a binary form (see
+ * {@link JsonTreeCodec}) after an empty string marker, which is never produced by the textual mode, so both forms are
+ * always readable. The marker is followed by the version of the binary encoding; content written with unknown
+ * versions is rejected. Decoded trees are cached by content, so repeated reads of the same object (e.g. configuration
+ * headers of files) skip parsing and only bind a copy of the tree to a new object.
+ */
 public final class JSONSerializer implements Serializer {
     final Class<?> type;
     final Function<String, String> preprocessor;
+    final boolean compact;
 
     /**
      * Constructor for backward-compatibility mocking serializers
@@ -35,6 +46,20 @@ public final class JSONSerializer implements Serializer {
     public JSONSerializer(Class<?> type, Function<String, String> preprocessor) {
         this.type = Objects.requireNonNull(type);
         this.preprocessor = preprocessor;
+        this.compact = false;
+    }
+
+    /**
+     * Normal constructor, not intended for direct use,
+     * use com.milaboratory.primitivio.annotations.Serializable#asJson() instead.
+     *
+     * @param type    target type
+     * @param compact write JSON tree in compact binary form
+     */
+    public JSONSerializer(Class<?> type, boolean compact) {
+        this.type = Objects.requireNonNull(type);
+        this.preprocessor = null;
+        this.compact = compact;
     }
 
     /**
@@ -52,7 +77,14 @@ public final class JSONSerializer implements Serializer {
         try {
             if (preprocessor != null)
                 throw new IllegalStateException("");
-            output.writeUTF(GlobalObjectMappers.ONE_LINE.writeValueAsString(object));
+            if (compact) {
+                byte[] content = JsonTreeCodec.encode(GlobalObjectMappers.ONE_LINE.valueToTree(object));
+                output.writeUTF("");
+                output.writeByte(JsonTreeCodec.FORMAT_VERSION);
+                output.writeVarInt(content.length);
+                output.write(content);
+            } else
+                output.writeUTF(GlobalObjectMappers.ONE_LINE.writeValueAsString(object));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -62,11 +94,27 @@ public final class JSONSerializer implements Serializer {
     public Object read(PrimitivI input) {
         String str = input.readUTF();
         try {
-            return GlobalObjectMappers.ONE_LINE.readValue(
-                    preprocessor != null
-                            ? preprocessor.apply(str)
-                            : str,
-                    type);
+            JsonNode tree;
+            if (str.isEmpty()) {
+                // Compact form
+                byte version = input.readByte();
+                if (version != JsonTreeCodec.FORMAT_VERSION)
+                    throw new RuntimeException("Unsupported version of compact JSON encoding: " + version + ".");
+                byte[] content = input.readBytes(input.readVarInt());
+                if (content.length > JsonTreeCodec.MAX_CACHED_SIZE)
+                    tree = JsonTreeCodec.decode(content);
+                else
+                    tree = JsonTreeCodec.decodeCached(JsonTreeCodec.ContentKey.ofBinary(content),
+                            () -> JsonTreeCodec.decode(content));
+            } else {
+                String json = preprocessor != null ? preprocessor.apply(str) : str;
+                if (json.length() > JsonTreeCodec.MAX_CACHED_SIZE)
+                    tree = GlobalObjectMappers.ONE_LINE.readTree(json);
+                else
+                    tree = JsonTreeCodec.decodeCached(JsonTreeCodec.ContentKey.ofText(json),
+                            () -> GlobalObjectMappers.ONE_LINE.readTree(json));
+            }
+            return GlobalObjectMappers.ONE_LINE.treeToValue(tree, type);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.*;
+import com.milaboratory.util.io.ByteArrayDataOutput;
+import com.milaboratory.util.io.ByteBufferDataInputAdapter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of Jackson trees used by {@link JSONSerializer} in compact mode, and a cache of decoded
+ * trees keyed by serialized content.
+ *
+ * <p>Encoding keeps the JSON data model (objects are encoded with field names), so it evolves together with the
+ * Jackson mapping of the class exactly as the textual form does. Numbers are encoded as zig-zag var-ints or raw IEEE
+ * values, and repeated field names are replaced by back-references to their first occurrence.
+ */
+final class JsonTreeCodec {
+    /**
+     * Version of the encoding, written by {@link JSONSerializer} before encoded content (should be incremented on any
+     * incompatible change of the encoding, e.g. on addition of new tags)
+     */
+    static final byte FORMAT_VERSION = 1;
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, INTEGER = 3, DOUBLE = 4, STRING = 5, ARRAY = 6,
+            OBJECT = 7, BIG_INTEGER = 8, DECIMAL = 9, BINARY = 10, FLOAT = 11;
+    /**
+     * Maximal size of the serialized content cached by {@link #decodeCached(Object, TreeSupplier)}
+     */
+    static final int MAX_CACHED_SIZE = 1 << 16;
+    private static final int CACHE_CAPACITY = 256;
+    private static final Map<ContentKey, JsonNode> cache = new LinkedHashMap<ContentKey, JsonNode>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ContentKey, JsonNode> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    private JsonTreeCodec() {
+    }
+
+    interface TreeSupplier {
+        JsonNode get() throws IOException;
+    }
+
+    /**
+     * Returns cached tree for the key, or decodes and caches it. Each call returns a private copy of the cached tree, so it can be safely bound to
+     * objects holding {@link JsonNode} fields (copying is still much cheaper than parsing).
+     */
+    static JsonNode decodeCached(ContentKey key, TreeSupplier supplier) throws IOException {
+        JsonNode tree;
+        synchronized (cache) {
+            tree = cache.get(key);
+        }
+        if (tree == null) {
+            tree = supplier.get();
+            synchronized (cache) {
+                cache.put(key, tree);
+            }
+        }
+        return tree.deepCopy();
+    }
+
+    static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    static byte[] encode(JsonNode node) {
+        ByteArrayDataOutput output = new ByteArrayDataOutput(64);
+        encode(output, node, new LinkedHashMap<>());
+        return Arrays.copyOf(output.getBuffer(), output.size());
+    }
+
+    private static void encode(ByteArrayDataOutput output, JsonNode node, Map<String, Integer> names) {
+        switch (node.getNodeType()) {
+            case NULL:
+            case MISSING:
+                output.writeByte(NULL);
+                return;
+            case BOOLEAN:
+                output.writeByte(node.booleanValue() ? TRUE : FALSE);
+                return;
+            case NUMBER:
+                if (node.isIntegralNumber()) {
+                    if (node.canConvertToLong()) {
+                        output.writeByte(INTEGER);
+                        output.writeVarLong(Util.zigZagEncodeLong(node.longValue()));
+                    } else {
+                        output.writeByte(BIG_INTEGER);
+                        writeString(output, node.bigIntegerValue().toString());
+                    }
+                } else if (node.isFloat()) {
+                    output.writeByte(FLOAT);
+                    output.writeFloat(node.floatValue());
+                } else if (node.isBigDecimal()) {
+                    output.writeByte(DECIMAL);
+                    writeString(output, node.decimalValue().toString());
+                } else {
+                    output.writeByte(DOUBLE);
+                    output.writeDouble(node.doubleValue());
+                }
+                return;
+            case STRING:
+                output.writeByte(STRING);
+                writeString(output, node.textValue());
+                return;
+            case BINARY:
+                try {
+                    byte[] data = node.binaryValue();
+                    output.writeByte(BINARY);
+                    output.writeVarLong(data.length);
+                    output.write(data);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return;
+            case ARRAY:
+                output.writeByte(ARRAY);
+                output.writeVarLong(node.size());
+                for (JsonNode element : node)
+                    encode(output, element, names);
+                return;
+            case OBJECT:
+                output.writeByte(OBJECT);
+                output.writeVarLong(node.size());
+                Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+                while (it.hasNext()) {
+                    Map.Entry<String, JsonNode> field = it.next();
+                    Integer id = names.get(field.getKey());
+                    if (id == null) {
+                        // zero marks a new name
+                        output.writeVarLong(0);
+                        writeString(output, field.getKey());
+                        names.put(field.getKey(), names.size());
+                    } else
+                        output.writeVarLong(id + 1);
+                    encode(output, field.getValue(), names);
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("Unsupported node type: " + node.getNodeType());
+        }
+    }
+
+    static JsonNode decode(byte[] data) {
+        ByteBufferDataInputAdapter input = new ByteBufferDataInputAdapter(ByteBuffer.wrap(data));
+        return decode(input, new ArrayList<>());
+    }
+
+    private static JsonNode decode(ByteBufferDataInputAdapter input, List<String> names) {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return f.nullNode();
+            case FALSE:
+                return f.booleanNode(false);
+            case TRUE:
+                return f.booleanNode(true);
+            case INTEGER:
+                long value = Util.zigZagDecodeLong(input.readVarLong());
+                return value == (int) value ? f.numberNode((int) value) : f.numberNode(value);
+            case DOUBLE:
+                return f.numberNode(input.readDouble());
+            case FLOAT:
+                return f.numberNode(input.readFloat());
+            case BIG_INTEGER:
+                return f.numberNode(new BigInteger(readString(input)));
+            case DECIMAL:
+                return f.numberNode(new BigDecimal(readString(input)));
+            case STRING:
+                return f.textNode(readString(input));
+            case BINARY:
+                byte[] data = new byte[input.readVarInt()];
+                input.readFully(data);
+                return f.binaryNode(data);
+            case ARRAY:
+                int size = input.readVarInt();
+                ArrayNode array = f.arrayNode(size);
+                for (int i = 0; i < size; i++)
+                    array.add(decode(input, names));
+                return array;
+            case OBJECT:
+                int fields = input.readVarInt();
+                ObjectNode object = f.objectNode();
+                for (int i = 0; i < fields; i++) {
+                    int id = input.readVarInt();
+                    String name;
+                    if (id == 0) {
+                        name = readString(input);
+                        names.add(name);
+                    } else
+                        name = names.get(id - 1);
+                    object.set(name, decode(input, names));
+                }
+                return object;
+            default:
+                throw new RuntimeException("Malformed compact JSON content.");
+        }
+    }
+
+    private static void writeString(ByteArrayDataOutput output, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        output.writeVarLong(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBufferDataInputAdapter input) {
+        byte[] bytes = new byte[input.readVarInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cache key identifying serialized content (textual JSON or binary encoding) by its SHA-256 digest, so the cache
+     * doesn't retain the content itself.
+     */
+    static final class ContentKey {
+        final boolean text;
+        final int length;
+        final byte[] digest;
+        final int hash;
+
+        private ContentKey(boolean text, byte[] content) {
+            this.text = text;
+            this.length = content.length;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256").digest(content);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            this.hash = ByteBuffer.wrap(digest).getInt();
+        }
+
+        static ContentKey ofText(String json) {
+            return new ContentKey(true, json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ContentKey ofBinary(byte[] content) {
+            return new ContentKey(false, content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ContentKey))
+                return false;
+            ContentKey that = (ContentKey) o;
+            return hash == that.hash && text == that.text && length == that.length
+                    && Arrays.equals(digest, that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
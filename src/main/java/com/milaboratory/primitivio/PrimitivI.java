@@ -15,6 +15,7 @@
  */
 package com.milaboratory.primitivio;
 
+import com.milaboratory.util.io.ByteBufferDataInputAdapter;
 import org.apache.commons.io.input.NullInputStream;
 
 import java.io.*;
@@ -23,6 +24,11 @@ import java.util.ArrayList;
 public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOState {
     boolean closed = false;
     final DataInput input;
+    /**
+     * Same as input if it is a byte buffer input (e.g. block deserialization in PrimitivIBlocks), used to bypass
+     * interface calls on the hot path; null otherwise
+     */
+    final ByteBufferDataInputAdapter bufferInput;
     final SerializersManager manager;
     final ArrayList<Object> knownReferences;
     final ArrayList<Object> knownObjects;
@@ -51,6 +57,7 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
     public PrimitivI(DataInput input, SerializersManager manager,
                      ArrayList<Object> knownReferences, ArrayList<Object> knownObjects) {
         this.input = input;
+        this.bufferInput = input instanceof ByteBufferDataInputAdapter ? (ByteBufferDataInputAdapter) input : null;
         this.manager = manager;
         this.knownReferences = knownReferences;
         this.knownObjects = knownObjects;
@@ -173,6 +180,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
     }
 
     public long readVarLong() {
+        if (bufferInput != null)
+            return bufferInput.readVarLong();
         long value = 0, tmp;
         int shift = 0;
         do {
@@ -188,6 +197,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
     }
 
     public int readVarInt() {
+        if (bufferInput != null)
+            return bufferInput.readVarInt();
         int value = 0, tmp;
         int shift = 0;
         do {
@@ -206,6 +217,10 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public void readFully(byte[] b) {
+        if (bufferInput != null) {
+            bufferInput.readFully(b);
+            return;
+        }
         try {
             input.readFully(b);
         } catch (IOException e) {
@@ -215,6 +230,10 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public void readFully(byte[] b, int off, int len) {
+        if (bufferInput != null) {
+            bufferInput.readFully(b, off, len);
+            return;
+        }
         try {
             input.readFully(b, off, len);
         } catch (IOException e) {
@@ -233,6 +252,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public boolean readBoolean() {
+        if (bufferInput != null)
+            return bufferInput.readBoolean();
         try {
             return input.readBoolean();
         } catch (IOException e) {
@@ -242,6 +263,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public byte readByte() {
+        if (bufferInput != null)
+            return bufferInput.readByte();
         try {
             return input.readByte();
         } catch (IOException e) {
@@ -260,6 +283,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public short readShort() {
+        if (bufferInput != null)
+            return bufferInput.readShort();
         try {
             return input.readShort();
         } catch (IOException e) {
@@ -269,6 +294,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public int readUnsignedShort() {
+        if (bufferInput != null)
+            return bufferInput.readUnsignedShort();
         try {
             return input.readUnsignedShort();
         } catch (IOException e) {
@@ -278,6 +305,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public char readChar() {
+        if (bufferInput != null)
+            return bufferInput.readChar();
         try {
             return input.readChar();
         } catch (IOException e) {
@@ -287,6 +316,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public int readInt() {
+        if (bufferInput != null)
+            return bufferInput.readInt();
         try {
             return input.readInt();
         } catch (IOException e) {
@@ -296,6 +327,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public long readLong() {
+        if (bufferInput != null)
+            return bufferInput.readLong();
         try {
             return input.readLong();
         } catch (IOException e) {
@@ -305,6 +338,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public float readFloat() {
+        if (bufferInput != null)
+            return bufferInput.readFloat();
         try {
             return input.readFloat();
         } catch (IOException e) {
@@ -314,6 +349,8 @@ public final class PrimitivI implements DataInput, AutoCloseable, HasPrimitivIOS
 
     @Override
     public double readDouble() {
+        if (bufferInput != null)
+            return bufferInput.readDouble();
         try {
             return input.readDouble();
         } catch (IOException e) {
@@ -15,6 +15,7 @@
  */
 package com.milaboratory.primitivio;
 
+import com.milaboratory.util.io.ByteArrayDataOutput;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.custom_hash.TObjectIntCustomHashMap;
 import gnu.trove.strategy.IdentityHashingStrategy;
@@ -36,6 +37,12 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
      */
     final DataOutput output;
 
+    /**
+     * Same as output if it is a byte array output (e.g. block serialization in PrimitivOBlocks), used to bypass
+     * interface calls on the hot path; null otherwise
+     */
+    final ByteArrayDataOutput arrayOutput;
+
     /**
      * Tracking closed state (used in PrimitivIOHybrid)
      */
@@ -93,6 +100,7 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
     PrimitivO(DataOutput output, SerializersManager manager,
               TObjectIntCustomHashMap<Object> knownReferences, TObjectIntMap<Object> knownObjects) {
         this.output = output;
+        this.arrayOutput = output instanceof ByteArrayDataOutput ? (ByteArrayDataOutput) output : null;
         this.manager = manager;
         this.knownReferences = knownReferences;
         this.knownObjects = knownObjects;
@@ -268,6 +276,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
     }
 
     public void writeVarLong(long value) {
+        if (arrayOutput != null) {
+            arrayOutput.writeVarLong(value);
+            return;
+        }
         do {
             int toWrite = (int) (value & 0x7F);
             value >>>= 7;
@@ -286,6 +298,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void write(int b) {
+        if (arrayOutput != null) {
+            arrayOutput.write(b);
+            return;
+        }
         try {
             output.write(b);
         } catch (IOException e) {
@@ -295,6 +311,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void write(byte[] b) {
+        if (arrayOutput != null) {
+            arrayOutput.write(b);
+            return;
+        }
         try {
             output.write(b);
         } catch (IOException e) {
@@ -304,6 +324,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void write(byte[] b, int off, int len) {
+        if (arrayOutput != null) {
+            arrayOutput.write(b, off, len);
+            return;
+        }
         try {
             output.write(b, off, len);
         } catch (IOException e) {
@@ -313,6 +337,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeBoolean(boolean v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeBoolean(v);
+            return;
+        }
         try {
             output.writeBoolean(v);
         } catch (IOException e) {
@@ -322,6 +350,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeByte(int v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeByte(v);
+            return;
+        }
         try {
             output.writeByte(v);
         } catch (IOException e) {
@@ -331,6 +363,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeShort(int v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeShort(v);
+            return;
+        }
         try {
             output.writeShort(v);
         } catch (IOException e) {
@@ -349,6 +385,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeInt(int v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeInt(v);
+            return;
+        }
         try {
             output.writeInt(v);
         } catch (IOException e) {
@@ -358,6 +398,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeLong(long v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeLong(v);
+            return;
+        }
         try {
             output.writeLong(v);
         } catch (IOException e) {
@@ -367,6 +411,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeFloat(float v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeFloat(v);
+            return;
+        }
         try {
             output.writeFloat(v);
         } catch (IOException e) {
@@ -376,6 +424,10 @@ public final class PrimitivO implements DataOutput, AutoCloseable, HasPrimitivIO
 
     @Override
     public void writeDouble(double v) {
+        if (arrayOutput != null) {
+            arrayOutput.writeDouble(v);
+            return;
+        }
         try {
             output.writeDouble(v);
         } catch (IOException e) {
@@ -97,12 +97,19 @@ public final class SerializersManager {
                         null :
                         instantiate(annotation.by());
 
+        if (annotation.compactJson() && !annotation.asJson())
+            throw new RuntimeException("'compactJson' requires 'asJson' in " + type + ".");
+
         if (annotation.asJson()) {
             if (defaultSerializer != null)
                 throw new RuntimeException("'asJson' and 'by' parameters are not compatible.");
-            defaultSerializer = new JSONSerializer(type);
+            defaultSerializer = new JSONSerializer(type, annotation.compactJson());
         }
 
+        // Serializer generated at build time by SerializableProcessor
+        if (defaultSerializer == null)
+            defaultSerializer = GeneratedSerializers.find(type);
+
         CustomSerializer[] css = annotation.custom();
         if (css.length > 0) {
             if (nested)
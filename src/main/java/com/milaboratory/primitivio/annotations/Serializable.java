@@ -30,4 +30,17 @@ public @interface Serializable {
     CustomSerializer[] custom() default {};
 
     boolean asJson() default false;
+
+    /**
+     * If set together with {@link #asJson()}, JSON representation of objects is written in a compact binary form
+     * instead of a string. Both forms are readable regardless of this parameter, but files written in compact form
+     * can't be read by versions of the library prior to introduction of this option.
+     */
+    boolean compactJson() default false;
+
+    /**
+     * If set, field-wise serializer for the class is generated at build time by {@link SerializableProcessor}
+     * (can't be combined with {@link #by()} and {@link #asJson()}). Processor ignores classes without this flag.
+     */
+    boolean generate() default false;
 }
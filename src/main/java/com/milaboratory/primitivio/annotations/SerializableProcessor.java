@@ -0,0 +1,258 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio.annotations;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor generating field-wise PrimitivIO serializers at build time.
+ *
+ * <p>Serializer is generated for each concrete class annotated with {@code @Serializable(generate = true)}; all other
+ * classes are ignored, so the processor has no effect on existing code of downstream projects. Class must have a non-private
+ * constructor taking all its non-static non-transient fields in the order of declaration, and the fields must be
+ * accessible from the class's package. Generated serializer writes primitive fields directly and all other fields
+ * with {@code writeObject} using the declared field type, so it is a plain monomorphic class without any reflection.
+ *
+ * <p>Classes used as {@link CustomSerializer#type()} of a hierarchy root can be annotated the same way, so the whole
+ * hierarchy can be made serializable with annotations only (root keeps the type ids in its {@code custom} list).
+ *
+ * <p>Each generated serializer is registered with a separate {@link #REGISTRY_RESOURCE} resource named after the
+ * serialized class, which is used by {@link com.milaboratory.primitivio.SerializersManager} to find it. Resources of
+ * different classes are independent, so incremental compilation and merging of several jars don't lose entries.
+ */
+@SupportedAnnotationTypes("com.milaboratory.primitivio.annotations.Serializable")
+public final class SerializableProcessor extends AbstractProcessor {
+    /**
+     * Prefix of resources registering generated serializers; resource name is the prefix followed by the binary name of
+     * the serialized class, content is the binary name of the serializer
+     */
+    public static final String REGISTRY_RESOURCE = "META-INF/primitivio/serializers/";
+    public static final String SERIALIZER_SUFFIX = "GeneratedSerializer";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Serializable.class))
+            if (element.getKind() == ElementKind.CLASS && generationRequested((TypeElement) element))
+                generate((TypeElement) element);
+        return false;
+    }
+
+    private boolean generationRequested(TypeElement type) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(Serializable.class.getCanonicalName()))
+                continue;
+            boolean generate = false, other = false;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet()) {
+                String name = e.getKey().getSimpleName().toString();
+                if (name.equals("generate"))
+                    generate = Boolean.TRUE.equals(e.getValue().getValue());
+                else if (name.equals("by") || (name.equals("asJson") && Boolean.TRUE.equals(e.getValue().getValue())))
+                    other = true;
+            }
+            if (!generate)
+                return false;
+            if (other) {
+                error(type, "Generated serializer can't be combined with 'by' or 'asJson'.");
+                return false;
+            }
+            if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+                error(type, "Can't generate serializer for abstract class.");
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void generate(TypeElement type) {
+        Types types = processingEnv.getTypeUtils();
+
+        // Checking accessibility of the class
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, "Class with generated serializer must not be private.");
+                return;
+            }
+            if (e.getEnclosingElement() instanceof TypeElement && !e.getModifiers().contains(Modifier.STATIC)) {
+                error(type, "Inner class with generated serializer must be static.");
+                return;
+            }
+        }
+
+        // Serialized fields
+        List<VariableElement> fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+                continue;
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                error(field, "Field of class with generated serializer must not be private.");
+                return;
+            }
+            fields.add(field);
+        }
+
+        // Inherited state is not supported
+        for (TypeMirror s = type.getSuperclass(); s.getKind() == TypeKind.DECLARED; ) {
+            TypeElement superElement = (TypeElement) ((DeclaredType) s).asElement();
+            for (VariableElement field : ElementFilter.fieldsIn(superElement.getEnclosedElements()))
+                if (!field.getModifiers().contains(Modifier.STATIC) && !field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    error(type, "Can't generate serializer: inherited field " + superElement + "." + field + ".");
+                    return;
+                }
+            s = superElement.getSuperclass();
+        }
+
+        // Constructor taking all fields
+        boolean constructorFound = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE))
+                continue;
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (parameters.size() != fields.size())
+                continue;
+            boolean match = true;
+            for (int i = 0; i < fields.size() && match; i++)
+                match = types.isSameType(parameters.get(i).asType(), fields.get(i).asType());
+            if (match) {
+                constructorFound = true;
+                break;
+            }
+        }
+        if (!constructorFound) {
+            error(type, "Can't generate serializer: no constructor taking all fields in the order of declaration.");
+            return;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String flatName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String serializerName = flatName.replace('$', '_') + SERIALIZER_SUFFIX;
+        String serializerBinaryName = packageName.isEmpty() ? serializerName : packageName + "." + serializerName;
+        String typeName = type.getQualifiedName().toString();
+
+        try {
+            try (PrintWriter w = new PrintWriter(processingEnv.getFiler().createSourceFile(serializerBinaryName, type).openWriter())) {
+                if (!packageName.isEmpty()) {
+                    w.println("package " + packageName + ";");
+                    w.println();
+                }
+                w.println("/**");
+                w.println(" * Generated by " + SerializableProcessor.class.getName() + " for {@link " + typeName + "}.");
+                w.println(" */");
+                w.println("public final class " + serializerName + " implements com.milaboratory.primitivio.Serializer<" + typeName + "> {");
+                w.println("    @Override");
+                w.println("    public void write(com.milaboratory.primitivio.PrimitivO output, " + typeName + " object) {");
+                for (VariableElement field : fields)
+                    w.println("        " + writeStatement(types, field));
+                w.println("    }");
+                w.println();
+                w.println("    @Override");
+                w.println("    @SuppressWarnings(\"unchecked\")");
+                w.println("    public " + typeName + " read(com.milaboratory.primitivio.PrimitivI input) {");
+                for (int i = 0; i < fields.size(); i++) {
+                    TypeMirror t = fields.get(i).asType();
+                    w.println("        " + t + " f" + i + " = " + readExpression(types, t) + ";");
+                }
+                StringBuilder args = new StringBuilder();
+                for (int i = 0; i < fields.size(); i++)
+                    args.append(i == 0 ? "" : ", ").append("f").append(i);
+                w.println("        return new " + typeName + "(" + args + ");");
+                w.println("    }");
+                w.println();
+                w.println("    @Override");
+                w.println("    public boolean isReference() {");
+                w.println("        return true;");
+                w.println("    }");
+                w.println();
+                w.println("    @Override");
+                w.println("    public boolean handlesReference() {");
+                w.println("        return false;");
+                w.println("    }");
+                w.println("}");
+            }
+
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    REGISTRY_RESOURCE + binaryName, type);
+            try (Writer w = resource.openWriter()) {
+                w.write(serializerBinaryName);
+            }
+        } catch (IOException e) {
+            error(type, "Can't write serializer: " + e);
+        }
+    }
+
+    private static String primitiveName(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case CHAR:
+                return "Char";
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case FLOAT:
+                return "Float";
+            case DOUBLE:
+                return "Double";
+            default:
+                return null;
+        }
+    }
+
+    private static String writeStatement(Types types, VariableElement field) {
+        String primitive = primitiveName(field.asType());
+        if (primitive != null)
+            return "output.write" + primitive + "(object." + field.getSimpleName() + ");";
+        // Declared type is used on both sides, so the encoding does not depend on the runtime type of the value
+        return "output.writeObject(object." + field.getSimpleName() + ", " + types.erasure(field.asType()) + ".class);";
+    }
+
+    private static String readExpression(Types types, TypeMirror type) {
+        String primitive = primitiveName(type);
+        if (primitive != null)
+            return "input.read" + primitive + "()";
+        return "(" + type + ") input.readObject(" + types.erasure(type) + ".class)";
+    }
+}
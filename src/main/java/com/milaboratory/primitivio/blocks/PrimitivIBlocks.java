@@ -22,6 +22,7 @@ import com.milaboratory.primitivio.PrimitivI;
 import com.milaboratory.primitivio.PrimitivIState;
 import com.milaboratory.util.LambdaLatch;
 import com.milaboratory.util.LambdaSemaphore;
+import com.milaboratory.util.MetricsRegistry;
 import com.milaboratory.util.io.AsynchronousFileChannelAdapter;
 import com.milaboratory.util.io.ByteBufferDataInputAdapter;
 import net.jpountz.lz4.LZ4FastDecompressor;
@@ -88,6 +89,17 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
 
     private long initializationTimestamp = System.nanoTime();
 
+    // Metrics aggregated over all readers
+    private static final MetricsRegistry.Timer
+            DESERIALIZATION_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivi_deserialization_seconds"),
+            CHECKSUM_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivi_checksum_seconds"),
+            DECOMPRESSION_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivi_decompression_seconds"),
+            IO_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivi_io_seconds");
+    private static final MetricsRegistry.Counter
+            BLOCKS_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivi_blocks_total"),
+            OBJECTS_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivi_objects_total"),
+            INPUT_BYTES_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivi_input_bytes_total");
+
     /**
      * @param clazz       class to deserialize
      * @param concurrency maximal number of concurrent deserializations, actual concurrency level is also limited by
@@ -162,6 +174,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
         assert blockLength == header.getDataSize();
 
         inputSize.addAndGet(blockAndNextHeader.length);
+        INPUT_BYTES_COUNTER.add(blockAndNextHeader.length);
 
         // Stats {
         long start = System.nanoTime();
@@ -182,7 +195,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
         }
 
         // Stats {
-        decompressionNanos.addAndGet(System.nanoTime() - start);
+        decompressionNanos.addAndGet(DECOMPRESSION_TIMER.stop(start));
         uncompressedBytes.addAndGet(dataLen);
         start = System.nanoTime();
         // }
@@ -190,7 +203,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
         int actualChecksum = xxHash32.hash(data, 0, dataLen, HASH_SEED);
 
         // Stats {
-        checksumNanos.addAndGet(System.nanoTime() - start);
+        checksumNanos.addAndGet(CHECKSUM_TIMER.stop(start));
         start = System.nanoTime();
         // }
 
@@ -206,11 +219,13 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
             content.add(primitivI.readObject(clazz));
 
         // Stats {
-        deserializationNanos.addAndGet(System.nanoTime() - start);
+        deserializationNanos.addAndGet(DESERIALIZATION_TIMER.stop(start));
         // }
 
         blockCount.incrementAndGet();
         objectCount.addAndGet(content.size());
+        BLOCKS_COUNTER.increment();
+        OBJECTS_COUNTER.add(content.size());
 
         return content;
     }
@@ -342,6 +357,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
             blocks.offer(block);
 
             pendingOps.incrementAndGet();
+            totalPendingOps.incrementAndGet();
 
             previousLatch.setCallback(() -> { // IO operation will be enqueued after the previous one finish
 
@@ -351,11 +367,13 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
                     block.latch.countDown();
                     nextLatch.open();
                     pendingOps.decrementAndGet();
+                    totalPendingOps.decrementAndGet();
                     return;
                 }
 
                 concurrencyLimiter.acquire(() -> { // and after there will be an execution slot available
                     pendingOps.decrementAndGet();
+                    totalPendingOps.decrementAndGet();
 
                     // Cancel all block deserialization requests if EOF was detected in the previous block
                     // or user closed current reader
@@ -400,6 +418,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
             ByteBuffer buffer = ByteBuffer.wrap(headerBytes);
 
             ongoingIOOps.incrementAndGet();
+            totalOngoingIOOps.incrementAndGet();
             long ioStart = System.nanoTime();
 
             channel.read(buffer, null, new CHAbstractCL(null, nextLatch) {
@@ -407,8 +426,9 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
                 public void completed(Integer result, Object attachment) {
                     try {
                         // Recording time spent waiting for io operation completion
-                        ioDelayNanos.addAndGet(System.nanoTime() - ioStart);
+                        ioDelayNanos.addAndGet(IO_TIMER.stop(ioStart));
                         ongoingIOOps.decrementAndGet();
+                        totalOngoingIOOps.decrementAndGet();
 
                         if (!stateOk())
                             return; // see finally for concurrencyLimiter.release()
@@ -420,6 +440,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
                         }
 
                         inputSize.addAndGet(headerBytes.length);
+                        INPUT_BYTES_COUNTER.add(headerBytes.length);
 
                         setHeader(headerBytes);
                     } catch (Exception e) {
@@ -454,6 +475,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
             ByteBuffer buffer = ByteBuffer.wrap(blockAndNextHeader);
 
             ongoingIOOps.incrementAndGet();
+            totalOngoingIOOps.incrementAndGet();
             long ioStart = System.nanoTime();
 
             channel.read(buffer, null, new CHAbstractCL(block, nextLatch) {
@@ -463,8 +485,9 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
                 @Override
                 public void completed(Integer result, Object attachment) {
                     // Recording time spent waiting for the io operation completion
-                    ioDelayNanos.addAndGet(System.nanoTime() - ioStart);
+                    ioDelayNanos.addAndGet(IO_TIMER.stop(ioStart));
                     ongoingIOOps.decrementAndGet();
+                    totalOngoingIOOps.decrementAndGet();
 
                     try {
                         long start = System.nanoTime();
@@ -650,6 +673,7 @@ public final class PrimitivIBlocks<O> extends PrimitivIOBlocksAbstract {
 
             // For correct statistics calculation
             ongoingIOOps.decrementAndGet();
+            totalOngoingIOOps.decrementAndGet();
 
             // Releasing a permit for the next operation to detect the error
             // this reader is in unrecoverable faulty state
@@ -15,6 +15,7 @@
  */
 package com.milaboratory.primitivio.blocks;
 
+import com.milaboratory.util.MetricsRegistry;
 import net.jpountz.xxhash.XXHash32;
 import net.jpountz.xxhash.XXHashFactory;
 
@@ -38,6 +39,20 @@ public abstract class PrimitivIOBlocksAbstract {
             ongoingIOOps = new AtomicInteger(),
             pendingOps = new AtomicInteger();
 
+    /**
+     * Same as above, aggregated over all readers and writers, exported as gauges of {@link MetricsRegistry#GLOBAL}
+     */
+    protected static final AtomicInteger
+            totalOngoingSerdes = new AtomicInteger(),
+            totalOngoingIOOps = new AtomicInteger(),
+            totalPendingOps = new AtomicInteger();
+
+    static {
+        MetricsRegistry.GLOBAL.gauge("milib_primitivio_ongoing_serdes", () -> totalOngoingSerdes.get());
+        MetricsRegistry.GLOBAL.gauge("milib_primitivio_ongoing_io_ops", () -> totalOngoingIOOps.get());
+        MetricsRegistry.GLOBAL.gauge("milib_primitivio_pending_ops", () -> totalPendingOps.get());
+    }
+
     /**
      * Number of active readers and writers
      */
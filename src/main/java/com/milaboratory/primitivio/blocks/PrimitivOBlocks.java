@@ -19,6 +19,7 @@ import cc.redberry.pipe.InputPort;
 import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.primitivio.PrimitivOState;
 import com.milaboratory.util.LambdaLatch;
+import com.milaboratory.util.MetricsRegistry;
 import com.milaboratory.util.io.AsynchronousFileChannelAdapter;
 import com.milaboratory.util.io.ByteArrayDataOutput;
 import com.milaboratory.util.io.HasPosition;
@@ -105,6 +106,18 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
 
     private long initializationTimestamp = System.nanoTime();
 
+    // Metrics aggregated over all writers
+    private static final MetricsRegistry.Timer
+            SERIALIZATION_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivo_serialization_seconds"),
+            CHECKSUM_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivo_checksum_seconds"),
+            COMPRESSION_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivo_compression_seconds"),
+            IO_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivo_io_seconds"),
+            QUEUE_TIMER = MetricsRegistry.GLOBAL.timer("milib_primitivo_queue_seconds");
+    private static final MetricsRegistry.Counter
+            BLOCKS_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivo_blocks_total"),
+            OBJECTS_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivo_objects_total"),
+            OUTPUT_BYTES_COUNTER = MetricsRegistry.GLOBAL.counter("milib_primitivo_output_bytes_total");
+
     /**
      * @param concurrency maximal number of concurrent serializations
      * @param outputState knownReferences and objects, etc.
@@ -178,6 +191,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
     private ByteBuffer serializeBlock(List<O> content) {
         // Stats {
         ongoingSerdes.incrementAndGet();
+        totalOngoingSerdes.incrementAndGet();
         // }
 
         ByteArrayDataOutput uncompressedOutput = blockCount.get() > 0
@@ -198,7 +212,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
         PrimitivIOBlockHeader header = PrimitivIOBlockHeader.dataBlockHeader();
 
         // Stats {
-        serializationNanos.addAndGet(System.nanoTime() - start);
+        serializationNanos.addAndGet(SERIALIZATION_TIMER.stop(start));
         uncompressedBytes.addAndGet(uncompressedOutput.size());
         start = System.nanoTime();
         // }
@@ -206,7 +220,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
         header.setChecksum(xxHash32.hash(uncompressedOutput.getBuffer(), 0, uncompressedOutput.size(), HASH_SEED));
 
         // Stats {
-        checksumNanos.addAndGet(System.nanoTime() - start);
+        checksumNanos.addAndGet(CHECKSUM_TIMER.stop(start));
         start = System.nanoTime();
         // }
 
@@ -214,7 +228,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
         int compressedLength = compressor.compress(uncompressedOutput.getBuffer(), 0, uncompressedOutput.size(),
                 block, BLOCK_HEADER_SIZE);
 
-        compressionNanos.addAndGet(System.nanoTime() - start);
+        compressionNanos.addAndGet(COMPRESSION_TIMER.stop(start));
 
         // Setting header fields
         header
@@ -240,9 +254,12 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
         compressedBytes.addAndGet(blockSize - BLOCK_HEADER_SIZE);
         objectCount.addAndGet(content.size());
         blockCount.incrementAndGet();
+        OBJECTS_COUNTER.add(content.size());
+        BLOCKS_COUNTER.increment();
 
         // Stats {
         ongoingSerdes.decrementAndGet();
+        totalOngoingSerdes.decrementAndGet();
         // }
 
         return ByteBuffer.wrap(block, 0, blockSize);
@@ -394,9 +411,11 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
             int blockBytes = block.limit();
 
             pendingOps.incrementAndGet();
+            totalPendingOps.incrementAndGet();
 
             previousLatch.setCallback(() -> {
                 pendingOps.decrementAndGet();
+                totalPendingOps.decrementAndGet();
 
                 // Cancelling current task if something is wrong
                 if (!stateOk()) {
@@ -408,16 +427,19 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
                 }
 
                 ongoingIOOps.incrementAndGet();
+                totalOngoingIOOps.incrementAndGet();
                 long ioBegin = System.nanoTime();
                 channel.write(block, null,
                         new CHAbstract(nextLatch) {
                             @Override
                             public void completed(Integer result, Object attachment) {
-                                ioDelayNanos.addAndGet(System.nanoTime() - ioBegin);
+                                ioDelayNanos.addAndGet(IO_TIMER.stop(ioBegin));
                                 ongoingIOOps.decrementAndGet();
+                                totalOngoingIOOps.decrementAndGet();
 
                                 // Tracking output size
                                 outputSize.addAndGet(blockBytes);
+                                OUTPUT_BYTES_COUNTER.add(blockBytes);
 
                                 // Assert
                                 if (result != blockBytes)
@@ -464,7 +486,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
 
             long submittedTimestamp = System.nanoTime();
             executor.submit(() -> {
-                concurrencyOverhead.addAndGet(System.nanoTime() - submittedTimestamp);
+                concurrencyOverhead.addAndGet(QUEUE_TIMER.stop(submittedTimestamp));
                 try {
 
                     // CPU intensive operation, no IO
@@ -546,6 +568,7 @@ public final class PrimitivOBlocks<O> extends PrimitivIOBlocksAbstract {
 
             // For correct statistics calculation
             ongoingIOOps.decrementAndGet();
+            totalOngoingIOOps.decrementAndGet();
 
             // Releasing a permit for the next operation
             concurrencyLimiter.release();
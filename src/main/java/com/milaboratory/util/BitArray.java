@@ -15,14 +15,29 @@
  */
 package com.milaboratory.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Fixed-size bit set backed by {@code long[]} words, so bulk operations, {@link #bitCount()} and iteration over set bits
+ * via {@link #nextSetBit(int)} process 64 bits at a time. Bit {@code i} is stored in bit {@code i % 64} of word
+ * {@code i / 64}, which matches little-endian byte layout used by {@link #extractRawDataArray(BitArray)} and {@link
+ * #construct(byte[], int)}.
+ */
 public class BitArray implements java.io.Serializable {
     private static final long serialVersionUID = 1L;
+    // Serialized form is kept the same as for the former byte[]-backed implementation
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("data", byte[].class),
+            new ObjectStreamField("size", int.class)
+    };
 
-    byte[] data;
-    int size;
+    transient long[] data;
+    transient int size;
 
     public BitArray(List<Boolean> booleans) {
         this(booleans.size());
@@ -40,26 +55,24 @@ public class BitArray implements java.io.Serializable {
 
     public BitArray(int size) {
         this.size = size;
-        this.data = new byte[(size + 7) >> 3];
+        this.data = new long[(size + 63) >>> 6];
     }
 
-    BitArray(byte[] data, int size) {
-        //if(data.length != ((size + 7) >> 3))
-        //    throw new IllegalStateException();
+    BitArray(long[] data, int size) {
         this.data = data;
         this.size = size;
     }
 
     public boolean get(int i) {
-        return (data[i >> 3] & (1 << (i & 7))) != 0;
+        return (data[i >>> 6] & (1L << i)) != 0;
     }
 
     public void set(int i) {
-        data[i >> 3] |= (1 << (i & 7));
+        data[i >>> 6] |= 1L << i;
     }
 
     public void clear(int i) {
-        data[i >> 3] &= ~(1 << (i & 7));
+        data[i >>> 6] &= ~(1L << i);
     }
 
     public void set(int i, boolean value) {
@@ -71,30 +84,24 @@ public class BitArray implements java.io.Serializable {
 
     public BitArray getRange(int from, int to) {
         BitArray ret = new BitArray(to - from);
-        for (int i = 0; i < ret.size(); ++i)
-            ret.set(i, get(i + from));
+        for (int i = nextSetBit(from); i >= 0 && i < to; i = nextSetBit(i + 1))
+            ret.set(i - from);
         return ret;
     }
 
     //TODO Equals to load values
     public void set(BitArray ba) {
-        if (ba.size != this.size)
-            throw new IllegalArgumentException();
-        for (int i = 0; i < this.data.length; ++i)
-            this.data[i] = ba.data[i];
+        loadValueFrom(ba);
     }
 
     public void setAll() {
-        //for (int i = 0; i < data.length; ++i)
-        //    data[i] = 0xFFFFFFFF;
-        Arrays.fill(data, (byte) 0xFF);
-        if ((size & 7) != 0)
-            data[data.length - 1] = (byte) (0xFF >>> (8 - (size & 0x7)));
+        Arrays.fill(data, -1L);
+        if ((size & 63) != 0)
+            data[data.length - 1] = -1L >>> (64 - (size & 63));
     }
 
     public boolean intersects(BitArray bitArray) {
-        if (bitArray.size != this.size)
-            throw new IllegalArgumentException();
+        checkSize(bitArray);
         for (int i = 0; i < this.data.length; ++i)
             if ((this.data[i] & bitArray.data[i]) != 0)
                 return true;
@@ -103,36 +110,119 @@ public class BitArray implements java.io.Serializable {
 
     public int bitCount() {
         int count = 0;
-        for (int i = 0; i < data.length; ++i)
-            count += Integer.bitCount(0xFF & data[i]);
+        for (long d : data)
+            count += Long.bitCount(d);
         return count;
     }
 
+    /**
+     * Same as {@link #bitCount()}
+     */
+    public int cardinality() {
+        return bitCount();
+    }
+
+    /**
+     * Returns index of the first set bit starting from the specified position (inclusive), or -1 if there is no such
+     * bit.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0)
+            from = 0;
+        int w = from >>> 6;
+        if (w >= data.length)
+            return -1;
+        long word = data[w] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == data.length)
+                return -1;
+            word = data[w];
+        }
+    }
+
+    /**
+     * Returns index of the first clear bit starting from the specified position (inclusive), or -1 if there is no such
+     * bit.
+     */
+    public int nextClearBit(int from) {
+        if (from < 0)
+            from = 0;
+        int w = from >>> 6;
+        if (w >= data.length)
+            return -1;
+        long word = ~data[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                return i < size ? i : -1;
+            }
+            if (++w == data.length)
+                return -1;
+            word = ~data[w];
+        }
+    }
+
+    /**
+     * Returns index of the last set bit before or at the specified position, or -1 if there is no such bit.
+     */
+    public int previousSetBit(int from) {
+        if (from < 0)
+            return -1;
+        int w = from >>> 6;
+        long word;
+        if (w >= data.length) {
+            w = data.length - 1;
+            if (w < 0)
+                return -1;
+            word = data[w];
+        } else
+            word = data[w] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0)
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0)
+                return -1;
+            word = data[w];
+        }
+    }
+
     public void or(BitArray bitArray) {
-        if (size != bitArray.size)
-            throw new IllegalArgumentException();
+        checkSize(bitArray);
         for (int i = 0; i < data.length; ++i)
             data[i] |= bitArray.data[i];
     }
 
     public void xor(BitArray bitArray) {
-        if (size != bitArray.size)
-            throw new IllegalArgumentException();
+        checkSize(bitArray);
         for (int i = 0; i < data.length; ++i)
             data[i] ^= bitArray.data[i];
     }
 
     public void and(BitArray bitArray) {
-        if (size != bitArray.size)
-            throw new IllegalArgumentException();
+        checkSize(bitArray);
         for (int i = 0; i < data.length; ++i)
             data[i] &= bitArray.data[i];
     }
 
+    /**
+     * Clears all bits that are set in the specified array.
+     */
+    public void andNot(BitArray bitArray) {
+        checkSize(bitArray);
+        for (int i = 0; i < data.length; ++i)
+            data[i] &= ~bitArray.data[i];
+    }
+
     public void loadValueFrom(BitArray bitArray) {
+        checkSize(bitArray);
+        System.arraycopy(bitArray.data, 0, data, 0, bitArray.data.length);
+    }
+
+    private void checkSize(BitArray bitArray) {
         if (size != bitArray.size)
             throw new IllegalArgumentException();
-        System.arraycopy(bitArray.data, 0, data, 0, bitArray.data.length);
     }
 
     /**
@@ -141,24 +231,28 @@ public class BitArray implements java.io.Serializable {
      * @return false if some bits are set
      */
     public boolean isClean() {
-        for (byte d : data)
+        for (long d : data)
             if (d != 0)
                 return false;
         return true;
     }
 
+    /**
+     * Returns true if all bits of the array are set.
+     */
+    public boolean isFull() {
+        return nextClearBit(0) == -1;
+    }
+
     public void clearAll() {
-        //for (int i = 0; i < data.length; ++i)
-        //    data[i] = 0;
-        Arrays.fill(data, (byte) 0);
+        Arrays.fill(data, 0L);
     }
 
     public int[] getBits() {
         int[] bits = new int[bitCount()];
         int n = 0;
-        for (int i = 0; i < size; ++i)
-            if (get(i))
-                bits[n++] = i;
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1))
+            bits[n++] = i;
         return bits;
     }
 
@@ -167,7 +261,7 @@ public class BitArray implements java.io.Serializable {
     }
 
     public BitArray clone() {
-        return new BitArray(Arrays.copyOf(data, data.length), size);
+        return new BitArray(data.clone(), size);
     }
 
     public boolean equals(Object obj) {
@@ -201,11 +295,45 @@ public class BitArray implements java.io.Serializable {
         return new String(c);
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("data", toBytes(data, size));
+        fields.put("size", size);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        size = fields.get("size", 0);
+        data = fromBytes((byte[]) fields.get("data", null), size);
+    }
+
+    private static byte[] toBytes(long[] data, int size) {
+        byte[] bytes = new byte[(size + 7) >> 3];
+        for (int i = 0; i < bytes.length; ++i)
+            bytes[i] = (byte) (data[i >>> 3] >>> ((i & 7) << 3));
+        return bytes;
+    }
+
+    private static long[] fromBytes(byte[] bytes, int size) {
+        // Array length depends only on size (bytes and bits beyond size are ignored), so equal arrays have equal data
+        long[] data = new long[(size + 63) >>> 6];
+        int length = Math.min(bytes.length, (size + 7) >>> 3);
+        for (int i = 0; i < length; ++i)
+            data[i >>> 3] |= (0xFFL & bytes[i]) << ((i & 7) << 3);
+        if ((size & 63) != 0)
+            data[data.length - 1] &= -1L >>> (64 - (size & 63));
+        return data;
+    }
+
+    /**
+     * Returns a copy of the bits in the little-endian byte layout ({@code (size + 7) / 8} bytes).
+     */
     public static byte[] extractRawDataArray(BitArray array) {
-        return array.data;
+        return toBytes(array.data, array.size);
     }
 
     public static BitArray construct(byte[] data, int size) {
-        return new BitArray(data, size);
+        return new BitArray(fromBytes(data, size), size);
     }
 }
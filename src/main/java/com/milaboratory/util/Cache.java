@@ -23,6 +23,11 @@ import java.util.function.Supplier;
 
 public class Cache {
     private static AtomicLong cacheHit = new AtomicLong(), cacheMiss = new AtomicLong();
+
+    static {
+        MetricsRegistry.GLOBAL.gauge("milib_cache_hits", () -> cacheHit.get());
+        MetricsRegistry.GLOBAL.gauge("milib_cache_misses", () -> cacheMiss.get());
+    }
     private static final Object NULL = new Object();
     private HashMap<Object, WeakReference<Object>> map;
 
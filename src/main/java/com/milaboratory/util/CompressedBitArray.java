@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed representation of {@link BitArray} for sparse bit sets (e.g. filters selecting a small subset
+ * of a large reference base). Similar to Roaring bitmaps, the index space is split into chunks of 2^16 bits, each
+ * non-empty chunk is stored either as a sorted array of 16-bit offsets (if it contains at most {@link
+ * #MAX_ARRAY_CONTAINER_SIZE} bits) or as a 1024-word bitmap. Empty chunks take no space.
+ */
+public final class CompressedBitArray implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+    final int size, cardinality;
+    /**
+     * Indices of non-empty chunks, sorted
+     */
+    final int[] chunkIds;
+    /**
+     * char[] (sorted offsets) or long[] (bitmap) for each of non-empty chunks
+     */
+    final Object[] containers;
+
+    private CompressedBitArray(int size, int cardinality, int[] chunkIds, Object[] containers) {
+        this.size = size;
+        this.cardinality = cardinality;
+        this.chunkIds = chunkIds;
+        this.containers = containers;
+    }
+
+    /**
+     * Creates compressed copy of the bit array.
+     */
+    public static CompressedBitArray compress(BitArray array) {
+        int chunks = (array.size() + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        int[] chunkIds = new int[chunks];
+        Object[] containers = new Object[chunks];
+        int nonEmpty = 0, cardinality = 0;
+        long[] data = array.data;
+        for (int chunk = 0; chunk < chunks; ++chunk) {
+            int fromWord = chunk << (CHUNK_BITS - 6), toWord = Math.min(data.length, fromWord + (CHUNK_SIZE >>> 6));
+            int count = 0;
+            for (int w = fromWord; w < toWord; ++w)
+                count += Long.bitCount(data[w]);
+            if (count == 0)
+                continue;
+            cardinality += count;
+            chunkIds[nonEmpty] = chunk;
+            if (count <= MAX_ARRAY_CONTAINER_SIZE) {
+                char[] offsets = new char[count];
+                int n = 0;
+                for (int w = fromWord; w < toWord; ++w)
+                    for (long word = data[w]; word != 0; word &= word - 1)
+                        offsets[n++] = (char) (((w - fromWord) << 6) + Long.numberOfTrailingZeros(word));
+                containers[nonEmpty] = offsets;
+            } else {
+                long[] bitmap = new long[CHUNK_SIZE >>> 6];
+                System.arraycopy(data, fromWord, bitmap, 0, toWord - fromWord);
+                containers[nonEmpty] = bitmap;
+            }
+            ++nonEmpty;
+        }
+        return new CompressedBitArray(array.size(), cardinality,
+                Arrays.copyOf(chunkIds, nonEmpty), Arrays.copyOf(containers, nonEmpty));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean get(int i) {
+        int c = Arrays.binarySearch(chunkIds, i >>> CHUNK_BITS);
+        if (c < 0)
+            return false;
+        Object container = containers[c];
+        int offset = i & (CHUNK_SIZE - 1);
+        if (container instanceof char[])
+            return Arrays.binarySearch((char[]) container, (char) offset) >= 0;
+        return (((long[]) container)[offset >>> 6] & (1L << offset)) != 0;
+    }
+
+    /**
+     * Returns index of the first set bit starting from the specified position (inclusive), or -1 if there is no such
+     * bit.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0)
+            from = 0;
+        int c = Arrays.binarySearch(chunkIds, from >>> CHUNK_BITS);
+        int offset = from & (CHUNK_SIZE - 1);
+        if (c < 0) {
+            c = -c - 1;
+            offset = 0;
+        }
+        for (; c < chunkIds.length; ++c, offset = 0) {
+            int base = chunkIds[c] << CHUNK_BITS;
+            Object container = containers[c];
+            if (container instanceof char[]) {
+                char[] offsets = (char[]) container;
+                int p = Arrays.binarySearch(offsets, (char) offset);
+                if (p < 0)
+                    p = -p - 1;
+                if (p < offsets.length)
+                    return base + offsets[p];
+            } else {
+                long[] bitmap = (long[]) container;
+                int w = offset >>> 6;
+                long word = bitmap[w] & (-1L << offset);
+                while (true) {
+                    if (word != 0)
+                        return base + (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (++w == bitmap.length)
+                        break;
+                    word = bitmap[w];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns uncompressed copy.
+     */
+    public BitArray toBitArray() {
+        BitArray result = new BitArray(size);
+        for (int c = 0; c < chunkIds.length; ++c) {
+            int base = chunkIds[c] << CHUNK_BITS;
+            Object container = containers[c];
+            if (container instanceof char[])
+                for (char offset : (char[]) container)
+                    result.set(base + offset);
+            else {
+                long[] bitmap = (long[]) container;
+                System.arraycopy(bitmap, 0, result.data, base >>> 6,
+                        Math.min(bitmap.length, result.data.length - (base >>> 6)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns approximate memory footprint of containers in bytes.
+     */
+    public long getSizeInBytes() {
+        long bytes = 4L * chunkIds.length;
+        for (Object container : containers)
+            bytes += container instanceof char[]
+                    ? 2L * ((char[]) container).length
+                    : 8L * ((long[]) container).length;
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompressedBitArray that = (CompressedBitArray) o;
+        // Representation is unambiguous for given content
+        return size == that.size && Arrays.equals(chunkIds, that.chunkIds) &&
+                Arrays.deepEquals(containers, that.containers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.deepHashCode(containers);
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of named performance metrics (counters, gauges, timers and histograms). Components publish their counters
+ * into a registry (usually {@link #GLOBAL}), which can be read programmatically or exported as JSON ({@link
+ * #toJson()}) or in Prometheus text exposition format ({@link #toPrometheus()}).
+ *
+ * <p>All metrics are thread-safe. Metric names should consist of letters, digits and underscores; other characters
+ * are replaced with underscores in Prometheus output.</p>
+ */
+public final class MetricsRegistry {
+    /**
+     * Default registry
+     */
+    public static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Returns counter with the specified name, creating it if needed
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * Returns settable gauge with the specified name, creating it if needed
+     */
+    public Gauge gauge(String name) {
+        return get(name, Gauge.class);
+    }
+
+    /**
+     * Registers gauge which value is calculated by the supplier on each read (replaces previously registered gauge
+     * with the same name).
+     */
+    public Gauge gauge(String name, DoubleSupplier supplier) {
+        Gauge gauge = new Gauge(supplier);
+        // Type is checked before replacement, so the registry is left untouched on failure
+        metrics.compute(name, (n, previous) -> {
+            if (previous != null && !(previous instanceof Gauge))
+                throw new IllegalArgumentException("Metric " + name + " is already registered with another type.");
+            return gauge;
+        });
+        return gauge;
+    }
+
+    /**
+     * Returns timer with the specified name, creating it if needed
+     */
+    public Timer timer(String name) {
+        return get(name, Timer.class);
+    }
+
+    /**
+     * Returns histogram with the specified name, creating it if needed
+     */
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class);
+    }
+
+    private <M extends Metric> M get(String name, Class<M> type) {
+        Metric metric = metrics.get(name);
+        if (metric == null)
+            metric = metrics.computeIfAbsent(name, n -> {
+                try {
+                    return type.newInstance();
+                } catch (InstantiationException | IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        if (!type.isInstance(metric))
+            throw new IllegalArgumentException("Metric " + name + " is already registered with another type.");
+        return type.cast(metric);
+    }
+
+    /**
+     * Returns all registered metrics sorted by name
+     */
+    public Map<String, Metric> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    /**
+     * Removes metric with the specified name
+     *
+     * @return removed metric or null if there was no metric with such name
+     */
+    public Metric remove(String name) {
+        return metrics.remove(name);
+    }
+
+    /**
+     * Removes all metrics which names start with the specified prefix (e.g. to release supplier-backed gauges
+     * registered by a component which is not used anymore)
+     *
+     * @return number of removed metrics
+     */
+    public int removeByPrefix(String prefix) {
+        int removed = 0;
+        for (String name : metrics.keySet())
+            if (name.startsWith(prefix) && metrics.remove(name) != null)
+                ++removed;
+        return removed;
+    }
+
+    /**
+     * Removes all metrics from the registry. Note that metrics registered by library components in {@link #GLOBAL}
+     * during class initialization will not be registered again.
+     */
+    public void clear() {
+        metrics.clear();
+    }
+
+    /**
+     * Returns values of all metrics as a JSON object
+     */
+    public String toJson() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Metric> e : getMetrics().entrySet())
+            result.put(e.getKey(), e.getValue().toJsonValue());
+        try {
+            return GlobalObjectMappers.PRETTY.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns values of all metrics in Prometheus text exposition format. Timers and histograms are exported as
+     * summaries (timer values are in seconds).
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Metric> e : getMetrics().entrySet())
+            e.getValue().writePrometheus(sanitize(e.getKey()), sb);
+        return sb.toString();
+    }
+
+    static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && c >= '0' && c <= '9') ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        return new BigDecimal(value).round(new MathContext(9)).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Base class for all metrics
+     */
+    public static abstract class Metric {
+        Metric() {
+        }
+
+        abstract Object toJsonValue();
+
+        abstract void writePrometheus(String name, StringBuilder sb);
+    }
+
+    /**
+     * Monotonically increasing counter
+     */
+    public static final class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        public Counter() {
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        Object toJsonValue() {
+            return get();
+        }
+
+        @Override
+        void writePrometheus(String name, StringBuilder sb) {
+            sb.append("# TYPE ").append(name).append(" counter\n")
+                    .append(name).append(' ').append(get()).append('\n');
+        }
+    }
+
+    /**
+     * Gauge, either settable or calculated on read by a supplier
+     */
+    public static final class Gauge extends Metric {
+        private final DoubleSupplier supplier;
+        private volatile double value = 0;
+
+        public Gauge() {
+            this(null);
+        }
+
+        Gauge(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        public void set(double value) {
+            if (supplier != null)
+                throw new IllegalStateException("Can't set value of gauge backed by supplier.");
+            this.value = value;
+        }
+
+        public double get() {
+            return supplier == null ? value : supplier.getAsDouble();
+        }
+
+        @Override
+        Object toJsonValue() {
+            return get();
+        }
+
+        @Override
+        void writePrometheus(String name, StringBuilder sb) {
+            sb.append("# TYPE ").append(name).append(" gauge\n")
+                    .append(name).append(' ').append(format(get())).append('\n');
+        }
+    }
+
+    /**
+     * Histogram of non-negative long values with logarithmic buckets (HDR-style): each power of two range is split
+     * into {@code 2^}{@link #SUB_BUCKET_BITS} linear sub-buckets, so relative error of quantile estimates is below
+     * 3.2% for any value.
+     */
+    public static class Histogram extends Metric {
+        public static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong(), sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        public Histogram() {
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS)
+                return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        static long bucketLowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            return ((long) (bucket % SUB_BUCKETS + SUB_BUCKETS)) << shift;
+        }
+
+        static long bucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            return bucketLowerBound(bucket) + (1L << shift) - 1;
+        }
+
+        /**
+         * Records value (negative values are recorded as 0)
+         */
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+            buckets.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long m;
+            while ((m = max.get()) < value && !max.compareAndSet(m, value)) ;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        public long getMax() {
+            return count.get() == 0 ? 0 : max.get();
+        }
+
+        public double getMean() {
+            long c = count.get();
+            return c == 0 ? Double.NaN : 1.0 * sum.get() / c;
+        }
+
+        /**
+         * Returns estimate of the quantile (upper bound of the bucket containing the quantile)
+         *
+         * @param quantile quantile from 0 to 1
+         */
+        public long getQuantile(double quantile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++)
+                total += snapshot[i] = buckets.get(i);
+            if (total == 0)
+                return 0;
+            long target = Math.max(1, (long) Math.ceil(quantile * total));
+            long accumulated = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                accumulated += snapshot[i];
+                if (accumulated >= target)
+                    return Math.min(bucketUpperBound(i), getMax());
+            }
+            return getMax();
+        }
+
+        /**
+         * Multiplier applied to values on export
+         */
+        double exportScale() {
+            return 1.0;
+        }
+
+        @Override
+        Object toJsonValue() {
+            double scale = exportScale();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", getCount());
+            result.put("sum", getSum() * scale);
+            result.put("mean", getMean() * scale);
+            result.put("max", getMax() * scale);
+            for (double q : QUANTILES)
+                result.put("p" + format(q * 100), getQuantile(q) * scale);
+            return result;
+        }
+
+        @Override
+        void writePrometheus(String name, StringBuilder sb) {
+            double scale = exportScale();
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (double q : QUANTILES)
+                sb.append(name).append("{quantile=\"").append(format(q)).append("\"} ")
+                        .append(format(getQuantile(q) * scale)).append('\n');
+            sb.append(name).append("_sum ").append(format(getSum() * scale)).append('\n');
+            sb.append(name).append("_count ").append(getCount()).append('\n');
+        }
+    }
+
+    /**
+     * Histogram of durations in nanoseconds (exported in seconds)
+     */
+    public static final class Timer extends Histogram {
+        public Timer() {
+        }
+
+        /**
+         * Returns current time to be passed to {@link #stop(long)}
+         */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Records time elapsed since the moment returned by {@link #start()}
+         *
+         * @return elapsed time in nanoseconds
+         */
+        public long stop(long start) {
+            long elapsed = System.nanoTime() - start;
+            record(elapsed);
+            return elapsed;
+        }
+
+        /**
+         * Runs the action and records its duration
+         */
+        public void time(Runnable action) {
+            long start = start();
+            try {
+                action.run();
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        double exportScale() {
+            return 1E-9;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.blocks.ParallelProcessor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Order-preserving parallel processor. Elements of the input port are taken in batches, each batch is processed on the
+ * provided executor, and results are returned in the order of input elements.
+ *
+ * <p>At most {@code maxBatchesInFlight} batches are submitted or waiting to be taken at any time, so the amount of
+ * buffered data is bounded. Input is pulled from the thread calling {@link #take()} (new batches are submitted as soon
+ * as earlier ones are taken), so the input port does not need to be thread-safe.</p>
+ *
+ * <p>Any executor may be used, e.g. a fixed thread pool, {@link java.util.concurrent.ForkJoinPool} or a
+ * virtual-thread-per-task executor on Java 21+. Executor is not shut down by this processor.</p>
+ *
+ * <p>Processor exposes statistics: current and maximal number of batches in flight and time spent in {@link #take()}
+ * waiting for results to become available (stall time).</p>
+ *
+ * @param <I> type of input elements
+ * @param <O> type of output elements
+ */
+public final class OrderedParallelProcessor<I, O> implements OutputPortCloseable<O> {
+    private final OutputPort<I> input;
+    private final Processor<I, O> processor;
+    private final Executor executor;
+    private final int batchSize, maxBatchesInFlight;
+    private final ArrayDeque<CompletableFuture<Object[]>> inFlight = new ArrayDeque<>();
+    private boolean inputDrained = false, closed = false;
+    private Object[] current = null;
+    private int currentPosition = 0;
+
+    // Statistics
+    private volatile int maxQueueDepth = 0;
+    private volatile long stallTimeNanos = 0, stalls = 0, batches = 0, elements = 0;
+
+    /**
+     * Creates new processor.
+     *
+     * @param input              input port
+     * @param processor          processor, must be thread-safe
+     * @param executor           executor to process batches on
+     * @param batchSize          number of elements in batch
+     * @param maxBatchesInFlight maximal number of batches submitted to executor and not yet taken
+     */
+    public OrderedParallelProcessor(OutputPort<I> input, Processor<I, O> processor, Executor executor,
+                                    int batchSize, int maxBatchesInFlight) {
+        if (batchSize <= 0 || maxBatchesInFlight <= 0)
+            throw new IllegalArgumentException("Batch size and maximal number of batches in flight must be positive.");
+        this.input = Objects.requireNonNull(input);
+        this.processor = Objects.requireNonNull(processor);
+        this.executor = Objects.requireNonNull(executor);
+        this.batchSize = batchSize;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+    }
+
+    @Override
+    public synchronized O take() {
+        while (current == null || currentPosition == current.length) {
+            if (closed)
+                return null;
+            fill();
+            CompletableFuture<Object[]> next = inFlight.poll();
+            if (next == null)
+                return null;
+            current = await(next);
+            currentPosition = 0;
+            fill();
+        }
+        @SuppressWarnings("unchecked")
+        O result = (O) current[currentPosition];
+        // Releasing reference to the result
+        current[currentPosition++] = null;
+        return result;
+    }
+
+    /**
+     * Submits new batches until the maximal number of batches in flight is reached or input is drained.
+     */
+    private void fill() {
+        // Batch being taken is also counted
+        int limit = current != null && currentPosition < current.length ? maxBatchesInFlight - 1 : maxBatchesInFlight;
+        while (!inputDrained && inFlight.size() < limit) {
+            final List<I> batch = new ArrayList<>(batchSize);
+            I element;
+            while (batch.size() < batchSize && (element = input.take()) != null)
+                batch.add(element);
+            if (batch.size() < batchSize)
+                inputDrained = true;
+            if (batch.isEmpty())
+                break;
+            inFlight.add(CompletableFuture.supplyAsync(() -> {
+                Object[] result = new Object[batch.size()];
+                for (int i = 0; i < result.length; ++i)
+                    result[i] = processor.process(batch.get(i));
+                return result;
+            }, executor));
+            ++batches;
+            elements += batch.size();
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, inFlight.size());
+    }
+
+    private Object[] await(CompletableFuture<Object[]> future) {
+        try {
+            if (future.isDone())
+                return future.get();
+            long start = System.nanoTime();
+            try {
+                return future.get();
+            } finally {
+                stallTimeNanos += System.nanoTime() - start;
+                ++stalls;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException | CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new LambdaExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops processing: no new batches are submitted and all subsequent {@link #take()} invocations return
+     * {@code null}. Closes input port if it is closeable.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (CompletableFuture<Object[]> future : inFlight)
+            future.cancel(false);
+        inFlight.clear();
+        current = null;
+        if (input instanceof OutputPortCloseable)
+            ((OutputPortCloseable<?>) input).close();
+    }
+
+    /**
+     * Returns number of batches submitted to executor and not yet returned by {@link #take()} (current queue depth),
+     * excluding the batch results are currently taken from.
+     */
+    public synchronized int getQueueDepth() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns maximal observed number of batches in flight.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Returns total time (in nanoseconds) spent in {@link #take()} waiting for results of the next batch.
+     */
+    public long getStallTimeNanos() {
+        return stallTimeNanos;
+    }
+
+    /**
+     * Returns number of times {@link #take()} had to wait for results of the next batch.
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Returns number of batches submitted to executor.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns number of input elements submitted to executor.
+     */
+    public long getElements() {
+        return elements;
+    }
+
+    /**
+     * Settings of batched parallel processing, can be shared by several pipelines.
+     */
+    public static final class Settings {
+        final Executor executor;
+        final int batchSize, maxBatchesInFlight;
+
+        /**
+         * @param executor           executor to process batches on
+         * @param batchSize          number of elements in batch
+         * @param maxBatchesInFlight maximal number of batches submitted to executor and not yet taken
+         */
+        public Settings(Executor executor, int batchSize, int maxBatchesInFlight) {
+            if (batchSize <= 0 || maxBatchesInFlight <= 0)
+                throw new IllegalArgumentException("Batch size and maximal number of batches in flight must be positive.");
+            this.executor = Objects.requireNonNull(executor);
+            this.batchSize = batchSize;
+            this.maxBatchesInFlight = maxBatchesInFlight;
+        }
+
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public int getMaxBatchesInFlight() {
+            return maxBatchesInFlight;
+        }
+
+        /**
+         * Creates new processor with these settings.
+         */
+        public <I, O> OrderedParallelProcessor<I, O> create(OutputPort<I> input, Processor<I, O> processor) {
+            return new OrderedParallelProcessor<>(input, processor, executor, batchSize, maxBatchesInFlight);
+        }
+
+        /**
+         * Creates output port applying the processor to the input, as used by aligners for piped processing. If
+         * settings are not null, elements are processed in batches on the executor from the settings (amount of
+         * buffered elements is bounded and the order of elements is preserved; returned port is an {@link
+         * OrderedParallelProcessor} reporting queue depth and stall time), otherwise elements are processed in the
+         * calling thread or by a {@link ParallelProcessor} with the specified number of threads.
+         *
+         * @param settings  batched processing settings, {@code null} to use thread count
+         * @param input     input port
+         * @param processor processor
+         * @param threads   number of threads used if settings are null (0 for the number of available processors)
+         */
+        public static <I, O> OutputPort<O> wrap(Settings settings, OutputPort<I> input, Processor<I, O> processor,
+                                                int threads) {
+            if (settings != null)
+                return settings.create(input, processor);
+            if (threads == 1)
+                return CUtils.wrap(input, processor);
+            return new ParallelProcessor<>(input, processor,
+                    threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+        }
+    }
+}
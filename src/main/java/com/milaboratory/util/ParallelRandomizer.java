@@ -0,0 +1,307 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import cc.redberry.pipe.util.Chunk;
+import cc.redberry.pipe.util.CountLimitingOutputPort;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Parallel version of {@link Randomizer}. Chunks of input objects are shuffled concurrently by a pool of worker threads
+ * and spilled to several temp files (spread across a set of temp directories, so that several disks can be used).
+ * Randomized output is produced by interleaving shuffled chunks, picking the next chunk with probability proportional
+ * to the number of objects remaining in it, so resulting order is a uniformly random permutation of the input.
+ * Randomized output is prefetched by a background thread into a bounded buffer.
+ *
+ * <p>Result is fully determined by the seed and the order of input objects, and does not depend on the number of
+ * threads or temp directories.</p>
+ *
+ * <p>Note: {@link ObjectSerializer#write(java.util.Collection, OutputStream)} is invoked concurrently from several
+ * threads.</p>
+ */
+public final class ParallelRandomizer<T> {
+    private final OutputPort<T> initialSource;
+    private final long seed;
+    private final int chunkSize;
+    private final ObjectSerializer<T> serializer;
+    private final File[] tempDirs;
+    private final int threads;
+    private final List<SpillFile> spillFiles = new ArrayList<>();
+    // Chunk id -> spill file id, offset, size
+    private final List<ChunkInfo> chunks = new ArrayList<>();
+
+    ParallelRandomizer(OutputPort<T> initialSource, long seed, int chunkSize,
+                       ObjectSerializer<T> serializer, File[] tempDirs, int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Wrong number of threads: " + threads);
+        this.initialSource = initialSource;
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.serializer = serializer;
+        this.tempDirs = tempDirs == null || tempDirs.length == 0 ? new File[]{null} : tempDirs;
+        this.threads = threads;
+    }
+
+    /**
+     * Randomizes order of objects.
+     *
+     * @param initialSource source of objects
+     * @param seed          random seed
+     * @param chunkSize     number of objects shuffled in memory at once (per thread)
+     * @param serializer    serializer
+     * @param tempDirs      directories for temp files (null or empty array to use default temp directory)
+     * @param threads       number of threads
+     * @param readAhead     number of objects to prefetch in background
+     * @return port producing objects in random order
+     */
+    public static <T> OutputPortCloseable<T> randomize(
+            OutputPort<T> initialSource,
+            long seed,
+            int chunkSize,
+            ObjectSerializer<T> serializer,
+            File[] tempDirs,
+            int threads,
+            int readAhead) throws IOException {
+        ParallelRandomizer<T> randomizer = new ParallelRandomizer<>(initialSource, seed, chunkSize, serializer,
+                tempDirs, threads);
+        randomizer.build();
+        return randomizer.getRandomized(readAhead);
+    }
+
+    void build() throws IOException {
+        int nFiles = Math.max(threads, tempDirs.length);
+        for (int i = 0; i < nFiles; i++) {
+            File dir = tempDirs[i % tempDirs.length];
+            spillFiles.add(new SpillFile(TempFileManager.getTempFile(dir == null ? null : dir.toPath())));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "randomizer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Limits number of chunks kept in memory
+        Semaphore inFlight = new Semaphore(2 * threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            OutputPort<Chunk<T>> chunked = CUtils.buffered(CUtils.chunked(initialSource, chunkSize), 1);
+            Chunk<T> chunk;
+            while ((chunk = chunked.take()) != null) {
+                inFlight.acquire();
+                final int id = chunks.size();
+                final ChunkInfo info = new ChunkInfo(id % spillFiles.size());
+                chunks.add(info);
+                final Object[] data = chunk.toArray();
+                final Semaphore semaphore = inFlight;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            shuffle(data, chunkRandom(id));
+                            spillFiles.get(info.file).write(info, data, serializer);
+                        } finally {
+                            semaphore.release();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (SpillFile file : spillFiles)
+                file.close();
+        }
+    }
+
+    private RandomGenerator chunkRandom(int chunkId) {
+        return new Well19937c(HashFunctions.JenkinWang64shift(seed + chunkId));
+    }
+
+    private static void shuffle(Object[] data, RandomGenerator random) {
+        for (int i = data.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            Object tmp = data[i];
+            data[i] = data[j];
+            data[j] = tmp;
+        }
+    }
+
+    OutputPortCloseable<T> getRandomized(int readAhead) throws IOException {
+        final RandomizingPort port = new RandomizingPort();
+        if (readAhead <= 0)
+            return port;
+        final OutputPortCloseable<T> buffered = CUtils.buffered(port, readAhead);
+        return new OutputPortCloseable<T>() {
+            @Override
+            public T take() {
+                return buffered.take();
+            }
+
+            @Override
+            public void close() {
+                port.close();
+                buffered.close();
+            }
+        };
+    }
+
+    private final class RandomizingPort implements OutputPortCloseable<T> {
+        final List<OutputPortCloseable<T>> blocks = new ArrayList<>();
+        final List<InputStream> streams = new ArrayList<>();
+        final int[] remaining;
+        // Fenwick tree over remaining (1-based), used for weighted selection of chunks in O(log(#chunks))
+        final long[] tree;
+        final int highestBit;
+        final RandomGenerator random = new Well19937c(HashFunctions.JenkinWang64shift(~seed));
+        long total = 0;
+        boolean closed = false;
+
+        RandomizingPort() throws IOException {
+            remaining = new int[chunks.size()];
+            for (int i = 0; i < chunks.size(); i++) {
+                ChunkInfo info = chunks.get(i);
+                final FileInputStream fo = new FileInputStream(spillFiles.get(info.file).file);
+                // Setting file position to the beginning of the chunk
+                fo.getChannel().position(info.offset);
+                streams.add(fo);
+                blocks.add(new CountLimitingOutputPort<>(
+                        serializer.read(new DataInputStream(new BufferedInputStream(fo, 16384))), info.size));
+                remaining[i] = info.size;
+                total += info.size;
+            }
+            tree = new long[remaining.length + 1];
+            for (int i = 1; i < tree.length; i++) {
+                tree[i] += remaining[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length)
+                    tree[parent] += tree[i];
+            }
+            highestBit = Integer.highestOneBit(remaining.length);
+        }
+
+        /**
+         * Returns id of the chunk containing object with the specified index in the concatenation of remaining objects
+         */
+        private int find(long index) {
+            int pos = 0;
+            for (int step = highestBit; step > 0; step >>= 1)
+                if (pos + step < tree.length && tree[pos + step] <= index)
+                    index -= tree[pos += step];
+            return pos;
+        }
+
+        private void decrement(int id) {
+            for (int i = id + 1; i < tree.length; i += i & -i)
+                --tree[i];
+        }
+
+        @Override
+        public synchronized T take() {
+            if (closed)
+                return null;
+            if (total == 0) {
+                close();
+                return null;
+            }
+
+            // Selecting chunk with probability proportional to the number of remaining objects
+            int id = find((long) (random.nextDouble() * total));
+
+            decrement(id);
+            --remaining[id];
+            --total;
+            T obj = blocks.get(id).take();
+            if (remaining[id] == 0)
+                closeBlock(id);
+            return obj;
+        }
+
+        private void closeBlock(int id) {
+            blocks.get(id).close();
+            try {
+                streams.get(id).close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed)
+                return;
+            for (int i = 0; i < blocks.size(); i++)
+                closeBlock(i);
+            blocks.clear();
+            streams.clear();
+            for (SpillFile file : spillFiles)
+                file.file.delete();
+            closed = true;
+        }
+    }
+
+    private static final class ChunkInfo {
+        final int file;
+        long offset;
+        int size;
+
+        ChunkInfo(int file) {
+            this.file = file;
+        }
+    }
+
+    private static final class SpillFile {
+        final File file;
+        final CountingOutputStream output;
+
+        SpillFile(File file) throws IOException {
+            this.file = file;
+            this.output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024));
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized <T> void write(ChunkInfo info, Object[] data, ObjectSerializer<T> serializer) {
+            info.offset = output.getByteCount();
+            info.size = data.length;
+            serializer.write((List<T>) Arrays.asList(data), new CloseShieldOutputStream(output));
+        }
+
+        synchronized void close() throws IOException {
+            output.close();
+        }
+    }
+}
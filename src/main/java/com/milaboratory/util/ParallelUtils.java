@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Helpers for simple data-parallel loops over index ranges.
+ */
+public final class ParallelUtils {
+    private ParallelUtils() {
+    }
+
+    /**
+     * Creates a pool to be used with {@link #forEach(ForkJoinPool, int, int, IntConsumer)}.
+     *
+     * @param threads number of threads, 0 for the number of available processors
+     * @return new pool, or {@code null} if {@code threads == 1} (loops are executed in the calling thread)
+     */
+    public static ForkJoinPool createPool(int threads) {
+        if (threads < 0)
+            throw new IllegalArgumentException("Negative number of threads: " + threads);
+        if (threads == 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        return threads == 1 ? null : new ForkJoinPool(threads);
+    }
+
+    /**
+     * Invokes {@code body} for each index in {@code [from, to)} using threads of the pool, and waits for all
+     * invocations to complete. Unchecked exceptions thrown by the body are rethrown in the calling thread.
+     *
+     * @param pool pool created by {@link #createPool(int)}, if {@code null} loop is executed in the calling thread
+     * @param from first index (inclusive)
+     * @param to   last index (exclusive)
+     * @param body loop body
+     */
+    public static void forEach(ForkJoinPool pool, int from, int to, IntConsumer body) {
+        if (pool == null) {
+            for (int i = from; i < to; ++i)
+                body.accept(i);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(body)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new LambdaExecutionException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import com.milaboratory.core.Range;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+import static java.util.Map.Entry;
+
+/**
+ * Immutable index over possibly overlapping ranges, supporting stabbing and overlap queries in O(log n + k) time.
+ *
+ * <p>In contrast to {@link RangeMap}, ranges may intersect. Ranges are stored in flat arrays sorted by lower bound,
+ * which are treated as an implicit balanced binary tree augmented with maximal upper bound of each subtree (see
+ * H. Li, cgranges), so no per-node objects are allocated and queries are cache-friendly. Reversed ranges are indexed
+ * by their lower and upper bounds; empty ranges are not supported.</p>
+ *
+ * <p>Query results are returned in the order of the lower bound of indexed ranges.</p>
+ *
+ * @param <T> value type
+ */
+public final class RangeIndex<T> implements java.io.Serializable {
+    // Sub-trees of at most this level are scanned linearly
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    final Range[] ranges;
+    final Object[] values;
+    final int[] lowers, uppers, maxUppers;
+    final int maxLevel;
+    transient volatile List<Entry<Range, T>> entries;
+
+    private RangeIndex(List<Entry<Range, T>> sorted) {
+        int n = sorted.size();
+        this.ranges = new Range[n];
+        this.values = new Object[n];
+        this.lowers = new int[n];
+        this.uppers = new int[n];
+        this.maxUppers = new int[n];
+        for (int i = 0; i < n; ++i) {
+            Entry<Range, T> e = sorted.get(i);
+            ranges[i] = e.getKey();
+            values[i] = e.getValue();
+            lowers[i] = e.getKey().getLower();
+            uppers[i] = e.getKey().getUpper();
+        }
+        this.maxLevel = buildIndex();
+    }
+
+    /**
+     * Calculates maximal upper bounds of implicit tree nodes. Node at level k has index with k lowest bits set to 1
+     * and the next bit set to 0; leaves (level 0) are even indices.
+     *
+     * @return level of the root
+     */
+    private int buildIndex() {
+        int n = lowers.length;
+        if (n == 0)
+            return 0;
+        int lastIndex = 0, lastMax = 0;
+        for (int i = 0; i < n; i += 2) {
+            lastIndex = i;
+            lastMax = maxUppers[i] = uppers[i];
+        }
+        int k;
+        for (k = 1; 1 << k <= n; ++k) {
+            int x = 1 << (k - 1), first = (x << 1) - 1, step = x << 2;
+            for (int i = first; i < n; i += step) {
+                int left = maxUppers[i - x],
+                        right = i + x < n ? maxUppers[i + x] : lastMax;
+                maxUppers[i] = Math.max(uppers[i], Math.max(left, right));
+            }
+            lastIndex = ((lastIndex >>> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < n && maxUppers[lastIndex] > lastMax)
+                lastMax = maxUppers[lastIndex];
+        }
+        return k - 1;
+    }
+
+    public int size() {
+        return ranges.length;
+    }
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * Returns i-th range in the order of lower bounds.
+     */
+    public Range getRange(int i) {
+        return ranges[i];
+    }
+
+    /**
+     * Returns value associated with i-th range in the order of lower bounds.
+     */
+    @SuppressWarnings("unchecked")
+    public T getValue(int i) {
+        return (T) values[i];
+    }
+
+    /**
+     * Returns all entries of the index in the order of lower bounds.
+     */
+    public List<Entry<Range, T>> entries() {
+        List<Entry<Range, T>> e = entries;
+        if (e == null) {
+            Entry<Range, T>[] array = new Entry[ranges.length];
+            for (int i = 0; i < array.length; ++i)
+                array[i] = new AbstractMap.SimpleImmutableEntry<>(ranges[i], getValue(i));
+            entries = e = Collections.unmodifiableList(Arrays.asList(array));
+        }
+        return e;
+    }
+
+    /**
+     * Calls consumer with indices (see {@link #getRange(int)}) of all ranges intersecting with [from, to), in the
+     * order of lower bounds.
+     */
+    public void forEachIntersecting(int from, int to, IntConsumer consumer) {
+        int n = lowers.length;
+        if (n == 0 || from >= to)
+            return;
+
+        // Stack of (level, node index, left sub-tree processed flag) triples
+        int[] stack = new int[3 * (maxLevel + 2) * 2];
+        int top = 0;
+        stack[top++] = maxLevel;
+        stack[top++] = (1 << maxLevel) - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int visited = stack[--top], x = stack[--top], k = stack[--top];
+            if (k <= LINEAR_SCAN_LEVEL) {
+                int i0 = x >> k << k, i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+                for (int i = i0; i < i1 && lowers[i] < to; ++i)
+                    if (from < uppers[i])
+                        consumer.accept(i);
+            } else if (visited == 0) {
+                int y = x - (1 << (k - 1));
+                stack[top++] = k;
+                stack[top++] = x;
+                stack[top++] = 1;
+                if (y >= n || maxUppers[y] > from) {
+                    stack[top++] = k - 1;
+                    stack[top++] = y;
+                    stack[top++] = 0;
+                }
+            } else if (x < n && lowers[x] < to) {
+                if (from < uppers[x])
+                    consumer.accept(x);
+                stack[top++] = k - 1;
+                stack[top++] = x + (1 << (k - 1));
+                stack[top++] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns all entries with ranges intersecting with the specified range.
+     */
+    public List<Entry<Range, T>> findAllIntersecting(Range range) {
+        if (range.isEmpty())
+            return Collections.EMPTY_LIST;
+        List<Entry<Range, T>> entries = entries(), result = new ArrayList<>();
+        forEachIntersecting(range.getLower(), range.getUpper(), i -> result.add(entries.get(i)));
+        return result;
+    }
+
+    /**
+     * Returns all entries with ranges containing the specified position (stabbing query).
+     */
+    public List<Entry<Range, T>> findAllContaining(int position) {
+        List<Entry<Range, T>> entries = entries(), result = new ArrayList<>();
+        forEachIntersecting(position, position + 1, i -> result.add(entries.get(i)));
+        return result;
+    }
+
+    /**
+     * Batched version of {@link #findAllIntersecting(Range)} for queries sorted by lower bound (e.g. sorted alignment
+     * footprints). Performs a single sweep over the index with amortized O(n + m + k) complexity, where m is the
+     * number of queries and k is the total number of results.
+     *
+     * @param queries ranges sorted by lower bound
+     * @return list of results for each of the queries
+     * @throws IllegalArgumentException if queries are not sorted
+     */
+    public List<List<Entry<Range, T>>> findAllIntersecting(List<Range> queries) {
+        List<Entry<Range, T>> entries = entries();
+        List<List<Entry<Range, T>>> results = new ArrayList<>(queries.size());
+
+        // Active ranges (already passed by the sweep, and possibly intersecting with upcoming queries) are stored as
+        // a linked list ordered by lower bound; -1 = end of the list
+        int n = lowers.length;
+        int[] next = new int[n + 1];
+        int head = n, tail = n, pointer = 0;
+        next[head] = -1;
+
+        int previousLower = Integer.MIN_VALUE;
+        for (Range query : queries) {
+            int from = query.getLower(), to = query.getUpper();
+            if (from < previousLower)
+                throw new IllegalArgumentException("Queries are not sorted.");
+            previousLower = from;
+
+            List<Entry<Range, T>> result = new ArrayList<>();
+            results.add(result);
+            if (query.isEmpty())
+                continue;
+
+            // Adding ranges starting before the end of the query
+            for (; pointer < n && lowers[pointer] < to; ++pointer) {
+                next[tail] = pointer;
+                next[pointer] = -1;
+                tail = pointer;
+            }
+
+            // Sweeping through active ranges: ranges ending before the query can't intersect any of the following
+            // queries, so they are removed from the list
+            int prev = head;
+            for (int i = next[head]; i != -1 && lowers[i] < to; i = next[i])
+                if (uppers[i] <= from) {
+                    next[prev] = next[i];
+                    if (tail == i)
+                        tail = prev;
+                } else {
+                    result.add(entries.get(i));
+                    prev = i;
+                }
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates index from all entries of the range map.
+     */
+    public static <T> RangeIndex<T> of(RangeMap<T> map) {
+        return new RangeIndex<>(new ArrayList<>(map.entrySet()));
+    }
+
+    /**
+     * Builder of {@link RangeIndex}
+     */
+    public static final class Builder<T> {
+        private final List<Entry<Range, T>> entries = new ArrayList<>();
+
+        public Builder<T> add(Range range, T value) {
+            if (range.isEmpty())
+                throw new IllegalArgumentException("Don't support empty ranges.");
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(range, value));
+            return this;
+        }
+
+        public RangeIndex<T> build() {
+            List<Entry<Range, T>> sorted = new ArrayList<>(entries);
+            // Stable sort: equal ranges keep the order of addition
+            sorted.sort(Comparator.comparingInt((Entry<Range, T> e) -> e.getKey().getLower())
+                    .thenComparingInt(e -> e.getKey().getUpper()));
+            return new RangeIndex<>(sorted);
+        }
+    }
+}
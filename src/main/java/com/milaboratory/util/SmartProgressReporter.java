@@ -17,9 +17,14 @@ package com.milaboratory.util;
 
 import cc.redberry.pipe.util.CountLimitingOutputPort;
 import cc.redberry.pipe.util.CountingOutputPort;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.text.DecimalFormat;
+import java.util.*;
+import java.util.function.LongSupplier;
 
 public class SmartProgressReporter implements Runnable {
     private static final DecimalFormat percentFormat = new DecimalFormat("##.#'%'");
@@ -27,6 +32,19 @@ public class SmartProgressReporter implements Runnable {
     private final CanReportProgressAndStage reporter;
     private double progressPeriod = 0.10, timePeriod = 120_000;
     private boolean detectStageChange = true;
+    private static final DecimalFormat rateFormat = new DecimalFormat("#0.0");
+    private LongSupplier itemCounter, byteCounter;
+    private String itemsName = "reads";
+    private long rateWindow = 30_000;
+    private boolean machineReadable = false;
+    private final List<StageTiming> stageTimings = new ArrayList<>();
+
+    /* Sampling state, accessed only by the reporting thread */
+    private final LinkedList<Sample> samples = new LinkedList<>();
+    private String lastStage = null;
+    private double lastProgress = Double.NaN;
+    private long lastStamp = System.currentTimeMillis();
+    private long stageStartStamp, stageStartCpu, stageStartGc;
 
     public SmartProgressReporter(CanReportProgressAndStage reporter, PrintStream stream) {
         this.stream = stream;
@@ -85,79 +103,287 @@ public class SmartProgressReporter implements Runnable {
         this.detectStageChange = detectStageChange;
     }
 
+    public LongSupplier getItemCounter() {
+        return itemCounter;
+    }
+
+    /**
+     * Sets the source of processed items count (e.g. reads), used to report items per second.
+     *
+     * @param itemCounter monotonically increasing counter, or null to disable
+     */
+    public void setItemCounter(LongSupplier itemCounter) {
+        this.itemCounter = itemCounter;
+    }
+
+    public String getItemsName() {
+        return itemsName;
+    }
+
+    public void setItemsName(String itemsName) {
+        this.itemsName = itemsName;
+    }
+
+    public LongSupplier getByteCounter() {
+        return byteCounter;
+    }
+
+    /**
+     * Sets the source of processed bytes count, used to report bytes per second.
+     *
+     * @param byteCounter monotonically increasing counter, or null to disable
+     */
+    public void setByteCounter(LongSupplier byteCounter) {
+        this.byteCounter = byteCounter;
+    }
+
+    public long getRateWindow() {
+        return rateWindow;
+    }
+
+    /**
+     * Sets the width of the moving window (in milliseconds) used to smooth rates and ETA.
+     */
+    public void setRateWindow(long rateWindow) {
+        if (rateWindow <= 0)
+            throw new IllegalArgumentException();
+        this.rateWindow = rateWindow;
+    }
+
+    public boolean isMachineReadable() {
+        return machineReadable;
+    }
+
+    /**
+     * If set, each report is emitted as a single-line JSON object instead of a human-readable line.
+     */
+    public void setMachineReadable(boolean machineReadable) {
+        this.machineReadable = machineReadable;
+    }
+
+    /**
+     * Returns timings of all stages completed so far, in the order of their execution.
+     */
+    public List<StageTiming> getStageTimings() {
+        synchronized (stageTimings) {
+            return new ArrayList<>(stageTimings);
+        }
+    }
+
     @Override
     public void run() {
-        long currentStamp, lastStamp = System.currentTimeMillis(), deltaTime, et;
-        double currentProgress, lastProgress = Double.NaN, deltaValue;
-        String currentStage, lastStage = null, etStr;
-        boolean trigger;
         try {
             while (!reporter.isFinished()) {
-                synchronized (reporter) {
-                    currentProgress = reporter.getProgress();
-                    currentStage = reporter.getStage();
-                }
-                currentStamp = System.currentTimeMillis();
+                tick(System.currentTimeMillis());
+                Thread.sleep(1000);
+            }
+        } catch (InterruptedException e) {
+        }
+        finish(System.currentTimeMillis());
+    }
 
-                deltaValue = currentProgress - lastProgress;
-                deltaTime = currentStamp - lastStamp;
+    /**
+     * Samples the reporter and prints a report line if any of the triggers fired.
+     *
+     * @param currentStamp current time in milliseconds
+     */
+    void tick(long currentStamp) {
+        double currentProgress;
+        String currentStage;
+        synchronized (reporter) {
+            currentProgress = reporter.getProgress();
+            currentStage = reporter.getStage();
+        }
+        if (currentStage == null)
+            currentStage = "null";
 
-                trigger = false;
+        boolean trigger = false;
 
-                if (detectStageChange && !currentStage.equals(lastStage))
-                    trigger = true;
+        if (!currentStage.equals(lastStage)) {
+            if (lastStage != null)
+                closeStage(currentStamp);
+            openStage(currentStage, currentStamp);
+            if (detectStageChange)
+                trigger = true;
+        }
 
-                if (Double.isNaN(currentProgress) ^ Double.isNaN(lastProgress))
-                    trigger = true;
+        Sample current = new Sample(currentStamp, currentProgress,
+                itemCounter == null ? -1 : itemCounter.getAsLong(),
+                byteCounter == null ? -1 : byteCounter.getAsLong());
 
-                if (deltaValue >= progressPeriod
-                        || deltaTime >= timePeriod)
-                    trigger = true;
+        // Progress went backwards: the window is no longer meaningful
+        if (!samples.isEmpty() && currentProgress < samples.peekLast().progress) {
+            samples.clear();
+            trigger = true;
+        }
+        samples.addLast(current);
+        while (samples.size() > 2 && samples.get(1).stamp <= currentStamp - rateWindow)
+            samples.removeFirst();
 
-                if (deltaValue < 0.0) {
-                    deltaValue = Double.NaN;
-                    trigger = true;
-                }
+        double deltaValue = currentProgress - lastProgress;
+        long deltaTime = currentStamp - lastStamp;
 
-                long hours, minutes, seconds;
+        if (Double.isNaN(currentProgress) ^ Double.isNaN(lastProgress))
+            trigger = true;
 
-                if (trigger) {
+        if (deltaValue >= progressPeriod
+                || deltaTime >= timePeriod)
+            trigger = true;
 
-                    if (Double.isNaN(deltaValue) || deltaTime == 0 || deltaValue == 0.0)
-                        etStr = "";
-                    else {
-                        et = (long) ((1.0 - currentProgress) * deltaTime / deltaValue);
+        if (trigger) {
+            emit(current);
+            lastProgress = currentProgress;
+            lastStamp = currentStamp;
+        }
+    }
 
-                        et /= 1000;
-                        hours = et / 3600;
-                        et -= hours * 3600;
-                        minutes = (et) / 60;
-                        et -= minutes * 60;
-                        seconds = et;
+    /**
+     * Closes the last stage and prints its timing.
+     *
+     * @param currentStamp current time in milliseconds
+     */
+    void finish(long currentStamp) {
+        if (lastStage != null)
+            closeStage(currentStamp);
+        lastStage = null;
+    }
 
-                        etStr = "  ETA: " + timeString(hours) + ":" + timeString(minutes) + ":" + timeString(seconds);
-                    }
+    private void openStage(String stage, long stamp) {
+        lastStage = stage;
+        stageStartStamp = stamp;
+        stageStartCpu = processCpuTime();
+        stageStartGc = gcTime();
+        samples.clear();
+        lastProgress = Double.NaN;
+    }
 
-                    if (currentStage == null)
-                        currentStage = "null";
+    private void closeStage(long stamp) {
+        long cpu = processCpuTime(), gc = gcTime();
+        StageTiming timing = new StageTiming(lastStage,
+                stamp - stageStartStamp,
+                cpu == -1 || stageStartCpu == -1 ? -1 : (cpu - stageStartCpu) / 1_000_000,
+                gc == -1 || stageStartGc == -1 ? -1 : gc - stageStartGc);
+        synchronized (stageTimings) {
+            stageTimings.add(timing);
+        }
+        if (machineReadable) {
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("event", "stageFinished");
+            obj.put("stage", timing.stage);
+            obj.put("wallMillis", timing.wallMillis);
+            if (timing.cpuMillis != -1)
+                obj.put("cpuMillis", timing.cpuMillis);
+            if (timing.gcMillis != -1)
+                obj.put("gcMillis", timing.gcMillis);
+            printJson(obj);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            sb.append(timing.stage).append(": finished in ").append(formatTime(timing.wallMillis));
+            if (timing.cpuMillis != -1)
+                sb.append("  CPU: ").append(formatTime(timing.cpuMillis));
+            if (timing.gcMillis != -1)
+                sb.append("  GC: ").append(formatTime(timing.gcMillis));
+            stream.println(sb);
+        }
+    }
 
-                    String sProgress;
-                    if (Double.isNaN(currentProgress))
-                        sProgress = "progress unknown";
-                    else
-                        sProgress = percentFormat.format(currentProgress * 100.0);
+    private void emit(Sample current) {
+        Sample first = samples.peekFirst();
+        long windowTime = current.stamp - first.stamp;
+
+        double itemsRate = Double.NaN, bytesRate = Double.NaN, eta = Double.NaN;
+        if (windowTime > 0) {
+            if (current.items != -1)
+                itemsRate = 1000.0 * (current.items - first.items) / windowTime;
+            if (current.bytes != -1)
+                bytesRate = 1000.0 * (current.bytes - first.bytes) / windowTime;
+            double progressDelta = current.progress - first.progress;
+            if (progressDelta > 0.0)
+                eta = (1.0 - current.progress) * windowTime / progressDelta;
+        }
 
-                    stream.println(currentStage + ": " + sProgress + etStr);
+        if (machineReadable) {
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("event", "progress");
+            obj.put("stage", lastStage);
+            if (!Double.isNaN(current.progress))
+                obj.put("progress", current.progress);
+            if (!Double.isNaN(eta))
+                obj.put("etaMillis", (long) eta);
+            if (current.items != -1)
+                obj.put("items", current.items);
+            if (!Double.isNaN(itemsRate))
+                obj.put("itemsPerSecond", itemsRate);
+            if (current.bytes != -1)
+                obj.put("bytes", current.bytes);
+            if (!Double.isNaN(bytesRate))
+                obj.put("bytesPerSecond", bytesRate);
+            obj.put("stageWallMillis", current.stamp - stageStartStamp);
+            printJson(obj);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            sb.append(lastStage).append(": ");
+            if (Double.isNaN(current.progress))
+                sb.append("progress unknown");
+            else
+                sb.append(percentFormat.format(current.progress * 100.0));
+            if (!Double.isNaN(itemsRate))
+                sb.append("  ").append(formatRate(itemsRate)).append(" ").append(itemsName).append("/s");
+            if (!Double.isNaN(bytesRate))
+                sb.append("  ").append(formatRate(bytesRate)).append("B/s");
+            if (!Double.isNaN(eta))
+                sb.append("  ETA: ").append(formatTime((long) eta));
+            stream.println(sb);
+        }
+    }
 
-                    lastProgress = currentProgress;
-                    lastStamp = currentStamp;
-                    lastStage = currentStage;
-                }
+    private void printJson(Map<String, Object> obj) {
+        try {
+            stream.println(GlobalObjectMappers.toOneLine(obj));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                Thread.sleep(1000);
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        return -1;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        boolean any = false;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long t = bean.getCollectionTime();
+            if (t >= 0) {
+                total += t;
+                any = true;
             }
-        } catch (InterruptedException e) {
         }
+        return any ? total : -1;
+    }
+
+    private static final String[] RATE_SUFFIXES = {"", "K", "M", "G", "T"};
+
+    static String formatRate(double rate) {
+        int i = 0;
+        while (rate >= 1000.0 && i < RATE_SUFFIXES.length - 1) {
+            rate /= 1000.0;
+            ++i;
+        }
+        return rateFormat.format(rate) + (i == 0 ? "" : " " + RATE_SUFFIXES[i]);
+    }
+
+    static String formatTime(long millis) {
+        long et = millis / 1000, hours, minutes, seconds;
+        hours = et / 3600;
+        et -= hours * 3600;
+        minutes = et / 60;
+        et -= minutes * 60;
+        seconds = et;
+        return timeString(hours) + ":" + timeString(minutes) + ":" + timeString(seconds);
     }
 
     private static String timeString(long time) {
@@ -216,4 +442,50 @@ public class SmartProgressReporter implements Runnable {
             }
         };
     }
-}
\ No newline at end of file
+
+    public static LongSupplier extractCount(final CountingOutputPort<?> countingOutputPort) {
+        return countingOutputPort::getCount;
+    }
+
+    public static LongSupplier extractCount(final CountLimitingOutputPort<?> countLimitingOutputPort) {
+        return () -> countLimitingOutputPort.getLimit() - countLimitingOutputPort.getElementsLeft();
+    }
+
+    public static LongSupplier extractBytes(final CountingInputStream countingInputStream) {
+        return countingInputStream::getBytesRead;
+    }
+
+    /**
+     * Wall clock, CPU and GC time spent in a single stage. CPU time is the total for the process (all threads), so
+     * CPU / wall ratio shows the effective parallelism of the stage. Fields are -1 if not supported by the JVM.
+     */
+    public static final class StageTiming {
+        public final String stage;
+        public final long wallMillis, cpuMillis, gcMillis;
+
+        public StageTiming(String stage, long wallMillis, long cpuMillis, long gcMillis) {
+            this.stage = stage;
+            this.wallMillis = wallMillis;
+            this.cpuMillis = cpuMillis;
+            this.gcMillis = gcMillis;
+        }
+
+        @Override
+        public String toString() {
+            return stage + ": wall=" + wallMillis + "ms cpu=" + cpuMillis + "ms gc=" + gcMillis + "ms";
+        }
+    }
+
+    private static final class Sample {
+        final long stamp;
+        final double progress;
+        final long items, bytes;
+
+        Sample(long stamp, double progress, long items, long bytes) {
+            this.stamp = stamp;
+            this.progress = progress;
+            this.items = items;
+            this.bytes = bytes;
+        }
+    }
+}
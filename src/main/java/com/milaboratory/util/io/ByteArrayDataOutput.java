@@ -16,7 +16,6 @@
 package com.milaboratory.util.io;
 
 import java.io.DataOutput;
-import java.nio.ByteBuffer;
 
 /**
  * Dynamically growing byte array backed data output.
@@ -37,9 +36,9 @@ public final class ByteArrayDataOutput implements DataOutput {
      */
     private byte[] buffer;
     /**
-     * Wraps buffer
+     * Write cursor
      */
-    private ByteBuffer byteBuffer;
+    private int position;
 
     public ByteArrayDataOutput() {
         this(DEFAULT_INITIAL_SIZE, DEFAULT_GROW_MULTIPLIER, DEFAULT_GROW_DIVISOR, DEFAULT_GROW_SUMMAND, DEFAULT_GROW_MAXIMUM_CHUNK);
@@ -63,12 +62,11 @@ public final class ByteArrayDataOutput implements DataOutput {
         this.growSummand = growSummand;
         this.growMaximumChunk = growMaximumChunk;
         this.buffer = buffer;
-        this.byteBuffer = ByteBuffer.wrap(buffer);
     }
 
     private void ensureCapacity(int size) {
         // Return if have enough space
-        if (size <= byteBuffer.capacity() - byteBuffer.position())
+        if (size <= buffer.length - position)
             return;
 
         // Calculating new array size
@@ -81,19 +79,13 @@ public final class ByteArrayDataOutput implements DataOutput {
         // Allocating new array
         byte[] newBuffer = new byte[newSize];
         // And copy only part with actual data from the old buffer
-        // Current absolute offset:
-        int currentOffset = byteBuffer.position();
-        System.arraycopy(buffer, 0, newBuffer, 0, currentOffset);
+        System.arraycopy(buffer, 0, newBuffer, 0, position);
 
         this.buffer = newBuffer;
-        // Wrapping new array
-        this.byteBuffer = ByteBuffer.wrap(newBuffer, 0, newBuffer.length);
-        // Setting correct position
-        byteBuffer.position(currentOffset);
     }
 
     public int size() {
-        return byteBuffer.position();
+        return position;
     }
 
     public byte[] getBuffer() {
@@ -101,73 +93,100 @@ public final class ByteArrayDataOutput implements DataOutput {
     }
 
     public void reset() {
-        byteBuffer.rewind();
+        position = 0;
     }
 
     @Override
     public void write(int b) {
         ensureCapacity(1);
-        byteBuffer.put((byte) b);
+        buffer[position++] = (byte) b;
     }
 
     @Override
     public void write(byte[] b) {
-        ensureCapacity(b.length);
-        byteBuffer.put(b);
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(byte[] b, int off, int len) {
         ensureCapacity(len);
-        byteBuffer.put(b, off, len);
+        System.arraycopy(b, off, buffer, position, len);
+        position += len;
     }
 
     @Override
     public void writeBoolean(boolean v) {
         ensureCapacity(1);
-        byteBuffer.put((byte) (v ? 1 : 0));
+        buffer[position++] = (byte) (v ? 1 : 0);
     }
 
     @Override
     public void writeByte(int v) {
         ensureCapacity(1);
-        byteBuffer.put((byte) v);
+        buffer[position++] = (byte) v;
     }
 
     @Override
     public void writeShort(int v) {
         ensureCapacity(2);
-        byteBuffer.putShort((short) v);
+        putShort(v);
     }
 
     @Override
     public void writeChar(int v) {
         ensureCapacity(2);
-        byteBuffer.putChar((char) v);
+        putShort(v);
     }
 
     @Override
     public void writeInt(int v) {
         ensureCapacity(4);
-        byteBuffer.putInt(v);
+        putInt(v);
     }
 
     @Override
     public void writeLong(long v) {
         ensureCapacity(8);
-        byteBuffer.putLong(v);
+        putInt((int) (v >>> 32));
+        putInt((int) v);
     }
 
     @Override
     public void writeFloat(float v) {
-        ensureCapacity(4);
-        byteBuffer.putFloat(v);
+        writeInt(Float.floatToIntBits(v));
     }
 
     @Override
     public void writeDouble(double v) {
-        ensureCapacity(8);
-        byteBuffer.putDouble(v);
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    /**
+     * Writes unsigned variable-length integer (7 bits per byte, least significant group first, high bit set on all
+     * bytes except the last one); same encoding as PrimitivO.writeVarLong.
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        this.position = position;
+    }
+
+    private void putShort(int v) {
+        buffer[position++] = (byte) (v >>> 8);
+        buffer[position++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        buffer[position++] = (byte) (v >>> 24);
+        buffer[position++] = (byte) (v >>> 16);
+        buffer[position++] = (byte) (v >>> 8);
+        buffer[position++] = (byte) v;
     }
 
     @Override
@@ -211,22 +230,26 @@ public final class ByteArrayDataOutput implements DataOutput {
         for (; i < len; i++) {
             c = str.charAt(i);
             if (!((c >= 0x0001) && (c <= 0x007F))) break;
-            byteBuffer.put((byte) c);
+            put((byte) c);
         }
 
         // Full UTF
         for (; i < len; i++) {
             c = str.charAt(i);
             if ((c >= 0x0001) && (c <= 0x007F)) {
-                byteBuffer.put((byte) c);
+                put((byte) c);
             } else if (c > 0x07FF) {
-                byteBuffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
-                byteBuffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
-                byteBuffer.put((byte) (0x80 | ((c >> 0) & 0x3F)));
+                put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | ((c >> 0) & 0x3F)));
             } else {
-                byteBuffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
-                byteBuffer.put((byte) (0x80 | ((c >> 0) & 0x3F)));
+                put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                put((byte) (0x80 | ((c >> 0) & 0x3F)));
             }
         }
     }
+
+    private void put(byte b) {
+        buffer[position++] = b;
+    }
 }
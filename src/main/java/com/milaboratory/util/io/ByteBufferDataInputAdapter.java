@@ -18,6 +18,7 @@ package com.milaboratory.util.io;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 public final class ByteBufferDataInputAdapter implements DataInput {
@@ -97,6 +98,42 @@ public final class ByteBufferDataInputAdapter implements DataInput {
         return buffer.getDouble();
     }
 
+    /**
+     * Reads unsigned variable-length integer written by {@link ByteArrayDataOutput#writeVarLong(long)} (or
+     * PrimitivO.writeVarLong). For heap buffers the value is decoded directly from the backing array.
+     */
+    public long readVarLong() {
+        long value = 0, tmp;
+        int shift = 0;
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            int position = buffer.position() + offset;
+            int limit = buffer.limit() + offset;
+            do {
+                if (position == limit)
+                    throw new BufferUnderflowException();
+                tmp = array[position++];
+                value |= (tmp & 0x7F) << shift;
+                shift += 7;
+            } while ((tmp & 0x80) != 0);
+            buffer.position(position - offset);
+        } else
+            do {
+                tmp = buffer.get();
+                value |= (tmp & 0x7F) << shift;
+                shift += 7;
+            } while ((tmp & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads unsigned variable-length integer, see {@link #readVarLong()}.
+     */
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
     @Override
     public String readLine() {
         throw new UnsupportedOperationException();
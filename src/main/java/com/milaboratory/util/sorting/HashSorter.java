@@ -25,6 +25,7 @@ import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
 import com.milaboratory.primitivio.blocks.PrimitivOBlocks;
 import com.milaboratory.primitivio.blocks.PrimitivOBlocksStats;
 import com.milaboratory.util.FormatUtils;
+import com.milaboratory.util.MetricsRegistry;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -90,6 +91,15 @@ public class HashSorter<T> {
             timeInFinalSorting2 = new AtomicLong(),
             timeInFinalSorting3 = new AtomicLong();
 
+    // Metrics aggregated over all sorters
+    private static final MetricsRegistry.Timer
+            COLLATE_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_collate_seconds"),
+            AWAITING_O_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_awaiting_output_seconds"),
+            AWAITING_I_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_awaiting_input_seconds"),
+            FINAL_SORTING1_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_final_bucketing_seconds"),
+            FINAL_SORTING2_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_final_sorting_seconds"),
+            FINAL_SORTING3_TIMER = MetricsRegistry.GLOBAL.timer("milib_hash_sorter_final_merging_seconds");
+
     /**
      * Creates hash sorter. Actual sorting starts on {@link #port(OutputPort)} invocation.
      *
@@ -249,7 +259,7 @@ public class HashSorter<T> {
                         // Writing it to a corresponding file
                         long start = System.nanoTime();
                         os[maxBucketId].writeBlock(blocks[maxBucketId]);
-                        timeAwaitingO.addAndGet(System.nanoTime() - start);
+                        timeAwaitingO.addAndGet(AWAITING_O_TIMER.stop(start));
                         // Subtracting size of the block from the current object budget
                         objectsCount -= maxBucketSize;
                         // Creating new block for the bucket
@@ -264,7 +274,7 @@ public class HashSorter<T> {
                     if (!blocks[i].isEmpty()) {
                         long start = System.nanoTime();
                         os[i].writeBlock(blocks[i]);
-                        timeAwaitingO.addAndGet(System.nanoTime() - start);
+                        timeAwaitingO.addAndGet(AWAITING_O_TIMER.stop(start));
                     }
                     blocks[i] = null; // for GC
                 }
@@ -277,7 +287,7 @@ public class HashSorter<T> {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            timeInCollate.addAndGet(System.nanoTime() - runStart);
+            timeInCollate.addAndGet(COLLATE_TIMER.stop(runStart));
         }
 
         private OutputPortCloseable<T> getBucketRawPort(int i) {
@@ -291,7 +301,7 @@ public class HashSorter<T> {
                         try {
                             long start = System.nanoTime();
                             T obj = reader.take();
-                            timeAwaitingI.addAndGet(System.nanoTime() - start);
+                            timeAwaitingI.addAndGet(AWAITING_I_TIMER.stop(start));
                             if (obj == null)
                                 Files.delete(bucketPath);
                             return obj;
@@ -354,6 +364,7 @@ public class HashSorter<T> {
                 int fBitMask = ~(0xFFFFFFFF << fBitCount);
 
                 ArrayList<T>[] fBuckets = new ArrayList[fNumberOfBuckets];
+                long bucketingNanos = 0;
                 for (T t : CUtils.it(getBucketRawPort(i))) {
                     long start = System.nanoTime();
                     int bucket = fBitMask & (hash.applyAsInt(t) >>> fOffset);
@@ -361,8 +372,10 @@ public class HashSorter<T> {
                     if (fBucket == null)
                         fBuckets[bucket] = fBucket = new ArrayList<>();
                     fBucket.add(t);
-                    timeInFinalSorting1.addAndGet(System.nanoTime() - start);
+                    bucketingNanos += System.nanoTime() - start;
                 }
+                timeInFinalSorting1.addAndGet(bucketingNanos);
+                FINAL_SORTING1_TIMER.record(bucketingNanos);
 
                 long start = System.nanoTime();
                 Arrays.stream(fBuckets).parallel().forEach(
@@ -374,13 +387,13 @@ public class HashSorter<T> {
                                     fBucket.sort(effectiveComparator());
                         }
                 );
-                timeInFinalSorting2.addAndGet(System.nanoTime() - start);
+                timeInFinalSorting2.addAndGet(FINAL_SORTING2_TIMER.stop(start));
 
                 start = System.nanoTime();
                 List<T> list = Arrays.stream(fBuckets)
                         .flatMap(d -> d == null ? Stream.empty() : d.stream())
                         .collect(Collectors.toList());
-                timeInFinalSorting3.addAndGet(System.nanoTime() - start);
+                timeInFinalSorting3.addAndGet(FINAL_SORTING3_TIMER.stop(start));
 
                 // Returning in-memory stream
                 OutputPort<T> op = CUtils.asOutputPort(list);
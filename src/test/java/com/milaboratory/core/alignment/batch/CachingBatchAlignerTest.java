@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.batch;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingBatchAlignerTest {
+    static final NucleotideSequence[] refs = {
+            new NucleotideSequence("ATAAGAGACACATAGGTCTGGC"),
+            new NucleotideSequence("ATTAGAGACACATAGGTCTAGC"),
+            new NucleotideSequence("ATGAGAGACACATAGGTCTTGC"),
+            new NucleotideSequence("ATCAGAGACACTTAGGTCTCGC"),
+            new NucleotideSequence("ATCAGAAATAAAAATAACTGGC")
+    };
+
+    static final NucleotideSequence query1 = new NucleotideSequence("ATCAGAGACACATAGGTCTGGC"),
+            query2 = new NucleotideSequence("ATCAGAAATAAAAATAACTAGC");
+
+    static SimpleBatchAligner<NucleotideSequence, Integer> createAligner() {
+        SimpleBatchAligner<NucleotideSequence, Integer> aligner = new SimpleBatchAligner<>(
+                new SimpleBatchAlignerParameters<>(5, 0.5f, 0f, true,
+                        AffineGapAlignmentScoring.getNucleotideBLASTScoring()));
+        for (int i = 0; i < refs.length; i++)
+            aligner.addReference(refs[i], i);
+        return aligner;
+    }
+
+    @Test
+    public void test1() {
+        CachingBatchAligner<NucleotideSequence, Integer, AlignmentHit<NucleotideSequence, Integer>> aligner =
+                new CachingBatchAligner<>(createAligner(), 100);
+
+        AlignmentResult<AlignmentHit<NucleotideSequence, Integer>> r1 = aligner.align(query1);
+        AlignmentResult<AlignmentHit<NucleotideSequence, Integer>> r2 = aligner.align(query2);
+        Assert.assertSame(r1, aligner.align(new NucleotideSequence(query1.toString())));
+        Assert.assertSame(r2, aligner.align(query2));
+
+        Assert.assertEquals(2, aligner.getCache().getHits());
+        Assert.assertEquals(2, aligner.getCache().getMisses());
+        Assert.assertEquals(0.5, aligner.getCache().getHitRate(), 1E-10);
+        Assert.assertEquals(2, aligner.getCache().size());
+
+        Assert.assertEquals((Integer) 0, r1.getBestHit().getRecordPayload());
+        Assert.assertEquals((Integer) 4, r2.getBestHit().getRecordPayload());
+    }
+
+    @Test
+    public void testBounded() {
+        CachingBatchAligner<NucleotideSequence, Integer, AlignmentHit<NucleotideSequence, Integer>> aligner =
+                new CachingBatchAligner<>(createAligner(), 32);
+        RandomGenerator random = new Well19937c(123);
+        for (int i = 0; i < 300; i++)
+            aligner.align(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 30, 30));
+        Assert.assertTrue(aligner.getCache().size() <= 32);
+    }
+
+    @Test
+    public void testPiped() {
+        CachingBatchAligner<NucleotideSequence, Integer, AlignmentHit<NucleotideSequence, Integer>> batch =
+                new CachingBatchAligner<>(createAligner(), 100);
+        batch.setThreadCount(2);
+
+        List<NucleotideSequence> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            queries.add(i % 2 == 0 ? query1 : query2);
+
+        OutputPort<PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, NucleotideSequence>> results =
+                batch.align(CUtils.asOutputPort(queries), new SequenceExtractor<NucleotideSequence, NucleotideSequence>() {
+                    @Override
+                    public NucleotideSequence extract(NucleotideSequence object) {
+                        return object;
+                    }
+                });
+
+        int count = 0;
+        for (PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, NucleotideSequence> r : CUtils.it(results)) {
+            Assert.assertEquals(r.getQuery() == query1 ? (Integer) 0 : (Integer) 4, r.getBestHit().getRecordPayload());
+            ++count;
+        }
+        Assert.assertEquals(100, count);
+        Assert.assertTrue(batch.getCache().getHits() >= 90);
+    }
+
+    @Test
+    public void testPipedCachingBuffersAreBounded() {
+        final SimpleBatchAligner<NucleotideSequence, Integer> simple = createAligner();
+        CachingPipedBatchAligner<NucleotideSequence, Integer, AlignmentHit<NucleotideSequence, Integer>> aligner =
+                new CachingPipedBatchAligner<>(
+                        new PipedBatchAlignerWithBase<NucleotideSequence, Integer, AlignmentHit<NucleotideSequence, Integer>>() {
+                            @Override
+                            public <Q> OutputPort<PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, Q>> align(
+                                    OutputPort<Q> input, SequenceExtractor<Q, NucleotideSequence> extractor) {
+                                return simple.align(input, extractor);
+                            }
+
+                            @Override
+                            public <Q extends HasSequence<NucleotideSequence>> OutputPort<PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, Q>> align(
+                                    OutputPort<Q> input) {
+                                return simple.align(input);
+                            }
+
+                            @Override
+                            public void addReference(NucleotideSequence sequence, Integer payload) {
+                                simple.addReference(sequence, payload);
+                            }
+                        }, 100, 4);
+
+        // Long run of identical queries
+        final int total = 10_000;
+        final AtomicInteger read = new AtomicInteger();
+        OutputPort<NucleotideSequence> input = new OutputPort<NucleotideSequence>() {
+            @Override
+            public NucleotideSequence take() {
+                return read.get() == total ? null : (read.incrementAndGet() % 1000 == 0 ? query2 : query1);
+            }
+        };
+
+        OutputPort<PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, NucleotideSequence>> results =
+                aligner.align(input, new SequenceExtractor<NucleotideSequence, NucleotideSequence>() {
+                    @Override
+                    public NucleotideSequence extract(NucleotideSequence object) {
+                        return object;
+                    }
+                });
+
+        int count = 0;
+        for (PipedAlignmentResult<AlignmentHit<NucleotideSequence, Integer>, NucleotideSequence> r : CUtils.it(results)) {
+            Assert.assertEquals(r.getQuery() == query1 ? (Integer) 0 : (Integer) 4, r.getBestHit().getRecordPayload());
+            ++count;
+            // Only queries waiting for the underlying aligner may be read ahead
+            Assert.assertTrue(read.get() - count <= 4 + 2);
+        }
+        Assert.assertEquals(total, count);
+        Assert.assertTrue(aligner.getCache().getHits() >= total - 20);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.alignment.AlignmentUtils;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.alignment.batch.AlignmentResult;
+import com.milaboratory.core.alignment.batch.PipedAlignmentResult;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.MutationsGenerator;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cc.redberry.pipe.CUtils.it;
+
+public class InProcessBlastAlignerTest {
+    @Test
+    public void test1() throws Exception {
+        InProcessBlastAligner<NucleotideSequence, Integer> ba = new InProcessBlastAligner<>(
+                InProcessBlastAlignerParameters.getNucleotideDefaults());
+        NucleotideSequence ns1 = new NucleotideSequence("ATTAGACGAATCCGATGCTGACTGCGCGATGATGCTAGTCGTGCTAGTACTAGCTGGCGCGGATTC");
+        NucleotideSequence ns2 = new NucleotideSequence("TATTACCTGCTGCGCGCGCTAGATCGGTACTACGTTGCTAGCTAGCTTCGTATACGTCGTGCTAGTATCGATCGCTAG");
+
+        ba.addReference(ns1, 1);
+        ba.addReference(ns2, 2);
+
+        NucleotideSequence nsq = new NucleotideSequence("TAGACGAATCCGATGCTGACTGCGCGATGAACCTAGTCGTGCTAGTACTA");
+
+        AlignmentResult<BlastHit<NucleotideSequence, Integer>> result = ba.align(nsq);
+        Assert.assertEquals((Integer) 1, result.getBestHit().getRecordPayload());
+        Assert.assertEquals(nsq, AlignmentUtils.getAlignedSequence2Part(result.getBestHit().getAlignment()));
+        Assert.assertEquals(ns1, result.getBestHit().getAlignment().getSequence1());
+        Assert.assertEquals(BlastDBBuilder.getIdKey(0), result.getBestHit().getSubjectId());
+    }
+
+    @Test
+    public void testAminoAcid() throws Exception {
+        InProcessBlastAligner<AminoAcidSequence, Integer> ba = new InProcessBlastAligner<>(
+                InProcessBlastAlignerParameters.getAminoAcidDefaults(BLASTMatrix.BLOSUM62)
+                        .setKarlinAltschulParameters(0.267, 0.041));
+        Well19937c rg = new Well19937c(123);
+        List<AminoAcidSequence> base = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            AminoAcidSequence seq = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 80, 120);
+            base.add(seq);
+            ba.addReference(seq, i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            AminoAcidSequence ref = base.get(i);
+            AminoAcidSequence query = ref.getRange(10, 60);
+            AlignmentResult<BlastHit<AminoAcidSequence, Integer>> result = ba.align(query);
+            BlastHit<AminoAcidSequence, Integer> hit = result.getBestHit();
+            Assert.assertEquals((Integer) i, hit.getRecordPayload());
+            Assert.assertEquals(query, AlignmentUtils.getAlignedSequence2Part(hit.getAlignment()));
+            Assert.assertTrue(hit.getEValue() < 1E-10);
+        }
+    }
+
+    @Test
+    public void simpleRandomTest() throws Exception {
+        int recordsInBase = 1000;
+
+        int baseLengtFrom = 100;
+        int baseLengtTo = 200;
+
+        int queryLengthFrom = 90;
+        int queryLengthTo = 150;
+
+        int trys = 1000;
+
+        Well19937c rg = new Well19937c(1234);
+        RandomDataGenerator rdg = new RandomDataGenerator(rg);
+
+        List<NucleotideSequence> base = new ArrayList<>();
+
+        InProcessBlastAligner<NucleotideSequence, Integer> ba = new InProcessBlastAligner<>(
+                InProcessBlastAlignerParameters.getNucleotideDefaults());
+        ba.setThreadCount(2);
+
+        for (int i = 0; i < recordsInBase; i++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, baseLengtFrom, baseLengtTo);
+            base.add(seq);
+            ba.addReference(seq, i);
+        }
+
+        List<BlastAlignerTest.QueryObject<NucleotideSequence>> queries = new ArrayList<>();
+
+        NucleotideMutationModel mutationModel = MutationModels.getEmpiricalNucleotideMutationModel().multiplyProbabilities(2.0);
+        mutationModel.reseed(12343L);
+
+        for (int i = 0; i < trys; i++) {
+            int hit = rg.nextInt(base.size());
+            NucleotideSequence sFromBase = base.get(hit);
+            int qLength = rdg.nextInt(queryLengthFrom, Math.min(queryLengthTo, sFromBase.size() - 1));
+            int qFrom = rg.nextInt(sFromBase.size() - qLength);
+            NucleotideSequence query = sFromBase.getRange(qFrom, qFrom + qLength);
+            Mutations<NucleotideSequence> muts = MutationsGenerator.generateMutations(query, mutationModel);
+            query = muts.mutate(query);
+            queries.add(new BlastAlignerTest.QueryObject<>(query, hit, muts.move(qFrom)));
+        }
+
+        OutputPort<PipedAlignmentResult<BlastHit<NucleotideSequence, Integer>, BlastAlignerTest.QueryObject<NucleotideSequence>>> results =
+                ba.align(CUtils.asOutputPort(queries));
+
+        int noHit = 0;
+        int wrongHit = 0;
+        for (PipedAlignmentResult<BlastHit<NucleotideSequence, Integer>, BlastAlignerTest.QueryObject<NucleotideSequence>> result : it(results)) {
+            if (!result.hasHits()) {
+                ++noHit;
+                continue;
+            }
+            if (result.getQuery().expectedHit != result.getHits().get(0).getRecordPayload())
+                wrongHit++;
+            Assert.assertEquals(result.getQuery().getSequence().getRange(result.getHits().get(0).getAlignment().getSequence2Range()),
+                    AlignmentUtils.getAlignedSequence2Part(result.getHits().get(0).getAlignment()));
+        }
+        Assert.assertTrue("No hit: " + noHit, noHit < 30);
+        Assert.assertTrue("Wrong hit: " + wrongHit, wrongHit < 5);
+    }
+}
@@ -20,14 +20,19 @@ import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
 import com.milaboratory.core.mutations.generator.MutationModels;
 import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.BitArray;
 import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.ParallelUtils;
+import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.milaboratory.core.alignment.kaligner1.KMapper.SEED_NOT_FOUND_OFFSET;
 import static com.milaboratory.core.alignment.kaligner1.KMapper.getBestOffset;
@@ -35,6 +40,7 @@ import static com.milaboratory.core.mutations.generator.MutationsGenerator.gener
 import static com.milaboratory.test.TestUtil.its;
 import static com.milaboratory.test.TestUtil.randomSequence;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class KMapperTest extends AlignmentTest {
@@ -67,6 +73,65 @@ public class KMapperTest extends AlignmentTest {
 
     }
 
+    @Test
+    public void testAddReferences() throws Exception {
+        // More than 2^13 references, so records of last ones are negative
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 9000; ++i)
+            references.add(randomSequence(NucleotideSequence.ALPHABET, 20, 60));
+
+        KMapper sequential = KMapper.createFromParameters(gParams);
+        for (NucleotideSequence reference : references)
+            sequential.addReference(reference);
+
+        KMapper bulk = KMapper.createFromParameters(gParams);
+        bulk.addReference(references.get(0));
+        bulk.addReference(references.get(1));
+        assertEquals(2, bulk.addReferences(references.subList(2, 5000), 4));
+        assertEquals(5000, bulk.addReferences(references.subList(5000, references.size()), 3));
+        bulk.build(2);
+
+        assertTrue(Arrays.deepEquals(sequential.getBase(), bulk.getBase()));
+
+        NucleotideSequence query = references.get(8500).concatenate(references.get(100));
+        RandomUtil.reseedThreadLocal(123);
+        KMappingResult expected = sequential.align(query);
+        RandomUtil.reseedThreadLocal(123);
+        assertEquals(expected.getHits(), bulk.align(query).getHits());
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        KMapper aligner = KMapper.createFromParameters(gParams);
+        aligner.addReference(new NucleotideSequence("ATTAGACACAATATATCTATGATCCTCTATTAGCTACGTACGGCTGATGCTAGTGTCGAT"));
+        aligner.addReference(new NucleotideSequence("ACTAGCTGAGCTGTGTAGCTAGTATCTCGATATGCTACATCGTGGGTCGATTAGCTACGT"));
+        aligner.addReference(new NucleotideSequence("GCTGTCGGCCTAGGCGCGATCGAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGA"));
+        NucleotideSequence query = new NucleotideSequence("GAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGAAGTAGATGATGATGCAGCGTATG");
+
+        for (int cacheSize : new int[]{0, 1}) {
+            aligner.setFilteredIndexCacheSize(cacheSize);
+            for (int i = 0; i < 3; ++i) {
+                BitArray filter = new BitArray(true, true, false);
+                assertTrue(aligner.align(query, 0, query.size(), filter).hits.isEmpty());
+                filter.set(2);
+                List<KMappingHit> hits = aligner.align(query, 0, query.size(), filter).hits;
+                assertEquals(1, hits.size());
+                assertEquals(2, hits.get(0).id);
+                assertEquals(-21, hits.get(0).offset);
+            }
+        }
+
+        // Sub-index is built once and shared by concurrent callers
+        aligner.setFilteredIndexCacheSize(1);
+        BitArray filter = new BitArray(false, true, true);
+        int[][][] bases = new int[64][][];
+        ForkJoinPool pool = ParallelUtils.createPool(4);
+        ParallelUtils.forEach(pool, 0, bases.length, i -> bases[i] = aligner.getFilteredBase(filter));
+        pool.shutdown();
+        for (int[][] base : bases)
+            assertSame(bases[0], base);
+    }
+
     @Test
     public void test1() throws Exception {
         KMapper aligner = KMapper.createFromParameters(gParams);
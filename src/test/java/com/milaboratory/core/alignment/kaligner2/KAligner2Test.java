@@ -1,8 +1,12 @@
 package com.milaboratory.core.alignment.kaligner2;
 
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
 import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
 import com.milaboratory.core.alignment.Alignment;
 import com.milaboratory.core.alignment.AlignmentUtils;
+import com.milaboratory.core.alignment.batch.CachingBatchAlignerWithFilter;
+import com.milaboratory.core.alignment.batch.PipedAlignmentResult;
 import com.milaboratory.core.alignment.benchmark.*;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.mutations.generator.MutationModels;
@@ -10,13 +14,20 @@ import com.milaboratory.core.mutations.generator.MutationsGenerator;
 import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.BitArray;
 import com.milaboratory.util.GlobalObjectMappers;
+import com.milaboratory.util.OrderedParallelProcessor;
 import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING;
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING_THRESHOLD;
 import static com.milaboratory.core.alignment.benchmark.ChallengeProvider.getParamsOneCluster;
@@ -64,6 +75,98 @@ public class KAligner2Test {
         //System.out.println(val);
     }
 
+    @Test
+    public void testContextReuse() throws Exception {
+        KAligner2Statistics stat = new KAligner2Statistics();
+        KAligner2<Object> aligner = new KAligner2<>(gParams, stat);
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgatcgatcgactgactagcataggatgtagagctagctagctac"));
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgatcgatcgactgactagcatcagcatcaggatgtagagctagctagctac"));
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgtagtagatgatgatagtagatagtagtagtgatgacgatcgactgaatgtagagctagctagctac"));
+
+        NucleotideSequence query = new NucleotideSequence("atgcgtcgatcgtagctagctgtcgatcgactgaatgtagagctagctagctac");
+        KAligner2.AlignmentContext context = aligner.createContext();
+
+        RandomUtil.reseedThreadLocal(123);
+        KAlignmentResult2<Object> al1 = aligner.align(query, 0, query.size(), null, context);
+        long allocations = stat.matrixAllocations.get();
+        Assert.assertTrue(allocations > 0);
+
+        RandomUtil.reseedThreadLocal(123);
+        KAlignmentResult2<Object> al2 = aligner.align(query, 0, query.size(), null, context);
+        Assert.assertEquals(allocations, stat.matrixAllocations.get());
+
+        Assert.assertEquals(al1.getHits().size(), al2.getHits().size());
+        for (int i = 0; i < al1.getHits().size(); i++)
+            Assert.assertEquals(al1.getHits().get(i).getAlignment(), al2.getHits().get(i).getAlignment());
+        Assert.assertEquals(1, stat.alignmentContexts.get());
+    }
+
+    @Test
+    public void testBatchedProcessing() throws Exception {
+        KAligner2<Object> aligner = new KAligner2<>(gParams.clone().setMapperDeterministic(true));
+        List<NucleotideSequence> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            NucleotideSequence reference = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 100, 200);
+            aligner.addReference(reference);
+            queries.add(reference.getRange(10, 90));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            aligner.setBatchedProcessing(new OrderedParallelProcessor.Settings(executor, 7, 4));
+            OutputPort<PipedAlignmentResult<KAlignmentHit2<Object>, NucleotideSequence>> results =
+                    aligner.align(CUtils.asOutputPort(queries), s -> s);
+            Assert.assertTrue(results instanceof OrderedParallelProcessor);
+
+            int i = 0;
+            for (PipedAlignmentResult<KAlignmentHit2<Object>, NucleotideSequence> result : CUtils.it(results)) {
+                NucleotideSequence query = queries.get(i);
+                Assert.assertSame(query, result.getQuery());
+                Assert.assertEquals(aligner.align(query).getBestHit().getAlignment(),
+                        result.getBestHit().getAlignment());
+                ++i;
+            }
+            Assert.assertEquals(queries.size(), i);
+            Assert.assertTrue(((OrderedParallelProcessor<?, ?>) results).getMaxQueueDepth() <= 4);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        KAligner2<Integer> aligner = new KAligner2<>(gParams.clone().setMapperDeterministic(true));
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 100, 200));
+            aligner.addReference(references.get(i), i);
+        }
+        CachingBatchAlignerWithFilter<NucleotideSequence, Integer, KAlignmentHit2<Integer>> caching =
+                new CachingBatchAlignerWithFilter<>(aligner, 16);
+
+        NucleotideSequence query1 = references.get(3).getRange(10, 90), query2 = references.get(5).getRange(0, 40);
+        BitArray filter = caching.createFilter(p -> p != 3);
+        KAlignmentResult2<Integer> result1 = (KAlignmentResult2<Integer>) caching.align(query1);
+        int[] seeds = seeds(result1.mappingResult);
+        Assert.assertEquals((Integer) 3, result1.getBestHit().getRecordPayload());
+        Assert.assertFalse(caching.align(query1, 0, query1.size(), filter).hasHits());
+
+        // Alignment of other queries in the same thread doesn't affect cached results
+        caching.align(query2);
+        Assert.assertSame(result1, caching.align(query1));
+        Assert.assertArrayEquals(seeds, seeds(result1.mappingResult));
+        Assert.assertEquals(1, caching.getCache().getHits());
+
+        Assert.assertTrue(caching.setFloatingLeftBound(true).align(query1).hasHits());
+    }
+
+    static int[] seeds(KMappingResult2 result) {
+        int[] seeds = new int[result.getSeedsCount()];
+        for (int i = 0; i < seeds.length; i++)
+            seeds[i] = result.getSeedPosition(i);
+        return seeds;
+    }
+
     @Test
     public void testSimpleRandomTest() throws Exception {
         RandomUtil.reseedThreadLocal(12342345L);
@@ -8,6 +8,9 @@ import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.SequenceBuilder;
 import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.BitArray;
+import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.ParallelUtils;
 import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well1024a;
@@ -16,7 +19,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by poslavsky on 15/09/15.
@@ -62,6 +67,27 @@ public class KMapper2Test {
         }
     }
 
+    @Test
+    public void testDeterministic() throws Exception {
+        KMapper2 aligner = KMapper2.createFromParameters(gParams.clone().setMapperDeterministic(true));
+        aligner.addReference(new NucleotideSequence("ATTAGACACAATATATCTATGATCCTCTATTAGCTACGTACGGCTGATGCTAGTGTCGAT"));
+        aligner.addReference(new NucleotideSequence("ACTAGCTGAGCTGTGTAGCTAGTATCTCGATATGCTACATCGTGGGTCGATTAGCTACGT"));
+        aligner.addReference(new NucleotideSequence("GCTGTCGGCCTAGGCGCGATCGAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGA"));
+
+        NucleotideSequence query = new NucleotideSequence("GAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGAAGTAGATGATGATGCAGCGTATG");
+        KMappingResult2 expected = aligner.align(query);
+        // seeds list is reused by subsequent invocations
+        IntArrayList expectedSeeds = expected.seeds.clone();
+        Assert.assertEquals(1, expected.hits.size());
+        for (int i = 0; i < 100; ++i) {
+            RandomUtil.reseedThreadLocal(i);
+            KMappingResult2 result = aligner.align(query);
+            Assert.assertEquals(expectedSeeds, result.seeds);
+            Assert.assertEquals(expected.hits.size(), result.hits.size());
+            Assert.assertArrayEquals(expected.hits.get(0).seedRecords, result.hits.get(0).seedRecords);
+        }
+    }
+
     @Test
     public void test1() throws Exception {
         KMapper2 aligner = KMapper2.createFromParameters(gParams);
@@ -82,6 +108,78 @@ public class KMapper2Test {
         }
     }
 
+    @Test
+    public void testFilter() throws Exception {
+        KMapper2 aligner = KMapper2.createFromParameters(gParams.clone().setMapperDeterministic(true));
+        aligner.addReference(new NucleotideSequence("ATTAGACACAATATATCTATGATCCTCTATTAGCTACGTACGGCTGATGCTAGTGTCGAT"));
+        aligner.addReference(new NucleotideSequence("ACTAGCTGAGCTGTGTAGCTAGTATCTCGATATGCTACATCGTGGGTCGATTAGCTACGT"));
+        aligner.addReference(new NucleotideSequence("GCTGTCGGCCTAGGCGCGATCGAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGA"));
+        NucleotideSequence query = new NucleotideSequence("GAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGAAGTAGATGATGATGCAGCGTATG");
+
+        BitArray filter = new BitArray(3);
+        filter.set(0);
+        filter.set(1);
+        Assert.assertTrue(aligner.align(query, 0, query.size(), filter).hits.isEmpty());
+
+        filter.set(2);
+        KMappingResult2 result = aligner.align(query, 0, query.size(), filter);
+        Assert.assertEquals(1, result.hits.size());
+        Assert.assertEquals(2, result.hits.get(0).id);
+        Assert.assertArrayEquals(aligner.align(query).hits.get(0).seedRecords, result.hits.get(0).seedRecords);
+
+        // Same results with cached filtered sub-indices
+        aligner.setFilteredIndexCacheSize(2);
+        BitArray filter2 = new BitArray(3);
+        filter2.set(2);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertArrayEquals(result.hits.get(0).seedRecords,
+                    aligner.align(query, 0, query.size(), filter).hits.get(0).seedRecords);
+            Assert.assertArrayEquals(result.hits.get(0).seedRecords,
+                    aligner.align(query, 0, query.size(), filter2).hits.get(0).seedRecords);
+        }
+        filter.clear(2);
+        Assert.assertTrue(aligner.align(query, 0, query.size(), filter).hits.isEmpty());
+
+        // Sub-index is built once and shared by concurrent callers
+        BitArray filter3 = new BitArray(false, true, true);
+        int[][][][] bases = new int[64][][][];
+        ForkJoinPool pool = ParallelUtils.createPool(4);
+        ParallelUtils.forEach(pool, 0, bases.length, i -> bases[i] = aligner.getFilteredBase(filter3));
+        pool.shutdown();
+        for (int[][][] base : bases)
+            Assert.assertSame(bases[0], base);
+    }
+
+    @Test
+    public void testAddReferences() throws Exception {
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, 50, 150));
+
+        KMapper2 sequential = KMapper2.createFromParameters(gParams.clone().setMapperDeterministic(true));
+        for (NucleotideSequence reference : references)
+            sequential.addReference(reference);
+
+        KMapper2 bulk = KMapper2.createFromParameters(gParams.clone().setMapperDeterministic(true));
+        bulk.addReference(references.get(0));
+        Assert.assertEquals(1, bulk.addReferences(references.subList(1, 600), 4));
+        Assert.assertEquals(600, bulk.addReferences(references.subList(600, references.size()), 1));
+        bulk.build(3);
+
+        Assert.assertTrue(Arrays.deepEquals(sequential.getBase(), bulk.getBase()));
+
+        NucleotideSequence query = references.get(700).getRange(10, 45);
+        KMappingResult2 result = bulk.align(query);
+        Assert.assertEquals(700, result.hits.get(0).id);
+        Assert.assertArrayEquals(sequential.align(query).hits.get(0).seedRecords, result.hits.get(0).seedRecords);
+
+        try {
+            bulk.addReferences(references.subList(0, 1), 2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
     public static void assertGoodSequenceOfKInQuery(KMappingResult2 result2) {
         for (KMappingHit2 hit : result2.hits)
             assertGoodSequenceOfKInQuery(hit);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligneraa;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.alignment.AlignmentUtils;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.alignment.batch.AlignmentHit;
+import com.milaboratory.core.alignment.batch.AlignmentResult;
+import com.milaboratory.core.alignment.batch.PipedAlignmentResult;
+import com.milaboratory.core.alignment.batch.SequenceExtractor;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cc.redberry.pipe.CUtils.it;
+
+public class AAKAlignerTest {
+    @Test
+    public void testExact() throws Exception {
+        AAKAligner<Integer> aligner = new AAKAligner<>(AAKAlignerParameters.getDefaults(BLASTMatrix.BLOSUM62));
+        Well19937c rg = new Well19937c(123);
+        List<AminoAcidSequence> base = createBase(aligner, rg, 200);
+
+        for (int i = 0; i < base.size(); i++) {
+            AminoAcidSequence query = base.get(i).getRange(10, 60);
+            AlignmentResult<AlignmentHit<AminoAcidSequence, Integer>> result = aligner.align(query);
+            AlignmentHit<AminoAcidSequence, Integer> hit = result.getBestHit();
+            Assert.assertEquals((Integer) i, hit.getRecordPayload());
+            Assert.assertEquals(query, AlignmentUtils.getAlignedSequence2Part(hit.getAlignment()));
+            Assert.assertEquals(10, hit.getAlignment().getSequence1Range().getFrom());
+        }
+    }
+
+    @Test
+    public void testNeighborhood() throws Exception {
+        AAKAlignerParameters parameters = AAKAlignerParameters.getDefaults(BLASTMatrix.BLOSUM62)
+                .setAlphabet(ReducedAminoAcidAlphabet.NONE)
+                .setKValue(3);
+        Well19937c rg = new Well19937c(321);
+
+        AAKAligner<Integer> exact = new AAKAligner<>(parameters);
+        AAKAligner<Integer> neighborhood = new AAKAligner<>(parameters.clone().setNeighborhoodThreshold(11));
+        List<AminoAcidSequence> base = createBase(exact, rg, 300);
+        for (int i = 0; i < base.size(); i++)
+            neighborhood.addReference(base.get(i), i);
+
+        int exactFound = 0, neighborhoodFound = 0;
+        for (int i = 0; i < base.size(); i++) {
+            AminoAcidSequence query = mutate(base.get(i).getRange(5, 75), rg, 4);
+            AlignmentHit<AminoAcidSequence, Integer> hit = exact.align(query).getBestHit();
+            if (hit != null && hit.getRecordPayload() == i)
+                ++exactFound;
+            hit = neighborhood.align(query).getBestHit();
+            if (hit != null && hit.getRecordPayload() == i)
+                ++neighborhoodFound;
+        }
+
+        Assert.assertTrue(neighborhoodFound >= exactFound);
+        Assert.assertTrue(neighborhoodFound > base.size() * 0.95);
+    }
+
+    @Test
+    public void testPiped() throws Exception {
+        AAKAligner<Integer> aligner = new AAKAligner<>(AAKAlignerParameters.getDefaults(BLASTMatrix.BLOSUM62));
+        aligner.setThreadCount(2);
+        Well19937c rg = new Well19937c(12);
+        List<AminoAcidSequence> base = createBase(aligner, rg, 100);
+
+        List<AminoAcidSequence> queries = new ArrayList<>();
+        for (AminoAcidSequence seq : base)
+            queries.add(seq.getRange(20, 70));
+
+        int found = 0;
+        for (PipedAlignmentResult<AlignmentHit<AminoAcidSequence, Integer>, AminoAcidSequence> result :
+                it(aligner.align(CUtils.asOutputPort(queries), new SequenceExtractor<AminoAcidSequence, AminoAcidSequence>() {
+                    @Override
+                    public AminoAcidSequence extract(AminoAcidSequence object) {
+                        return object;
+                    }
+                }))) {
+            Assert.assertTrue(result.hasHits());
+            Assert.assertEquals(base.get(result.getBestHit().getRecordPayload()).getRange(20, 70), result.getQuery());
+            ++found;
+        }
+        Assert.assertEquals(base.size(), found);
+    }
+
+    @Test
+    public void testMapper() throws Exception {
+        AAKMapper mapper = new AAKMapper(AAKAlignerParameters.getDefaults(BLASTMatrix.BLOSUM62));
+        mapper.addReference(new AminoAcidSequence("MKLVITGAGSGIGRAAALAFAREGAKVVVNYA"));
+        mapper.addReference(new AminoAcidSequence("MSDQEAKPSTEDLGDKKEGEYIKLKVIGQDSS"));
+
+        List<AAKMapperHit> hits = mapper.map(new AminoAcidSequence("GIGRAAALAFAREG"));
+        Assert.assertEquals(1, hits.size());
+        Assert.assertEquals(0, hits.get(0).getId());
+        Assert.assertEquals(10, hits.get(0).getOffset());
+
+        try {
+            mapper.addReference(new AminoAcidSequence("MKLV"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    static List<AminoAcidSequence> createBase(AAKAligner<Integer> aligner, Well19937c rg, int count) {
+        List<AminoAcidSequence> base = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AminoAcidSequence seq = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 80, 120);
+            base.add(seq);
+            aligner.addReference(seq, i);
+        }
+        return base;
+    }
+
+    /**
+     * Introduces a substitution to each {@code period}-th position
+     */
+    static AminoAcidSequence mutate(AminoAcidSequence seq, Well19937c rg, int period) {
+        SequenceBuilder<AminoAcidSequence> builder = AminoAcidSequence.ALPHABET.createBuilder();
+        for (int i = 0; i < seq.size(); i++)
+            if (i % period == period - 1)
+                builder.append((byte) (1 + rg.nextInt(20)));
+            else
+                builder.append(seq.codeAt(i));
+        return builder.createAndDestroy();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipOutputStreamTest {
+    @Test
+    public void testGzip() throws Exception {
+        byte[] data = randomData(3_000_000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos, 3, 100_000, 6, false)) {
+            writeInChunks(os, data);
+        }
+        Assert.assertTrue(bos.size() < data.length);
+        Assert.assertArrayEquals(data, decompress(bos.toByteArray()));
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        byte[] data = randomData(1_000_000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos, 4, 300_000, 6, true);
+        writeInChunks(os, data);
+        os.close();
+
+        byte[] compressed = bos.toByteArray();
+        Assert.assertArrayEquals(data, decompress(compressed));
+
+        // Walking BGZF blocks
+        int blocks = 0, position = 0;
+        while (position < compressed.length) {
+            Assert.assertEquals(0x1f, compressed[position] & 0xFF);
+            Assert.assertEquals(4, compressed[position + 3]);
+            Assert.assertEquals('B', compressed[position + 12]);
+            Assert.assertEquals('C', compressed[position + 13]);
+            position += (compressed[position + 16] & 0xFF) + ((compressed[position + 17] & 0xFF) << 8) + 1;
+            ++blocks;
+        }
+        Assert.assertEquals(compressed.length, position);
+        // 4 blocks of 300_000 -> 5 + 5 + 5 + 2 BGZF blocks + EOF marker
+        Assert.assertEquals(18, blocks);
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        os.writeGziIndex(index);
+        Assert.assertEquals(8 * (1 + 2 * 16), index.size());
+    }
+
+    @Test
+    public void testIncompressible() throws Exception {
+        byte[] data = new byte[500_000];
+        new Well19937c(1).nextBytes(data);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos, 2, 200_000, 9, true)) {
+            os.write(data);
+        }
+        Assert.assertArrayEquals(data, decompress(bos.toByteArray()));
+    }
+
+    @Test
+    public void testCloseOnFailure() throws Exception {
+        final boolean[] closed = {false};
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Failure.");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ParallelGzipOutputStream os = new ParallelGzipOutputStream(failing, 2, 1000, 6, true);
+        os.write(randomData(500));
+        try {
+            os.close();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("Failure.", e.getMessage());
+        }
+        Assert.assertTrue(closed[0]);
+
+        try {
+            os.write(1);
+            Assert.fail();
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testWriteAfterClose() throws Exception {
+        ParallelGzipOutputStream os = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2, 1000, 6, false);
+        os.write(randomData(100));
+        os.close();
+        try {
+            os.write(new byte[]{1, 2, 3});
+            Assert.fail();
+        } catch (IOException e) {
+        }
+    }
+
+    static byte[] randomData(int size) {
+        Well19937c rg = new Well19937c(123);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) "ACGT\n".charAt(rg.nextInt(5));
+        return data;
+    }
+
+    static void writeInChunks(ParallelGzipOutputStream os, byte[] data) throws IOException {
+        Well19937c rg = new Well19937c(1);
+        int p = 0;
+        while (p < data.length) {
+            if (rg.nextInt(10) == 0)
+                os.write(data[p++]);
+            else {
+                int len = Math.min(data.length - p, rg.nextInt(10_000));
+                os.write(data, p, len);
+                p += len;
+            }
+        }
+    }
+
+    static byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0)
+                result.write(buffer, 0, read);
+        }
+        return result.toByteArray();
+    }
+}
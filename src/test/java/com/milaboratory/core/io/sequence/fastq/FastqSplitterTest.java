@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.ParallelGzipOutputStream;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class FastqSplitterTest {
+    @Test
+    public void testFindRecordStart() {
+        // Quality line starting with '@' must not be taken for a record start
+        byte[] data = "AC\n@@@@\n@r2\nACGT\n+\nIIII\n@r3\n".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(8, FastqSplitter.findRecordStart(data, data.length, false));
+        // Not enough data
+        Assert.assertEquals(-1, FastqSplitter.findRecordStart(data, 14, false));
+        byte[] tail = "AC\nIIII\n".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(tail.length, FastqSplitter.findRecordStart(tail, tail.length, true));
+    }
+
+    @Test
+    public void testPlain() throws Exception {
+        File file = TempFileManager.getTempFile();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeRandomFastq(os, 5000, 12345);
+        }
+        assertSplits(file, CompressionType.None);
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        File file = TempFileManager.getTempFile();
+        try (OutputStream os = new ParallelGzipOutputStream(new FileOutputStream(file), 2, 1 << 16, 6, true)) {
+            writeRandomFastq(os, 5000, 54321);
+        }
+        assertSplits(file, CompressionType.GZIP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGzip() throws Exception {
+        File file = TempFileManager.getTempFile();
+        try (OutputStream os = new ParallelGzipOutputStream(new FileOutputStream(file), 1)) {
+            writeRandomFastq(os, 10, 1);
+        }
+        FastqSplitter.split(file, 2);
+    }
+
+    static void assertSplits(File file, CompressionType ct) throws Exception {
+        List<SingleRead> expected = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(new FileInputStream(file), QualityFormat.Phred33, ct)) {
+            for (SingleRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int parts : new int[]{1, 2, 3, 7, 16, 100}) {
+                List<FastqSplit> splits = FastqSplitter.split(file, parts);
+                Assert.assertTrue(splits.size() <= parts);
+                if (parts > 1)
+                    Assert.assertTrue(splits.size() > 1);
+
+                List<Future<List<SingleRead>>> futures = new ArrayList<>();
+                for (final FastqSplit split : splits)
+                    futures.add(executor.submit(() -> {
+                        List<SingleRead> result = new ArrayList<>();
+                        try (FastqSplitReader reader = new FastqSplitReader(split)) {
+                            for (SingleRead read : CUtils.it(reader))
+                                result.add(read);
+                            Assert.assertEquals(1.0, reader.getProgress(), 1e-9);
+                        }
+                        Assert.assertFalse(result.isEmpty());
+                        return result;
+                    }));
+
+                List<SingleRead> actual = new ArrayList<>();
+                for (Future<List<SingleRead>> future : futures)
+                    actual.addAll(future.get());
+
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+                    Assert.assertEquals(expected.get(i).getData(), actual.get(i).getData());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static void writeRandomFastq(OutputStream os, int count, long seed) throws IOException {
+        RandomGenerator rg = new Well19937c(seed);
+        PrintStream ps = new PrintStream(os, false, "US-ASCII");
+        String letters = "ACGTN";
+        for (int i = 0; i < count; i++) {
+            int length = 20 + rg.nextInt(200);
+            StringBuilder seq = new StringBuilder(), qual = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                seq.append(letters.charAt(rg.nextInt(letters.length())));
+                // '@' and '+' are frequent at the beginning of quality lines to test resynchronization
+                qual.append(j == 0 && rg.nextBoolean() ? (rg.nextBoolean() ? '@' : '+') : (char) ('!' + rg.nextInt(41)));
+            }
+            ps.print("@read" + i + " some description\n" + seq + "\n+\n" + qual + "\n");
+        }
+        ps.flush();
+    }
+}
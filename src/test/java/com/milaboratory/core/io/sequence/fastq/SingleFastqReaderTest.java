@@ -18,6 +18,7 @@ package com.milaboratory.core.io.sequence.fastq;
 import cc.redberry.pipe.CUtils;
 import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadLazy;
 import com.milaboratory.util.HashFunctions;
 import org.junit.Assert;
 import org.junit.Test;
@@ -26,7 +27,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
 
 /**
@@ -60,6 +63,46 @@ public class SingleFastqReaderTest {
         assertReaderOnSample("solexa3.fastq.gz");
     }
 
+    @Test
+    public void testBufferPool() throws IOException, URISyntaxException {
+        File sample = new File(SingleFastqReaderTest.class.getClassLoader().getResource("sequences/sample_r1.fastq").toURI());
+
+        List<SingleRead> expected = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(sample, false, false)) {
+            for (SingleRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+
+        FastqBufferPool pool = new FastqBufferPool(512, 4);
+        try (SingleFastqReader reader = new SingleFastqReader(new FileInputStream(sample), QualityFormat.Phred33,
+                CompressionType.None, false, 512, false, true).setBufferPool(pool)) {
+            int i = 0;
+            for (SingleRead read : CUtils.it(reader)) {
+                SingleReadLazy lazy = (SingleReadLazy) read;
+                SingleRead exp = expected.get(i);
+                if (i++ % 2 == 0) {
+                    lazy.materialize();
+                    Assert.assertEquals(exp, lazy);
+                } else {
+                    // Only description is parsed before release
+                    Assert.assertEquals(exp.getDescription(), lazy.getDescription());
+                    lazy.release();
+                    Assert.assertEquals(exp.getDescription(), lazy.getDescription());
+                    try {
+                        lazy.getData();
+                        Assert.fail();
+                    } catch (IllegalStateException e) {
+                        // expected
+                    }
+                }
+            }
+            Assert.assertEquals(expected.size(), i);
+        }
+
+        Assert.assertTrue(pool.getReused() > 0);
+        Assert.assertTrue(pool.getAllocated() <= 4);
+    }
+
     private static void assertReaderOnSampleWithGZ(String file) throws IOException, URISyntaxException {
         for (int wc = 0; wc < 2; ++wc) {
             boolean replaceWildcards = (wc == 1);
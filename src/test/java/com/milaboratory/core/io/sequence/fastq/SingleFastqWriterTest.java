@@ -82,6 +82,37 @@ public class SingleFastqWriterTest {
         }
     }
 
+    @Test
+    public void testParallelGzip() throws Exception {
+        File sample = new File(SingleFastqReaderTest.class.getClassLoader().getResource("sequences/sample_r1.fastq").toURI());
+
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(sample, false)) {
+            for (SingleRead read : CUtils.it(reader))
+                reads.add(read);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (SingleFastqWriter writer = new SingleFastqWriter(bos,
+                QualityFormat.Phred33, CompressionType.GZIP, 1024, 4)) {
+            for (int i = 0; i < 100; i++)
+                for (SingleRead read : reads)
+                    writer.write(read);
+        }
+
+        try (SingleFastqReader reader = new SingleFastqReader(
+                new ByteArrayInputStream(bos.toByteArray()),
+                QualityFormat.Phred33, CompressionType.GZIP)) {
+            for (int i = 0; i < 100; i++)
+                for (SingleRead read : reads) {
+                    SingleRead actual = reader.take();
+                    assertEquals(read.getData(), actual.getData());
+                    assertEquals(read.getDescription(), actual.getDescription());
+                }
+            assertNull(reader.take());
+        }
+    }
+
     public static void assertReadsEquals(SingleRead r1, SingleRead r2) {
         assertEquals(r1.getId(), r2.getId());
         assertEquals(r1.getData(), r2.getData());
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.mutations;
+
+import com.milaboratory.core.Range;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrentCoverageCounterTest {
+    @Test
+    public void test1() throws Exception {
+        ConcurrentCoverageCounter counter = new ConcurrentCoverageCounter(10, 20, 2);
+        counter.aggregate(new Range(10, 15), 2);
+        counter.aggregate(new Range(12, 20), 1);
+        counter.aggregate(new Range(14, 17), new CoverageCounter.Provider() {
+            @Override
+            public long delta(int position) {
+                return position;
+            }
+        });
+        long[] expected = {2, 2, 3, 3, 3 + 14, 1 + 15, 1 + 16, 1, 1, 1};
+        for (int i = 0; i < expected.length; i++)
+            Assert.assertEquals(expected[i], counter.count(10 + i));
+        Assert.assertArrayEquals(expected, counter.getCoverage());
+
+        counter.aggregate(new Range(19, 20), 5);
+        Assert.assertEquals(6, counter.count(19));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final int length = 1000, threads = 4, iterations = 20000;
+        final ConcurrentCoverageCounter counter = new ConcurrentCoverageCounter(0, length, 3);
+        final long[] expected = new long[length];
+        final List<Range[]> ranges = new ArrayList<>();
+        Well19937c rg = new Well19937c(123);
+        for (int t = 0; t < threads; t++) {
+            Range[] r = new Range[iterations];
+            for (int i = 0; i < iterations; i++) {
+                int from = rg.nextInt(length), to = from + rg.nextInt(length - from + 1);
+                r[i] = new Range(from, to);
+                for (int j = from; j < to; j++)
+                    expected[j] += 1 + (i & 1);
+            }
+            ranges.add(r);
+        }
+
+        List<Thread> ts = new ArrayList<>();
+        for (final Range[] r : ranges)
+            ts.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < r.length; i++)
+                        if ((i & 1) == 0)
+                            counter.aggregate(r[i], 1);
+                        else
+                            counter.aggregate(r[i], CoverageCounter.constantDelta(2));
+                }
+            }));
+        for (Thread t : ts)
+            t.start();
+        for (Thread t : ts)
+            t.join();
+
+        Assert.assertArrayEquals(expected, counter.getCoverage());
+    }
+}
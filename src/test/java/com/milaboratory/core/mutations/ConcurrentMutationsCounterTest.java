@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.mutations;
+
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.MutationsGenerator;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import gnu.trove.iterator.TIntLongIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.milaboratory.core.sequence.NucleotideSequence.ALPHABET;
+
+public class ConcurrentMutationsCounterTest {
+    @Test
+    public void test1() throws Exception {
+        Mutations<NucleotideSequence> original1 = Mutations.decodeNuc("SA1T ST12C DG13 I16T I16G SA20G");
+        Mutations<NucleotideSequence> original2 = Mutations.decodeNuc("SA1T       DG13 I16T I16G SA20G");
+        Mutations<NucleotideSequence> original3 = Mutations.decodeNuc("SA1T ST12C DG13 I16T      SA20G");
+
+        ConcurrentMutationsCounter counter = new ConcurrentMutationsCounter(3);
+        counter.adjust(original1, 1);
+        counter.adjust(original2, 1);
+        counter.adjust(original3, 1);
+
+        Assert.assertEquals(Mutations.decodeNuc("SA1T DG13 SA20G"), counter.build(ALPHABET, countFilter(3)));
+        Assert.assertEquals(Mutations.decodeNuc("SA1T ST12C DG13 I16T I16G SA20G"), counter.build(ALPHABET, countFilter(2)));
+        Assert.assertEquals(3, counter.count(Mutation.createSubstitution(1, 0, 3)));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final int threads = 4;
+        final NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel().multiplyProbabilities(50);
+        final List<List<Mutations<NucleotideSequence>>> data = new ArrayList<>();
+        MutationsCounter expected = new MutationsCounter();
+        for (int t = 0; t < threads; t++) {
+            List<Mutations<NucleotideSequence>> list = new ArrayList<>();
+            for (int i = 0; i < TestUtil.its(1000, 10000); i++) {
+                Mutations<NucleotideSequence> mutations = MutationsGenerator.generateMutations(
+                        TestUtil.randomSequence(ALPHABET, 50, 60), model);
+                list.add(mutations);
+                expected.adjust(mutations, 1);
+            }
+            data.add(list);
+        }
+
+        final ConcurrentMutationsCounter counter = new ConcurrentMutationsCounter();
+        List<Thread> ts = new ArrayList<>();
+        for (final List<Mutations<NucleotideSequence>> list : data)
+            ts.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (Mutations<NucleotideSequence> mutations : list)
+                        counter.adjust(mutations, 1);
+                }
+            }));
+        for (Thread t : ts)
+            t.start();
+        for (Thread t : ts)
+            t.join();
+
+        MutationsCounter actual = counter.snapshot();
+        // Order of mutations with the same position in built mutations depends on hash map iteration order, so
+        // counts are compared directly
+        Assert.assertEquals(singleCounts(expected), singleCounts(actual));
+        Assert.assertEquals(insertCounts(expected), insertCounts(actual));
+    }
+
+    static Map<Integer, Long> singleCounts(MutationsCounter counter) {
+        Map<Integer, Long> result = new HashMap<>();
+        TIntLongIterator it = counter.counter.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            if ((it.key() & Mutation.MUTATION_TYPE_MASK) != 0)
+                result.put(it.key(), it.value());
+        }
+        return result;
+    }
+
+    static Map<List<Integer>, Long> insertCounts(MutationsCounter counter) {
+        Map<List<Integer>, Long> result = new HashMap<>();
+        if (counter.insertMapping != null)
+            for (int[] insert : counter.insertMapping.keySet()) {
+                List<Integer> key = new ArrayList<>();
+                for (int m : insert)
+                    key.add(m);
+                result.put(key, counter.counter.get(counter.insertMapping.get(insert)));
+            }
+        return result;
+    }
+
+    static MutationsCounter.Filter countFilter(final long threshold) {
+        return new MutationsCounter.Filter() {
+            @Override
+            public boolean accept(long count, int position, int mutation, int[] mutations) {
+                return count >= threshold;
+            }
+        };
+    }
+}
@@ -15,7 +15,9 @@
  */
 package com.milaboratory.core.sequence;
 
+import com.milaboratory.test.TestUtil;
 import gnu.trove.set.hash.TByteHashSet;
+import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -60,4 +62,28 @@ public class GeneticCodeTest {
                 for (byte k = 0; k < 4; k++)
                     Assert.assertEquals(GeneticCode.getAminoAcid(i, j, k), GeneticCode.getBasicAminoAcid(i, j, k));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSixFrames() throws Exception {
+        Well19937c rg = new Well19937c(123);
+        byte[][] dest = new byte[6][100];
+        int[] firstStop = new int[6];
+        for (int t = 0; t < 1000; t++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 300, t % 2 == 0);
+            NucleotideSequence rc = seq.getReverseComplement();
+            int open = GeneticCode.translateSixFrames(seq, dest, firstStop);
+            for (int f = 0; f < 6; f++) {
+                NucleotideSequence s = f < 3 ? seq : rc;
+                int frame = f % 3;
+                AminoAcidSequence expected = frame >= s.size() ? AminoAcidSequence.EMPTY
+                        : AminoAcidSequence.translate(s, frame);
+                Assert.assertEquals(expected.size(), GeneticCode.translatedLength(s.size(), frame));
+                for (int i = 0; i < expected.size(); i++)
+                    Assert.assertEquals(expected.codeAt(i), dest[f][i]);
+                Assert.assertEquals(expected.toString().indexOf('*'), firstStop[f]);
+                Assert.assertEquals(firstStop[f] == -1, (open & (1 << f)) != 0);
+            }
+            Assert.assertEquals(open & 7, GeneticCode.translateForwardFrames(seq, dest, null));
+        }
+    }
+}
@@ -19,9 +19,12 @@ import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.SequenceQuality;
 import com.milaboratory.core.sequence.SequenceQualityBuilder;
 import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+
 public class QualityTrimmerTest {
     final QualityTrimmerParameters params7 = new QualityTrimmerParameters(7.0f, 6);
 
@@ -273,4 +276,50 @@ public class QualityTrimmerTest {
             builder.append((byte) Character.digit(nuQuality.charAt(i), 16));
         return builder.createAndDestroy();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatch() {
+        Well19937c rg = new Well19937c(123);
+        int count = 2000;
+        int[] offsets = new int[count], lengths = new int[count];
+        SequenceQuality[] qualities = new SequenceQuality[count];
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            int length = rg.nextInt(150);
+            byte[] values = new byte[length];
+            // Quality drops to the ends of the read, with random low quality regions inside
+            for (int j = 0; j < length; j++)
+                values[j] = (byte) Math.max(0, Math.min(40, 10 + Math.min(j, length - j) / 2
+                        - (rg.nextInt(8) == 0 ? 25 : 0) - rg.nextInt(15)));
+            qualities[i] = new SequenceQuality(values);
+            offsets[i] = buffer.size() + 1;
+            lengths[i] = length;
+            // Description-like garbage between quality strings
+            buffer.write('@');
+            byte[] encoded = qualities[i].encode(33);
+            buffer.write(encoded, 0, encoded.length);
+        }
+        byte[] data = buffer.toByteArray();
+
+        for (QualityTrimmerParameters params : new QualityTrimmerParameters[]{params7,
+                new QualityTrimmerParameters(20.0f, 8), new QualityTrimmerParameters(25.0f, 3)}) {
+            int[] trimmed = new int[2 * count], islands = new int[2 * count];
+            QualityTrimmer.trim(data, offsets, lengths, count, 33, params, trimmed);
+            QualityTrimmer.bestIsland(data, offsets, lengths, count, 33, params, islands);
+            for (int i = 0; i < count; i++) {
+                assertRange(QualityTrimmer.trim(qualities[i], params), trimmed, i);
+                assertRange(QualityTrimmer.bestIsland(qualities[i], params), islands, i);
+            }
+        }
+    }
+
+    private static void assertRange(Range expected, int[] result, int i) {
+        if (expected == null) {
+            Assert.assertEquals(-1, result[2 * i]);
+            Assert.assertEquals(-1, result[2 * i + 1]);
+        } else {
+            Assert.assertEquals(expected.getLower(), result[2 * i]);
+            Assert.assertEquals(expected.getUpper(), result[2 * i + 1]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937a;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.milaboratory.core.tree.SequenceTreeMapTest.randomMutate;
+import static com.milaboratory.test.TestUtil.randomSequence;
+import static org.junit.Assert.*;
+
+public class ApproximateSequenceIndexTest {
+    @Test
+    public void testExactAndBest() throws Exception {
+        ApproximateSequenceIndex<Integer> index = new ApproximateSequenceIndex<>(TreeSearchParameters.TWO_MISMATCHES);
+        assertNull(index.put(new NucleotideSequence("ATTAGACA"), 1));
+        assertNull(index.put(new NucleotideSequence("ATTAGTCA"), 2));
+        assertEquals((Integer) 1, index.put(new NucleotideSequence("ATTAGACA"), 3));
+        assertEquals(2, index.size());
+        assertEquals((Integer) 3, index.get(new NucleotideSequence("ATTAGACA")));
+
+        ApproximateSequenceIndex.Match<Integer> best = index.findBest(new NucleotideSequence("ATTAGTCT"));
+        assertEquals(new NucleotideSequence("ATTAGTCA"), best.getKey());
+        assertEquals(1, best.getMismatches());
+        assertEquals(2, index.search(new NucleotideSequence("ATTAGTCT")).size());
+        assertNull(index.findBest(new NucleotideSequence("TTTTTTTT")));
+    }
+
+    @Test
+    public void testRandomAgainstTree() throws Exception {
+        RandomGenerator rg = new Well19937a(1234);
+        TreeSearchParameters[] parameters = {
+                TreeSearchParameters.ONE_MISMATCH,
+                TreeSearchParameters.THREE_MISMATCHES,
+                TreeSearchParameters.TWO_MISMATCHES_OR_INDELS,
+                new TreeSearchParameters(2, 1, 3, 3),
+                new TreeSearchParameters(3, 2, 1)
+        };
+        for (TreeSearchParameters params : parameters)
+            for (int t = 0; t < 5; ++t) {
+                SequenceTreeMap<NucleotideSequence, NucleotideSequence> map =
+                        new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+                ApproximateSequenceIndex<NucleotideSequence> index = new ApproximateSequenceIndex<>(params);
+                NucleotideSequence reference = randomSequence(NucleotideSequence.ALPHABET, rg, 10, 14);
+                for (int i = 0; i < 2000; ++i) {
+                    NucleotideSequence seq = i % 3 == 0
+                            ? randomSequence(NucleotideSequence.ALPHABET, rg, 2, 16)
+                            : randomMutate(reference, rg, 4);
+                    map.put(seq, seq);
+                    index.put(seq, seq);
+                }
+
+                for (int q = 0; q < 20; ++q) {
+                    NucleotideSequence query = q == 0 ? reference : randomMutate(reference, rg, 2);
+                    Map<NucleotideSequence, Double> expected = new HashMap<>();
+                    LevenshteinNeighborhoodIterator<NucleotideSequence, NucleotideSequence> li =
+                            map.getLevenshteinNeighborhoodIterator(query, params);
+                    NucleotideSequence seq;
+                    double bestPenalty = Double.MAX_VALUE;
+                    while ((seq = li.next()) != null) {
+                        expected.put(seq, li.getPenalty());
+                        bestPenalty = Math.min(bestPenalty, li.getPenalty());
+                    }
+
+                    List<ApproximateSequenceIndex.Match<NucleotideSequence>> actual = index.search(query);
+                    assertEquals(expected.size(), actual.size());
+                    for (ApproximateSequenceIndex.Match<NucleotideSequence> match : actual)
+                        assertEquals(expected.get(match.getKey()), match.getPenalty(), 1E-9);
+
+                    ApproximateSequenceIndex.Match<NucleotideSequence> best = index.findBest(query);
+                    if (expected.isEmpty())
+                        assertNull(best);
+                    else
+                        assertEquals(bestPenalty, best.getPenalty(), 1E-9);
+                }
+            }
+    }
+
+    @Test
+    public void testHammingDistance() throws Exception {
+        NucleotideSequence a = new NucleotideSequence("ACGTACGTACGTACGTACGTACGTACGTACGTACGT"),
+                b = new NucleotideSequence("ACGTACGAACGTACGTACGTACGTACGTACGTACGC");
+        assertEquals(2, ApproximateSequenceIndex.hammingDistance(
+                ApproximateSequenceIndex.pack(a), ApproximateSequenceIndex.pack(b)));
+        assertNull(ApproximateSequenceIndex.pack(new NucleotideSequence("ACGN")));
+    }
+}
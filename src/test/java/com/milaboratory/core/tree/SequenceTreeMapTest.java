@@ -16,6 +16,7 @@
 package com.milaboratory.core.tree;
 
 import com.milaboratory.core.alignment.*;
+import com.milaboratory.core.mutations.MutationType;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.sequence.*;
 import org.apache.commons.math3.random.RandomDataGenerator;
@@ -1115,4 +1116,79 @@ public class SequenceTreeMapTest {
 
         Assert.assertTrue(i > 0);
     }
+
+    /*
+     * Levenshtein automaton search
+     */
+
+    @Test
+    public void testLevenshteinIterator1() throws Exception {
+        RandomGenerator rg = new Well19937a(123);
+        TreeSearchParameters[] parameters = {
+                TreeSearchParameters.ONE_MISMATCH,
+                TreeSearchParameters.TWO_MISMATCHES_OR_INDELS,
+                TreeSearchParameters.THREE_MISMATCHES_OR_INDELS,
+                new TreeSearchParameters(2, 1, 3, 3),
+                new TreeSearchParameters(3, 2, 1)
+        };
+        for (TreeSearchParameters params : parameters)
+            for (int t = 0; t < 10 * repeats; ++t) {
+                SequenceTreeMap<NucleotideSequence, NucleotideSequence> map =
+                        new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+                NucleotideSequence reference = randomSequence(NucleotideSequence.ALPHABET, rg, 10, 15);
+                for (int i = 0; i < 3000; ++i) {
+                    NucleotideSequence seq = i % 3 == 0
+                            ? randomSequence(NucleotideSequence.ALPHABET, rg, 8, 17)
+                            : randomMutate(reference, rg, 3);
+                    map.put(seq, seq);
+                }
+
+                Set<NucleotideSequence> expected = new HashSet<>();
+                NeighborhoodIterator<NucleotideSequence, NucleotideSequence> ni =
+                        map.getNeighborhoodIterator(reference, params);
+                NucleotideSequence seq;
+                while ((seq = ni.next()) != null)
+                    expected.add(seq);
+
+                Set<NucleotideSequence> actual = new HashSet<>();
+                LevenshteinNeighborhoodIterator<NucleotideSequence, NucleotideSequence> li =
+                        map.getLevenshteinNeighborhoodIterator(reference, params);
+                while ((seq = li.next()) != null) {
+                    // Each node is returned exactly once
+                    assertTrue(actual.add(seq));
+                    Mutations<NucleotideSequence> mutations = li.getCurrentMutations();
+                    assertEquals(seq, mutations.mutate(reference));
+                    int[] diffs = li.getIntroducedDifferences();
+                    assertEquals(mutations.countOf(MutationType.Substitution), diffs[0]);
+                    assertEquals(mutations.countOf(MutationType.Deletion), diffs[1]);
+                    assertEquals(mutations.countOf(MutationType.Insertion), diffs[2]);
+                    for (int i = 0; i < 3; ++i)
+                        assertTrue(diffs[i] <= params.getMaxErrors(i));
+                    assertTrue(li.getPenalty() <= params.getMaxPenalty());
+                }
+
+                assertTrue(actual.containsAll(expected));
+            }
+    }
+
+    static NucleotideSequence randomMutate(NucleotideSequence seq, RandomGenerator rg, int maxMutations) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder();
+        int mutations = rg.nextInt(maxMutations + 1);
+        for (int i = 0; i < seq.size(); ++i) {
+            if (mutations > 0 && rg.nextInt(seq.size()) < maxMutations) {
+                --mutations;
+                switch (rg.nextInt(3)) {
+                    case 0:
+                        builder.append((byte) rg.nextInt(4));
+                        continue;
+                    case 1:
+                        continue;
+                    case 2:
+                        builder.append((byte) rg.nextInt(4));
+                }
+            }
+            builder.append(seq.codeAt(i));
+        }
+        return builder.createAndDestroy();
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.milaboratory.util.GlobalObjectMappers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+public class JsonTreeCodecTest {
+    @Test
+    public void roundTrip1() throws Exception {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        ObjectNode root = f.objectNode();
+        root.put("int", 12);
+        root.put("negLong", -1234567890123L);
+        root.put("double", 0.125);
+        root.put("float", 1.5f);
+        root.put("str", "Юникод and ascii");
+        root.put("empty", "");
+        root.put("t", true);
+        root.put("f", false);
+        root.putNull("null");
+        root.put("big", new BigInteger("123456789012345678901234567890"));
+        root.put("dec", new BigDecimal("1.000000000000000000000001"));
+        root.put("bin", new byte[]{1, 2, 3});
+        ArrayNode arr = root.putArray("arr");
+        for (int i = 0; i < 3; i++)
+            arr.addObject().put("int", i).put("str", "v" + i);
+        arr.addArray();
+
+        byte[] encoded = JsonTreeCodec.encode(root);
+        JsonNode decoded = JsonTreeCodec.decode(encoded);
+        Assert.assertEquals(root, decoded);
+        Assert.assertTrue(encoded.length < GlobalObjectMappers.ONE_LINE.writeValueAsBytes(root).length);
+    }
+
+    @Test
+    public void cache1() throws Exception {
+        JsonTreeCodec.clearCache();
+        JsonNode tree = JsonNodeFactory.instance.objectNode().put("a", 1);
+        byte[] encoded = JsonTreeCodec.encode(tree);
+        int[] decodes = {0};
+        JsonTreeCodec.TreeSupplier supplier = () -> {
+            decodes[0]++;
+            return JsonTreeCodec.decode(encoded);
+        };
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(tree, JsonTreeCodec.decodeCached(
+                    JsonTreeCodec.ContentKey.ofBinary(encoded.clone()), supplier));
+        Assert.assertEquals(1, decodes[0]);
+    }
+
+    @Test
+    public void cacheReturnsCopies1() throws Exception {
+        JsonTreeCodec.clearCache();
+        String json = "{\"a\":{\"b\":[1,2]}}";
+        JsonTreeCodec.TreeSupplier supplier = () -> GlobalObjectMappers.ONE_LINE.readTree(json);
+        JsonNode first = JsonTreeCodec.decodeCached(JsonTreeCodec.ContentKey.ofText(json), supplier);
+        // Modification of a returned tree (e.g. bound to a JsonNode field) must not affect the cache
+        ((ObjectNode) first.get("a")).put("c", 3);
+        ((ArrayNode) first.get("a").get("b")).add(3);
+        JsonNode second = JsonTreeCodec.decodeCached(JsonTreeCodec.ContentKey.ofText(json), supplier);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(GlobalObjectMappers.ONE_LINE.readTree(json), second);
+    }
+}
@@ -49,6 +49,28 @@ public class PrimitivIOTest {
             Assert.assertEquals(values[i], pi.readVarInt());
     }
 
+    @Test
+    public void testGeneratedSerializers() throws Exception {
+        TestGeneratedBase leaf1 = new TestGeneratedBase.Leaf(1, "a", B), leaf2 = new TestGeneratedBase.Leaf(2, null, F);
+        TestGeneratedBase node = new TestGeneratedBase.Node(0.5, 1L << 40, new int[]{1, 2, 3},
+                new TestGeneratedBase[]{leaf1, leaf2, leaf1,
+                        new TestGeneratedBase.Node(-1.0, -1, new int[0], new TestGeneratedBase[0])});
+
+        SerializersManager manager = new SerializersManager();
+        Assert.assertTrue(manager.getSerializer(TestGeneratedBase.class) instanceof CustomSerializerImpl);
+        Assert.assertTrue(manager.getSerializer(TestGeneratedBase.Leaf.class) instanceof CustomSerializerImpl);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO po = new PrimitivO(bos);
+        po.writeObject(node);
+        po.writeObject(leaf2);
+        ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        PrimitivI pi = new PrimitivI(bis);
+        TestGeneratedBase dNode = pi.readObject(TestGeneratedBase.class);
+        Assert.assertEquals(node, dNode);
+        Assert.assertEquals(leaf2, pi.readObject(TestGeneratedBase.Leaf.class));
+    }
+
     @Test
     public void testSimpleSerialization1() throws Exception {
         TestClass1 obj1 = new TestClass1(1, "Surep");
@@ -319,6 +341,64 @@ public class PrimitivIOTest {
             Assert.assertArrayEquals(objs, pi.readObject(TestJsonClass1[].class));
     }
 
+    @Test
+    public void testCompactJsonSerializer() throws Exception {
+        RandomGenerator rg = new Well19937c();
+        TestJsonClass2[] objs = new TestJsonClass2[100];
+        for (int i = 0; i < objs.length; i++)
+            objs[i] = new TestJsonClass2(rg.nextInt(), rg.nextDouble(),
+                    new TestJsonClass1(rg.nextInt(), "Rand" + rg.nextInt()), "A" + rg.nextInt(), "B");
+
+        ByteArrayOutputStream compactBos = new ByteArrayOutputStream();
+        PrimitivO po = new PrimitivO(compactBos);
+        int cc = 10;
+        for (int i = 0; i < cc; ++i)
+            for (TestJsonClass2 obj : objs)
+                po.writeObject(obj);
+
+        // Textual form, as written by previous versions
+        ByteArrayOutputStream textBos = new ByteArrayOutputStream();
+        JSONSerializer textSerializer = new JSONSerializer(TestJsonClass2.class);
+        po = new PrimitivO(textBos);
+        for (int i = 0; i < cc; ++i)
+            for (TestJsonClass2 obj : objs)
+                textSerializer.write(po, obj);
+
+        Assert.assertTrue(compactBos.size() < textBos.size());
+
+        for (ByteArrayOutputStream bos : new ByteArrayOutputStream[]{compactBos, textBos}) {
+            PrimitivI pi = new PrimitivI(new ByteArrayInputStream(bos.toByteArray()));
+            TestJsonClass2[] previous = new TestJsonClass2[objs.length];
+            for (int i = 0; i < cc; ++i)
+                for (int j = 0; j < objs.length; j++) {
+                    TestJsonClass2 read = bos == compactBos
+                            ? pi.readObject(TestJsonClass2.class)
+                            : (TestJsonClass2) textSerializer.read(pi);
+                    Assert.assertEquals(objs[j], read);
+                    // Cached trees must still produce independent objects
+                    Assert.assertNotSame(previous[j], read);
+                    previous[j] = read;
+                }
+        }
+    }
+
+    @Test
+    public void testCompactJsonUnknownVersion() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO po = new PrimitivO(bos);
+        po.writeUTF("");
+        po.writeByte((byte) (JsonTreeCodec.FORMAT_VERSION + 1));
+        po.writeVarInt(1);
+        po.writeByte((byte) 0);
+        PrimitivI pi = new PrimitivI(new ByteArrayInputStream(bos.toByteArray()));
+        try {
+            new JSONSerializer(TestJsonClass2.class, true).read(pi);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
     @Test
     public void testInts() throws Exception {
         int[] values = new int[10000];
@@ -25,6 +25,7 @@ import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.primitivio.PrimitivOState;
 import com.milaboratory.test.TestUtil;
 import com.milaboratory.util.FormatUtils;
+import com.milaboratory.util.MetricsRegistry;
 import com.milaboratory.util.RandomUtil;
 import com.milaboratory.util.TempFileManager;
 import com.milaboratory.util.io.HasPosition;
@@ -59,6 +60,39 @@ public class PrimitivOBlocksTest {
         executorService.shutdownNow();
     }
 
+    @Test
+    public void testGlobalMetrics() throws IOException {
+        MetricsRegistry registry = MetricsRegistry.GLOBAL;
+        long oBlocks = registry.counter("milib_primitivo_blocks_total").get(),
+                oSerializations = registry.timer("milib_primitivo_serialization_seconds").getCount(),
+                iBlocks = registry.counter("milib_primitivi_blocks_total").get(),
+                iDeserializations = registry.timer("milib_primitivi_deserialization_seconds").getCount();
+
+        Path target = TempFileManager.getTempFile().toPath();
+        PrimitivOBlocks<Integer> po = new PrimitivOBlocks<>(executorService, 2, PrimitivOState.INITIAL, 100,
+                LZ4Factory.fastestInstance().fastCompressor());
+        try (PrimitivOBlocks<Integer>.Writer writer = po.newWriter(target)) {
+            for (int i = 0; i < 1000; i++)
+                writer.write(i);
+        }
+
+        PrimitivIBlocks<Integer> pi = new PrimitivIBlocks<>(Integer.class, executorService, 2,
+                PrimitivIState.INITIAL, LZ4Factory.fastestInstance().fastDecompressor());
+        try (PrimitivIBlocks<Integer>.Reader reader = pi.newReader(target, 2)) {
+            for (int i = 0; i < 1000; i++)
+                Assert.assertEquals(Integer.valueOf(i), reader.take());
+            Assert.assertNull(reader.take());
+        }
+
+        long blocks = po.getStats().getBlockCount();
+        Assert.assertEquals(10, blocks);
+        Assert.assertTrue(registry.counter("milib_primitivo_blocks_total").get() - oBlocks >= blocks);
+        Assert.assertTrue(registry.timer("milib_primitivo_serialization_seconds").getCount() - oSerializations >= blocks);
+        Assert.assertTrue(registry.counter("milib_primitivi_blocks_total").get() - iBlocks >= blocks);
+        Assert.assertTrue(registry.timer("milib_primitivi_deserialization_seconds").getCount() - iDeserializations >= blocks);
+        Assert.assertTrue(registry.toPrometheus().contains("milib_primitivio_pending_ops "));
+    }
+
     @Test
     public void test1() throws IOException {
         AtomicInteger counter = new AtomicInteger();
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio.test;
+
+import com.milaboratory.primitivio.annotations.CustomSerializer;
+import com.milaboratory.primitivio.annotations.Serializable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Hierarchy with serializers generated by SerializableProcessor
+ */
+@Serializable(custom = {
+        @CustomSerializer(id = 1, type = TestGeneratedBase.Leaf.class),
+        @CustomSerializer(id = 2, type = TestGeneratedBase.Node.class)
+})
+public abstract class TestGeneratedBase {
+    @Serializable(generate = true)
+    public static final class Leaf extends TestGeneratedBase {
+        final int value;
+        final String name;
+        final TestEnum1 type;
+
+        public Leaf(int value, String name, TestEnum1 type) {
+            this.value = value;
+            this.name = name;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Leaf leaf = (Leaf) o;
+            return value == leaf.value && Objects.equals(name, leaf.name) && type == leaf.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, name, type);
+        }
+    }
+
+    @Serializable(generate = true)
+    public static final class Node extends TestGeneratedBase {
+        final double weight;
+        final long id;
+        final int[] tags;
+        final TestGeneratedBase[] children;
+
+        public Node(double weight, long id, int[] tags, TestGeneratedBase[] children) {
+            this.weight = weight;
+            this.id = id;
+            this.tags = tags;
+            this.children = children;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Node node = (Node) o;
+            return Double.compare(node.weight, weight) == 0 && id == node.id
+                    && Arrays.equals(tags, node.tags) && Arrays.equals(children, node.children);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(tags) + Arrays.hashCode(children);
+        }
+    }
+}
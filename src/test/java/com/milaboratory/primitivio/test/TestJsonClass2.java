@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 MiLaboratory.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.primitivio.test;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.milaboratory.primitivio.annotations.Serializable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+@Serializable(asJson = true, compactJson = true)
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY, isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE)
+public final class TestJsonClass2 {
+    public final int guga;
+    public final double buga;
+    public final List<String> muga;
+    public final TestJsonClass1 nested;
+
+    @JsonCreator
+    public TestJsonClass2(@JsonProperty("guga") int guga,
+                          @JsonProperty("buga") double buga,
+                          @JsonProperty("muga") List<String> muga,
+                          @JsonProperty("nested") TestJsonClass1 nested) {
+        this.guga = guga;
+        this.buga = buga;
+        this.muga = muga;
+        this.nested = nested;
+    }
+
+    public TestJsonClass2(int guga, double buga, TestJsonClass1 nested, String... muga) {
+        this(guga, buga, Arrays.asList(muga), nested);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TestJsonClass2 that = (TestJsonClass2) o;
+        return guga == that.guga &&
+                Double.compare(that.buga, buga) == 0 &&
+                Objects.equals(muga, that.muga) &&
+                Objects.equals(nested, that.nested);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(guga, buga, muga, nested);
+    }
+}
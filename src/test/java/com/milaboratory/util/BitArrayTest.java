@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class BitArrayTest {
+    @Test
+    public void testIteration() throws Exception {
+        RandomGenerator rg = new Well19937c(123);
+        for (int size : new int[]{0, 1, 63, 64, 65, 1000, 200_000}) {
+            for (double density : new double[]{0.0, 0.001, 0.3, 1.0}) {
+                BitArray array = new BitArray(size);
+                BitSet expected = new BitSet(size);
+                for (int i = 0; i < size; ++i)
+                    if (rg.nextDouble() < density) {
+                        array.set(i);
+                        expected.set(i);
+                    }
+
+                assertEquals(expected.cardinality(), array.cardinality());
+                for (int i = 0; i < size + 10; i += 1 + rg.nextInt(100)) {
+                    assertEquals(expected.nextSetBit(i), array.nextSetBit(i));
+                    assertEquals(expected.previousSetBit(i), array.previousSetBit(i));
+                    int nextClear = expected.nextClearBit(i);
+                    assertEquals(nextClear >= size ? -1 : nextClear, array.nextClearBit(i));
+                }
+
+                CompressedBitArray compressed = CompressedBitArray.compress(array);
+                assertEquals(array.cardinality(), compressed.cardinality());
+                assertEquals(array, compressed.toBitArray());
+                for (int i = 0; i < size + 10; i += 1 + rg.nextInt(100)) {
+                    assertEquals(expected.nextSetBit(i), compressed.nextSetBit(i));
+                    if (i < size)
+                        assertEquals(expected.get(i), compressed.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedEquality() throws Exception {
+        BitArray sparse = new BitArray(200_000), dense = new BitArray(200_000);
+        sparse.set(5);
+        sparse.set(150_000);
+        for (int i = 0; i < 70_000; i += 3)
+            dense.set(i);
+        for (BitArray array : new BitArray[]{sparse, dense}) {
+            CompressedBitArray c1 = CompressedBitArray.compress(array), c2 = CompressedBitArray.compress(array.clone());
+            assertEquals(c1, c2);
+            assertEquals(c1.hashCode(), c2.hashCode());
+        }
+        assertNotEquals(CompressedBitArray.compress(sparse), CompressedBitArray.compress(dense));
+        assertTrue(CompressedBitArray.compress(sparse).getSizeInBytes() < 64);
+    }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        BitArray a = new BitArray(true, false, true, true, false),
+                b = new BitArray(false, false, true, false, true);
+        BitArray c = a.clone();
+        c.andNot(b);
+        assertEquals(new BitArray(true, false, false, true, false), c);
+        c = a.clone();
+        c.and(b);
+        assertEquals(new BitArray(false, false, true, false, false), c);
+        c.setAll();
+        assertTrue(c.isFull());
+        assertEquals(5, c.bitCount());
+        assertEquals(new BitArray(false, true, true), a.getRange(1, 4));
+    }
+
+    @Test
+    public void testRawData() throws Exception {
+        BitArray array = new BitArray(70);
+        array.set(0);
+        array.set(9);
+        array.set(69);
+        byte[] raw = BitArray.extractRawDataArray(array);
+        assertEquals(9, raw.length);
+        assertEquals(1, raw[0]);
+        assertEquals(2, raw[1]);
+        assertEquals(0x20, raw[8]);
+        assertEquals(array, BitArray.construct(raw, 70));
+
+        // Extra bytes and bits beyond size are ignored
+        byte[] oversized = Arrays.copyOf(raw, 20);
+        oversized[8] |= (byte) 0xC0;
+        oversized[15] = 1;
+        BitArray constructed = BitArray.construct(oversized, 70);
+        assertEquals(array, constructed);
+        assertEquals(array.hashCode(), constructed.hashCode());
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+        BitArray array = new BitArray(true, false, true, true, false, false, false, false, false, true);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(array);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            assertEquals(array, in.readObject());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class MetricsRegistryTest {
+    @Test
+    public void testBuckets() throws Exception {
+        for (long v : new long[]{0, 1, 31, 32, 33, 63, 64, 100, 1000, 123456789, Long.MAX_VALUE}) {
+            int b = MetricsRegistry.Histogram.bucket(v);
+            Assert.assertTrue(MetricsRegistry.Histogram.bucketLowerBound(b) <= v);
+            Assert.assertTrue(v <= MetricsRegistry.Histogram.bucketUpperBound(b));
+        }
+        for (int b = 1; b < MetricsRegistry.Histogram.bucket(Long.MAX_VALUE); b++)
+            Assert.assertEquals(MetricsRegistry.Histogram.bucketUpperBound(b - 1) + 1,
+                    MetricsRegistry.Histogram.bucketLowerBound(b));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        Well19937c rg = new Well19937c(1);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(rg.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            long expected = values[(int) Math.ceil(q * values.length) - 1];
+            long actual = histogram.getQuantile(q);
+            Assert.assertTrue(actual >= expected);
+            Assert.assertTrue(actual <= expected * 1.04 + 1);
+        }
+        Assert.assertEquals(values[values.length - 1], histogram.getMax());
+        Assert.assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("reads").add(10);
+        registry.counter("reads").increment();
+        registry.gauge("queue.size").set(3);
+        registry.gauge("constant", () -> 42);
+        registry.timer("io").record(2_000_000_000L);
+
+        Assert.assertEquals(11, registry.counter("reads").get());
+        try {
+            registry.timer("reads");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+
+        JsonNode json = GlobalObjectMappers.PRETTY.readTree(registry.toJson());
+        Assert.assertEquals(11, json.get("reads").asLong());
+        Assert.assertEquals(42.0, json.get("constant").asDouble(), 0.0);
+        Assert.assertEquals(1, json.get("io").get("count").asLong());
+        Assert.assertEquals(2.0, json.get("io").get("sum").asDouble(), 1E-9);
+
+        String prometheus = registry.toPrometheus();
+        Assert.assertTrue(prometheus.contains("# TYPE reads counter\nreads 11\n"));
+        Assert.assertTrue(prometheus.contains("queue_size 3\n"));
+        Assert.assertTrue(prometheus.contains("io_sum 2\n"));
+        Assert.assertTrue(prometheus.contains("io_count 1\n"));
+        Assert.assertTrue(prometheus.contains("io{quantile=\"0.5\"} 2"));
+    }
+
+    @Test
+    public void testGaugeTypeMismatch() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter counter = registry.counter("reads");
+        try {
+            registry.gauge("reads", () -> 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertSame(counter, registry.counter("reads"));
+    }
+
+    @Test
+    public void testRemoveByPrefix() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("a_x", () -> 1);
+        registry.gauge("a_y", () -> 2);
+        registry.counter("b_x");
+        Assert.assertEquals(2, registry.removeByPrefix("a_"));
+        Assert.assertEquals(1, registry.getMetrics().size());
+        Assert.assertNotNull(registry.remove("b_x"));
+        Assert.assertTrue(registry.getMetrics().isEmpty());
+    }
+}
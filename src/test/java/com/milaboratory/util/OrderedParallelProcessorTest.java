@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class OrderedParallelProcessorTest {
+    @Test
+    public void testOrderAndBackpressure() throws Exception {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            source.add(i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AtomicInteger processed = new AtomicInteger();
+            OrderedParallelProcessor<Integer, Long> processor = new OrderedParallelProcessor<>(
+                    CUtils.asOutputPort(source), i -> {
+                if (ThreadLocalRandom.current().nextInt(100) == 0)
+                    LockSupport.parkNanos(100_000);
+                processed.incrementAndGet();
+                return 3L * i;
+            }, executor, 37, 5);
+
+            int taken = 0;
+            Long result;
+            while ((result = processor.take()) != null) {
+                Assert.assertEquals(3L * taken++, (long) result);
+                Assert.assertTrue(processed.get() - taken <= 5 * 37);
+                Assert.assertTrue(processor.getQueueDepth() <= 5);
+            }
+            Assert.assertEquals(source.size(), taken);
+            Assert.assertNull(processor.take());
+            Assert.assertEquals((source.size() + 36) / 37, processor.getBatches());
+            Assert.assertEquals(source.size(), processor.getElements());
+            Assert.assertTrue(processor.getMaxQueueDepth() <= 5);
+            Assert.assertEquals(0, processor.getQueueDepth());
+            Assert.assertTrue(processor.getStallTimeNanos() >= 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        OrderedParallelProcessor<Integer, Integer> processor = new OrderedParallelProcessor<>(
+                CUtils.asOutputPort(Collections.<Integer>emptyList()), i -> i, Runnable::run, 10, 2);
+        Assert.assertNull(processor.take());
+        Assert.assertEquals(0, processor.getBatches());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testException() throws Exception {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            source.add(i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            OutputPort<Integer> processor = new OrderedParallelProcessor<Integer, Integer>(
+                    CUtils.asOutputPort(source), i -> {
+                if (i == 500)
+                    throw new IllegalStateException();
+                return i;
+            }, executor, 16, 4);
+            while (processor.take() != null) ;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            source.add(i);
+
+        OrderedParallelProcessor<Integer, Integer> processor = new OrderedParallelProcessor<>(
+                CUtils.asOutputPort(source), i -> i, Runnable::run, 16, 4);
+        Assert.assertEquals(0, (int) processor.take());
+        processor.close();
+        Assert.assertNull(processor.take());
+    }
+}
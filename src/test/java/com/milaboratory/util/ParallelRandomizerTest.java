@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class ParallelRandomizerTest {
+    @Test
+    public void test1() throws Exception {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            source.add(i);
+
+        File dir1 = TempFileManager.getTempDir(), dir2 = TempFileManager.getTempDir();
+
+        List<Integer> r1 = randomize(source, 123, 1000, new File[0], 1, 0);
+        List<Integer> r2 = randomize(source, 123, 1000, new File[]{dir1, dir2}, 4, 100);
+        List<Integer> r3 = randomize(source, 124, 1000, new File[]{dir1}, 3, 100);
+
+        Assert.assertEquals(new HashSet<>(source), new HashSet<>(r1));
+        Assert.assertEquals(source.size(), r1.size());
+        Assert.assertEquals(r1, r2);
+        Assert.assertNotEquals(r1, r3);
+        Assert.assertEquals(new HashSet<>(source), new HashSet<>(r3));
+
+        // Temp files are removed after the output is exhausted
+        Assert.assertEquals(0, dir1.listFiles().length);
+        Assert.assertEquals(0, dir2.listFiles().length);
+    }
+
+    @Test
+    public void testUniformity() throws Exception {
+        // Position of the first element in the output should be uniformly distributed
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            source.add(i);
+        int firstHalf = 0, n = 400;
+        for (int seed = 0; seed < n; seed++)
+            if (randomize(source, seed, 7, null, 2, 0).indexOf(0) < 50)
+                ++firstHalf;
+        Assert.assertTrue(Math.abs(firstHalf - n / 2) < n / 8);
+    }
+
+    static List<Integer> randomize(List<Integer> source, long seed, int chunkSize, File[] dirs,
+                                   int threads, int readAhead) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        try (OutputPortCloseable<Integer> port = ParallelRandomizer.randomize(CUtils.asOutputPort(source), seed,
+                chunkSize, INT_SERIALIZER, dirs, threads, readAhead)) {
+            for (Integer i : CUtils.it(port))
+                result.add(i);
+        }
+        return result;
+    }
+
+    static final ObjectSerializer<Integer> INT_SERIALIZER = new ObjectSerializer<Integer>() {
+        @Override
+        public void write(Collection<Integer> data, OutputStream stream) {
+            try (DataOutputStream out = new DataOutputStream(stream)) {
+                for (Integer datum : data)
+                    out.writeInt(datum);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public OutputPort<Integer> read(InputStream stream) {
+            final DataInputStream in = new DataInputStream(stream);
+            return new OutputPort<Integer>() {
+                @Override
+                public Integer take() {
+                    try {
+                        return in.readInt();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+    };
+}
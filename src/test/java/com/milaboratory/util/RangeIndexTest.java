@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import com.milaboratory.core.Range;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RangeIndexTest {
+    @Test
+    public void test1() throws Exception {
+        RangeIndex<Integer> index = new RangeIndex.Builder<Integer>()
+                .add(new Range(10, 20), 1)
+                .add(new Range(15, 40), 2)
+                .add(new Range(5, 12), 3)
+                .add(new Range(30, 31), 4)
+                .build();
+        assertEquals(4, index.size());
+        assertEquals(new Range(5, 12), index.getRange(0));
+        assertEquals(values(index.findAllContaining(11)), listOf(3, 1));
+        assertEquals(values(index.findAllContaining(30)), listOf(2, 4));
+        assertEquals(values(index.findAllIntersecting(new Range(12, 16))), listOf(1, 2));
+        assertTrue(index.findAllIntersecting(new Range(40, 50)).isEmpty());
+        assertTrue(new RangeIndex.Builder<Integer>().build().findAllContaining(0).isEmpty());
+    }
+
+    @Test
+    public void testFromRangeMap() throws Exception {
+        RangeMap<Integer> map = new RangeMap<>();
+        map.put(new Range(10, 20), 1);
+        map.put(new Range(35, 48), 2);
+        RangeIndex<Integer> index = RangeIndex.of(map);
+        assertEquals(values(map.findAllIntersecting(new Range(15, 40))),
+                values(index.findAllIntersecting(new Range(15, 40))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedBatch() throws Exception {
+        RangeIndex<Integer> index = new RangeIndex.Builder<Integer>().add(new Range(10, 20), 1).build();
+        List<Range> queries = new ArrayList<>();
+        queries.add(new Range(5, 6));
+        queries.add(new Range(4, 6));
+        index.findAllIntersecting(queries);
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        RandomGenerator rg = new Well19937c(123);
+        for (int size : new int[]{1, 2, 7, 16, 17, 100, 1000}) {
+            RangeIndex.Builder<Integer> builder = new RangeIndex.Builder<>();
+            List<Range> ranges = new ArrayList<>();
+            for (int i = 0; i < size; ++i) {
+                int from = rg.nextInt(1000);
+                Range range = new Range(from, from + 1 + rg.nextInt(rg.nextBoolean() ? 10 : 300));
+                ranges.add(range);
+                builder.add(range, i);
+            }
+            RangeIndex<Integer> index = builder.build();
+
+            List<Range> queries = new ArrayList<>();
+            for (int q = 0; q < 300; ++q) {
+                int from = rg.nextInt(1100) - 50;
+                queries.add(new Range(from, from + rg.nextInt(100)));
+            }
+            queries.sort(Comparator.comparingInt(Range::getLower));
+            List<List<Map.Entry<Range, Integer>>> batch = index.findAllIntersecting(queries);
+
+            for (int q = 0; q < queries.size(); ++q) {
+                Range query = queries.get(q);
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < index.size(); ++i)
+                    if (index.getRange(i).intersectsWith(query))
+                        expected.add(index.getValue(i));
+                assertEquals(expected, values(index.findAllIntersecting(query)));
+                assertEquals(expected, values(batch.get(q)));
+
+                expected.clear();
+                for (int i = 0; i < index.size(); ++i)
+                    if (index.getRange(i).contains(query.getLower()))
+                        expected.add(index.getValue(i));
+                assertEquals(expected, values(index.findAllContaining(query.getLower())));
+            }
+        }
+    }
+
+    private static List<Integer> listOf(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values)
+            list.add(value);
+        return list;
+    }
+
+    private static List<Integer> values(List<Map.Entry<Range, Integer>> entries) {
+        List<Integer> list = new ArrayList<>();
+        for (Map.Entry<Range, Integer> entry : entries)
+            list.add(entry.getValue());
+        return list;
+    }
+}
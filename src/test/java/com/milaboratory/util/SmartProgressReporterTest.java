@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SmartProgressReporterTest {
+    static final class TestReporter implements CanReportProgressAndStage {
+        volatile String stage = "Stage1";
+        volatile double progress = 0.0;
+        volatile boolean finished = false;
+
+        @Override
+        public String getStage() {
+            return stage;
+        }
+
+        @Override
+        public double getProgress() {
+            return progress;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    @Test
+    public void testRatesAndEta() throws Exception {
+        TestReporter reporter = new TestReporter();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        SmartProgressReporter spr = new SmartProgressReporter(reporter, new PrintStream(bos, true));
+        AtomicLong reads = new AtomicLong(), bytes = new AtomicLong();
+        spr.setItemCounter(reads::get);
+        spr.setByteCounter(bytes::get);
+        spr.setMachineReadable(true);
+        spr.setRateWindow(10_000);
+
+        long t = 1_000_000;
+        for (int i = 0; i <= 20; i++) {
+            reporter.progress = i * 0.01;
+            reads.set(i * 1000L);
+            bytes.set(i * 100_000L);
+            spr.tick(t + i * 1000L);
+        }
+        reporter.stage = "Stage2";
+        spr.tick(t + 21_000L);
+        spr.finish(t + 22_000L);
+
+        String[] lines = bos.toString().trim().split("\n");
+        JsonNode last = null;
+        int stagesFinished = 0;
+        for (String line : lines) {
+            JsonNode node = GlobalObjectMappers.ONE_LINE.readTree(line);
+            if (node.get("event").asText().equals("stageFinished"))
+                ++stagesFinished;
+            else if (node.get("stage").asText().equals("Stage1"))
+                last = node;
+        }
+        Assert.assertEquals(2, stagesFinished);
+        Assert.assertNotNull(last);
+        Assert.assertEquals(1000.0, last.get("itemsPerSecond").asDouble(), 1e-6);
+        Assert.assertEquals(100_000.0, last.get("bytesPerSecond").asDouble(), 1e-6);
+        // 1% per second, 20% done
+        Assert.assertEquals(80_000, last.get("etaMillis").asLong(), 10);
+
+        Assert.assertEquals(2, spr.getStageTimings().size());
+        Assert.assertEquals("Stage1", spr.getStageTimings().get(0).stage);
+        Assert.assertEquals(21_000, spr.getStageTimings().get(0).wallMillis);
+        Assert.assertEquals(1_000, spr.getStageTimings().get(1).wallMillis);
+    }
+
+    @Test
+    public void testHumanReadable() {
+        TestReporter reporter = new TestReporter();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        SmartProgressReporter spr = new SmartProgressReporter(reporter, new PrintStream(bos, true));
+        AtomicLong reads = new AtomicLong();
+        spr.setItemCounter(reads::get);
+        spr.setProgressPeriod(0.5);
+        spr.tick(0);
+        reporter.progress = 0.5;
+        reads.set(2_500_000);
+        spr.tick(1000);
+        spr.finish(2000);
+        String out = bos.toString();
+        Assert.assertTrue(out, out.contains("Stage1: 50%  2.5 M reads/s  ETA: 00:00:01"));
+        Assert.assertTrue(out, out.contains("Stage1: finished in 00:00:02"));
+    }
+
+    @Test
+    public void testFormat() {
+        Assert.assertEquals("999.0", SmartProgressReporter.formatRate(999));
+        Assert.assertEquals("1.5 K", SmartProgressReporter.formatRate(1500));
+        Assert.assertEquals("01:01:01", SmartProgressReporter.formatTime(3661_000));
+    }
+}
@@ -15,14 +15,18 @@
  */
 package com.milaboratory.util.io;
 
+import com.milaboratory.primitivio.PrimitivO;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.Well44497b;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class ByteArrayDataOutputTest {
     @Test
@@ -110,4 +114,35 @@ public class ByteArrayDataOutputTest {
                 throw new IllegalArgumentException();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void varLongTest() {
+        RandomGenerator rg = new Well44497b(123);
+        long[] values = new long[10000];
+        ByteArrayDataOutput d = new ByteArrayDataOutput();
+        // Stream-based encoding used by PrimitivO for other outputs
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO po = new PrimitivO(bos);
+        d.writeByte(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rg.nextLong() >>> rg.nextInt(64);
+            d.writeVarLong(values[i]);
+            po.writeVarLong(values[i]);
+        }
+        po.close();
+
+        Assert.assertArrayEquals(bos.toByteArray(), Arrays.copyOfRange(d.getBuffer(), 1, d.size()));
+
+        // Slice with non-zero array offset
+        ByteBufferDataInputAdapter a = new ByteBufferDataInputAdapter(
+                ByteBuffer.wrap(d.getBuffer(), 1, d.size() - 1).slice());
+        for (long value : values)
+            Assert.assertEquals(value, a.readVarLong());
+        try {
+            a.readVarLong();
+            Assert.fail();
+        } catch (BufferUnderflowException e) {
+            // expected
+        }
+    }
+}